@@ -0,0 +1,43 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public class BenchmarkRunner
+{
+    /**
+     * Runs all benchmarks, or the ones matching the given regular expressions, with the GC profiler enabled so that
+     * allocation rates (gc.alloc.rate.norm, in bytes per operation) are reported next to throughput
+     * @param args Optional benchmark name patterns
+     * @throws RunnerException if a benchmark fails
+     */
+    public static void main(String[] args) throws RunnerException
+    {
+        OptionsBuilder builder = new OptionsBuilder();
+        if (args.length == 0)
+        {
+            builder.include("poolchange\\.sdk\\.sample\\.benchmarks\\..*");
+        }
+        for (String pattern : args)
+        {
+            builder.include(pattern);
+        }
+
+        Options options = builder
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("benchmark-results.json")
+                .build();
+
+        new Runner(options).run();
+    }
+}
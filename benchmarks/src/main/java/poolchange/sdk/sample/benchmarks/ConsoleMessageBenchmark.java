@@ -0,0 +1,79 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import poolchange.sdk.sample.common.Utils;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+// Utils logging calls, with stdout discarded so that only the logging path itself is measured
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConsoleMessageBenchmark
+{
+    private static final String MESSAGE = "Pool change successful. Moved Volume from anf-java-example-pool-source to anf-java-example-pool-destination";
+
+    private PrintStream originalOut;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        System.out.flush();
+        System.setOut(originalOut);
+    }
+
+    @Benchmark
+    public void writeConsoleMessage()
+    {
+        Utils.writeConsoleMessage(MESSAGE);
+    }
+
+    @Benchmark
+    public void writeSuccessMessage()
+    {
+        Utils.writeSuccessMessage(MESSAGE);
+    }
+
+    @Benchmark
+    public void writeSuccessMessageWithFields()
+    {
+        Utils.writeSuccessMessage(MESSAGE, "operation", "poolChange", "volume", "anf-java-example-volume", "elapsedMs", 1200L);
+    }
+
+    // Progress reporting from many pool change workers at once
+    @Benchmark
+    @Threads(8)
+    public void writeConsoleMessageContended()
+    {
+        Utils.writeConsoleMessage(MESSAGE);
+    }
+}
@@ -0,0 +1,63 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.benchmarks;
+
+import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import poolchange.sdk.sample.common.CommonSdk;
+import poolchange.sdk.sample.common.ResourceCache;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+// CommonSdk.getResource dispatch on clazz.getSimpleName(), against a stub client that does no I/O. With cached=true
+// every call after the first one is a resource cache hit
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResourceDispatchBenchmark
+{
+    @Param({"NetAppAccountInner", "SnapshotPolicyInner", "CapacityPoolInner", "VolumeInner", "SnapshotInner"})
+    public String resourceType;
+
+    @Param({"false", "true"})
+    public boolean cached;
+
+    private NetAppManagementClient anfClient;
+    private Class<?> clazz;
+    private final String[] parameters = {"resource-group", "account", "pool", "volume", "snapshot"};
+
+    @Setup(Level.Trial)
+    public void setup() throws ClassNotFoundException
+    {
+        anfClient = StubNetAppClient.create();
+        clazz = Class.forName("com.azure.resourcemanager.netapp.fluent.models." + resourceType);
+
+        ResourceCache cache = CommonSdk.getResourceCache();
+        cache.clear();
+        cache.setTimeToLive(clazz, cached ? Duration.ofDays(1) : Duration.ZERO);
+    }
+
+    @Benchmark
+    public Object getResource()
+    {
+        return CommonSdk.getResource(anfClient, parameters, clazz);
+    }
+}
@@ -0,0 +1,82 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.benchmarks;
+
+import java.util.Random;
+import java.util.UUID;
+
+// Generates realistic ANF resource ids for the benchmarks
+final class ResourceIds
+{
+    private static final String NAME_CHARS = "abcdefghijklmnopqrstuvwxyz0123456789-";
+
+    private ResourceIds()
+    {
+    }
+
+    /**
+     * Builds distinct resource ids with names between 8 and 40 characters, like the ones found in real estates
+     * @param kind One of account, pool, volume, snapshot or snapshotPolicy
+     * @param count Number of distinct ids
+     * @param seed Random seed so that runs are comparable
+     * @return The generated ids
+     */
+    static String[] generate(String kind, int count, long seed)
+    {
+        Random random = new Random(seed);
+        String[] ids = new String[count];
+
+        for (int i = 0; i < count; i++)
+        {
+            StringBuilder id = new StringBuilder(256)
+                    .append("/subscriptions/").append(new UUID(random.nextLong(), random.nextLong()))
+                    .append("/resourceGroups/").append(name(random))
+                    .append("/providers/Microsoft.NetApp/netAppAccounts/").append(name(random));
+
+            switch (kind)
+            {
+                case "snapshotPolicy":
+                    id.append("/snapshotPolicies/").append(name(random));
+                    break;
+
+                case "snapshot":
+                    id.append("/capacityPools/").append(name(random))
+                            .append("/volumes/").append(name(random))
+                            .append("/snapshots/").append(name(random));
+                    break;
+
+                case "volume":
+                    id.append("/capacityPools/").append(name(random))
+                            .append("/volumes/").append(name(random));
+                    break;
+
+                case "pool":
+                    id.append("/capacityPools/").append(name(random));
+                    break;
+
+                default:
+                    break;
+            }
+
+            ids[i] = id.toString();
+        }
+
+        return ids;
+    }
+
+    private static String name(Random random)
+    {
+        int length = 8 + random.nextInt(33);
+        char[] chars = new char[length];
+        chars[0] = NAME_CHARS.charAt(random.nextInt(26));
+        for (int i = 1; i < length; i++)
+        {
+            chars[i] = NAME_CHARS.charAt(random.nextInt(NAME_CHARS.length()));
+        }
+
+        return new String(chars);
+    }
+}
@@ -0,0 +1,97 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import poolchange.sdk.sample.common.ResourceUriUtils;
+
+import java.util.concurrent.TimeUnit;
+
+// Resource id parsing, as done on every poll of CommonSdk.waitForNoANFResource
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResourceUriUtilsBenchmark
+{
+    @Param({"account", "pool", "volume", "snapshot", "snapshotPolicy"})
+    public String kind;
+
+    // 1 keeps every id in cache, 65536 spreads work over far more ids than the CPU caches hold
+    @Param({"1", "1024", "65536"})
+    public int cardinality;
+
+    private String[] ids;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        ids = ResourceIds.generate(kind, cardinality, 42);
+    }
+
+    private String nextId()
+    {
+        String id = ids[next];
+        next = next + 1 == ids.length ? 0 : next + 1;
+        return id;
+    }
+
+    @Benchmark
+    public String getResourceValue()
+    {
+        return ResourceUriUtils.getResourceValue(nextId(), "/volumes");
+    }
+
+    @Benchmark
+    public String getResourceGroup()
+    {
+        return ResourceUriUtils.getResourceGroup(nextId());
+    }
+
+    @Benchmark
+    public String getAnfAccount()
+    {
+        return ResourceUriUtils.getAnfAccount(nextId());
+    }
+
+    @Benchmark
+    public String getAnfCapacityPool()
+    {
+        return ResourceUriUtils.getAnfCapacityPool(nextId());
+    }
+
+    @Benchmark
+    public String getAnfVolume()
+    {
+        return ResourceUriUtils.getAnfVolume(nextId());
+    }
+
+    @Benchmark
+    public String getAnfSnapshot()
+    {
+        return ResourceUriUtils.getAnfSnapshot(nextId());
+    }
+
+    @Benchmark
+    public String getAnfSnapshotPolicy()
+    {
+        return ResourceUriUtils.getAnfSnapshotPolicy(nextId());
+    }
+}
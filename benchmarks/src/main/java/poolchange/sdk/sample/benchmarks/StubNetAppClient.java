@@ -0,0 +1,93 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.benchmarks;
+
+import com.azure.core.http.HttpHeaders;
+import com.azure.core.http.rest.Response;
+import com.azure.core.http.rest.SimpleResponse;
+import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
+import com.azure.resourcemanager.netapp.fluent.models.CapacityPoolInner;
+import com.azure.resourcemanager.netapp.fluent.models.NetAppAccountInner;
+import com.azure.resourcemanager.netapp.fluent.models.SnapshotInner;
+import com.azure.resourcemanager.netapp.fluent.models.SnapshotPolicyInner;
+import com.azure.resourcemanager.netapp.fluent.models.VolumeInner;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+// In memory NetAppManagementClient answering every get with the same instance, so that only client side work is measured
+final class StubNetAppClient implements InvocationHandler
+{
+    private final Map<Class<?>, Object> resources = new HashMap<>();
+
+    private StubNetAppClient()
+    {
+        resources.put(NetAppAccountInner.class, new NetAppAccountInner());
+        resources.put(CapacityPoolInner.class, new CapacityPoolInner());
+        resources.put(VolumeInner.class, new VolumeInner());
+        resources.put(SnapshotInner.class, new SnapshotInner());
+        resources.put(SnapshotPolicyInner.class, new SnapshotPolicyInner());
+    }
+
+    static NetAppManagementClient create()
+    {
+        return proxy(NetAppManagementClient.class, new StubNetAppClient());
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+    {
+        Class<?> returnType = method.getReturnType();
+
+        if (method.getDeclaringClass() == Object.class)
+        {
+            switch (method.getName())
+            {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return "StubNetAppClient";
+            }
+        }
+
+        // getAccounts(), getPools(), ... return the operation group clients
+        if (returnType.isInterface() && returnType.getName().startsWith("com.azure.resourcemanager.netapp.fluent."))
+        {
+            return proxy(returnType, this);
+        }
+
+        // getXxxWithResponse(...) return the resource wrapped in a 200 response without headers
+        if (returnType == Response.class)
+        {
+            Class<?> resourceType = (Class<?>) ((ParameterizedType) method.getGenericReturnType()).getActualTypeArguments()[0];
+            return new SimpleResponse<>(null, 200, new HttpHeaders(), resources.get(resourceType));
+        }
+
+        if (returnType == String.class && method.getName().equals("getSubscriptionId"))
+        {
+            return "00000000-0000-0000-0000-000000000000";
+        }
+
+        Object resource = resources.get(returnType);
+        if (resource != null)
+        {
+            return resource;
+        }
+
+        throw new UnsupportedOperationException(method.getName() + " is not stubbed");
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler)
+    {
+        return type.cast(Proxy.newProxyInstance(StubNetAppClient.class.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+}
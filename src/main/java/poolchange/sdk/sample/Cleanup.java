@@ -6,7 +6,11 @@
 package poolchange.sdk.sample;
 
 import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
+import com.azure.resourcemanager.netapp.fluent.models.CapacityPoolInner;
+import poolchange.sdk.sample.common.CapacityLedger;
+import poolchange.sdk.sample.common.CommonSdk;
 import poolchange.sdk.sample.common.Utils;
+import reactor.core.publisher.Mono;
 
 import java.util.concurrent.CompletableFuture;
 
@@ -29,6 +33,7 @@ public class Cleanup
                         params[1],
                         params[2],
                         params[3]).getFinalResult();
+                reloadPool(anfClient, params);
                 break;
 
             case "CapacityPoolInner":
@@ -37,6 +42,7 @@ public class Cleanup
                         params[0],
                         params[1],
                         params[2]).getFinalResult();
+                CapacityLedger.getDefault().forget(CommonSdk.getResourceId(anfClient, params, clazz));
                 break;
 
             case "NetAppAccountInner":
@@ -45,8 +51,66 @@ public class Cleanup
                         params[0],
                         params[1]).getFinalResult();
                 break;
+
+            default:
+                return CompletableFuture.completedFuture(null);
         }
 
+        CommonSdk.getResourceCache().invalidate(CommonSdk.getResourceId(anfClient, params, clazz));
         return CompletableFuture.completedFuture(null);
     }
+
+    /**
+     * Deletes a resource without blocking the calling thread
+     * @param anfClient Azure NetApp Files Management Client
+     * @param params String array containing account name, pool name, etc, needed to delete resource
+     * @param clazz Which resource is being deleted
+     * @return Future completed once the delete operation finishes
+     */
+    public static <T> CompletableFuture<Void> runCleanupTaskAsync(NetAppManagementClient anfClient, String[] params, Class<T> clazz)
+    {
+        Mono<Void> delete;
+        switch (clazz.getSimpleName())
+        {
+            case "VolumeInner":
+                Utils.writeConsoleMessage("Deleting Volume...");
+                delete = anfClient.getVolumes().deleteAsync(
+                        params[0],
+                        params[1],
+                        params[2],
+                        params[3])
+                        .doOnSuccess(ignored -> reloadPool(anfClient, params));
+                break;
+
+            case "CapacityPoolInner":
+                Utils.writeConsoleMessage("Deleting Capacity Pool...");
+                delete = anfClient.getPools().deleteAsync(
+                        params[0],
+                        params[1],
+                        params[2])
+                        .doOnSuccess(ignored -> CapacityLedger.getDefault().forget(CommonSdk.getResourceId(anfClient, params, clazz)));
+                break;
+
+            case "NetAppAccountInner":
+                Utils.writeConsoleMessage("Deleting Account...");
+                delete = anfClient.getAccounts().deleteAsync(
+                        params[0],
+                        params[1]);
+                break;
+
+            default:
+                return CompletableFuture.completedFuture(null);
+        }
+
+        return delete
+                .doFinally(signal -> CommonSdk.getResourceCache().invalidate(CommonSdk.getResourceId(anfClient, params, clazz)))
+                .toFuture();
+    }
+
+    // The quota of a deleted Volume is free again, the ledger reads its pool again if it tracks it
+    private static void reloadPool(NetAppManagementClient anfClient, String[] volumeParams)
+    {
+        String[] poolParams = {volumeParams[0], volumeParams[1], volumeParams[2]};
+        CapacityLedger.getDefault().reloadAsync(anfClient, CommonSdk.getResourceId(anfClient, poolParams, CapacityPoolInner.class));
+    }
 }
@@ -9,8 +9,12 @@ import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
 import com.azure.resourcemanager.netapp.fluent.models.CapacityPoolInner;
 import com.azure.resourcemanager.netapp.fluent.models.NetAppAccountInner;
 import com.azure.resourcemanager.netapp.fluent.models.VolumeInner;
+import poolchange.sdk.sample.common.CapacityLedger;
+import poolchange.sdk.sample.common.CommonSdk;
 import poolchange.sdk.sample.common.Utils;
 
+import java.util.concurrent.CompletableFuture;
+
 public class Creation
 {
     /**
@@ -26,6 +30,7 @@ public class Creation
     {
         NetAppAccountInner anfAccount = anfClient.getAccounts().beginCreateOrUpdate(resourceGroup, accountName, accountBody).getFinalResult();
         Utils.writeSuccessMessage("Account successfully created, resourceId: " + anfAccount.id());
+        CommonSdk.getResourceCache().put(anfAccount.id(), anfAccount, null);
 
         return anfAccount;
     }
@@ -44,12 +49,15 @@ public class Creation
     {
         CapacityPoolInner capacityPool = anfClient.getPools().beginCreateOrUpdate(resourceGroup, accountName, poolName, poolBody).getFinalResult();
         Utils.writeSuccessMessage("Capacity Pool successfully created, resourceId: " + capacityPool.id());
+        CommonSdk.getResourceCache().put(capacityPool.id(), capacityPool, null);
+        CapacityLedger.getDefault().resize(capacityPool.id(), capacityPool.size());
 
         return capacityPool;
     }
 
     /**
-     * Creates a Volume with an attached Snapshot Policy
+     * Creates a Volume with an attached Snapshot Policy. The Volume's quota is reserved in the Capacity Pool first,
+     * failing without sending the creation if pool changes or other creations already took up its free capacity
      * @param anfClient Azure NetApp Files Management Client
      * @param resourceGroup Name of the resource group where the Volume will be created
      * @param accountName Name of the Account
@@ -61,9 +69,123 @@ public class Creation
     public static VolumeInner createVolume(NetAppManagementClient anfClient, String resourceGroup,
                                                               String accountName, String poolName, String volumeName, VolumeInner volumeBody)
     {
-        VolumeInner volume = anfClient.getVolumes().beginCreateOrUpdate(resourceGroup, accountName, poolName, volumeName, volumeBody).getFinalResult();
+        String poolId = CommonSdk.getResourceId(anfClient, new String[]{resourceGroup, accountName, poolName}, CapacityPoolInner.class);
+        long quota = reserveCapacity(poolId, volumeName, volumeBody);
+        VolumeInner volume;
+        try
+        {
+            volume = anfClient.getVolumes().beginCreateOrUpdate(resourceGroup, accountName, poolName, volumeName, volumeBody).getFinalResult();
+        }
+        catch (RuntimeException e)
+        {
+            settleCapacity(anfClient, poolId, quota, false);
+            throw e;
+        }
+        settleCapacity(anfClient, poolId, quota, true);
         Utils.writeSuccessMessage("Volume successfully created, resourceId: " + volume.id());
+        CommonSdk.getResourceCache().put(volume.id(), volume, null);
 
         return volume;
     }
+
+    /**
+     * Creates an ANF Account without blocking the calling thread
+     * @param anfClient Azure NetApp Files Management Client
+     * @param resourceGroup Name of the resource group where the Account will be created
+     * @param accountName Name of the Account being created
+     * @param accountBody The Account body used in the creation
+     * @return Future completed with the newly created ANF Account once the operation finishes
+     */
+    public static CompletableFuture<NetAppAccountInner> createANFAccountAsync(NetAppManagementClient anfClient, String resourceGroup,
+                                                                              String accountName, NetAppAccountInner accountBody)
+    {
+        return anfClient.getAccounts().createOrUpdateAsync(resourceGroup, accountName, accountBody)
+                .doOnNext(anfAccount -> {
+                    Utils.writeSuccessMessage("Account successfully created, resourceId: " + anfAccount.id());
+                    CommonSdk.getResourceCache().put(anfAccount.id(), anfAccount, null);
+                })
+                .toFuture();
+    }
+
+    /**
+     * Creates a Capacity Pool without blocking the calling thread
+     * @param anfClient Azure NetApp Files Management Client
+     * @param resourceGroup Name of the resource group where the Capacity Pool will be created
+     * @param accountName Name of the Account
+     * @param poolName Name of the Capacity Pool being created
+     * @param poolBody The Capacity Pool body used in the creation
+     * @return Future completed with the newly created Capacity Pool once the operation finishes
+     */
+    public static CompletableFuture<CapacityPoolInner> createCapacityPoolAsync(NetAppManagementClient anfClient, String resourceGroup,
+                                                                               String accountName, String poolName, CapacityPoolInner poolBody)
+    {
+        return anfClient.getPools().createOrUpdateAsync(resourceGroup, accountName, poolName, poolBody)
+                .doOnNext(capacityPool -> {
+                    Utils.writeSuccessMessage("Capacity Pool successfully created, resourceId: " + capacityPool.id());
+                    CommonSdk.getResourceCache().put(capacityPool.id(), capacityPool, null);
+                    CapacityLedger.getDefault().resize(capacityPool.id(), capacityPool.size());
+                })
+                .toFuture();
+    }
+
+    /**
+     * Creates a Volume without blocking the calling thread, reserving its quota in the Capacity Pool like createVolume
+     * @param anfClient Azure NetApp Files Management Client
+     * @param resourceGroup Name of the resource group where the Volume will be created
+     * @param accountName Name of the Account
+     * @param poolName Name of the Capacity Pool
+     * @param volumeName Name of the Volume being created
+     * @param volumeBody The Volume body used in the creation
+     * @return Future completed with the newly created Volume once the operation finishes
+     */
+    public static CompletableFuture<VolumeInner> createVolumeAsync(NetAppManagementClient anfClient, String resourceGroup,
+                                                                   String accountName, String poolName, String volumeName, VolumeInner volumeBody)
+    {
+        String poolId = CommonSdk.getResourceId(anfClient, new String[]{resourceGroup, accountName, poolName}, CapacityPoolInner.class);
+        long quota;
+        try
+        {
+            quota = reserveCapacity(poolId, volumeName, volumeBody);
+        }
+        catch (IllegalStateException e)
+        {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return anfClient.getVolumes().createOrUpdateAsync(resourceGroup, accountName, poolName, volumeName, volumeBody)
+                .doOnNext(volume -> {
+                    Utils.writeSuccessMessage("Volume successfully created, resourceId: " + volume.id());
+                    CommonSdk.getResourceCache().put(volume.id(), volume, null);
+                })
+                .toFuture()
+                .whenComplete((volume, error) -> settleCapacity(anfClient, poolId, quota, error == null));
+    }
+
+    // Reserves the Volume's quota in its pool. Only pools the ledger already tracks are checked, the others have no limit
+    private static long reserveCapacity(String poolId, String volumeName, VolumeInner volumeBody)
+    {
+        long quota = volumeBody.usageThreshold() != null ? volumeBody.usageThreshold() : 0;
+        CapacityLedger ledger = CapacityLedger.getDefault();
+        if (!ledger.tryReserve(poolId, quota))
+        {
+            throw new IllegalStateException("Capacity Pool " + poolId + " has " + ledger.getFree(poolId)
+                    + " bytes left for Volume " + volumeName + " of " + quota + " bytes");
+        }
+        return quota;
+    }
+
+    // A created Volume holds its quota, a failed creation gives it back and reads the pool again in case the Volume exists anyway
+    private static void settleCapacity(NetAppManagementClient anfClient, String poolId, long quota, boolean succeeded)
+    {
+        CapacityLedger ledger = CapacityLedger.getDefault();
+        if (succeeded)
+        {
+            ledger.confirm(poolId, quota);
+        }
+        else
+        {
+            ledger.cancel(poolId, quota);
+            ledger.reloadAsync(anfClient, poolId);
+        }
+    }
 }
@@ -5,13 +5,30 @@
 
 package poolchange.sdk.sample;
 
+import com.azure.core.http.HttpMethod;
+import com.azure.core.util.polling.AsyncPollResponse;
 import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
+import com.azure.resourcemanager.netapp.fluent.models.CapacityPoolInner;
+import com.azure.resourcemanager.netapp.fluent.models.VolumeInner;
 import com.azure.resourcemanager.netapp.models.PoolChangeRequest;
+import com.google.gson.JsonObject;
+import poolchange.sdk.sample.common.CapacityLedger;
+import poolchange.sdk.sample.common.CommonSdk;
+import poolchange.sdk.sample.common.ErrorClassifier;
+import poolchange.sdk.sample.common.LroTracker;
+import poolchange.sdk.sample.common.ResourceCache;
+import poolchange.sdk.sample.common.Utils;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 public class Update
 {
     /**
-     * Perform pool change on Volume
+     * Perform pool change on Volume. The Volume's quota is reserved in the new Capacity Pool first, failing without
+     * sending the pool change if concurrent pool changes already took up its free capacity
      * @param anfClient Azure NetApp Files Management Client
      * @param resourceGroupName Name of the resource group
      * @param accountName Name of the Account
@@ -24,6 +41,248 @@ public class Update
     {
         PoolChangeRequest request = new PoolChangeRequest();
         request.withNewPoolResourceId(newPoolResourceId);
-        anfClient.getVolumes().beginPoolChange(resourceGroupName, accountName, poolName, volumeName, request).getFinalResult();
+        long quota = reserveCapacity(anfClient, resourceGroupName, accountName, poolName, volumeName, newPoolResourceId);
+        boolean succeeded = false;
+        try
+        {
+            anfClient.getVolumes().beginPoolChange(resourceGroupName, accountName, poolName, volumeName, request).getFinalResult();
+            succeeded = true;
+        }
+        finally
+        {
+            settleCapacity(anfClient, resourceGroupName, accountName, poolName, newPoolResourceId, quota, succeeded);
+            invalidateCachedResources(anfClient, resourceGroupName, accountName, poolName, volumeName, newPoolResourceId);
+        }
+    }
+
+    /**
+     * Perform pool change on Volume without blocking the calling thread
+     * @param anfClient Azure NetApp Files Management Client
+     * @param resourceGroupName Name of the resource group
+     * @param accountName Name of the Account
+     * @param poolName Name of Volume's current Capacity Pool
+     * @param volumeName Name of the Volume being updated
+     * @param newPoolResourceId Resource id of new capacity pool
+     * @return Future completed once the pool change finishes
+     */
+    public static CompletableFuture<Void> volumePoolChangeAsync(NetAppManagementClient anfClient, String resourceGroupName,
+                                                                String accountName, String poolName, String volumeName, String newPoolResourceId)
+    {
+        PoolChangeRequest request = new PoolChangeRequest();
+        request.withNewPoolResourceId(newPoolResourceId);
+        return reserveCapacityAsync(anfClient, resourceGroupName, accountName, poolName, volumeName, newPoolResourceId)
+                .thenCompose(quota -> anfClient.getVolumes().poolChangeAsync(resourceGroupName, accountName, poolName, volumeName, request)
+                        .doFinally(signal -> invalidateCachedResources(anfClient, resourceGroupName, accountName, poolName, volumeName, newPoolResourceId))
+                        .toFuture()
+                        .whenComplete((ignored, error) -> settleCapacity(anfClient, resourceGroupName, accountName, poolName, newPoolResourceId,
+                                quota, error == null)));
+    }
+
+    /**
+     * Perform pool change on Volume without blocking the calling thread, reporting when the service accepted it
+     * @param anfClient Azure NetApp Files Management Client
+     * @param resourceGroupName Name of the resource group
+     * @param accountName Name of the Account
+     * @param poolName Name of Volume's current Capacity Pool
+     * @param volumeName Name of the Volume being updated
+     * @param newPoolResourceId Resource id of new capacity pool
+     * @param onAccepted Called once the initial request succeeded and the operation is being polled
+     * @return Future completed once the pool change finishes
+     */
+    public static CompletableFuture<Void> volumePoolChangeAsync(NetAppManagementClient anfClient, String resourceGroupName,
+                                                                String accountName, String poolName, String volumeName, String newPoolResourceId,
+                                                                Runnable onAccepted)
+    {
+        PoolChangeRequest request = new PoolChangeRequest();
+        request.withNewPoolResourceId(newPoolResourceId);
+        AtomicBoolean accepted = new AtomicBoolean();
+        return reserveCapacityAsync(anfClient, resourceGroupName, accountName, poolName, volumeName, newPoolResourceId)
+                .thenCompose(quota -> anfClient.getVolumes().beginPoolChangeAsync(resourceGroupName, accountName, poolName, volumeName, request)
+                        .doOnNext(response -> {
+                            if (accepted.compareAndSet(false, true))
+                            {
+                                onAccepted.run();
+                            }
+                        })
+                        .last()
+                        .flatMap(AsyncPollResponse::getFinalResult)
+                        .doFinally(signal -> invalidateCachedResources(anfClient, resourceGroupName, accountName, poolName, volumeName, newPoolResourceId))
+                        .toFuture()
+                        .whenComplete((ignored, error) -> settleCapacity(anfClient, resourceGroupName, accountName, poolName, newPoolResourceId,
+                                quota, error == null)));
+    }
+
+    /**
+     * Perform pool change on Volume through an LRO tracker, so that no thread waits for it while it runs
+     * @param anfClient Azure NetApp Files Management Client
+     * @param lroTracker Sends the pool change and polls it along with every other operation it tracks
+     * @param resourceGroupName Name of the resource group
+     * @param accountName Name of the Account
+     * @param poolName Name of Volume's current Capacity Pool
+     * @param volumeName Name of the Volume being updated
+     * @param newPoolResourceId Resource id of new capacity pool
+     * @param onAccepted Called with the status URL once the service accepted the pool change
+     * @return Future completed once the pool change finishes
+     */
+    public static CompletableFuture<Void> volumePoolChangeAsync(NetAppManagementClient anfClient, LroTracker lroTracker, String resourceGroupName,
+                                                                String accountName, String poolName, String volumeName, String newPoolResourceId,
+                                                                Consumer<String> onAccepted)
+    {
+        JsonObject request = new JsonObject();
+        request.addProperty("newPoolResourceId", newPoolResourceId);
+
+        return reserveCapacityAsync(anfClient, resourceGroupName, accountName, poolName, volumeName, newPoolResourceId)
+                .thenCompose(quota -> {
+                    String volumeId = CommonSdk.getResourceId(anfClient, new String[]{resourceGroupName, accountName, poolName, volumeName}, VolumeInner.class);
+                    return lroTracker.begin(HttpMethod.POST, volumeId + "/poolChange", request.toString())
+                            .thenCompose(operation -> {
+                                if (operation.getStatusUrl() != null)
+                                {
+                                    onAccepted.accept(operation.getStatusUrl());
+                                }
+                                return operation.getCompletion();
+                            })
+                            .whenComplete((ignored, error) -> {
+                                invalidateCachedResources(anfClient, resourceGroupName, accountName, poolName, volumeName, newPoolResourceId);
+                                settleCapacity(anfClient, resourceGroupName, accountName, poolName, newPoolResourceId, quota, error == null);
+                            });
+                })
+                .thenApply(ignored -> null);
+    }
+
+    /**
+     * Resizes a Capacity Pool through the same create or update operation that creates it, keeping its service level,
+     * QoS type and tags
+     * @param anfClient Azure NetApp Files Management Client
+     * @param resourceGroupName Name of the resource group
+     * @param accountName Name of the Account
+     * @param poolName Name of the Capacity Pool
+     * @param size New size in bytes, a multiple of 1TiB
+     * @return The resized Capacity Pool
+     */
+    public static CapacityPoolInner capacityPoolResize(NetAppManagementClient anfClient, String resourceGroupName,
+                                                       String accountName, String poolName, long size)
+    {
+        String[] params = {resourceGroupName, accountName, poolName};
+        CapacityPoolInner current = (CapacityPoolInner) CommonSdk.getResource(anfClient, params, CapacityPoolInner.class);
+        if (current == null)
+        {
+            throw new IllegalArgumentException("Capacity Pool " + poolName + " not found");
+        }
+
+        CapacityPoolInner poolBody = new CapacityPoolInner()
+                .withLocation(current.location())
+                .withServiceLevel(current.serviceLevel())
+                .withQosType(current.qosType())
+                .withTags(current.tags())
+                .withSize(size);
+
+        CapacityPoolInner capacityPool;
+        try
+        {
+            capacityPool = anfClient.getPools().beginCreateOrUpdate(resourceGroupName, accountName, poolName, poolBody).getFinalResult();
+        }
+        catch (RuntimeException e)
+        {
+            // The pool may have been resized anyway
+            String poolId = CommonSdk.getResourceId(anfClient, params, CapacityPoolInner.class);
+            CommonSdk.getResourceCache().invalidate(poolId);
+            CapacityLedger.getDefault().reloadAsync(anfClient, poolId);
+            throw e;
+        }
+        Utils.writeSuccessMessage("Capacity Pool successfully resized from " + current.size() + " to " + capacityPool.size()
+                + " bytes, resourceId: " + capacityPool.id());
+        CommonSdk.getResourceCache().put(capacityPool.id(), capacityPool, null);
+        CapacityLedger.getDefault().resize(capacityPool.id(), capacityPool.size());
+
+        return capacityPool;
+    }
+
+    // Reserves the Volume's quota in the new pool, seeding the ledger with the pool's size and Volumes on first use
+    private static long reserveCapacity(NetAppManagementClient anfClient, String resourceGroupName, String accountName, String poolName,
+                                        String volumeName, String newPoolResourceId)
+    {
+        VolumeInner volume = (VolumeInner) CommonSdk.getResource(anfClient, new String[]{resourceGroupName, accountName, poolName, volumeName}, VolumeInner.class);
+        if (volume == null)
+        {
+            // Nothing to reserve, the pool change reports the missing Volume
+            return 0;
+        }
+
+        long quota = volume.usageThreshold();
+        CapacityLedger ledger = CapacityLedger.getDefault();
+        ledger.load(anfClient, newPoolResourceId);
+        if (!ledger.tryReserve(newPoolResourceId, quota))
+        {
+            throw new IllegalStateException("Capacity Pool " + newPoolResourceId + " has " + ledger.getFree(newPoolResourceId)
+                    + " bytes left for Volume " + volumeName + " of " + quota + " bytes");
+        }
+
+        return quota;
+    }
+
+    // Same as reserveCapacity without holding a thread while the Volume and the new pool are read
+    private static CompletableFuture<Long> reserveCapacityAsync(NetAppManagementClient anfClient, String resourceGroupName, String accountName,
+                                                                String poolName, String volumeName, String newPoolResourceId)
+    {
+        ResourceCache cache = CommonSdk.getResourceCache();
+        return Mono.defer(() -> {
+            String volumeId = CommonSdk.getResourceId(anfClient, new String[]{resourceGroupName, accountName, poolName, volumeName}, VolumeInner.class);
+            Object cached = cache.getFresh(volumeId);
+            if (cached != null)
+            {
+                return Mono.just((VolumeInner) cached);
+            }
+            return anfClient.getVolumes().getAsync(resourceGroupName, accountName, poolName, volumeName)
+                    .doOnNext(volume -> cache.put(volumeId, volume, null))
+                    // Nothing to reserve, the pool change reports the missing Volume
+                    .onErrorResume(ErrorClassifier::isNotFound, e -> Mono.empty());
+        }).toFuture().thenCompose(volume -> {
+            if (volume == null)
+            {
+                return CompletableFuture.completedFuture(0L);
+            }
+
+            long quota = volume.usageThreshold();
+            CapacityLedger ledger = CapacityLedger.getDefault();
+            return ledger.loadAsync(anfClient, newPoolResourceId).thenApply(ignored -> {
+                if (!ledger.tryReserve(newPoolResourceId, quota))
+                {
+                    throw new IllegalStateException("Capacity Pool " + newPoolResourceId + " has " + ledger.getFree(newPoolResourceId)
+                            + " bytes left for Volume " + volumeName + " of " + quota + " bytes");
+                }
+                return quota;
+            });
+        });
+    }
+
+    // A successful pool change moves the quota from the pool the Volume left to the new one. A failed one gives the
+    // reservation back, and since the Volume may have moved anyway, e.g. when only the client gave up, both pools are read again
+    private static void settleCapacity(NetAppManagementClient anfClient, String resourceGroupName, String accountName, String poolName,
+                                       String newPoolResourceId, long quota, boolean succeeded)
+    {
+        CapacityLedger ledger = CapacityLedger.getDefault();
+        String poolId = CommonSdk.getResourceId(anfClient, new String[]{resourceGroupName, accountName, poolName}, CapacityPoolInner.class);
+        if (succeeded)
+        {
+            ledger.confirm(newPoolResourceId, quota);
+            ledger.release(poolId, quota);
+        }
+        else
+        {
+            ledger.cancel(newPoolResourceId, quota);
+            ledger.reloadAsync(anfClient, poolId);
+            ledger.reloadAsync(anfClient, newPoolResourceId);
+        }
+    }
+
+    // The Volume moved and both Capacity Pools changed, whether or not the operation went through
+    private static void invalidateCachedResources(NetAppManagementClient anfClient, String resourceGroupName,
+                                                  String accountName, String poolName, String volumeName, String newPoolResourceId)
+    {
+        ResourceCache cache = CommonSdk.getResourceCache();
+        cache.invalidate(CommonSdk.getResourceId(anfClient, new String[]{resourceGroupName, accountName, poolName, volumeName}, VolumeInner.class));
+        cache.invalidate(CommonSdk.getResourceId(anfClient, new String[]{resourceGroupName, accountName, poolName}, CapacityPoolInner.class));
+        cache.invalidate(newPoolResourceId);
     }
 }
@@ -0,0 +1,118 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.bulk;
+
+import java.time.Duration;
+
+// Totals of a manifest run. Individual results are reported as they finish rather than kept, so memory stays constant
+public class BatchReport
+{
+    private final int entries;
+    private final int invalid;
+    private final int succeeded;
+    private final int failed;
+    private final int poolsCreated;
+    private final int poolsGrown;
+    private final int poolsShrunk;
+    private final int resumed;
+    private final int skipped;
+    private final Duration elapsed;
+
+    BatchReport(int entries, int invalid, int succeeded, int failed, int poolsCreated, int poolsGrown, int poolsShrunk, int resumed, int skipped, Duration elapsed)
+    {
+        this.entries = entries;
+        this.invalid = invalid;
+        this.succeeded = succeeded;
+        this.failed = failed;
+        this.poolsCreated = poolsCreated;
+        this.poolsGrown = poolsGrown;
+        this.poolsShrunk = poolsShrunk;
+        this.resumed = resumed;
+        this.skipped = skipped;
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * @return Number of entries read from the manifest, valid or not
+     */
+    public int getEntries()
+    {
+        return entries;
+    }
+
+    public int getInvalid()
+    {
+        return invalid;
+    }
+
+    public int getSucceeded()
+    {
+        return succeeded;
+    }
+
+    /**
+     * @return Number of pool changes that failed, including those whose destination pool could not be created
+     */
+    public int getFailed()
+    {
+        return failed;
+    }
+
+    public int getPoolsCreated()
+    {
+        return poolsCreated;
+    }
+
+    /**
+     * @return Number of destination pools grown before the moves to hold the Volumes moving into them
+     */
+    public int getPoolsGrown()
+    {
+        return poolsGrown;
+    }
+
+    /**
+     * @return Number of source pools shrunk after the moves by the capacity of the Volumes that left them
+     */
+    public int getPoolsShrunk()
+    {
+        return poolsShrunk;
+    }
+
+    /**
+     * @return Number of jobs the journal showed as in flight when the run started, which were resumed rather than sent again
+     */
+    public int getResumed()
+    {
+        return resumed;
+    }
+
+    /**
+     * @return Number of manifest entries the journal showed as already succeeded
+     */
+    public int getSkipped()
+    {
+        return skipped;
+    }
+
+    public Duration getElapsed()
+    {
+        return elapsed;
+    }
+
+    public boolean isSuccess()
+    {
+        return invalid == 0 && failed == 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return entries + " manifest entries in " + elapsed.getSeconds() + "s: " + succeeded + " moved, " + failed + " failed, "
+                + invalid + " invalid, " + skipped + " already done, " + resumed + " resumed, " + poolsCreated + " destination pools created, "
+                + poolsGrown + " grown, " + poolsShrunk + " source pools shrunk";
+    }
+}
@@ -0,0 +1,309 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.bulk;
+
+import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
+import com.azure.resourcemanager.netapp.fluent.models.CapacityPoolInner;
+import com.azure.resourcemanager.netapp.models.ServiceLevel;
+import poolchange.sdk.sample.Creation;
+import poolchange.sdk.sample.common.CommonSdk;
+import poolchange.sdk.sample.common.LroTracker;
+import poolchange.sdk.sample.common.ParsedResourceId;
+import poolchange.sdk.sample.common.Utils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+  Runs the pool changes of a manifest while it is being read. Jobs go through a bounded queue: once maxQueued jobs are
+  waiting or running, reading the manifest pauses until one finishes, so a manifest of any size is processed with
+  constant memory. Pool changes are sent and polled by an LRO tracker, so no thread waits for one while it runs, however
+  many are in flight. Destination pools marked with a service level are created, once each, before the jobs moving into
+  them start.
+
+  With a journal, every state transition is recorded. Running the same manifest again after a crash first resumes the
+  jobs that were in flight, then skips the entries that already succeeded.
+
+  With pool resizing, a manifest file is read twice: first to sum the capacity moving into and out of every pool, so
+  that each destination pool is grown once before the moves and each source pool shrunk once after them.
+*/
+public class BatchRunner
+{
+    private static final long MIN_POOL_SIZE = 4398046511104L; // 4TiB
+
+    private final NetAppManagementClient anfClient;
+    private final int maxConcurrency;
+    private final int maxPerSourcePool;
+    private final int maxQueued;
+    private final MigrationJournal journal;
+    private final boolean resizePools;
+
+    /**
+     * @param anfClient Azure NetApp Files Management Client
+     * @param maxConcurrency Maximum number of pool changes in flight at once
+     * @param maxPerSourcePool Maximum number of pool changes in flight out of the same source Capacity Pool
+     * @param maxQueued Maximum number of jobs read from the manifest but not finished yet
+     */
+    public BatchRunner(NetAppManagementClient anfClient, int maxConcurrency, int maxPerSourcePool, int maxQueued)
+    {
+        this(anfClient, maxConcurrency, maxPerSourcePool, maxQueued, null, false);
+    }
+
+    /**
+     * @param anfClient Azure NetApp Files Management Client
+     * @param maxConcurrency Maximum number of pool changes in flight at once
+     * @param maxPerSourcePool Maximum number of pool changes in flight out of the same source Capacity Pool
+     * @param maxQueued Maximum number of jobs read from the manifest but not finished yet
+     * @param journal Journal to record job states in and resume from, may be null
+     * @param resizePools Whether run(Path) grows destination pools before the moves and shrinks source pools after them
+     */
+    public BatchRunner(NetAppManagementClient anfClient, int maxConcurrency, int maxPerSourcePool, int maxQueued, MigrationJournal journal,
+                       boolean resizePools)
+    {
+        if (maxQueued < maxConcurrency)
+        {
+            throw new IllegalArgumentException("The queue must be at least as large as the concurrency limit");
+        }
+
+        this.anfClient = anfClient;
+        this.maxConcurrency = maxConcurrency;
+        this.maxPerSourcePool = maxPerSourcePool;
+        this.maxQueued = maxQueued;
+        this.journal = journal;
+        this.resizePools = resizePools;
+    }
+
+    /**
+     * Runs every pool change of a manifest file and waits for all of them to finish
+     * @param manifest Path of a JSON or NDJSON manifest, see ManifestReader for its format
+     * @return Totals of the run
+     */
+    public BatchReport run(Path manifest) throws IOException
+    {
+        PoolResizePlan resizePlan = null;
+        if (resizePools)
+        {
+            Utils.writeConsoleMessage("Summing the capacity moving between Capacity Pools in manifest " + manifest + "...");
+            try (ManifestReader reader = ManifestReader.open(manifest, anfClient.getSubscriptionId()))
+            {
+                resizePlan = PoolResizePlan.read(anfClient, reader, journal);
+            }
+        }
+
+        try (ManifestReader reader = ManifestReader.open(manifest, anfClient.getSubscriptionId()))
+        {
+            return run(reader, resizePlan);
+        }
+    }
+
+    /**
+     * Runs every pool change read from a manifest and waits for all of them to finish. Pools are not resized, as the
+     * manifest can only be read once
+     * @param reader Manifest entries
+     * @return Totals of the run
+     */
+    public BatchReport run(ManifestReader reader)
+    {
+        return run(reader, null);
+    }
+
+    private BatchReport run(ManifestReader reader, PoolResizePlan resizePlan)
+    {
+        long start = System.nanoTime();
+        LroTracker lroTracker = new LroTracker(anfClient);
+        BulkPoolChange bulk = new BulkPoolChange(anfClient, maxConcurrency, maxPerSourcePool, null, journal, lroTracker);
+        Semaphore queue = new Semaphore(maxQueued);
+        ExecutorService readExecutor = Executors.newFixedThreadPool(Math.min(4, maxConcurrency));
+        ConcurrentHashMap<String, CompletableFuture<Void>> destinationPools = new ConcurrentHashMap<>();
+
+        int entries = 0;
+        int invalid = 0;
+        int skipped = 0;
+        Set<String> resumed = new HashSet<>();
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicInteger poolsCreated = new AtomicInteger();
+        int poolsGrown = 0;
+        int poolsShrunk = 0;
+
+        try
+        {
+            if (resizePlan != null)
+            {
+                poolsGrown = resizePlan.growDestinationPools(readExecutor);
+            }
+
+            if (journal != null)
+            {
+                for (PoolChangeJob job : journal.getInFlightJobs())
+                {
+                    resumed.add(MigrationJournal.keyOf(job));
+                    queue.acquireUninterruptibly();
+                    Utils.writeConsoleMessage("Resuming pool change of " + job + " recorded as " + journal.getState(job));
+                    track(recordMoved(bulk.resume(job), resizePlan), job, queue, succeeded, failed);
+                }
+            }
+
+            while (reader.hasNext())
+            {
+                ManifestEntry entry = reader.next();
+                entries++;
+                if (!entry.isValid())
+                {
+                    invalid++;
+                    Utils.writeErrorMessage("Skipping manifest entry " + entry.getIndex() + ": " + entry.getError());
+                    continue;
+                }
+
+                PoolChangeJob job = entry.getJob();
+                if (journal != null)
+                {
+                    if (resumed.contains(MigrationJournal.keyOf(job)))
+                    {
+                        continue;
+                    }
+                    if (journal.getState(job) == JobState.SUCCEEDED)
+                    {
+                        skipped++;
+                        continue;
+                    }
+                }
+
+                queue.acquireUninterruptibly();
+                track(recordMoved(ensureDestinationPool(entry, destinationPools, readExecutor, poolsCreated, resizePlan)
+                                .thenCompose(ignored -> bulk.submit(job)), resizePlan),
+                        job, queue, succeeded, failed);
+            }
+        }
+        finally
+        {
+            // Every permit is back once the last job finished
+            queue.acquireUninterruptibly(maxQueued);
+            if (resizePlan != null)
+            {
+                poolsShrunk = resizePlan.shrinkSourcePools(readExecutor);
+            }
+            readExecutor.shutdown();
+            lroTracker.close();
+        }
+
+        return new BatchReport(entries, invalid, succeeded.get(), failed.get(), poolsCreated.get(), poolsGrown, poolsShrunk, resumed.size(),
+                skipped, Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    // Tells the resize plan about every Volume that left its source pool
+    private static CompletableFuture<PoolChangeResult> recordMoved(CompletableFuture<PoolChangeResult> future, PoolResizePlan resizePlan)
+    {
+        if (resizePlan == null)
+        {
+            return future;
+        }
+
+        return future.thenApply(result -> {
+            if (result.isSuccess())
+            {
+                resizePlan.recordMoved(result.getJob());
+            }
+            return result;
+        });
+    }
+
+    // Counts the outcome of a job and frees its place in the queue once it finishes
+    private static void track(CompletableFuture<PoolChangeResult> future, PoolChangeJob job, Semaphore queue,
+                              AtomicInteger succeeded, AtomicInteger failed)
+    {
+        future.whenComplete((result, error) -> {
+            if (error == null && result.isSuccess())
+            {
+                succeeded.incrementAndGet();
+            }
+            else
+            {
+                failed.incrementAndGet();
+                if (error != null)
+                {
+                    Utils.writeErrorMessage("Pool change not started for " + job + ": " + unwrap(error).getMessage(),
+                            "operation", "poolChange", "volume", job.getVolumeName());
+                }
+            }
+            queue.release();
+        });
+    }
+
+    // Creates the destination pool of an entry if it asks for it and the pool does not exist, once per pool
+    private CompletableFuture<Void> ensureDestinationPool(ManifestEntry entry, ConcurrentHashMap<String, CompletableFuture<Void>> destinationPools,
+                                                          ExecutorService readExecutor, AtomicInteger poolsCreated, PoolResizePlan resizePlan)
+    {
+        if (entry.getServiceLevel() == null)
+        {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        String destinationId = entry.getJob().getNewPoolResourceId();
+        ParsedResourceId id = ParsedResourceId.parse(destinationId);
+        String[] params = {id.getResourceGroup(), id.getAccount(), id.getCapacityPool()};
+
+        return destinationPools.computeIfAbsent(destinationId.toLowerCase(Locale.ROOT), key -> CompletableFuture
+                .supplyAsync(() -> {
+                    if (CommonSdk.getResource(anfClient, params, CapacityPoolInner.class) != null)
+                    {
+                        return null;
+                    }
+
+                    String location = entry.getLocation();
+                    if (location == null)
+                    {
+                        PoolChangeJob job = entry.getJob();
+                        CapacityPoolInner sourcePool = (CapacityPoolInner) CommonSdk.getResource(anfClient,
+                                new String[]{job.getResourceGroupName(), job.getAccountName(), job.getPoolName()}, CapacityPoolInner.class);
+                        if (sourcePool == null)
+                        {
+                            throw new IllegalStateException("Source Capacity Pool " + job.getPoolName() + " not found");
+                        }
+                        location = sourcePool.location();
+                    }
+
+                    CapacityPoolInner poolBody = new CapacityPoolInner();
+                    poolBody.withServiceLevel(ServiceLevel.fromString(entry.getServiceLevel()));
+                    long size = entry.getPoolSize() != null ? entry.getPoolSize() : MIN_POOL_SIZE;
+                    if (resizePlan != null)
+                    {
+                        size = Math.max(size, resizePlan.getSizeToCreate(destinationId));
+                    }
+                    poolBody.withSize(size);
+                    poolBody.withLocation(location);
+
+                    Utils.writeConsoleMessage("Creating destination Capacity Pool " + id.getCapacityPool() + " at "
+                            + entry.getServiceLevel() + " service level...");
+                    return poolBody;
+                }, readExecutor)
+                .thenCompose(poolBody -> {
+                    if (poolBody == null)
+                    {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    return Creation.createCapacityPoolAsync(anfClient, params[0], params[1], params[2], poolBody)
+                            .thenAccept(pool -> poolsCreated.incrementAndGet());
+                })
+                .thenApply(ignored -> null));
+    }
+
+    private static Throwable unwrap(Throwable error)
+    {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+}
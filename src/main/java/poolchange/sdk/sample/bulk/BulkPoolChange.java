@@ -0,0 +1,369 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.bulk;
+
+import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
+import poolchange.sdk.sample.Update;
+import poolchange.sdk.sample.common.LroTracker;
+import poolchange.sdk.sample.common.OperationRetryPolicy;
+import poolchange.sdk.sample.common.Utils;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs many pool changes concurrently, bounded overall and per source Capacity Pool, retrying throttled, busy and transient failures
+public class BulkPoolChange
+{
+    private final NetAppManagementClient anfClient;
+    private final int maxConcurrency;
+    private final int maxPerSourcePool;
+    private final PoolChangeListener listener;
+    private final MigrationJournal journal;
+    private final LroTracker lroTracker;
+    private final OperationRetryPolicy retryPolicy = OperationRetryPolicy.poolChanges();
+
+    // Jobs waiting for a free slot, grouped by source pool and served round robin: a pool that got a slot moves to the
+    // back, so the next pass starts with the pools that were passed over
+    private final LinkedHashMap<String, ArrayDeque<PendingJob>> pending = new LinkedHashMap<>();
+    private final Map<String, Integer> inFlightPerPool = new HashMap<>();
+    private int inFlight;
+    private final AtomicInteger dispatchRequests = new AtomicInteger();
+
+    private final AtomicInteger submitted = new AtomicInteger();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    /**
+     * @param anfClient Azure NetApp Files Management Client
+     * @param maxConcurrency Maximum number of pool changes in flight at once
+     * @param maxPerSourcePool Maximum number of pool changes in flight out of the same source Capacity Pool
+     * @param listener Receives each result as it finishes, may be null
+     */
+    public BulkPoolChange(NetAppManagementClient anfClient, int maxConcurrency, int maxPerSourcePool, PoolChangeListener listener)
+    {
+        this(anfClient, maxConcurrency, maxPerSourcePool, listener, null, null);
+    }
+
+    /**
+     * @param anfClient Azure NetApp Files Management Client
+     * @param maxConcurrency Maximum number of pool changes in flight at once
+     * @param maxPerSourcePool Maximum number of pool changes in flight out of the same source Capacity Pool
+     * @param listener Receives each result as it finishes, may be null
+     * @param journal Records every state transition of every job, may be null
+     * @param lroTracker Sends the pool changes and polls them all with a few threads, may be null to wait for each
+     *                   with the SDK poller
+     */
+    public BulkPoolChange(NetAppManagementClient anfClient, int maxConcurrency, int maxPerSourcePool, PoolChangeListener listener,
+                          MigrationJournal journal, LroTracker lroTracker)
+    {
+        if (maxConcurrency < 1 || maxPerSourcePool < 1)
+        {
+            throw new IllegalArgumentException("Concurrency limits must be at least 1");
+        }
+
+        this.anfClient = anfClient;
+        this.maxConcurrency = maxConcurrency;
+        this.maxPerSourcePool = Math.min(maxPerSourcePool, maxConcurrency);
+        this.listener = listener != null ? listener : BulkPoolChange::logResult;
+        this.journal = journal;
+        this.lroTracker = lroTracker;
+    }
+
+    /**
+     * Moves all given Volumes and waits for every pool change to finish
+     * @param jobs Volumes to move along with their destination pools
+     * @return One result per job, in the same order as the jobs
+     */
+    public List<PoolChangeResult> runAll(List<PoolChangeJob> jobs)
+    {
+        List<CompletableFuture<PoolChangeResult>> futures = new ArrayList<>(jobs.size());
+        for (PoolChangeJob job : jobs)
+        {
+            futures.add(submit(job));
+        }
+
+        List<PoolChangeResult> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<PoolChangeResult> future : futures)
+        {
+            results.add(future.join());
+        }
+
+        return results;
+    }
+
+    /**
+     * Queues a pool change. It starts as soon as both the overall and the source pool limits allow it
+     * @param job Volume to move along with its destination pool
+     * @return Future completed with the result once the pool change finishes. It never completes exceptionally
+     */
+    public CompletableFuture<PoolChangeResult> submit(PoolChangeJob job)
+    {
+        if (journal != null)
+        {
+            journal.record(job, JobState.PENDING, null);
+        }
+        return enqueue(new PendingJob(job, false, null));
+    }
+
+    /**
+     * Queues a job the journal shows as submitted or polling before a restart. Once it gets a slot, the Volume is
+     * watched until no operation runs on it anymore, and the pool change is only sent again if the Volume did not reach
+     * its destination pool. A job recorded as polling with its status URL is followed through that URL instead
+     * @param job Volume being moved along with its destination pool
+     * @return Future completed with the result once the pool change finishes. It never completes exceptionally
+     */
+    public CompletableFuture<PoolChangeResult> resume(PoolChangeJob job)
+    {
+        String statusUrl = journal != null && journal.getState(job) == JobState.POLLING ? journal.getDetail(job) : null;
+        return enqueue(new PendingJob(job, true, statusUrl));
+    }
+
+    private CompletableFuture<PoolChangeResult> enqueue(PendingJob pendingJob)
+    {
+        submitted.incrementAndGet();
+
+        synchronized (this)
+        {
+            pending.computeIfAbsent(pendingJob.job.getSourcePoolKey(), k -> new ArrayDeque<>()).add(pendingJob);
+        }
+        dispatch();
+
+        return pendingJob.future;
+    }
+
+    public int getSubmittedCount()
+    {
+        return submitted.get();
+    }
+
+    public int getCompletedCount()
+    {
+        return completed.get();
+    }
+
+    public int getFailedCount()
+    {
+        return failed.get();
+    }
+
+    // Serializes dispatching so that operations failing synchronously don't recurse through finish()
+    private void dispatch()
+    {
+        if (dispatchRequests.getAndIncrement() != 0)
+        {
+            return;
+        }
+
+        int missed = 1;
+        do
+        {
+            startPendingJobs();
+            missed = dispatchRequests.addAndGet(-missed);
+        }
+        while (missed != 0);
+    }
+
+    // Starts every pending job that fits within the limits, one job per source pool in turn
+    private void startPendingJobs()
+    {
+        List<PendingJob> toStart = new ArrayList<>();
+
+        synchronized (this)
+        {
+            boolean started = true;
+            while (started && inFlight < maxConcurrency)
+            {
+                started = false;
+                for (String poolKey : new ArrayList<>(pending.keySet()))
+                {
+                    if (inFlight >= maxConcurrency)
+                    {
+                        break;
+                    }
+                    if (inFlightPerPool.getOrDefault(poolKey, 0) >= maxPerSourcePool)
+                    {
+                        continue;
+                    }
+
+                    ArrayDeque<PendingJob> queue = pending.remove(poolKey);
+                    toStart.add(queue.poll());
+                    inFlightPerPool.merge(poolKey, 1, Integer::sum);
+                    inFlight++;
+                    started = true;
+
+                    if (!queue.isEmpty())
+                    {
+                        pending.put(poolKey, queue);
+                    }
+                }
+            }
+        }
+
+        for (PendingJob pendingJob : toStart)
+        {
+            start(pendingJob);
+        }
+    }
+
+    private void start(PendingJob pendingJob)
+    {
+        PoolChangeJob job = pendingJob.job;
+        long startNanos = System.nanoTime();
+        try
+        {
+            listener.onStart(job);
+        }
+        catch (RuntimeException e)
+        {
+            Utils.writeWarningMessage("Pool change listener failed - " + e.getMessage());
+        }
+
+        // A failed attempt may have been accepted before it failed, so a retry first looks where the Volume is
+        AtomicInteger attempts = new AtomicInteger();
+        CompletableFuture<Void> operation = retryPolicy.callAsync(() -> attempts.incrementAndGet() == 1
+                ? journal == null ? sendPoolChange(job) : sendJournaledPoolChange(pendingJob)
+                : journal == null ? PoolChangeRecovery.awaitOutcome(anfClient, job).thenCompose(moved -> moved
+                        ? CompletableFuture.completedFuture(null)
+                        : sendPoolChange(job))
+                : sendJournaledPoolChange(new PendingJob(job, true, null)));
+
+        operation.whenComplete((ignored, error) -> finish(pendingJob, error, Duration.ofNanos(System.nanoTime() - startNanos)));
+    }
+
+    private CompletableFuture<Void> sendPoolChange(PoolChangeJob job)
+    {
+        if (lroTracker != null)
+        {
+            return Update.volumePoolChangeAsync(anfClient, lroTracker,
+                    job.getResourceGroupName(),
+                    job.getAccountName(),
+                    job.getPoolName(),
+                    job.getVolumeName(),
+                    job.getNewPoolResourceId(),
+                    statusUrl -> { });
+        }
+
+        return Update.volumePoolChangeAsync(anfClient,
+                job.getResourceGroupName(),
+                job.getAccountName(),
+                job.getPoolName(),
+                job.getVolumeName(),
+                job.getNewPoolResourceId());
+    }
+
+    // The submitted record is on disk before the request is sent, so a job recorded as pending was never sent
+    private CompletableFuture<Void> sendJournaledPoolChange(PendingJob pendingJob)
+    {
+        PoolChangeJob job = pendingJob.job;
+        CompletableFuture<Boolean> moved = !pendingJob.resumed ? CompletableFuture.completedFuture(false)
+                : pendingJob.statusUrl != null && lroTracker != null ? awaitStatus(pendingJob)
+                : PoolChangeRecovery.awaitOutcome(anfClient, job);
+
+        return moved.thenCompose(alreadyMoved -> alreadyMoved
+                ? CompletableFuture.<Void>completedFuture(null)
+                : journal.record(job, JobState.SUBMITTED, null).thenCompose(ignored -> lroTracker != null
+                        ? Update.volumePoolChangeAsync(anfClient, lroTracker,
+                                job.getResourceGroupName(),
+                                job.getAccountName(),
+                                job.getPoolName(),
+                                job.getVolumeName(),
+                                job.getNewPoolResourceId(),
+                                statusUrl -> journal.record(job, JobState.POLLING, statusUrl))
+                        : Update.volumePoolChangeAsync(anfClient,
+                                job.getResourceGroupName(),
+                                job.getAccountName(),
+                                job.getPoolName(),
+                                job.getVolumeName(),
+                                job.getNewPoolResourceId(),
+                                () -> journal.record(job, JobState.POLLING, null))));
+    }
+
+    // Polls the status URL the journal holds. If the pool change failed or the URL expired, the Volume itself tells
+    private CompletableFuture<Boolean> awaitStatus(PendingJob pendingJob)
+    {
+        return lroTracker.resume(pendingJob.statusUrl).getCompletion()
+                .handle((body, error) -> error == null
+                        ? CompletableFuture.completedFuture(true)
+                        : PoolChangeRecovery.awaitOutcome(anfClient, pendingJob.job))
+                .thenCompose(outcome -> outcome);
+    }
+
+    private void finish(PendingJob pendingJob, Throwable error, Duration elapsed)
+    {
+        synchronized (this)
+        {
+            inFlight--;
+            inFlightPerPool.merge(pendingJob.job.getSourcePoolKey(), -1, Integer::sum);
+            inFlightPerPool.remove(pendingJob.job.getSourcePoolKey(), 0);
+        }
+
+        if (error != null)
+        {
+            failed.incrementAndGet();
+            if (error instanceof CompletionException && error.getCause() != null)
+            {
+                error = error.getCause();
+            }
+        }
+
+        if (journal != null)
+        {
+            journal.record(pendingJob.job, error == null ? JobState.SUCCEEDED : JobState.FAILED, error != null ? error.getMessage() : null);
+        }
+
+        PoolChangeResult result = new PoolChangeResult(pendingJob.job, error, elapsed);
+        try
+        {
+            listener.onResult(result, completed.incrementAndGet(), submitted.get());
+        }
+        catch (RuntimeException e)
+        {
+            Utils.writeWarningMessage("Pool change listener failed - " + e.getMessage());
+        }
+
+        pendingJob.future.complete(result);
+        dispatch();
+    }
+
+    private static void logResult(PoolChangeResult result, int completed, int submitted)
+    {
+        String progress = "[" + completed + "/" + submitted + "] ";
+        long elapsedMs = result.getElapsed().toMillis();
+        if (result.isSuccess())
+        {
+            Utils.writeSuccessMessage(progress + "Pool change successful for " + result.getJob(),
+                    "operation", "poolChange", "volume", result.getJob().getVolumeName(), "elapsedMs", elapsedMs);
+        }
+        else
+        {
+            Utils.writeErrorMessage(progress + "Pool change failed for " + result.getJob() + ": " + result.getError().getMessage(),
+                    "operation", "poolChange", "volume", result.getJob().getVolumeName(), "elapsedMs", elapsedMs);
+        }
+    }
+
+    private static class PendingJob
+    {
+        private final PoolChangeJob job;
+        private final boolean resumed;
+        private final String statusUrl;
+        private final CompletableFuture<PoolChangeResult> future = new CompletableFuture<>();
+
+        private PendingJob(PoolChangeJob job, boolean resumed, String statusUrl)
+        {
+            this.job = job;
+            this.resumed = resumed;
+            this.statusUrl = statusUrl;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.bulk;
+
+// Lifecycle of a pool change job as recorded in the migration journal
+public enum JobState
+{
+    /** Read from the manifest and queued, no request sent yet */
+    PENDING,
+    /** The pool change request is about to be sent, it may or may not have reached the service */
+    SUBMITTED,
+    /** The service accepted the pool change and it is being polled */
+    POLLING,
+    SUCCEEDED,
+    FAILED;
+
+    /**
+     * @return Whether a request may have been sent without its outcome being recorded
+     */
+    public boolean isInFlight()
+    {
+        return this == SUBMITTED || this == POLLING;
+    }
+}
@@ -0,0 +1,90 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.bulk;
+
+// One entry of a pool change manifest: the job itself, plus how to create its destination pool when it is missing
+public class ManifestEntry
+{
+    private final int index;
+    private final PoolChangeJob job;
+    private final String serviceLevel;
+    private final Long poolSize;
+    private final String location;
+    private final String error;
+
+    ManifestEntry(int index, PoolChangeJob job, String serviceLevel, Long poolSize, String location)
+    {
+        this.index = index;
+        this.job = job;
+        this.serviceLevel = serviceLevel;
+        this.poolSize = poolSize;
+        this.location = location;
+        this.error = null;
+    }
+
+    ManifestEntry(int index, String error)
+    {
+        this.index = index;
+        this.job = null;
+        this.serviceLevel = null;
+        this.poolSize = null;
+        this.location = null;
+        this.error = error;
+    }
+
+    /**
+     * @return Position of the entry in the manifest, starting at 1
+     */
+    public int getIndex()
+    {
+        return index;
+    }
+
+    /**
+     * @return The pool change, null if the entry is invalid
+     */
+    public PoolChangeJob getJob()
+    {
+        return job;
+    }
+
+    /**
+     * @return Service level of the destination pool if it has to be created when missing, otherwise null
+     */
+    public String getServiceLevel()
+    {
+        return serviceLevel;
+    }
+
+    /**
+     * @return Size in bytes of the destination pool if it has to be created, null for the 4TiB minimum
+     */
+    public Long getPoolSize()
+    {
+        return poolSize;
+    }
+
+    /**
+     * @return Location of the destination pool if it has to be created, null for the source pool's location
+     */
+    public String getLocation()
+    {
+        return location;
+    }
+
+    /**
+     * @return Why the entry could not be turned into a job, null for valid entries
+     */
+    public String getError()
+    {
+        return error;
+    }
+
+    public boolean isValid()
+    {
+        return error == null;
+    }
+}
@@ -0,0 +1,227 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.bulk;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import poolchange.sdk.sample.common.ParsedResourceId;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/*
+  Streams the entries of a pool change manifest, either a JSON array of objects or one object per line (NDJSON). Only
+  the entry being read is held in memory, so the size of the manifest does not matter. Each entry is either
+
+    {"volumeId": "/subscriptions/.../volumes/vol1", "destinationPoolId": "/subscriptions/.../capacityPools/pool2"}
+
+  or the same using names, the destination pool being in the same Account:
+
+    {"resourceGroup": "rg", "account": "acc", "pool": "pool1", "volume": "vol1", "destinationPool": "pool2"}
+
+  Adding "serviceLevel" (and optionally "poolSize" in bytes and "location") creates the destination pool when it does not
+  exist yet. Unknown fields are ignored. Entries missing required fields are returned as invalid rather than ending the
+  stream, while malformed JSON does end it.
+*/
+public class ManifestReader implements Iterator<ManifestEntry>, Closeable
+{
+    private final JsonReader reader;
+    private final String subscriptionId;
+    private boolean started;
+    private boolean inArray;
+    private boolean finished;
+    private int index;
+    private ManifestEntry next;
+
+    /**
+     * @param reader Manifest content, closed along with this reader
+     * @param subscriptionId Subscription of the entries given by name
+     */
+    public ManifestReader(Reader reader, String subscriptionId)
+    {
+        this.subscriptionId = subscriptionId;
+        this.reader = new JsonReader(reader);
+        // Lenient mode accepts several top level values, which is what NDJSON is
+        this.reader.setLenient(true);
+    }
+
+    /**
+     * Opens a manifest file
+     * @param manifest Path of a JSON or NDJSON manifest
+     * @param subscriptionId Subscription of the entries given by name
+     * @return The reader, to be closed by the caller
+     */
+    public static ManifestReader open(Path manifest, String subscriptionId) throws IOException
+    {
+        return new ManifestReader(Files.newBufferedReader(manifest, StandardCharsets.UTF_8), subscriptionId);
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        if (next == null && !finished)
+        {
+            try
+            {
+                next = readEntry();
+            }
+            catch (IOException | IllegalStateException | NumberFormatException e)
+            {
+                finished = true;
+                throw new UncheckedIOException(new IOException("Malformed manifest after entry " + index + " at " + reader.getPath() + " - " + e.getMessage(), e));
+            }
+            finished = next == null;
+        }
+
+        return next != null;
+    }
+
+    @Override
+    public ManifestEntry next()
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+
+        ManifestEntry entry = next;
+        next = null;
+        return entry;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        reader.close();
+    }
+
+    private ManifestEntry readEntry() throws IOException
+    {
+        if (!started)
+        {
+            started = true;
+            if (reader.peek() == JsonToken.BEGIN_ARRAY)
+            {
+                reader.beginArray();
+                inArray = true;
+            }
+        }
+
+        if (inArray ? !reader.hasNext() : reader.peek() == JsonToken.END_DOCUMENT)
+        {
+            return null;
+        }
+
+        index++;
+        String volumeId = null;
+        String resourceGroup = null;
+        String account = null;
+        String pool = null;
+        String volume = null;
+        String destinationPoolId = null;
+        String destinationPool = null;
+        String serviceLevel = null;
+        Long poolSize = null;
+        String location = null;
+
+        reader.beginObject();
+        while (reader.hasNext())
+        {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL)
+            {
+                reader.nextNull();
+                continue;
+            }
+
+            switch (name)
+            {
+                case "volumeId":
+                    volumeId = reader.nextString();
+                    break;
+                case "resourceGroup":
+                    resourceGroup = reader.nextString();
+                    break;
+                case "account":
+                    account = reader.nextString();
+                    break;
+                case "pool":
+                    pool = reader.nextString();
+                    break;
+                case "volume":
+                    volume = reader.nextString();
+                    break;
+                case "destinationPoolId":
+                    destinationPoolId = reader.nextString();
+                    break;
+                case "destinationPool":
+                    destinationPool = reader.nextString();
+                    break;
+                case "serviceLevel":
+                    serviceLevel = reader.nextString();
+                    break;
+                case "poolSize":
+                    poolSize = reader.nextLong();
+                    break;
+                case "location":
+                    location = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (volumeId != null)
+        {
+            ParsedResourceId id = ParsedResourceId.parse(volumeId);
+            if (id == null || id.getVolume() == null || id.getCapacityPool() == null)
+            {
+                return new ManifestEntry(index, "volumeId is not a Volume resource id: " + volumeId);
+            }
+            resourceGroup = id.getResourceGroup();
+            account = id.getAccount();
+            pool = id.getCapacityPool();
+            volume = id.getVolume();
+
+            if (destinationPoolId == null && destinationPool != null)
+            {
+                destinationPoolId = id.getParentId().substring(0, id.getParentId().lastIndexOf('/') + 1) + destinationPool;
+            }
+        }
+        else if (resourceGroup == null || account == null || pool == null || volume == null)
+        {
+            return new ManifestEntry(index, "either volumeId or resourceGroup, account, pool and volume are required");
+        }
+        else if (destinationPoolId == null && destinationPool != null)
+        {
+            destinationPoolId = "/subscriptions/" + subscriptionId + "/resourceGroups/" + resourceGroup
+                    + "/providers/Microsoft.NetApp/netAppAccounts/" + account + "/capacityPools/" + destinationPool;
+        }
+
+        if (destinationPoolId == null)
+        {
+            return new ManifestEntry(index, "destinationPoolId or destinationPool is required");
+        }
+
+        ParsedResourceId destination = ParsedResourceId.parse(destinationPoolId);
+        if (destination == null || destination.getCapacityPool() == null || destination.getVolume() != null)
+        {
+            return new ManifestEntry(index, "destinationPoolId is not a Capacity Pool resource id: " + destinationPoolId);
+        }
+
+        return new ManifestEntry(index, new PoolChangeJob(resourceGroup, account, pool, volume, destinationPoolId),
+                serviceLevel, poolSize, location);
+    }
+}
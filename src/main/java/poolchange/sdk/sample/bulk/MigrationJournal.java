@@ -0,0 +1,379 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.bulk;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/*
+  Append-only journal of pool change job state transitions, so that a migration interrupted by a crash can be resumed
+  without asking the service what happened to every Volume.
+
+  Each record is one line: a CRC32 of the rest of the line, then tab separated state, time, resource group, Account,
+  source pool, Volume, destination pool id and detail. Records are written by a single thread that group commits: it
+  writes every record queued since its last pass, then forces them to disk with one fsync, then completes their
+  futures. When the journal is opened, existing records are replayed and a torn last record is cut off.
+*/
+public class MigrationJournal implements AutoCloseable
+{
+    private static final int MAX_DETAIL_LENGTH = 512;
+    // Queued by close() to stop the committer, which must not be interrupted as that would close the channel
+    private static final PendingRecord END = new PendingRecord(new byte[0]);
+
+    private final FileChannel channel;
+    private final Map<String, Recovered> jobs = new LinkedHashMap<>();
+    private final LinkedBlockingQueue<PendingRecord> queue = new LinkedBlockingQueue<>();
+    private final Thread committer;
+    private volatile boolean closed;
+
+    private long records;
+    private long commits;
+
+    private MigrationJournal(FileChannel channel)
+    {
+        this.channel = channel;
+        this.committer = new Thread(this::runCommitter, "anf-journal-commit");
+        this.committer.setDaemon(true);
+    }
+
+    /**
+     * Opens a journal, creating it if needed, and replays the records it already holds
+     * @param file Path of the journal file
+     * @return The journal, ready to append to
+     */
+    public static MigrationJournal open(Path file) throws IOException
+    {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MigrationJournal journal = new MigrationJournal(channel);
+        try
+        {
+            long validLength = journal.replay();
+            if (validLength < channel.size())
+            {
+                channel.truncate(validLength);
+                channel.force(true);
+            }
+            else if (validLength > channel.size())
+            {
+                // The last record is intact but its line break was not written
+                channel.write(ByteBuffer.wrap(new byte[]{'\n'}), channel.size());
+                channel.force(true);
+            }
+            channel.position(validLength);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            channel.close();
+            throw e;
+        }
+
+        journal.committer.start();
+        return journal;
+    }
+
+    /**
+     * @param job A pool change job
+     * @return Last state recorded for the job, null if it never was
+     */
+    public synchronized JobState getState(PoolChangeJob job)
+    {
+        Recovered recovered = jobs.get(keyOf(job));
+        return recovered != null ? recovered.state : null;
+    }
+
+    /**
+     * @param job A pool change job
+     * @return Detail of the last state recorded for the job, such as the status URL of a polling job, null if none
+     */
+    public synchronized String getDetail(PoolChangeJob job)
+    {
+        Recovered recovered = jobs.get(keyOf(job));
+        return recovered != null && recovered.detail != null && !recovered.detail.isEmpty() ? recovered.detail : null;
+    }
+
+    /**
+     * @return Jobs whose pool change request may have been sent without its outcome being recorded
+     */
+    public synchronized List<PoolChangeJob> getInFlightJobs()
+    {
+        List<PoolChangeJob> inFlight = new ArrayList<>();
+        for (Recovered recovered : jobs.values())
+        {
+            if (recovered.state.isInFlight())
+            {
+                inFlight.add(recovered.job);
+            }
+        }
+        return inFlight;
+    }
+
+    /**
+     * Appends a state transition
+     * @param job The job changing state
+     * @param state Its new state
+     * @param detail Additional information, such as an error message or a status URL, may be null
+     * @return Future completed once the record is on disk, or failed if it could not be written
+     */
+    public CompletableFuture<Void> record(PoolChangeJob job, JobState state, String detail)
+    {
+        PendingRecord record = new PendingRecord(format(job, state, detail));
+        synchronized (this)
+        {
+            if (closed)
+            {
+                return CompletableFuture.failedFuture(new IllegalStateException("The journal is closed"));
+            }
+
+            update(job, state, sanitize(detail));
+            queue.add(record);
+        }
+
+        return record.future;
+    }
+
+    /**
+     * Writes the records still queued, then closes the file
+     */
+    @Override
+    public void close() throws IOException
+    {
+        synchronized (this)
+        {
+            if (closed)
+            {
+                return;
+            }
+            closed = true;
+            queue.add(END);
+        }
+
+        try
+        {
+            committer.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return jobs.size() + " jobs, " + records + " records written in " + commits + " commits";
+    }
+
+    private void runCommitter()
+    {
+        List<PendingRecord> batch = new ArrayList<>();
+        boolean end = false;
+        while (!end)
+        {
+            try
+            {
+                batch.add(queue.take());
+            }
+            catch (InterruptedException e)
+            {
+                continue;
+            }
+            queue.drainTo(batch);
+
+            // Records are only queued before END, so it is always last
+            end = batch.remove(END);
+            if (!batch.isEmpty())
+            {
+                commit(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<PendingRecord> batch)
+    {
+        try
+        {
+            int size = 0;
+            for (PendingRecord record : batch)
+            {
+                size += record.bytes.length;
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            for (PendingRecord record : batch)
+            {
+                buffer.put(record.bytes);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+            channel.force(false);
+
+            synchronized (this)
+            {
+                records += batch.size();
+                commits++;
+            }
+            for (PendingRecord record : batch)
+            {
+                record.future.complete(null);
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            for (PendingRecord record : batch)
+            {
+                record.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void update(PoolChangeJob job, JobState state, String detail)
+    {
+        Recovered recovered = jobs.get(keyOf(job));
+        if (recovered == null)
+        {
+            jobs.put(keyOf(job), new Recovered(job, state, detail));
+        }
+        else
+        {
+            recovered.state = state;
+            recovered.detail = detail;
+        }
+    }
+
+    // Rebuilds the last state of every job and returns the length of the journal up to its last intact record
+    private long replay() throws IOException
+    {
+        long validLength = 0;
+        channel.position(0);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+
+        String line;
+        while ((line = reader.readLine()) != null)
+        {
+            String[] fields = parse(line);
+            if (fields == null)
+            {
+                break;
+            }
+
+            PoolChangeJob job = new PoolChangeJob(fields[2], fields[3], fields[4], fields[5], fields[6]);
+            update(job, JobState.valueOf(fields[0]), fields[7]);
+
+            validLength += line.getBytes(StandardCharsets.UTF_8).length + 1;
+            records++;
+        }
+
+        return validLength;
+    }
+
+    // Fields of an intact record, or null for a torn or corrupted one
+    private static String[] parse(String line)
+    {
+        int tab = line.indexOf('\t');
+        if (tab < 0)
+        {
+            return null;
+        }
+
+        String body = line.substring(tab + 1);
+        if (!line.substring(0, tab).equals(crc(body)))
+        {
+            return null;
+        }
+
+        String[] fields = body.split("\t", -1);
+        if (fields.length != 8)
+        {
+            return null;
+        }
+
+        try
+        {
+            JobState.valueOf(fields[0]);
+        }
+        catch (IllegalArgumentException e)
+        {
+            return null;
+        }
+        return fields;
+    }
+
+    private static byte[] format(PoolChangeJob job, JobState state, String detail)
+    {
+        String body = state.name() + '\t' + System.currentTimeMillis() + '\t' + job.getResourceGroupName() + '\t' + job.getAccountName()
+                + '\t' + job.getPoolName() + '\t' + job.getVolumeName() + '\t' + job.getNewPoolResourceId() + '\t' + sanitize(detail);
+        return (crc(body) + '\t' + body + '\n').getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String sanitize(String detail)
+    {
+        if (detail == null)
+        {
+            return "";
+        }
+
+        String flat = detail.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+        return flat.length() > MAX_DETAIL_LENGTH ? flat.substring(0, MAX_DETAIL_LENGTH) : flat;
+    }
+
+    private static String crc(String body)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(body.getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+
+    static String keyOf(PoolChangeJob job)
+    {
+        return (job.getResourceGroupName() + '/' + job.getAccountName() + '/' + job.getPoolName() + '/' + job.getVolumeName())
+                .toLowerCase(Locale.ROOT);
+    }
+
+    private static class Recovered
+    {
+        private final PoolChangeJob job;
+        private JobState state;
+        private String detail;
+
+        private Recovered(PoolChangeJob job, JobState state, String detail)
+        {
+            this.job = job;
+            this.state = state;
+            this.detail = detail;
+        }
+    }
+
+    private static class PendingRecord
+    {
+        private final byte[] bytes;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingRecord(byte[] bytes)
+        {
+            this.bytes = bytes;
+        }
+    }
+}
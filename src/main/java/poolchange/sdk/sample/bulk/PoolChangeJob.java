@@ -0,0 +1,91 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.bulk;
+
+import poolchange.sdk.sample.common.ResourceUriUtils;
+
+import java.util.Locale;
+
+// A single Volume to be moved to a new Capacity Pool
+public class PoolChangeJob
+{
+    private final String resourceGroupName;
+    private final String accountName;
+    private final String poolName;
+    private final String volumeName;
+    private final String newPoolResourceId;
+
+    /**
+     * @param resourceGroupName Name of the resource group
+     * @param accountName Name of the Account
+     * @param poolName Name of Volume's current Capacity Pool
+     * @param volumeName Name of the Volume being moved
+     * @param newPoolResourceId Resource id of the destination Capacity Pool
+     */
+    public PoolChangeJob(String resourceGroupName, String accountName, String poolName, String volumeName, String newPoolResourceId)
+    {
+        this.resourceGroupName = resourceGroupName;
+        this.accountName = accountName;
+        this.poolName = poolName;
+        this.volumeName = volumeName;
+        this.newPoolResourceId = newPoolResourceId;
+    }
+
+    /**
+     * Creates a job from the resource id of the Volume being moved
+     * @param volumeId Resource id of the Volume
+     * @param newPoolResourceId Resource id of the destination Capacity Pool
+     * @return The pool change job
+     */
+    public static PoolChangeJob fromVolumeId(String volumeId, String newPoolResourceId)
+    {
+        return new PoolChangeJob(ResourceUriUtils.getResourceGroup(volumeId),
+                ResourceUriUtils.getAnfAccount(volumeId),
+                ResourceUriUtils.getAnfCapacityPool(volumeId),
+                ResourceUriUtils.getAnfVolume(volumeId),
+                newPoolResourceId);
+    }
+
+    public String getResourceGroupName()
+    {
+        return resourceGroupName;
+    }
+
+    public String getAccountName()
+    {
+        return accountName;
+    }
+
+    public String getPoolName()
+    {
+        return poolName;
+    }
+
+    public String getVolumeName()
+    {
+        return volumeName;
+    }
+
+    public String getNewPoolResourceId()
+    {
+        return newPoolResourceId;
+    }
+
+    /**
+     * Key identifying the source Capacity Pool, used to apply the per pool concurrency limit
+     * @return Case insensitive key of the source pool
+     */
+    public String getSourcePoolKey()
+    {
+        return (resourceGroupName + "/" + accountName + "/" + poolName).toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public String toString()
+    {
+        return accountName + "/" + poolName + "/" + volumeName + " -> " + ResourceUriUtils.getAnfCapacityPool(newPoolResourceId);
+    }
+}
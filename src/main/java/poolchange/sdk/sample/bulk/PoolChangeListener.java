@@ -0,0 +1,26 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.bulk;
+
+// Receives progress from BulkPoolChange as each pool change finishes
+public interface PoolChangeListener
+{
+    /**
+     * Called once per job, from the thread that completed it
+     * @param result Outcome of the pool change
+     * @param completed Number of jobs finished so far, including this one
+     * @param submitted Number of jobs submitted so far
+     */
+    void onResult(PoolChangeResult result, int completed, int submitted);
+
+    /**
+     * Called when a queued job gets its slot and its pool change is about to be sent, or followed up after a restart
+     * @param job The job starting
+     */
+    default void onStart(PoolChangeJob job)
+    {
+    }
+}
@@ -0,0 +1,104 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.bulk;
+
+import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
+import com.azure.resourcemanager.netapp.fluent.models.CapacityPoolInner;
+import com.azure.resourcemanager.netapp.fluent.models.VolumeInner;
+import poolchange.sdk.sample.common.Backoff;
+import poolchange.sdk.sample.common.CapacityLedger;
+import poolchange.sdk.sample.common.CommonSdk;
+import poolchange.sdk.sample.common.ErrorClassifier;
+import poolchange.sdk.sample.common.ParsedResourceId;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+/*
+  Finds out where a pool change the journal shows as started stands, without sending it again. While an operation is
+  still running on the Volume it is watched until it settles; the Volume is then either found in its destination pool,
+  or still in its source pool, in which case the pool change has to be sent. Either way the capacity ledger reads both
+  pools again, since the attempt that failed or was interrupted never settled its reservation.
+*/
+final class PoolChangeRecovery
+{
+    private static final Backoff BACKOFF = new Backoff(Duration.ofSeconds(5), Duration.ofSeconds(60), 2, 0.2);
+    private static final Duration TIMEOUT = Duration.ofHours(2);
+
+    private enum Outcome { MOVED, NOT_MOVED, BUSY }
+
+    private PoolChangeRecovery()
+    {
+    }
+
+    /**
+     * @param anfClient Azure NetApp Files Management Client
+     * @param job A job recorded as submitted or polling
+     * @return Future completed with true if the Volume is in its destination pool, false if the pool change still has
+     *         to be sent, once no operation is running on the Volume anymore
+     */
+    static CompletableFuture<Boolean> awaitOutcome(NetAppManagementClient anfClient, PoolChangeJob job)
+    {
+        return probe(anfClient, job, 1, System.nanoTime() + TIMEOUT.toNanos())
+                .flatMap(moved -> Mono.fromFuture(reloadPools(anfClient, job)).thenReturn(moved))
+                .toFuture();
+    }
+
+    private static CompletableFuture<Void> reloadPools(NetAppManagementClient anfClient, PoolChangeJob job)
+    {
+        CapacityLedger ledger = CapacityLedger.getDefault();
+        String poolId = CommonSdk.getResourceId(anfClient, new String[]{job.getResourceGroupName(), job.getAccountName(), job.getPoolName()},
+                CapacityPoolInner.class);
+        return CompletableFuture.allOf(ledger.reloadAsync(anfClient, poolId), ledger.reloadAsync(anfClient, job.getNewPoolResourceId()));
+    }
+
+    private static Mono<Boolean> probe(NetAppManagementClient anfClient, PoolChangeJob job, int attempt, long deadlineNanos)
+    {
+        String destinationPool = ParsedResourceId.parse(job.getNewPoolResourceId()).getCapacityPool();
+        Mono<Outcome> outcome = findVolume(anfClient, job, destinationPool).flatMap(atDestination -> {
+            if (atDestination.isPresent())
+            {
+                return Mono.just(isSettled(atDestination.get()) ? Outcome.MOVED : Outcome.BUSY);
+            }
+
+            // Neither in the source nor in the destination pool means the Volume is being moved
+            return findVolume(anfClient, job, job.getPoolName()).map(atSource -> atSource.isPresent() && isSettled(atSource.get())
+                    ? Outcome.NOT_MOVED
+                    : Outcome.BUSY);
+        });
+
+        return outcome.flatMap(result -> {
+            if (result != Outcome.BUSY)
+            {
+                return Mono.just(result == Outcome.MOVED);
+            }
+            if (System.nanoTime() - deadlineNanos > 0)
+            {
+                return Mono.error(new TimeoutException("An operation is still running on Volume " + job.getVolumeName()
+                        + " after " + TIMEOUT.toMinutes() + " minutes"));
+            }
+
+            return Mono.delay(BACKOFF.delay(attempt)).then(Mono.defer(() -> probe(anfClient, job, attempt + 1, deadlineNanos)));
+        });
+    }
+
+    private static Mono<Optional<VolumeInner>> findVolume(NetAppManagementClient anfClient, PoolChangeJob job, String poolName)
+    {
+        return anfClient.getVolumes().getAsync(job.getResourceGroupName(), job.getAccountName(), poolName, job.getVolumeName())
+                .map(Optional::of)
+                .onErrorResume(e -> ErrorClassifier.isNotFound(e)
+                        ? Mono.just(Optional.empty())
+                        : Mono.error(e));
+    }
+
+    private static boolean isSettled(VolumeInner volume)
+    {
+        return "Succeeded".equalsIgnoreCase(volume.provisioningState()) || "Failed".equalsIgnoreCase(volume.provisioningState());
+    }
+}
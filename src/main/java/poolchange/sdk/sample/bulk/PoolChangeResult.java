@@ -0,0 +1,46 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.bulk;
+
+import java.time.Duration;
+
+// Outcome of a single pool change executed by BulkPoolChange
+public class PoolChangeResult
+{
+    private final PoolChangeJob job;
+    private final Throwable error;
+    private final Duration elapsed;
+
+    PoolChangeResult(PoolChangeJob job, Throwable error, Duration elapsed)
+    {
+        this.job = job;
+        this.error = error;
+        this.elapsed = elapsed;
+    }
+
+    public PoolChangeJob getJob()
+    {
+        return job;
+    }
+
+    public boolean isSuccess()
+    {
+        return error == null;
+    }
+
+    /**
+     * @return The error that made the pool change fail, or null if it succeeded
+     */
+    public Throwable getError()
+    {
+        return error;
+    }
+
+    public Duration getElapsed()
+    {
+        return elapsed;
+    }
+}
@@ -0,0 +1,250 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.bulk;
+
+import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
+import com.azure.resourcemanager.netapp.fluent.models.CapacityPoolInner;
+import com.azure.resourcemanager.netapp.fluent.models.VolumeInner;
+import poolchange.sdk.sample.Update;
+import poolchange.sdk.sample.common.CommonSdk;
+import poolchange.sdk.sample.common.ParsedResourceId;
+import poolchange.sdk.sample.common.ResourceUriUtils;
+import poolchange.sdk.sample.common.Utils;
+import poolchange.sdk.sample.planning.PlacementPlanner;
+import poolchange.sdk.sample.planning.ServiceLevels;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+  Net capacity change of every Capacity Pool a batch moves Volumes into or out of, read from the whole manifest before
+  the first move. Each destination pool without room for the Volumes moving in is grown once, before the moves start,
+  and each source pool is shrunk once after the moves, by the capacity of the Volumes that actually left it. One resize
+  per pool replaces resizing it around every single move. A pool that is both a source and a destination is grown for
+  its incoming Volumes alone, as the moves out of it may finish after the moves in.
+*/
+class PoolResizePlan
+{
+    private final NetAppManagementClient anfClient;
+
+    // Keyed by lowercased pool resource id
+    private final Map<String, String> poolIds = new HashMap<>();
+    private final Map<String, Long> incoming = new LinkedHashMap<>();
+    private final Map<String, Long> sizesToCreate = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> movedOut = new ConcurrentHashMap<>();
+
+    // Quota of every Volume of the source pools, keyed by source pool, then by lowercased Volume name
+    private final Map<String, Map<String, Long>> quotas = new HashMap<>();
+
+    private PoolResizePlan(NetAppManagementClient anfClient)
+    {
+        this.anfClient = anfClient;
+    }
+
+    /**
+     * Reads a whole manifest to sum the quotas moving into and out of every pool. Entries the journal shows as already
+     * succeeded are left out
+     * @param anfClient Azure NetApp Files Management Client
+     * @param reader Manifest entries
+     * @param journal Journal of a previous run, may be null
+     * @return The capacity changes of the batch
+     */
+    static PoolResizePlan read(NetAppManagementClient anfClient, ManifestReader reader, MigrationJournal journal)
+    {
+        PoolResizePlan plan = new PoolResizePlan(anfClient);
+        while (reader.hasNext())
+        {
+            ManifestEntry entry = reader.next();
+            if (entry.isValid() && (journal == null || journal.getState(entry.getJob()) != JobState.SUCCEEDED))
+            {
+                plan.add(entry.getJob());
+            }
+        }
+
+        return plan;
+    }
+
+    private void add(PoolChangeJob job)
+    {
+        String sourceId = sourcePoolIdOf(job);
+        long quota = quotaOf(job, sourceId);
+        if (quota == 0)
+        {
+            // The Volume does not exist, its pool change fails on its own
+            return;
+        }
+
+        incoming.merge(keyOf(job.getNewPoolResourceId()), quota, Long::sum);
+        poolIds.putIfAbsent(keyOf(job.getNewPoolResourceId()), job.getNewPoolResourceId());
+        poolIds.putIfAbsent(keyOf(sourceId), sourceId);
+    }
+
+    /**
+     * Grows every existing destination pool too small for its Volumes plus those moving in, all pools concurrently.
+     * Destination pools that don't exist yet are only sized, see getSizeToCreate
+     * @param executor Runs the resize operations
+     * @return Number of pools grown
+     */
+    int growDestinationPools(ExecutorService executor)
+    {
+        AtomicInteger grown = new AtomicInteger();
+        List<CompletableFuture<Void>> resizes = new ArrayList<>();
+        for (Map.Entry<String, Long> destination : incoming.entrySet())
+        {
+            String poolId = poolIds.get(destination.getKey());
+            resizes.add(CompletableFuture.runAsync(() -> {
+                ParsedResourceId id = ParsedResourceId.parse(poolId);
+                CapacityPoolInner pool = (CapacityPoolInner) CommonSdk.getResource(anfClient,
+                        new String[]{id.getResourceGroup(), id.getAccount(), id.getCapacityPool()}, CapacityPoolInner.class);
+                if (pool == null)
+                {
+                    sizesToCreate.put(destination.getKey(), PlacementPlanner.roundUpPoolSize(destination.getValue()));
+                    return;
+                }
+
+                long required = PlacementPlanner.roundUpPoolSize(allocatedIn(id) + destination.getValue());
+                if (required <= pool.size())
+                {
+                    return;
+                }
+                if (required > PlacementPlanner.MAX_POOL_SIZE)
+                {
+                    Utils.writeWarningMessage("Capacity Pool " + id.getCapacityPool() + " would need " + required / ServiceLevels.TIB
+                            + "TiB, growing it to the maximum size only");
+                    required = PlacementPlanner.MAX_POOL_SIZE;
+                }
+
+                Utils.writeConsoleMessage("Growing Capacity Pool " + id.getCapacityPool() + " to " + required / ServiceLevels.TIB
+                        + "TiB for " + destination.getValue() + " bytes of incoming Volumes...");
+                Update.capacityPoolResize(anfClient, id.getResourceGroup(), id.getAccount(), id.getCapacityPool(), required);
+                grown.incrementAndGet();
+            }, executor).exceptionally(error -> {
+                Utils.writeErrorMessage("Could not grow Capacity Pool " + poolId + ": " + unwrap(error).getMessage());
+                return null;
+            }));
+        }
+
+        CompletableFuture.allOf(resizes.toArray(new CompletableFuture[0])).join();
+        return grown.get();
+    }
+
+    /**
+     * @param poolId Resource id of a destination pool that did not exist when the pools were grown
+     * @return Size in bytes holding every Volume moving into it, or 0 if it is not a destination of the batch
+     */
+    long getSizeToCreate(String poolId)
+    {
+        return sizesToCreate.getOrDefault(keyOf(poolId), 0L);
+    }
+
+    /**
+     * Records a Volume that left its source pool, so that the pool's capacity can be given back
+     * @param job Pool change that succeeded
+     */
+    void recordMoved(PoolChangeJob job)
+    {
+        String sourceId = sourcePoolIdOf(job);
+        Long quota = quotas.getOrDefault(keyOf(sourceId), Map.of()).get(job.getVolumeName().toLowerCase(Locale.ROOT));
+        if (quota != null)
+        {
+            movedOut.merge(keyOf(sourceId), quota, Long::sum);
+        }
+    }
+
+    /**
+     * Shrinks every source pool by the capacity of the Volumes that left it, all pools concurrently. A pool never
+     * shrinks below what its remaining Volumes need
+     * @param executor Runs the resize operations
+     * @return Number of pools shrunk
+     */
+    int shrinkSourcePools(ExecutorService executor)
+    {
+        AtomicInteger shrunk = new AtomicInteger();
+        List<CompletableFuture<Void>> resizes = new ArrayList<>();
+        for (Map.Entry<String, Long> source : movedOut.entrySet())
+        {
+            String poolId = poolIds.get(source.getKey());
+            resizes.add(CompletableFuture.runAsync(() -> {
+                ParsedResourceId id = ParsedResourceId.parse(poolId);
+                String[] params = {id.getResourceGroup(), id.getAccount(), id.getCapacityPool()};
+                CommonSdk.getResourceCache().invalidate(poolId);
+                CapacityPoolInner pool = (CapacityPoolInner) CommonSdk.getResource(anfClient, params, CapacityPoolInner.class);
+                if (pool == null)
+                {
+                    return;
+                }
+
+                // Only whole TiB freed by the batch are given back
+                long released = source.getValue() / ServiceLevels.TIB * ServiceLevels.TIB;
+                long target = Math.max(pool.size() - released, PlacementPlanner.roundUpPoolSize(allocatedIn(id)));
+                if (target >= pool.size())
+                {
+                    return;
+                }
+
+                Utils.writeConsoleMessage("Shrinking Capacity Pool " + id.getCapacityPool() + " to " + target / ServiceLevels.TIB + "TiB...");
+                Update.capacityPoolResize(anfClient, params[0], params[1], params[2], target);
+                shrunk.incrementAndGet();
+            }, executor).exceptionally(error -> {
+                Utils.writeErrorMessage("Could not shrink Capacity Pool " + poolId + ": " + unwrap(error).getMessage());
+                return null;
+            }));
+        }
+
+        CompletableFuture.allOf(resizes.toArray(new CompletableFuture[0])).join();
+        return shrunk.get();
+    }
+
+    // Source pools are listed once each, rather than getting every Volume
+    private long quotaOf(PoolChangeJob job, String sourceId)
+    {
+        Map<String, Long> poolQuotas = quotas.computeIfAbsent(keyOf(sourceId), key -> {
+            Map<String, Long> volumes = new HashMap<>();
+            for (VolumeInner volume : anfClient.getVolumes().list(job.getResourceGroupName(), job.getAccountName(), job.getPoolName()))
+            {
+                volumes.put(ResourceUriUtils.getAnfVolume(volume.id()).toLowerCase(Locale.ROOT), volume.usageThreshold());
+            }
+            return volumes;
+        });
+
+        return poolQuotas.getOrDefault(job.getVolumeName().toLowerCase(Locale.ROOT), 0L);
+    }
+
+    private long allocatedIn(ParsedResourceId poolId)
+    {
+        long allocated = 0;
+        for (VolumeInner volume : anfClient.getVolumes().list(poolId.getResourceGroup(), poolId.getAccount(), poolId.getCapacityPool()))
+        {
+            allocated += volume.usageThreshold();
+        }
+        return allocated;
+    }
+
+    private String sourcePoolIdOf(PoolChangeJob job)
+    {
+        return CommonSdk.getResourceId(anfClient, new String[]{job.getResourceGroupName(), job.getAccountName(), job.getPoolName()},
+                CapacityPoolInner.class);
+    }
+
+    private static String keyOf(String poolId)
+    {
+        return poolId.toLowerCase(Locale.ROOT);
+    }
+
+    private static Throwable unwrap(Throwable error)
+    {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+}
@@ -0,0 +1,185 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.common;
+
+import com.azure.core.http.HttpClient;
+import com.azure.core.http.HttpPipeline;
+import com.azure.core.http.HttpPipelineBuilder;
+import com.azure.core.http.netty.NettyAsyncHttpClientBuilder;
+import com.azure.core.http.policy.AddHeadersFromContextPolicy;
+import com.azure.core.http.policy.HttpPipelinePolicy;
+import com.azure.core.http.policy.RetryPolicy;
+import com.azure.core.management.AzureEnvironment;
+import com.azure.core.management.profile.AzureProfile;
+import com.azure.identity.DefaultAzureCredentialBuilder;
+import com.azure.resourcemanager.netapp.NetAppFilesManager;
+import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
+import com.azure.resourcemanager.netapp.implementation.NetAppManagementClientBuilder;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/*
+  Creates the Azure NetApp Files Management Client used by the sample. By default the client talks to Azure Resource
+  Manager, authenticated with DefaultAzureCredential. When the anf.endpoint system property (or the ANF_ENDPOINT
+  environment variable) is set, it talks to that endpoint instead, unauthenticated, e.g. to an AnfEmulator, with the
+  subscription id of the anf.subscriptionId property.
+
+  Each client gets its own Netty connection pool sized to the number of operations it runs concurrently, so that
+  workers don't queue for a connection, and idle connections are closed before Azure's load balancers drop them. The
+  client and its pipeline are meant to be created once and shared by every worker. Against Azure the access token is
+  fetched while the client is being built and refreshed before it expires. The pool can be tuned with the
+  anf.http.maxConnections, anf.http.eventLoopThreads and anf.http.http2 properties.
+*/
+public final class AnfClientFactory
+{
+    /** Subscription id used against an endpoint when anf.subscriptionId is not set */
+    public static final String DEFAULT_SUBSCRIPTION_ID = "00000000-0000-0000-0000-000000000000";
+
+    /** Number of operations in flight the connection pool is sized for when callers don't say */
+    public static final int DEFAULT_CONCURRENCY = 16;
+
+    private static final Duration IDLE_TIMEOUT = Duration.ofSeconds(60);
+    private static final Duration TOKEN_REFRESH_BEFORE = Duration.ofMinutes(5);
+
+    private AnfClientFactory()
+    {
+    }
+
+    /**
+     * @return Endpoint the client is pointed at, or null to use Azure Resource Manager
+     */
+    public static String getEndpoint()
+    {
+        String endpoint = System.getProperty("anf.endpoint", System.getenv("ANF_ENDPOINT"));
+        return endpoint == null || endpoint.isBlank() ? null : endpoint.trim();
+    }
+
+    /**
+     * Creates a client for Azure Resource Manager, or for the endpoint of anf.endpoint when set, with a connection pool
+     * sized for DEFAULT_CONCURRENCY operations in flight
+     * @param policies Policies every request goes through, in order, e.g. rate limiting and metrics
+     * @return Azure NetApp Files Management Client
+     */
+    public static NetAppManagementClient create(HttpPipelinePolicy... policies)
+    {
+        return create(DEFAULT_CONCURRENCY, policies);
+    }
+
+    /**
+     * Creates a client for Azure Resource Manager, or for the endpoint of anf.endpoint when set
+     * @param maxConcurrency Number of operations the client runs at once, sizing its connection pool
+     * @param policies Policies every request goes through, in order, e.g. rate limiting and metrics
+     * @return Azure NetApp Files Management Client
+     */
+    public static NetAppManagementClient create(int maxConcurrency, HttpPipelinePolicy... policies)
+    {
+        String endpoint = getEndpoint();
+        if (endpoint != null)
+        {
+            return create(endpoint, System.getProperty("anf.subscriptionId", DEFAULT_SUBSCRIPTION_ID), Duration.ofSeconds(1),
+                    createHttpClient(maxConcurrency, false), policies);
+        }
+
+        AzureProfile profile = new AzureProfile(AzureEnvironment.AZURE);
+        PrefetchingTokenCredential credential = new PrefetchingTokenCredential(new DefaultAzureCredentialBuilder()
+                .authorityHost(profile.getEnvironment().getActiveDirectoryEndpoint())
+                .build(), TOKEN_REFRESH_BEFORE);
+        // Azure AD is asked for the token while the HTTP client is set up, instead of by the first request
+        credential.prefetch(profile.getEnvironment().getManagementEndpoint() + "/.default");
+
+        NetAppFilesManager.Configurable configurable = NetAppFilesManager.configure()
+                .withHttpClient(createHttpClient(maxConcurrency, Boolean.getBoolean("anf.http.http2")));
+        for (HttpPipelinePolicy policy : policies)
+        {
+            configurable.withPolicy(policy);
+        }
+        return configurable.authenticate(credential, profile).serviceClient();
+    }
+
+    /**
+     * Creates an unauthenticated client for an endpoint other than Azure Resource Manager
+     * @param endpoint Base URL of the endpoint, e.g. AnfEmulator.getEndpoint()
+     * @param subscriptionId Subscription id of the requests
+     * @param pollInterval Default interval between polls of long running operations
+     * @param policies Policies every request goes through, after the retry policy
+     * @return Azure NetApp Files Management Client
+     */
+    public static NetAppManagementClient create(String endpoint, String subscriptionId, Duration pollInterval, HttpPipelinePolicy... policies)
+    {
+        return create(endpoint, subscriptionId, pollInterval, createHttpClient(DEFAULT_CONCURRENCY, false), policies);
+    }
+
+    /**
+     * Creates an unauthenticated client for an endpoint other than Azure Resource Manager
+     * @param endpoint Base URL of the endpoint, e.g. AnfEmulator.getEndpoint()
+     * @param subscriptionId Subscription id of the requests
+     * @param pollInterval Default interval between polls of long running operations
+     * @param httpClient HTTP client sending the requests, e.g. from createHttpClient
+     * @param policies Policies every request goes through, after the retry policy
+     * @return Azure NetApp Files Management Client
+     */
+    public static NetAppManagementClient create(String endpoint, String subscriptionId, Duration pollInterval, HttpClient httpClient,
+                                                HttpPipelinePolicy... policies)
+    {
+        // Headers set through the request context come first like in the management pipeline, e.g. the If-None-Match
+        // of CommonSdk.getResource
+        HttpPipelinePolicy[] all = new HttpPipelinePolicy[policies.length + 2];
+        all[0] = new AddHeadersFromContextPolicy();
+        all[1] = new RetryPolicy();
+        System.arraycopy(policies, 0, all, 2, policies.length);
+        HttpPipeline pipeline = new HttpPipelineBuilder().httpClient(httpClient).policies(all).build();
+
+        return new NetAppManagementClientBuilder()
+                .pipeline(pipeline)
+                .endpoint(endpoint)
+                .subscriptionId(subscriptionId)
+                .defaultPollInterval(pollInterval)
+                .buildClient();
+    }
+
+    /**
+     * Creates a Netty HTTP client with its own connection pool. Each operation in flight may have a request and a poll
+     * outstanding at once, so the pool keeps two connections per operation, unless anf.http.maxConnections says
+     * otherwise. Connections idle for a minute are closed, and every connection is replaced after 10 minutes so that
+     * long runs keep spreading over ARM's front ends. anf.http.eventLoopThreads sets the number of I/O threads, the
+     * number of processors by default
+     * @param maxConcurrency Number of operations sent through the client at once
+     * @param http2 Whether to offer HTTP/2 during the TLS handshake, falling back to HTTP/1.1 if the server does not
+     *              accept it. Only applies to https endpoints
+     * @return HTTP client to share between every request of a pipeline
+     */
+    public static HttpClient createHttpClient(int maxConcurrency, boolean http2)
+    {
+        int maxConnections = Integer.getInteger("anf.http.maxConnections", Math.max(DEFAULT_CONCURRENCY, 2 * maxConcurrency));
+        ConnectionProvider connections = ConnectionProvider.builder("anf-management")
+                .maxConnections(maxConnections)
+                // Bursts wait for a connection rather than fail, up to a minute
+                .pendingAcquireMaxCount(-1)
+                .pendingAcquireTimeout(Duration.ofSeconds(60))
+                .maxIdleTime(IDLE_TIMEOUT)
+                .maxLifeTime(Duration.ofMinutes(10))
+                .evictInBackground(Duration.ofSeconds(30))
+                .build();
+
+        reactor.netty.http.client.HttpClient nettyClient = reactor.netty.http.client.HttpClient.create(connections).keepAlive(true);
+        if (http2)
+        {
+            nettyClient = nettyClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+        }
+
+        NettyAsyncHttpClientBuilder builder = new NettyAsyncHttpClientBuilder(nettyClient);
+        int eventLoopThreads = Integer.getInteger("anf.http.eventLoopThreads", 0);
+        if (eventLoopThreads > 0)
+        {
+            builder.eventLoopGroup(new NioEventLoopGroup(eventLoopThreads, new DefaultThreadFactory("anf-http", true)));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,274 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.common;
+
+import com.azure.core.http.HttpMethod;
+import com.azure.core.http.HttpPipelineCallContext;
+import com.azure.core.http.HttpPipelineNextPolicy;
+import com.azure.core.http.HttpResponse;
+import com.azure.core.http.policy.HttpPipelinePolicy;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+  HTTP pipeline policy pacing every ARM request sent by the management client with one read and one write token bucket
+  per subscription. A 429 Retry-After, or a x-ms-ratelimit-remaining-subscription-* header showing the budget is nearly
+  used up, pauses every caller of that subscription, not only the one that got the response.
+*/
+public class ArmRateLimiter implements HttpPipelinePolicy
+{
+    private final double readsPerSecond;
+    private final int readBurst;
+    private final double writesPerSecond;
+    private final int writeBurst;
+    private final int lowWatermark;
+    private final ConcurrentHashMap<String, SubscriptionLimits> subscriptions = new ConcurrentHashMap<>();
+
+    private final LongAdder throttledResponses = new LongAdder();
+    private final LongAdder delayedRequests = new LongAdder();
+    private final LongAdder delayNanos = new LongAdder();
+
+    /**
+     * Creates a limiter using ARM's default subscription budgets: buckets of 250 reads refilled at 25 per second and
+     * 200 writes refilled at 10 per second
+     */
+    public ArmRateLimiter()
+    {
+        this(25, 250, 10, 200, 10);
+    }
+
+    /**
+     * @param readsPerSecond Sustained GET/HEAD rate per subscription
+     * @param readBurst Number of reads that may be sent at once after an idle period
+     * @param writesPerSecond Sustained PUT/PATCH/POST/DELETE rate per subscription
+     * @param writeBurst Number of writes that may be sent at once after an idle period
+     * @param lowWatermark Remaining budget reported by ARM under which callers are paused until it refills
+     */
+    public ArmRateLimiter(double readsPerSecond, int readBurst, double writesPerSecond, int writeBurst, int lowWatermark)
+    {
+        this.readsPerSecond = readsPerSecond;
+        this.readBurst = readBurst;
+        this.writesPerSecond = writesPerSecond;
+        this.writeBurst = writeBurst;
+        this.lowWatermark = lowWatermark;
+    }
+
+    @Override
+    public Mono<HttpResponse> process(HttpPipelineCallContext context, HttpPipelineNextPolicy next)
+    {
+        boolean read = isRead(context.getHttpRequest().getHttpMethod());
+        SubscriptionLimits limits = limitsFor(context.getHttpRequest().getUrl().getPath());
+        TokenBucket bucket = read ? limits.reads : limits.writes;
+
+        long waitNanos = bucket.reserve();
+        Mono<HttpResponse> send = Mono.defer(next::process)
+                .doOnNext(response -> observe(response, limits, bucket, read));
+
+        if (waitNanos <= 0)
+        {
+            return send;
+        }
+
+        delayedRequests.increment();
+        delayNanos.add(waitNanos);
+        return Mono.delay(Duration.ofNanos(waitNanos)).then(send);
+    }
+
+    public long getThrottledResponseCount()
+    {
+        return throttledResponses.sum();
+    }
+
+    public long getDelayedRequestCount()
+    {
+        return delayedRequests.sum();
+    }
+
+    public Duration getTotalDelay()
+    {
+        return Duration.ofNanos(delayNanos.sum());
+    }
+
+    @Override
+    public String toString()
+    {
+        return "throttled=" + getThrottledResponseCount() + ", delayed=" + getDelayedRequestCount()
+                + ", totalDelay=" + getTotalDelay().toMillis() + "ms";
+    }
+
+    private void observe(HttpResponse response, SubscriptionLimits limits, TokenBucket bucket, boolean read)
+    {
+        if (response.getStatusCode() == 429)
+        {
+            throttledResponses.increment();
+            Duration retryAfter = parseRetryAfter(response);
+            long pauseNanos = (retryAfter != null ? retryAfter : Duration.ofSeconds(1)).toNanos();
+            limits.reads.pauseFor(pauseNanos);
+            limits.writes.pauseFor(pauseNanos);
+            return;
+        }
+
+        String remainingHeader = response.getHeaderValue(read
+                ? "x-ms-ratelimit-remaining-subscription-reads"
+                : "x-ms-ratelimit-remaining-subscription-writes");
+        if (remainingHeader == null)
+        {
+            return;
+        }
+
+        try
+        {
+            long remaining = Long.parseLong(remainingHeader.trim());
+            bucket.observeRemaining(remaining, lowWatermark);
+        }
+        catch (NumberFormatException ignored)
+        {
+            // Unknown header format, keep pacing with the local estimate only
+        }
+    }
+
+    private SubscriptionLimits limitsFor(String path)
+    {
+        ParsedResourceId id = ParsedResourceId.parse(path);
+        String subscriptionId = id != null && id.getSubscriptionId() != null ? id.getSubscriptionId().toLowerCase(Locale.ROOT) : "";
+        return subscriptions.computeIfAbsent(subscriptionId, k -> new SubscriptionLimits(
+                new TokenBucket(readsPerSecond, readBurst),
+                new TokenBucket(writesPerSecond, writeBurst)));
+    }
+
+    private static boolean isRead(HttpMethod method)
+    {
+        return method == HttpMethod.GET || method == HttpMethod.HEAD;
+    }
+
+    /**
+     * Reads the delay requested by the service, in either the retry-after-ms, x-ms-retry-after-ms or Retry-After header
+     * @param response Response with a 429 or 503 status
+     * @return The delay, or null if none was given
+     */
+    static Duration parseRetryAfter(HttpResponse response)
+    {
+        for (String header : new String[]{"retry-after-ms", "x-ms-retry-after-ms"})
+        {
+            String value = response.getHeaderValue(header);
+            if (value != null)
+            {
+                try
+                {
+                    return Duration.ofMillis(Long.parseLong(value.trim()));
+                }
+                catch (NumberFormatException ignored)
+                {
+                    // Try the next header
+                }
+            }
+        }
+
+        String value = response.getHeaderValue("Retry-After");
+        if (value == null)
+        {
+            return null;
+        }
+
+        try
+        {
+            return Duration.ofSeconds(Long.parseLong(value.trim()));
+        }
+        catch (NumberFormatException e)
+        {
+            try
+            {
+                Duration untilDate = Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+                return untilDate.isNegative() ? Duration.ZERO : untilDate;
+            }
+            catch (RuntimeException ignored)
+            {
+                return null;
+            }
+        }
+    }
+
+    private static class SubscriptionLimits
+    {
+        private final TokenBucket reads;
+        private final TokenBucket writes;
+
+        private SubscriptionLimits(TokenBucket reads, TokenBucket writes)
+        {
+            this.reads = reads;
+            this.writes = writes;
+        }
+    }
+
+    /*
+      Token bucket handing out reservations: a caller always gets a token, possibly borrowed from the future, and is
+      told how long to wait before using it. Waiting happens in the caller's reactive chain, never on a lock.
+    */
+    private static class TokenBucket
+    {
+        private final double tokensPerNano;
+        private final double capacity;
+        private double tokens;
+        private long lastRefillNanos = System.nanoTime();
+        private long pausedUntilNanos = lastRefillNanos;
+
+        private TokenBucket(double tokensPerSecond, int capacity)
+        {
+            this.tokensPerNano = tokensPerSecond / 1_000_000_000d;
+            this.capacity = capacity;
+            this.tokens = capacity;
+        }
+
+        synchronized long reserve()
+        {
+            long now = refill();
+            tokens -= 1;
+
+            long waitForToken = tokens >= 0 ? 0 : (long) Math.ceil(-tokens / tokensPerNano);
+            long waitForPause = pausedUntilNanos - now;
+            return Math.max(waitForToken, waitForPause);
+        }
+
+        synchronized void pauseFor(long nanos)
+        {
+            long until = System.nanoTime() + nanos;
+            if (until - pausedUntilNanos > 0)
+            {
+                pausedUntilNanos = until;
+            }
+        }
+
+        // Aligns the local estimate with the budget ARM reports, pausing until it is back above the low watermark
+        synchronized void observeRemaining(long remaining, int lowWatermark)
+        {
+            refill();
+            tokens = Math.min(tokens, remaining);
+            if (remaining < lowWatermark)
+            {
+                long nanos = (long) Math.ceil((lowWatermark - remaining) / tokensPerNano);
+                long until = System.nanoTime() + nanos;
+                if (until - pausedUntilNanos > 0)
+                {
+                    pausedUntilNanos = until;
+                }
+            }
+        }
+
+        private long refill()
+        {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * tokensPerNano);
+            lastRefillNanos = now;
+            return now;
+        }
+    }
+}
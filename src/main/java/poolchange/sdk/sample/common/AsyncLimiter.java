@@ -0,0 +1,114 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.common;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Limits how many asynchronous operations run at once, queueing the rest without blocking any thread
+public class AsyncLimiter
+{
+    private final int maxConcurrency;
+    private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+    private int running;
+    private final AtomicInteger drainRequests = new AtomicInteger();
+
+    /**
+     * @param maxConcurrency Maximum number of operations in flight
+     */
+    public AsyncLimiter(int maxConcurrency)
+    {
+        if (maxConcurrency < 1)
+        {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1");
+        }
+
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Starts an operation now if a slot is free, or as soon as one frees up
+     * @param operation Starts the operation and returns its future
+     * @return Future completed like the operation's one
+     */
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> operation)
+    {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable start = () -> {
+            CompletableFuture<T> future;
+            try
+            {
+                future = operation.get();
+            }
+            catch (RuntimeException e)
+            {
+                future = CompletableFuture.failedFuture(e);
+            }
+
+            future.whenComplete((value, error) -> {
+                release();
+                if (error != null)
+                {
+                    result.completeExceptionally(error);
+                }
+                else
+                {
+                    result.complete(value);
+                }
+            });
+        };
+
+        synchronized (this)
+        {
+            queue.add(start);
+        }
+        drain();
+
+        return result;
+    }
+
+    private void release()
+    {
+        synchronized (this)
+        {
+            running--;
+        }
+        drain();
+    }
+
+    // Starts queued operations while slots are free. Operations completing synchronously re-enter here, in which case
+    // the outer loop picks up their freed slot instead of recursing
+    private void drain()
+    {
+        if (drainRequests.getAndIncrement() != 0)
+        {
+            return;
+        }
+
+        int missed = 1;
+        do
+        {
+            while (true)
+            {
+                Runnable next;
+                synchronized (this)
+                {
+                    if (running >= maxConcurrency || queue.isEmpty())
+                    {
+                        break;
+                    }
+                    next = queue.poll();
+                    running++;
+                }
+                next.run();
+            }
+            missed = drainRequests.addAndGet(-missed);
+        }
+        while (missed != 0);
+    }
+}
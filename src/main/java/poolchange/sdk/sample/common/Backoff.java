@@ -0,0 +1,51 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.common;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Exponential backoff with jitter, used when polling or retrying ANF operations
+public class Backoff
+{
+    private final long initialMillis;
+    private final long maxMillis;
+    private final double multiplier;
+    private final double jitter;
+
+    /**
+     * @param initial Delay before the second attempt
+     * @param max Upper bound for any delay
+     * @param multiplier Growth factor applied on every attempt
+     * @param jitter Fraction of the delay randomly added or removed, between 0 and 1
+     */
+    public Backoff(Duration initial, Duration max, double multiplier, double jitter)
+    {
+        if (multiplier < 1 || jitter < 0 || jitter > 1)
+        {
+            throw new IllegalArgumentException("Multiplier must be at least 1 and jitter between 0 and 1");
+        }
+
+        this.initialMillis = Math.max(1, initial.toMillis());
+        this.maxMillis = Math.max(initialMillis, max.toMillis());
+        this.multiplier = multiplier;
+        this.jitter = jitter;
+    }
+
+    /**
+     * Gets the delay to wait before a given attempt
+     * @param attempt Number of attempts already made, starting at 1
+     * @return Delay with jitter applied, never more than the configured maximum
+     */
+    public Duration delay(int attempt)
+    {
+        double base = initialMillis * Math.pow(multiplier, Math.max(0, attempt - 1));
+        double capped = Math.min(base, maxMillis);
+        double jittered = capped + capped * jitter * (ThreadLocalRandom.current().nextDouble() * 2 - 1);
+
+        return Duration.ofMillis((long) Math.min(Math.max(1, jittered), maxMillis));
+    }
+}
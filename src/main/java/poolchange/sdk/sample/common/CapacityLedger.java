@@ -0,0 +1,293 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.common;
+
+import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
+import com.azure.resourcemanager.netapp.fluent.models.CapacityPoolInner;
+import com.azure.resourcemanager.netapp.fluent.models.VolumeInner;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+  In-process ledger of the free capacity of Capacity Pools, so that concurrent pool changes and creations into the same
+  pool can't overcommit it. A pool is seeded with its size and the quotas of its Volumes, then every operation reserves
+  the Volume's quota before it is sent, confirms it once the Volume is in the pool and cancels it if it fails. Each pool
+  has its own lock, held only for a few arithmetic operations, so pools never contend with each other. Reservations in
+  flight are kept apart from the quotas of the Volumes, so that a pool can be read again at any time: the ledger does so
+  once a balance is older than MAX_AGE, and after operations whose outcome it can't tell, like a failed pool change.
+*/
+public class CapacityLedger
+{
+    private static final CapacityLedger defaultLedger = new CapacityLedger();
+
+    // Other clients create, resize and delete resources too, a balance older than this is read again before it is used
+    private static final Duration MAX_AGE = Duration.ofMinutes(5);
+
+    private final ConcurrentHashMap<String, PoolBalance> pools = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the ledger used by Update and Creation
+     * @return The shared ledger
+     */
+    public static CapacityLedger getDefault()
+    {
+        return defaultLedger;
+    }
+
+    /**
+     * Starts tracking a pool, or records what a fresh read of it found. Reservations in flight are kept
+     * @param poolId Resource id of the Capacity Pool
+     * @param size Size of the pool in bytes
+     * @param allocated Sum of the quotas of the pool's Volumes in bytes
+     */
+    public void track(String poolId, long size, long allocated)
+    {
+        PoolBalance balance = pools.computeIfAbsent(keyOf(poolId), key -> new PoolBalance());
+        synchronized (balance)
+        {
+            balance.size = size;
+            balance.allocated = allocated;
+            balance.seededNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Reads a pool's size and Volumes, unless it is tracked and was read less than MAX_AGE ago
+     * @param anfClient Azure NetApp Files Management Client
+     * @param poolId Resource id of the Capacity Pool
+     */
+    public void load(NetAppManagementClient anfClient, String poolId)
+    {
+        if (isFresh(poolId))
+        {
+            return;
+        }
+
+        ParsedResourceId id = ParsedResourceId.parse(poolId);
+        CapacityPoolInner pool = anfClient.getPools().get(id.getResourceGroup(), id.getAccount(), id.getCapacityPool());
+        long allocated = 0;
+        for (VolumeInner volume : anfClient.getVolumes().list(id.getResourceGroup(), id.getAccount(), id.getCapacityPool()))
+        {
+            allocated += volume.usageThreshold();
+        }
+        track(poolId, pool.size(), allocated);
+    }
+
+    /**
+     * Same as load without blocking: the pool and its Volumes are read through the async client
+     * @param anfClient Azure NetApp Files Management Client
+     * @param poolId Resource id of the Capacity Pool
+     * @return Future completed once the pool is tracked
+     */
+    public CompletableFuture<Void> loadAsync(NetAppManagementClient anfClient, String poolId)
+    {
+        if (isFresh(poolId))
+        {
+            return CompletableFuture.completedFuture(null);
+        }
+        return read(anfClient, poolId).toFuture();
+    }
+
+    /**
+     * Reads a tracked pool again, e.g. once a Volume may have entered or left it without the ledger knowing. A failed
+     * read keeps the current balance, the pool is read again once it is too old
+     * @param anfClient Azure NetApp Files Management Client
+     * @param poolId Resource id of the Capacity Pool
+     * @return Future completed once the pool was read, never exceptionally
+     */
+    public CompletableFuture<Void> reloadAsync(NetAppManagementClient anfClient, String poolId)
+    {
+        if (!isTracked(poolId))
+        {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return read(anfClient, poolId)
+                .onErrorResume(e -> {
+                    Utils.writeWarningMessage("Failed to read Capacity Pool " + poolId + " again - " + ErrorClassifier.unwrap(e).getMessage());
+                    return Mono.empty();
+                })
+                .toFuture();
+    }
+
+    private Mono<Void> read(NetAppManagementClient anfClient, String poolId)
+    {
+        return Mono.defer(() -> {
+            ParsedResourceId id = ParsedResourceId.parse(poolId);
+            Mono<Long> allocated = anfClient.getVolumes().listAsync(id.getResourceGroup(), id.getAccount(), id.getCapacityPool())
+                    .map(VolumeInner::usageThreshold)
+                    .reduce(0L, Long::sum);
+            return anfClient.getPools().getAsync(id.getResourceGroup(), id.getAccount(), id.getCapacityPool())
+                    .zipWith(allocated, (pool, bytes) -> {
+                        track(poolId, pool.size(), bytes);
+                        return pool;
+                    });
+        }).then();
+    }
+
+    public boolean isTracked(String poolId)
+    {
+        return pools.containsKey(keyOf(poolId));
+    }
+
+    private boolean isFresh(String poolId)
+    {
+        PoolBalance balance = pools.get(keyOf(poolId));
+        if (balance == null)
+        {
+            return false;
+        }
+        synchronized (balance)
+        {
+            return System.nanoTime() - balance.seededNanos < MAX_AGE.toNanos();
+        }
+    }
+
+    /**
+     * Reserves capacity in a pool if it has enough left. Pools that are not tracked have no limit
+     * @param poolId Resource id of the Capacity Pool
+     * @param bytes Capacity to reserve
+     * @return True if the capacity was reserved
+     */
+    public boolean tryReserve(String poolId, long bytes)
+    {
+        PoolBalance balance = pools.get(keyOf(poolId));
+        if (balance == null)
+        {
+            return true;
+        }
+
+        synchronized (balance)
+        {
+            if (balance.free() < bytes)
+            {
+                return false;
+            }
+            balance.reserved += bytes;
+            return true;
+        }
+    }
+
+    /**
+     * Turns a reservation into the quota of a Volume, once the Volume is in the pool
+     * @param poolId Resource id of the Capacity Pool
+     * @param bytes Capacity reserved
+     */
+    public void confirm(String poolId, long bytes)
+    {
+        PoolBalance balance = pools.get(keyOf(poolId));
+        if (balance != null)
+        {
+            synchronized (balance)
+            {
+                balance.reserved = Math.max(0, balance.reserved - bytes);
+                balance.allocated += bytes;
+            }
+        }
+    }
+
+    /**
+     * Gives a reservation back, after the operation it was made for failed
+     * @param poolId Resource id of the Capacity Pool
+     * @param bytes Capacity reserved
+     */
+    public void cancel(String poolId, long bytes)
+    {
+        PoolBalance balance = pools.get(keyOf(poolId));
+        if (balance != null)
+        {
+            synchronized (balance)
+            {
+                balance.reserved = Math.max(0, balance.reserved - bytes);
+            }
+        }
+    }
+
+    /**
+     * Returns the quota of a Volume that left a pool. Does nothing for pools that are not tracked
+     * @param poolId Resource id of the Capacity Pool
+     * @param bytes Capacity to release
+     */
+    public void release(String poolId, long bytes)
+    {
+        PoolBalance balance = pools.get(keyOf(poolId));
+        if (balance != null)
+        {
+            synchronized (balance)
+            {
+                balance.allocated = Math.max(0, balance.allocated - bytes);
+            }
+        }
+    }
+
+    /**
+     * Records a new size of a pool. When it shrinks below what is reserved, reservations fail until enough is released
+     * @param poolId Resource id of the Capacity Pool
+     * @param size New size of the pool in bytes
+     */
+    public void resize(String poolId, long size)
+    {
+        PoolBalance balance = pools.get(keyOf(poolId));
+        if (balance != null)
+        {
+            synchronized (balance)
+            {
+                balance.size = size;
+            }
+        }
+    }
+
+    /**
+     * @param poolId Resource id of the Capacity Pool
+     * @return Bytes left to reserve in the pool, or Long.MAX_VALUE if it is not tracked
+     */
+    public long getFree(String poolId)
+    {
+        PoolBalance balance = pools.get(keyOf(poolId));
+        if (balance == null)
+        {
+            return Long.MAX_VALUE;
+        }
+        synchronized (balance)
+        {
+            return balance.free();
+        }
+    }
+
+    /**
+     * Stops tracking a pool, e.g. once it is deleted. It is seeded again on its next reservation
+     * @param poolId Resource id of the Capacity Pool
+     */
+    public void forget(String poolId)
+    {
+        pools.remove(keyOf(poolId));
+    }
+
+    // Resource ids are case insensitive
+    private static String keyOf(String poolId)
+    {
+        return poolId.toLowerCase(Locale.ROOT);
+    }
+
+    // Guarded by itself
+    private static class PoolBalance
+    {
+        private long size;
+        private long allocated;
+        private long reserved;
+        private long seededNanos;
+
+        private long free()
+        {
+            return size - allocated - reserved;
+        }
+    }
+}
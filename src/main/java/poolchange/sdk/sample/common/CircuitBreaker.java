@@ -0,0 +1,123 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.common;
+
+import java.time.Duration;
+import java.util.Locale;
+
+/*
+  Stops sending calls to a service that keeps failing. After a number of consecutive throttled or transient failures
+  the breaker opens: calls are held back until the open period ends. Then a single trial call goes through; if it
+  succeeds the breaker closes, if it fails it opens again. Other failures, such as a resource not found, show the
+  service is answering and count as successes.
+*/
+public class CircuitBreaker
+{
+    private enum State
+    {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final long TRIAL_WAIT_NANOS = Duration.ofMillis(200).toNanos();
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openNanos;
+
+    // Guarded by this
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+    private long opened;
+
+    /**
+     * @param name Name used in messages, e.g. "arm-reads"
+     * @param failureThreshold Number of consecutive failures opening the breaker
+     * @param openDuration Time calls are held back once it opened
+     */
+    public CircuitBreaker(String name, int failureThreshold, Duration openDuration)
+    {
+        if (failureThreshold < 1)
+        {
+            throw new IllegalArgumentException("failureThreshold must be at least 1");
+        }
+
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+    }
+
+    /**
+     * Asks for permission to send a call. A call that got it must report its outcome with onResult
+     * @return Zero if the call may be sent now, otherwise the time to wait before asking again
+     */
+    public synchronized Duration tryAcquire()
+    {
+        long now = System.nanoTime();
+        if (state == State.OPEN)
+        {
+            long remaining = openedAt + openNanos - now;
+            if (remaining > 0)
+            {
+                return Duration.ofNanos(remaining);
+            }
+            state = State.HALF_OPEN;
+        }
+
+        if (state == State.HALF_OPEN)
+        {
+            if (trialInFlight)
+            {
+                return Duration.ofNanos(TRIAL_WAIT_NANOS);
+            }
+            trialInFlight = true;
+        }
+        return Duration.ZERO;
+    }
+
+    /**
+     * Reports the outcome of a call allowed by tryAcquire
+     * @param error Category of the failure, or null if the call succeeded
+     */
+    public synchronized void onResult(ErrorCategory error)
+    {
+        boolean failed = error == ErrorCategory.THROTTLED || error == ErrorCategory.TRANSIENT;
+        boolean trial = state == State.HALF_OPEN && trialInFlight;
+        trialInFlight = false;
+
+        if (!failed)
+        {
+            consecutiveFailures = 0;
+            state = State.CLOSED;
+            return;
+        }
+
+        consecutiveFailures++;
+        if (trial || (state == State.CLOSED && consecutiveFailures >= failureThreshold))
+        {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            opened++;
+            Utils.writeWarningMessage("Circuit breaker " + name + " opened after " + consecutiveFailures + " consecutive failures, holding calls back for "
+                    + Duration.ofNanos(openNanos).toMillis() + "ms");
+        }
+    }
+
+    /**
+     * @return Whether calls are currently held back
+     */
+    public synchronized boolean isOpen()
+    {
+        return state == State.OPEN && System.nanoTime() - openedAt < openNanos;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return name + ": " + state.name().toLowerCase(Locale.ROOT) + ", opened " + opened + " times";
+    }
+}
@@ -5,14 +5,35 @@
 
 package poolchange.sdk.sample.common;
 
+import com.azure.core.http.HttpHeaders;
+import com.azure.core.http.policy.AddHeadersFromContextPolicy;
+import com.azure.core.http.rest.Response;
+import com.azure.core.util.Context;
 import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
 import com.azure.resourcemanager.netapp.fluent.models.*;
 
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 // Contains public methods for SDK related operations
 public class CommonSdk
 {
+    private static final ResourceCache resourceCache = new ResourceCache(10000);
+
+    /**
+     * Gets the cache used by getResource. Creation, Update and Cleanup keep it in sync with the changes they make
+     * @return The shared resource cache
+     */
+    public static ResourceCache getResourceCache()
+    {
+        return resourceCache;
+    }
+
     /**
-     * Returns an ANF resource or null if it does not exist
+     * Returns an ANF resource or null if it does not exist. Resources are served from the shared resource cache while
+     * within their time to live, then revalidated with their ETag. The returned instance may be shared and must not
+     * be modified
      * @param anfClient Azure NetApp Files Management Client
      * @param parameters List of parameters required depending on the resource type:
      *                   Account         -> ResourceGroupName, AccountName
@@ -25,134 +46,266 @@ public class CommonSdk
      */
     public static <T> Object getResource(NetAppManagementClient anfClient, String[] parameters, Class<T> clazz)
     {
-        try
+        String resourceId = getResourceId(anfClient, parameters, clazz);
+        Object cached = resourceCache.getFresh(resourceId);
+        if (cached != null)
         {
-            switch (clazz.getSimpleName())
-            {
-                case "NetAppAccountInner":
-                    return anfClient.getAccounts().getByResourceGroup(
-                            parameters[0],
-                            parameters[1]);
+            return cached;
+        }
 
-                case "SnapshotPolicyInner":
-                    return anfClient.getSnapshotPolicies().get(
-                            parameters[0],
-                            parameters[1],
-                            parameters[2]);
+        // An expired entry is revalidated: the service answers 304 Not Modified if it did not change
+        String etag = resourceCache.getETag(resourceId);
+        Context context = etag == null
+                ? Context.NONE
+                : new Context(AddHeadersFromContextPolicy.AZURE_REQUEST_HTTP_HEADERS_KEY, new HttpHeaders().set("If-None-Match", etag));
 
-                case "CapacityPoolInner":
-                    return anfClient.getPools().get(
-                            parameters[0],
-                            parameters[1],
-                            parameters[2]);
+        try
+        {
+            Response<?> response = OperationRetryPolicy.reads().call(() -> getWithResponse(anfClient, parameters, clazz, context));
+            if (response == null)
+            {
+                return null;
+            }
 
-                case "VolumeInner":
-                   return anfClient.getVolumes().get(
-                            parameters[0],
-                            parameters[1],
-                            parameters[2],
-                            parameters[3]);
+            resourceCache.put(resourceId, response.getValue(), response.getHeaders().getValue("ETag"));
+            return response.getValue();
+        }
+        catch (RuntimeException e)
+        {
+            if (etag != null && ErrorClassifier.getStatusCode(e) == 304)
+            {
+                Object revalidated = resourceCache.revalidate(resourceId);
+                if (revalidated != null)
+                {
+                    return revalidated;
+                }
+            }
 
-                case "SnapshotInner":
-                    return anfClient.getSnapshots().get(
-                            parameters[0],
-                            parameters[1],
-                            parameters[2],
-                            parameters[3],
-                            parameters[4]);
+            if (ErrorClassifier.isNotFound(e))
+            {
+                resourceCache.invalidate(resourceId);
+                return null;
             }
+            Utils.writeWarningMessage("Error finding resource (" + ErrorClassifier.classify(e) + ") - " + e.getMessage());
         }
-        catch (Exception e)
+
+        return null;
+    }
+
+    // Sends the get of getResource, null for an unknown resource type
+    private static <T> Response<?> getWithResponse(NetAppManagementClient anfClient, String[] parameters, Class<T> clazz, Context context)
+    {
+        switch (clazz.getSimpleName())
         {
-            if (e.getMessage().contains("Status code 404"))
+            case "NetAppAccountInner":
+                return anfClient.getAccounts().getByResourceGroupWithResponse(
+                        parameters[0],
+                        parameters[1],
+                        context);
+
+            case "SnapshotPolicyInner":
+                return anfClient.getSnapshotPolicies().getWithResponse(
+                        parameters[0],
+                        parameters[1],
+                        parameters[2],
+                        context);
+
+            case "CapacityPoolInner":
+                return anfClient.getPools().getWithResponse(
+                        parameters[0],
+                        parameters[1],
+                        parameters[2],
+                        context);
+
+            case "VolumeInner":
+                return anfClient.getVolumes().getWithResponse(
+                        parameters[0],
+                        parameters[1],
+                        parameters[2],
+                        parameters[3],
+                        context);
+
+            case "SnapshotInner":
+                return anfClient.getSnapshots().getWithResponse(
+                        parameters[0],
+                        parameters[1],
+                        parameters[2],
+                        parameters[3],
+                        parameters[4],
+                        context);
+
+            default:
                 return null;
-            Utils.writeWarningMessage("Error finding resource - " + e.getMessage());
         }
+    }
 
-        return null;
+    /**
+     * Builds the resource id of an ANF resource from its names
+     * @param anfClient Azure NetApp Files Management Client, provides the subscription id
+     * @param parameters List of parameters required depending on the resource type, same as getResource
+     * @param clazz Valid class types: NetAppAccountInner, CapacityPoolInner, VolumeInner, SnapshotInner, SnapshotPolicyInner
+     * @return Resource id of the resource
+     */
+    public static <T> String getResourceId(NetAppManagementClient anfClient, String[] parameters, Class<T> clazz)
+    {
+        StringBuilder resourceId = new StringBuilder(256)
+                .append("/subscriptions/").append(anfClient.getSubscriptionId())
+                .append("/resourceGroups/").append(parameters[0])
+                .append("/providers/Microsoft.NetApp/netAppAccounts/").append(parameters[1]);
+
+        switch (clazz.getSimpleName())
+        {
+            case "SnapshotPolicyInner":
+                resourceId.append("/snapshotPolicies/").append(parameters[2]);
+                break;
+
+            case "CapacityPoolInner":
+                resourceId.append("/capacityPools/").append(parameters[2]);
+                break;
+
+            case "VolumeInner":
+                resourceId.append("/capacityPools/").append(parameters[2])
+                        .append("/volumes/").append(parameters[3]);
+                break;
+
+            case "SnapshotInner":
+                resourceId.append("/capacityPools/").append(parameters[2])
+                        .append("/volumes/").append(parameters[3])
+                        .append("/snapshots/").append(parameters[4]);
+                break;
+        }
+
+        return resourceId.toString();
     }
 
+    private static final Backoff DEFAULT_WAIT_BACKOFF = new Backoff(Duration.ofSeconds(1), Duration.ofSeconds(10), 2, 0.2);
+
     /**
-     * Method to overload function waitForNoANFResource(client, string, int, int, clazz) with default values
+     * Method to overload function waitForNoANFResource(client, string, Duration, clazz) with default values
      * @param anfClient Azure NetApp Files Management Client
      * @param resourceId Resource id of the resource that was deleted
      * @param clazz Valid class types: NetAppAccountInner, CapacityPoolInner, VolumeInner, SnapshotInner
+     * @return Time it took for the resource to disappear
+     * @throws TimeoutException If the resource still exists after 10 minutes
      */
-    public static <T> void waitForNoANFResource(NetAppManagementClient anfClient, String resourceId, Class<T> clazz)
+    public static <T> Duration waitForNoANFResource(NetAppManagementClient anfClient, String resourceId, Class<T> clazz)
+            throws TimeoutException
     {
-        waitForNoANFResource(anfClient, resourceId, 10, 60, clazz);
+        return waitForNoANFResource(anfClient, resourceId, Duration.ofMinutes(10), DEFAULT_WAIT_BACKOFF, clazz);
     }
 
     /**
-     * This function checks if a specific ANF resource that was recently deleted stops existing. It breaks the wait
-     * if the resource is not found anymore or if polling reached its maximum retries.
+     * Method to overload function waitForNoANFResource(client, string, Duration, Backoff, clazz) using a fixed
+     * polling budget. Polls back off up to intervalInSec and the wait gives up after intervalInSec * retries seconds
      * @param anfClient Azure NetApp Files Management Client
      * @param resourceId Resource id of the resource that was deleted
-     * @param intervalInSec Time in second that the function will poll to see if the resource has been deleted
-     * @param retries Number of times polling will be performed
+     * @param intervalInSec Maximum time in second between two polls
+     * @param retries Number of intervals to wait before giving up
      * @param clazz Valid class types: NetAppAccountInner, CapacityPoolInner, VolumeInner, SnapshotInner
+     * @return Time it took for the resource to disappear
+     * @throws TimeoutException If the resource still exists after intervalInSec * retries seconds
      */
-    public static <T> void waitForNoANFResource(NetAppManagementClient anfClient, String resourceId, int intervalInSec, int retries, Class<T> clazz)
+    public static <T> Duration waitForNoANFResource(NetAppManagementClient anfClient, String resourceId, int intervalInSec, int retries, Class<T> clazz)
+            throws TimeoutException
     {
-        for (int i = 0; i < retries; i++)
+        Backoff backoff = new Backoff(Duration.ofSeconds(1), Duration.ofSeconds(intervalInSec), 2, 0.2);
+        return waitForNoANFResource(anfClient, resourceId, Duration.ofSeconds((long) intervalInSec * retries), backoff, clazz);
+    }
+
+    /**
+     * This function checks if a specific ANF resource that was recently deleted stops existing. The first probe is
+     * sent right away, then polls back off exponentially with jitter. It stops as soon as the resource is not found
+     * anymore, and fails like DeletionWaiter when the timeout is reached. Throttled, busy or transient failures of a
+     * poll don't stop it.
+     * @param anfClient Azure NetApp Files Management Client
+     * @param resourceId Resource id of the resource that was deleted
+     * @param timeout Total time to wait for the resource to disappear
+     * @param backoff Delays between two polls
+     * @param clazz Valid class types: NetAppAccountInner, CapacityPoolInner, VolumeInner, SnapshotInner
+     * @return Time it took for the resource to disappear
+     * @throws TimeoutException If the resource still exists when the timeout is reached, or the wait was interrupted
+     * @throws RuntimeException If a poll fails in a way retrying won't fix, e.g. an authorization failure
+     */
+    public static <T> Duration waitForNoANFResource(NetAppManagementClient anfClient, String resourceId, Duration timeout, Backoff backoff, Class<T> clazz)
+            throws TimeoutException
+    {
+        long start = System.nanoTime();
+        long deadline = start + timeout.toNanos();
+
+        for (int attempt = 1; ; attempt++)
         {
-            Utils.threadSleep(intervalInSec*2000);
+            if (!anfResourceExists(anfClient, resourceId, clazz))
+            {
+                return Duration.ofNanos(System.nanoTime() - start);
+            }
 
-            try
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || Thread.currentThread().isInterrupted())
             {
-                switch (clazz.getSimpleName())
-                {
-                    case "NetAppAccountInner":
-                        NetAppAccountInner account = anfClient.getAccounts().getByResourceGroup(ResourceUriUtils.getResourceGroup(resourceId),
-                                ResourceUriUtils.getAnfAccount(resourceId));
-                        if (account == null)
-                            return;
-
-                        continue;
-
-                    case "SnapshotPolicyInner":
-                        SnapshotPolicyInner snapshotPolicy = anfClient.getSnapshotPolicies().get(ResourceUriUtils.getResourceGroup(resourceId),
-                                ResourceUriUtils.getAnfAccount(resourceId),
-                                ResourceUriUtils.getAnfSnapshotPolicy(resourceId));
-                        if (snapshotPolicy == null)
-                            return;
-
-                        continue;
-
-                    case "CapacityPoolInner":
-                        CapacityPoolInner pool = anfClient.getPools().get(ResourceUriUtils.getResourceGroup(resourceId),
-                                ResourceUriUtils.getAnfAccount(resourceId),
-                                ResourceUriUtils.getAnfCapacityPool(resourceId));
-                        if (pool == null)
-                            return;
-
-                        continue;
-
-                    case "VolumeInner":
-                        VolumeInner volume = anfClient.getVolumes().get(ResourceUriUtils.getResourceGroup(resourceId),
-                                ResourceUriUtils.getAnfAccount(resourceId),
-                                ResourceUriUtils.getAnfCapacityPool(resourceId),
-                                ResourceUriUtils.getAnfVolume(resourceId));
-                        if (volume == null)
-                            return;
-
-                        continue;
-
-                    case "SnapshotInner":
-                        SnapshotInner snapshot = anfClient.getSnapshots().get(ResourceUriUtils.getResourceGroup(resourceId),
-                                ResourceUriUtils.getAnfAccount(resourceId),
-                                ResourceUriUtils.getAnfCapacityPool(resourceId),
-                                ResourceUriUtils.getAnfVolume(resourceId),
-                                ResourceUriUtils.getAnfSnapshot(resourceId));
-                        if (snapshot == null)
-                            return;
-                }
+                Duration waited = Duration.ofNanos(System.nanoTime() - start);
+                throw new TimeoutException("Resource still exists after " + waited.getSeconds() + "s waiting for it to be deleted: " + resourceId);
             }
-            catch (Exception e)
+
+            long sleepNanos = Math.min(backoff.delay(attempt).toNanos(), remaining);
+            Utils.threadSleep((int) TimeUnit.NANOSECONDS.toMillis(sleepNanos));
+        }
+    }
+
+    /**
+     * Probes a single ANF resource
+     * @param anfClient Azure NetApp Files Management Client
+     * @param resourceId Resource id of the resource
+     * @param clazz Valid class types: NetAppAccountInner, CapacityPoolInner, VolumeInner, SnapshotInner, SnapshotPolicyInner
+     * @return False if the resource is gone, true if it exists or the read failed in a way worth retrying
+     * @throws RuntimeException The failure of the read when retrying won't fix it
+     */
+    private static <T> boolean anfResourceExists(NetAppManagementClient anfClient, String resourceId, Class<T> clazz)
+    {
+        ParsedResourceId id = ParsedResourceId.parse(resourceId);
+
+        try
+        {
+            switch (clazz.getSimpleName())
             {
-                Utils.writeWarningMessage(e.getMessage());
-                break;
+                case "NetAppAccountInner":
+                    return anfClient.getAccounts().getByResourceGroup(id.getResourceGroup(),
+                            id.getAccount()) != null;
+
+                case "SnapshotPolicyInner":
+                    return anfClient.getSnapshotPolicies().get(id.getResourceGroup(),
+                            id.getAccount(),
+                            id.getSnapshotPolicy()) != null;
+
+                case "CapacityPoolInner":
+                    return anfClient.getPools().get(id.getResourceGroup(),
+                            id.getAccount(),
+                            id.getCapacityPool()) != null;
+
+                case "VolumeInner":
+                    return anfClient.getVolumes().get(id.getResourceGroup(),
+                            id.getAccount(),
+                            id.getCapacityPool(),
+                            id.getVolume()) != null;
+
+                case "SnapshotInner":
+                    return anfClient.getSnapshots().get(id.getResourceGroup(),
+                            id.getAccount(),
+                            id.getCapacityPool(),
+                            id.getVolume(),
+                            id.getSnapshot()) != null;
+            }
+        }
+        catch (RuntimeException e)
+        {
+            // A failure retrying won't fix, e.g. an authorization failure, says nothing about the resource being gone
+            ErrorCategory category = ErrorClassifier.classify(e);
+            if (category == ErrorCategory.FATAL)
+            {
+                throw e;
             }
+            return category != ErrorCategory.NOT_FOUND;
         }
+
+        return false;
     }
 }
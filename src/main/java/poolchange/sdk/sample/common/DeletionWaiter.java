@@ -0,0 +1,319 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.common;
+
+import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Waits for many deleted ANF resources to disappear, listing each parent once per poll instead of getting every resource
+public class DeletionWaiter implements AutoCloseable
+{
+    private final NetAppManagementClient anfClient;
+    private final ScheduledExecutorService scheduler;
+    private final Backoff backoff;
+    private final Duration timeout;
+
+    // Groups with at least one pending resource, guarded by this
+    private final Map<String, ParentGroup> activeGroups = new HashMap<>();
+
+    /**
+     * @param anfClient Azure NetApp Files Management Client
+     * @param threads Number of threads issuing list calls
+     * @param timeout Total time to wait for each resource
+     * @param backoff Delays between two list calls for the same parent
+     */
+    public DeletionWaiter(NetAppManagementClient anfClient, int threads, Duration timeout, Backoff backoff)
+    {
+        this.anfClient = anfClient;
+        this.scheduler = Executors.newScheduledThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "anf-deletion-waiter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timeout = timeout;
+        this.backoff = backoff;
+    }
+
+    /**
+     * Starts waiting for the given resources to disappear. Resources are grouped by parent Account, Capacity Pool
+     * or Volume and each group is listed once per poll, including resources added by earlier calls that are still
+     * pending. The first poll of a new group is sent right away
+     * @param resourceIds Resource ids of Accounts, Snapshot Policies, Capacity Pools, Volumes or Snapshots that were deleted
+     * @return Future per resource id, keyed by the lower case resource id since ids differing only in case name the
+     *         same resource. Completed with the time it took the resource to disappear, or exceptionally with a
+     *         TimeoutException if it is still listed when the timeout is reached, or with the failure of a list call
+     *         retrying won't fix, e.g. an authorization failure
+     */
+    public Map<String, CompletableFuture<Duration>> waitForNoANFResources(Collection<String> resourceIds)
+    {
+        Map<String, CompletableFuture<Duration>> futures = new LinkedHashMap<>();
+
+        for (String resourceId : resourceIds)
+        {
+            String resourceKey = resourceId.toLowerCase(Locale.ROOT);
+            if (futures.containsKey(resourceKey))
+            {
+                continue;
+            }
+
+            ParsedResourceId id = ParsedResourceId.parse(resourceId);
+            String parentId = id != null && id.getAccount() != null ? id.getParentId() : null;
+            if (parentId == null)
+            {
+                futures.put(resourceKey, CompletableFuture.failedFuture(
+                        new IllegalArgumentException("Not a nested ANF resource id: " + resourceId)));
+                continue;
+            }
+
+            ChildKind kind = ChildKind.of(id);
+            String groupKey = kind + "|" + parentId.toLowerCase(Locale.ROOT);
+            boolean newGroup = false;
+            ParentGroup group;
+
+            synchronized (this)
+            {
+                group = activeGroups.get(groupKey);
+                if (group == null)
+                {
+                    group = new ParentGroup(groupKey, kind, ParsedResourceId.parse(parentId));
+                    activeGroups.put(groupKey, group);
+                    newGroup = true;
+                }
+                futures.put(resourceKey, group.waiting.computeIfAbsent(resourceKey, k -> new Waiting()).future);
+            }
+
+            if (newGroup)
+            {
+                ParentGroup firstPoll = group;
+                scheduler.execute(() -> poll(firstPoll));
+            }
+        }
+
+        return futures;
+    }
+
+    /**
+     * Waits for a single resource to disappear, sharing list calls with every other pending resource of the same parent
+     * @param resourceId Resource id of the resource that was deleted
+     * @return Future completed with the time it took the resource to disappear
+     */
+    public CompletableFuture<Duration> waitForNoANFResource(String resourceId)
+    {
+        return waitForNoANFResources(Collections.singletonList(resourceId)).get(resourceId.toLowerCase(Locale.ROOT));
+    }
+
+    @Override
+    public void close()
+    {
+        scheduler.shutdownNow();
+    }
+
+    private void poll(ParentGroup group)
+    {
+        group.attempts++;
+        Set<String> pending;
+        synchronized (this)
+        {
+            pending = new HashSet<>(group.waiting.keySet());
+        }
+
+        Set<String> listed;
+        try
+        {
+            listed = listChildren(group, pending);
+        }
+        catch (RuntimeException e)
+        {
+            synchronized (this)
+            {
+                group.waiting.values().forEach(waiting -> waiting.future.completeExceptionally(e));
+                group.waiting.clear();
+                activeGroups.remove(group.key);
+            }
+            return;
+        }
+
+        long now = System.nanoTime();
+        long nextDeadline = Long.MAX_VALUE;
+
+        synchronized (this)
+        {
+            Iterator<Map.Entry<String, Waiting>> it = group.waiting.entrySet().iterator();
+            while (it.hasNext())
+            {
+                Map.Entry<String, Waiting> entry = it.next();
+                Waiting waiting = entry.getValue();
+                long elapsed = now - waiting.startNanos;
+
+                if (listed == null || (pending.contains(entry.getKey()) && !listed.contains(entry.getKey())))
+                {
+                    waiting.future.complete(Duration.ofNanos(elapsed));
+                    it.remove();
+                }
+                else if (elapsed >= timeout.toNanos())
+                {
+                    waiting.future.completeExceptionally(new TimeoutException("Resource still exists after "
+                            + timeout.getSeconds() + "s: " + entry.getKey()));
+                    it.remove();
+                }
+                else
+                {
+                    nextDeadline = Math.min(nextDeadline, waiting.startNanos + timeout.toNanos());
+                }
+            }
+
+            if (group.waiting.isEmpty())
+            {
+                activeGroups.remove(group.key);
+                return;
+            }
+        }
+
+        long delay = Math.min(backoff.delay(group.attempts).toNanos(), Math.max(0, nextDeadline - now));
+        try
+        {
+            scheduler.schedule(() -> poll(group), delay, TimeUnit.NANOSECONDS);
+        }
+        catch (RuntimeException e)
+        {
+            // Waiter was closed, nobody is going to poll these anymore
+            synchronized (this)
+            {
+                group.waiting.values().forEach(waiting -> waiting.future.cancel(false));
+                group.waiting.clear();
+                activeGroups.remove(group.key);
+            }
+        }
+    }
+
+    /**
+     * Lists the children of a parent
+     * @return Lower case resource ids currently listed, or null if the parent itself is gone
+     * @throws RuntimeException The failure of the list call when retrying won't fix it
+     */
+    private Set<String> listChildren(ParentGroup group, Set<String> pending)
+    {
+        ParsedResourceId parent = group.parent;
+        String resourceGroup = parent.getResourceGroup();
+        Set<String> ids = new HashSet<>();
+
+        try
+        {
+            switch (group.kind)
+            {
+                case ACCOUNT:
+                    anfClient.getAccounts().list(resourceGroup).forEach(r -> ids.add(r.id().toLowerCase(Locale.ROOT)));
+                    break;
+
+                case SNAPSHOT_POLICY:
+                    anfClient.getSnapshotPolicies().list(resourceGroup,
+                            parent.getAccount()).forEach(r -> ids.add(r.id().toLowerCase(Locale.ROOT)));
+                    break;
+
+                case CAPACITY_POOL:
+                    anfClient.getPools().list(resourceGroup,
+                            parent.getAccount()).forEach(r -> ids.add(r.id().toLowerCase(Locale.ROOT)));
+                    break;
+
+                case VOLUME:
+                    anfClient.getVolumes().list(resourceGroup,
+                            parent.getAccount(),
+                            parent.getCapacityPool()).forEach(r -> ids.add(r.id().toLowerCase(Locale.ROOT)));
+                    break;
+
+                case SNAPSHOT:
+                    anfClient.getSnapshots().list(resourceGroup,
+                            parent.getAccount(),
+                            parent.getCapacityPool(),
+                            parent.getVolume()).forEach(r -> ids.add(r.id().toLowerCase(Locale.ROOT)));
+                    break;
+            }
+        }
+        catch (RuntimeException e)
+        {
+            ErrorCategory category = ErrorClassifier.classify(e);
+            if (category == ErrorCategory.NOT_FOUND)
+            {
+                return null;
+            }
+            if (category == ErrorCategory.FATAL)
+            {
+                throw e;
+            }
+
+            // Throttled, busy or transient: keep every resource pending, the next poll will try again
+            Utils.writeWarningMessage("Error listing resources under " + parent + " - " + e.getMessage());
+            ids.addAll(pending);
+        }
+
+        return ids;
+    }
+
+    private enum ChildKind
+    {
+        ACCOUNT, SNAPSHOT_POLICY, CAPACITY_POOL, VOLUME, SNAPSHOT;
+
+        static ChildKind of(ParsedResourceId id)
+        {
+            if (id.getSnapshot() != null)
+            {
+                return SNAPSHOT;
+            }
+            if (id.getVolume() != null)
+            {
+                return VOLUME;
+            }
+            if (id.getCapacityPool() != null)
+            {
+                return CAPACITY_POOL;
+            }
+            if (id.getSnapshotPolicy() != null)
+            {
+                return SNAPSHOT_POLICY;
+            }
+
+            return ACCOUNT;
+        }
+    }
+
+    // Resources sharing the same parent. Only one poll of a group runs at a time, waiting is guarded by the waiter
+    private static class ParentGroup
+    {
+        private final String key;
+        private final ChildKind kind;
+        private final ParsedResourceId parent;
+        private final Map<String, Waiting> waiting = new HashMap<>();
+        private int attempts;
+
+        private ParentGroup(String key, ChildKind kind, ParsedResourceId parent)
+        {
+            this.key = key;
+            this.kind = kind;
+            this.parent = parent;
+        }
+    }
+
+    private static class Waiting
+    {
+        private final CompletableFuture<Duration> future = new CompletableFuture<>();
+        private final long startNanos = System.nanoTime();
+    }
+}
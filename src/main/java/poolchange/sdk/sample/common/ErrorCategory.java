@@ -0,0 +1,21 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.common;
+
+// What a failed ANF or ARM call means for its caller, see ErrorClassifier
+public enum ErrorCategory
+{
+    /** The resource or one of its parents does not exist */
+    NOT_FOUND,
+    /** The subscription's request budget is used up, retry after the Retry-After delay */
+    THROTTLED,
+    /** Another operation runs on the resource, retry once it finished */
+    CONFLICT,
+    /** Server error, timeout or broken connection, the same call may succeed later */
+    TRANSIENT,
+    /** Invalid request, missing permission or lack of capacity, retrying won't help */
+    FATAL
+}
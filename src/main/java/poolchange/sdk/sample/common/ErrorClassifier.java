@@ -0,0 +1,223 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.common;
+
+import com.azure.core.exception.HttpResponseException;
+import com.azure.core.management.exception.ManagementError;
+import com.azure.core.management.exception.ManagementException;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/*
+  Classifies failed calls by their ARM error code first, then by their HTTP status code, rather than by matching
+  exception messages. Management exceptions carry the error code of the response body. Exceptions built from a raw
+  response, like the ones thrown by LroTracker, carry the body in their message, from which the code is read. Network
+  failures and timeouts are transient, anything unknown is fatal so that it is never retried blindly.
+*/
+public final class ErrorClassifier
+{
+    // ARM and Microsoft.NetApp error codes, lowercased
+    private static final Map<String, ErrorCategory> ERROR_CODES = Map.ofEntries(
+            Map.entry("resourcenotfound", ErrorCategory.NOT_FOUND),
+            Map.entry("parentresourcenotfound", ErrorCategory.NOT_FOUND),
+            Map.entry("resourcegroupnotfound", ErrorCategory.NOT_FOUND),
+            Map.entry("notfound", ErrorCategory.NOT_FOUND),
+            Map.entry("toomanyrequests", ErrorCategory.THROTTLED),
+            Map.entry("subscriptionrequeststhrottled", ErrorCategory.THROTTLED),
+            Map.entry("anotheroperationinprogress", ErrorCategory.CONFLICT),
+            Map.entry("operationinprogress", ErrorCategory.CONFLICT),
+            Map.entry("conflict", ErrorCategory.CONFLICT),
+            Map.entry("internalservererror", ErrorCategory.TRANSIENT),
+            Map.entry("serviceunavailable", ErrorCategory.TRANSIENT),
+            Map.entry("gatewaytimeout", ErrorCategory.TRANSIENT),
+            Map.entry("retryableerror", ErrorCategory.TRANSIENT),
+            Map.entry("insufficientpoolcapacity", ErrorCategory.FATAL),
+            Map.entry("poolsizetoosmall", ErrorCategory.FATAL),
+            Map.entry("cannotdeleteresource", ErrorCategory.FATAL),
+            Map.entry("authorizationfailed", ErrorCategory.FATAL),
+            Map.entry("invalidparameter", ErrorCategory.FATAL));
+
+    private ErrorClassifier()
+    {
+    }
+
+    /**
+     * @param error Exception thrown by a call, wrapped or not in a CompletionException or ExecutionException
+     * @return What the failure means for the caller
+     */
+    public static ErrorCategory classify(Throwable error)
+    {
+        Throwable cause = unwrap(error);
+        if (cause instanceof HttpResponseException)
+        {
+            ErrorCategory byCode = ERROR_CODES.get(String.valueOf(getErrorCode(cause)).toLowerCase(Locale.ROOT));
+            if (byCode != null)
+            {
+                return byCode;
+            }
+
+            int statusCode = getStatusCode(cause);
+            if (statusCode == 404)
+            {
+                return ErrorCategory.NOT_FOUND;
+            }
+            if (statusCode == 429)
+            {
+                return ErrorCategory.THROTTLED;
+            }
+            if (statusCode == 409)
+            {
+                return ErrorCategory.CONFLICT;
+            }
+            if (statusCode == 408 || statusCode >= 500)
+            {
+                return ErrorCategory.TRANSIENT;
+            }
+            return ErrorCategory.FATAL;
+        }
+
+        // Timeouts and connection failures, whichever layer of the HTTP client reported them
+        for (Throwable t = cause; t != null; t = t.getCause())
+        {
+            if (t instanceof TimeoutException || t instanceof IOException)
+            {
+                return ErrorCategory.TRANSIENT;
+            }
+        }
+        return ErrorCategory.FATAL;
+    }
+
+    /**
+     * @param error Exception thrown by a call
+     * @return Whether the call failed because the resource does not exist
+     */
+    public static boolean isNotFound(Throwable error)
+    {
+        return classify(error) == ErrorCategory.NOT_FOUND;
+    }
+
+    /**
+     * @param error Exception thrown by a call
+     * @return HTTP status code of the failed response, or 0 if the call got no response
+     */
+    public static int getStatusCode(Throwable error)
+    {
+        Throwable cause = unwrap(error);
+        if (cause instanceof HttpResponseException)
+        {
+            HttpResponseException httpError = (HttpResponseException) cause;
+            if (httpError.getResponse() != null)
+            {
+                return httpError.getResponse().getStatusCode();
+            }
+
+            // "Status code 404, ..."
+            String message = httpError.getMessage();
+            if (message != null && message.startsWith("Status code "))
+            {
+                int end = 12;
+                while (end < message.length() && Character.isDigit(message.charAt(end)))
+                {
+                    end++;
+                }
+                if (end > 12)
+                {
+                    return Integer.parseInt(message.substring(12, end));
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @param error Exception thrown by a call
+     * @return ARM error code of the failed response, e.g. AnotherOperationInProgress, or null if it has none
+     */
+    public static String getErrorCode(Throwable error)
+    {
+        Throwable cause = unwrap(error);
+        if (cause instanceof ManagementException)
+        {
+            ManagementError value = ((ManagementException) cause).getValue();
+            if (value != null && value.getCode() != null)
+            {
+                return value.getCode();
+            }
+        }
+        if (!(cause instanceof HttpResponseException) || cause.getMessage() == null)
+        {
+            return null;
+        }
+
+        // The response body is the JSON object within the message, {"error": {"code": ...}}
+        String message = cause.getMessage();
+        int start = message.indexOf('{');
+        int end = message.lastIndexOf('}');
+        if (start < 0 || end < start)
+        {
+            return null;
+        }
+        try
+        {
+            JsonElement body = JsonParser.parseString(message.substring(start, end + 1));
+            JsonObject object = body.isJsonObject() ? body.getAsJsonObject() : null;
+            if (object != null && object.has("error") && object.get("error").isJsonObject())
+            {
+                object = object.getAsJsonObject("error");
+            }
+            JsonElement code = object != null ? object.get("code") : null;
+            return code != null && code.isJsonPrimitive() ? code.getAsString() : null;
+        }
+        catch (RuntimeException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * @param error Exception thrown by a call
+     * @return Delay the service asked for with a Retry-After header in seconds, or null if it did not
+     */
+    public static Duration getRetryAfter(Throwable error)
+    {
+        Throwable cause = unwrap(error);
+        if (cause instanceof HttpResponseException && ((HttpResponseException) cause).getResponse() != null)
+        {
+            String retryAfter = ((HttpResponseException) cause).getResponse().getHeaderValue("Retry-After");
+            if (retryAfter != null)
+            {
+                try
+                {
+                    return Duration.ofSeconds(Long.parseLong(retryAfter.trim()));
+                }
+                catch (NumberFormatException e)
+                {
+                    // An HTTP date, rarely used by ARM
+                }
+            }
+        }
+        return null;
+    }
+
+    static Throwable unwrap(Throwable error)
+    {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null)
+        {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
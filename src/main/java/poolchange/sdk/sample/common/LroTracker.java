@@ -0,0 +1,385 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.common;
+
+import com.azure.core.exception.HttpResponseException;
+import com.azure.core.http.HttpMethod;
+import com.azure.core.http.HttpPipeline;
+import com.azure.core.http.HttpRequest;
+import com.azure.core.http.HttpResponse;
+import com.azure.core.management.exception.ManagementError;
+import com.azure.core.management.exception.ManagementException;
+import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+  Tracks many long running operations with a handful of threads. The initial request is sent through the management
+  client's HTTP pipeline, so rate limiting, retries and metrics still apply, and the operation is registered with its
+  Azure-AsyncOperation (or Location) URL. A small scheduler then polls every registered operation when its own
+  Retry-After elapses and completes one future per operation. No thread waits for an operation: a poll is only sent by a
+  scheduler thread, and its response is handled by the HTTP client.
+*/
+public class LroTracker implements AutoCloseable
+{
+    private static final Duration MIN_POLL_INTERVAL = Duration.ofSeconds(1);
+    private static final Duration MAX_POLL_INTERVAL = Duration.ofMinutes(1);
+    private static final int MAX_CONSECUTIVE_POLL_FAILURES = 10;
+
+    private final NetAppManagementClient anfClient;
+    private final HttpPipeline pipeline;
+    private final Duration defaultPollInterval;
+    private final Duration timeout;
+    private final ScheduledExecutorService scheduler;
+    private final Set<Operation> active = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    /**
+     * Creates a tracker polling with 2 threads, giving up on operations still running after 2 hours
+     * @param anfClient Azure NetApp Files Management Client whose HTTP pipeline, endpoint and API version are used
+     */
+    public LroTracker(NetAppManagementClient anfClient)
+    {
+        this(anfClient, 2, Duration.ofHours(2));
+    }
+
+    /**
+     * @param anfClient Azure NetApp Files Management Client whose HTTP pipeline, endpoint and API version are used
+     * @param pollerThreads Number of threads sending polls
+     * @param timeout Time after which an operation still running fails
+     */
+    public LroTracker(NetAppManagementClient anfClient, int pollerThreads, Duration timeout)
+    {
+        this.anfClient = anfClient;
+        this.pipeline = anfClient.getHttpPipeline();
+        Duration clientInterval = anfClient.getDefaultPollInterval();
+        this.defaultPollInterval = clientInterval != null && !clientInterval.isZero() ? clientInterval : Duration.ofSeconds(10);
+        this.timeout = timeout;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.scheduler = Executors.newScheduledThreadPool(pollerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "anf-lro-poller-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sends the initial request of a long running operation
+     * @param method HTTP method of the operation, e.g. POST for a pool change
+     * @param path Resource id followed by the action if any, e.g. the Volume id followed by "/poolChange"
+     * @param body JSON body of the request, may be null
+     * @return Future completed once the service accepted the operation, failed if it rejected it
+     */
+    public CompletableFuture<Operation> begin(HttpMethod method, String path, String body)
+    {
+        if (closed)
+        {
+            return CompletableFuture.failedFuture(new IllegalStateException("The LRO tracker is closed"));
+        }
+
+        String endpoint = anfClient.getEndpoint().endsWith("/")
+                ? anfClient.getEndpoint().substring(0, anfClient.getEndpoint().length() - 1)
+                : anfClient.getEndpoint();
+        HttpRequest request = new HttpRequest(method, endpoint + path + (path.contains("?") ? "&" : "?") + "api-version=" + anfClient.getApiVersion());
+        if (body != null)
+        {
+            request.setHeader("Content-Type", "application/json");
+            request.setBody(body);
+        }
+
+        return send(request).thenApply(reply -> {
+            if (reply.statusCode >= 400)
+            {
+                throw new HttpResponseException("Status code " + reply.statusCode + ", \"" + reply.body + "\"", reply.response);
+            }
+
+            String statusUrl = reply.response.getHeaderValue("Azure-AsyncOperation");
+            if (statusUrl == null)
+            {
+                statusUrl = reply.response.getHeaderValue("Location");
+            }
+
+            Operation operation = new Operation(statusUrl, System.nanoTime() + timeout.toNanos());
+            if (statusUrl == null)
+            {
+                // Finished synchronously
+                operation.completion.complete(reply.body);
+                return operation;
+            }
+
+            register(operation, pollIntervalOf(reply.response));
+            return operation;
+        });
+    }
+
+    /**
+     * Tracks an operation accepted before, e.g. by a previous run of the application
+     * @param statusUrl Azure-AsyncOperation or Location URL of the operation
+     * @return The operation, polled from now on
+     */
+    public Operation resume(String statusUrl)
+    {
+        Operation operation = new Operation(statusUrl, System.nanoTime() + timeout.toNanos());
+        register(operation, Duration.ZERO);
+        return operation;
+    }
+
+    /**
+     * @return Number of operations being polled
+     */
+    public int getActiveCount()
+    {
+        return active.size();
+    }
+
+    /**
+     * Stops polling. Operations still running are failed, though they keep running in the service
+     */
+    @Override
+    public void close()
+    {
+        closed = true;
+        scheduler.shutdownNow();
+        for (Operation operation : active)
+        {
+            operation.completion.completeExceptionally(new IllegalStateException("The LRO tracker was closed while polling " + operation.statusUrl));
+        }
+        active.clear();
+    }
+
+    private void register(Operation operation, Duration delay)
+    {
+        if (closed)
+        {
+            operation.completion.completeExceptionally(new IllegalStateException("The LRO tracker is closed"));
+            return;
+        }
+
+        active.add(operation);
+        operation.completion.whenComplete((result, error) -> active.remove(operation));
+        schedule(operation, delay);
+    }
+
+    private void schedule(Operation operation, Duration delay)
+    {
+        if (System.nanoTime() + delay.toNanos() - operation.deadlineNanos > 0)
+        {
+            // The operation may still finish, a later attempt finds out whether it did
+            operation.completion.completeExceptionally(new TimeoutException("Operation " + operation.statusUrl
+                    + " did not finish within " + timeout.toMinutes() + " minutes"));
+            return;
+        }
+
+        try
+        {
+            scheduler.schedule(() -> poll(operation), delay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        catch (RuntimeException e)
+        {
+            // Rejected once closed
+            operation.completion.completeExceptionally(e);
+        }
+    }
+
+    private void poll(Operation operation)
+    {
+        send(new HttpRequest(HttpMethod.GET, operation.statusUrl)).whenComplete((reply, error) -> {
+            if (error != null || reply.statusCode == 429 || reply.statusCode >= 500)
+            {
+                // Polling failures are retried, the operation itself is not affected by them
+                if (++operation.consecutiveFailures >= MAX_CONSECUTIVE_POLL_FAILURES)
+                {
+                    operation.completion.completeExceptionally(error != null ? error
+                            : new IllegalStateException("Polling " + operation.statusUrl + " failed with status code " + reply.statusCode));
+                    return;
+                }
+                schedule(operation, error != null ? defaultPollInterval : pollIntervalOf(reply.response));
+                return;
+            }
+
+            operation.consecutiveFailures = 0;
+            operation.polls++;
+            if (reply.statusCode >= 400)
+            {
+                operation.completion.completeExceptionally(new HttpResponseException("Status code " + reply.statusCode + ", \"" + reply.body + "\"",
+                        reply.response));
+                return;
+            }
+
+            String status = statusOf(reply.body);
+            if (reply.statusCode == 202 || (status != null && !isTerminal(status)))
+            {
+                schedule(operation, pollIntervalOf(reply.response));
+            }
+            else if (status == null || "Succeeded".equalsIgnoreCase(status))
+            {
+                operation.completion.complete(reply.body);
+            }
+            else
+            {
+                // The error of the status body tells whether the operation is worth sending again, like that of a response
+                operation.completion.completeExceptionally(new ManagementException("Operation " + status.toLowerCase(Locale.ROOT) + ", \""
+                        + reply.body + "\"", reply.response, errorOf(reply.body)));
+            }
+        });
+    }
+
+    private CompletableFuture<Reply> send(HttpRequest request)
+    {
+        return pipeline.send(request)
+                .flatMap(response -> response.getBodyAsString()
+                        .defaultIfEmpty("")
+                        .map(body -> new Reply(response, body)))
+                .toFuture();
+    }
+
+    // Retry-After in seconds, within bounds, or the client's default poll interval
+    private Duration pollIntervalOf(HttpResponse response)
+    {
+        String retryAfter = response.getHeaderValue("Retry-After");
+        if (retryAfter != null)
+        {
+            try
+            {
+                Duration interval = Duration.ofSeconds(Long.parseLong(retryAfter.trim()));
+                return interval.compareTo(MIN_POLL_INTERVAL) < 0 ? MIN_POLL_INTERVAL
+                        : interval.compareTo(MAX_POLL_INTERVAL) > 0 ? MAX_POLL_INTERVAL
+                        : interval;
+            }
+            catch (NumberFormatException e)
+            {
+                // An HTTP date, rarely used by ARM
+            }
+        }
+        return defaultPollInterval;
+    }
+
+    // "status" of an Azure-AsyncOperation body, or provisioningState of a resource returned by a Location poll
+    private static String statusOf(String body)
+    {
+        JsonObject object = parseObject(body);
+        if (object == null)
+        {
+            return null;
+        }
+
+        JsonElement status = object.get("status");
+        if (status == null && object.has("properties") && object.get("properties").isJsonObject())
+        {
+            status = object.getAsJsonObject("properties").get("provisioningState");
+        }
+        return status != null && status.isJsonPrimitive() ? status.getAsString() : null;
+    }
+
+    // "error" of a failed operation's status body, null if it has none
+    private static ManagementError errorOf(String body)
+    {
+        JsonObject object = parseObject(body);
+        if (object == null || !object.has("error") || !object.get("error").isJsonObject())
+        {
+            return null;
+        }
+
+        JsonObject error = object.getAsJsonObject("error");
+        JsonElement code = error.get("code");
+        JsonElement message = error.get("message");
+        return new ManagementError(code != null && code.isJsonPrimitive() ? code.getAsString() : null,
+                message != null && message.isJsonPrimitive() ? message.getAsString() : null);
+    }
+
+    private static JsonObject parseObject(String body)
+    {
+        if (body == null || body.isEmpty())
+        {
+            return null;
+        }
+
+        try
+        {
+            JsonElement json = JsonParser.parseString(body);
+            return json.isJsonObject() ? json.getAsJsonObject() : null;
+        }
+        catch (RuntimeException e)
+        {
+            return null;
+        }
+    }
+
+    private static boolean isTerminal(String status)
+    {
+        return "Succeeded".equalsIgnoreCase(status) || "Failed".equalsIgnoreCase(status) || "Canceled".equalsIgnoreCase(status);
+    }
+
+    /**
+     * A long running operation being polled
+     */
+    public static class Operation
+    {
+        private final String statusUrl;
+        private final long deadlineNanos;
+        private final CompletableFuture<String> completion = new CompletableFuture<>();
+        // Only touched by the poll in flight, polls of an operation never overlap
+        private int consecutiveFailures;
+        private volatile int polls;
+
+        private Operation(String statusUrl, long deadlineNanos)
+        {
+            this.statusUrl = statusUrl;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * @return URL the operation is polled at, null if it finished with its initial request
+         */
+        public String getStatusUrl()
+        {
+            return statusUrl;
+        }
+
+        /**
+         * @return Future completed with the body of the last poll once the operation succeeded, failed if it failed
+         */
+        public CompletableFuture<String> getCompletion()
+        {
+            return completion;
+        }
+
+        /**
+         * @return Number of polls answered so far
+         */
+        public int getPolls()
+        {
+            return polls;
+        }
+    }
+
+    private static class Reply
+    {
+        private final HttpResponse response;
+        private final int statusCode;
+        private final String body;
+
+        private Reply(HttpResponse response, String body)
+        {
+            this.response = response;
+            this.statusCode = response.getStatusCode();
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,296 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.common;
+
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/*
+  Retries a whole operation, such as a get or a pool change, when it fails for a reason its ErrorClassifier category
+  says is worth retrying. The SDK's own retry policy covers single HTTP requests; this one covers what it can't: a
+  resource busy with another operation, a long running operation failing with a server error, a call hanging past its
+  deadline. Delays back off exponentially and honor Retry-After, each attempt has its own deadline and all attempts
+  share a total one, and a circuit breaker shared by every operation of the same kind holds calls back while the
+  service keeps failing.
+*/
+public class OperationRetryPolicy
+{
+    private static final CircuitBreaker READ_BREAKER = new CircuitBreaker("anf-reads", 20, Duration.ofSeconds(30));
+    private static final CircuitBreaker WRITE_BREAKER = new CircuitBreaker("anf-writes", 10, Duration.ofSeconds(60));
+
+    private static final OperationRetryPolicy READS = new OperationRetryPolicy("read", 4,
+            new Backoff(Duration.ofMillis(500), Duration.ofSeconds(8), 2, 0.2), Duration.ofSeconds(30), Duration.ofMinutes(1),
+            EnumSet.of(ErrorCategory.THROTTLED, ErrorCategory.TRANSIENT), READ_BREAKER);
+
+    private static final OperationRetryPolicy POOL_CHANGES = new OperationRetryPolicy("poolChange", 6,
+            new Backoff(Duration.ofSeconds(5), Duration.ofSeconds(60), 2, 0.2), null, Duration.ofMinutes(30),
+            EnumSet.of(ErrorCategory.THROTTLED, ErrorCategory.TRANSIENT, ErrorCategory.CONFLICT), WRITE_BREAKER);
+
+    // Runs the attempts of synchronous calls that have a deadline, so that the caller can stop waiting for them. An
+    // abandoned attempt keeps its thread until the HTTP client gives up on it, so the threads are bounded: once they
+    // are all busy attempts queue up, and the time spent waiting counts towards their deadline
+    private static final int MAX_ATTEMPT_THREADS = 32;
+    private static final ThreadPoolExecutor ATTEMPTS = new ThreadPoolExecutor(MAX_ATTEMPT_THREADS, MAX_ATTEMPT_THREADS,
+            60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "anf-retry-attempt");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    static
+    {
+        ATTEMPTS.allowCoreThreadTimeOut(true);
+    }
+
+    private final String name;
+    private final int maxAttempts;
+    private final Backoff backoff;
+    private final Duration attemptTimeout;
+    private final Duration totalTimeout;
+    private final Set<ErrorCategory> retryOn;
+    private final CircuitBreaker breaker;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * @param name Name used in messages
+     * @param maxAttempts Maximum number of attempts, the first one included
+     * @param backoff Delays between attempts, lengthened to the Retry-After of throttled responses
+     * @param attemptTimeout Deadline of each attempt, or null for none
+     * @param totalTimeout Deadline of all attempts together, delays included
+     * @param retryOn Categories of the failures that are retried
+     * @param breaker Circuit breaker shared with other operations of the same kind, or null for none
+     */
+    public OperationRetryPolicy(String name, int maxAttempts, Backoff backoff, Duration attemptTimeout, Duration totalTimeout,
+                                Set<ErrorCategory> retryOn, CircuitBreaker breaker)
+    {
+        if (maxAttempts < 1)
+        {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+
+        this.name = name;
+        this.maxAttempts = maxAttempts;
+        this.backoff = backoff;
+        this.attemptTimeout = attemptTimeout;
+        this.totalTimeout = totalTimeout;
+        this.retryOn = EnumSet.copyOf(retryOn);
+        this.breaker = breaker;
+    }
+
+    /**
+     * @return Policy of gets: 4 attempts within a minute, 30 seconds each, retrying throttled and transient failures
+     */
+    public static OperationRetryPolicy reads()
+    {
+        return READS;
+    }
+
+    /**
+     * @return Policy of pool changes: 6 attempts within 30 minutes, also retrying when the Volume is busy. Attempts
+     *         have no deadline of their own, long running operations time out through their poller
+     */
+    public static OperationRetryPolicy poolChanges()
+    {
+        return POOL_CHANGES;
+    }
+
+    /**
+     * Runs a synchronous operation on the calling thread, or on a separate thread if attempts have a deadline
+     * @param operation The operation
+     * @return Result of the first successful attempt
+     * @throws RuntimeException The failure of the last attempt, unwrapped
+     */
+    public <T> T call(Supplier<T> operation)
+    {
+        calls.increment();
+        long deadline = System.nanoTime() + totalTimeout.toNanos();
+        for (int attempt = 1; ; attempt++)
+        {
+            RuntimeException error = awaitBreaker(deadline);
+            if (error == null)
+            {
+                try
+                {
+                    T result = attemptTimeout == null ? operation.get() : runWithDeadline(operation);
+                    onResult(null);
+                    return result;
+                }
+                catch (RuntimeException e)
+                {
+                    error = e;
+                    onResult(ErrorClassifier.classify(e));
+                }
+            }
+
+            Duration delay = nextDelay(error, attempt, deadline);
+            if (delay == null)
+            {
+                failures.increment();
+                throw error;
+            }
+            retries.increment();
+            Utils.threadSleep((int) delay.toMillis());
+        }
+    }
+
+    /**
+     * Runs an asynchronous operation, starting each retry once its delay elapsed without blocking any thread
+     * @param operation Starts the operation and returns its future
+     * @return Future completed like the first successful attempt, or like the last one
+     */
+    public <T> CompletableFuture<T> callAsync(Supplier<CompletableFuture<T>> operation)
+    {
+        calls.increment();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attemptAsync(operation, 1, System.nanoTime() + totalTimeout.toNanos(), result);
+        return result;
+    }
+
+    private <T> void attemptAsync(Supplier<CompletableFuture<T>> operation, int attempt, long deadline, CompletableFuture<T> result)
+    {
+        Duration wait = breaker != null ? breaker.tryAcquire() : Duration.ZERO;
+        if (!wait.isZero())
+        {
+            if (System.nanoTime() + wait.toNanos() - deadline > 0)
+            {
+                failures.increment();
+                result.completeExceptionally(breakerOpen());
+                return;
+            }
+            CompletableFuture.delayedExecutor(wait.toMillis(), TimeUnit.MILLISECONDS)
+                    .execute(() -> attemptAsync(operation, attempt, deadline, result));
+            return;
+        }
+
+        CompletableFuture<T> future;
+        try
+        {
+            future = operation.get();
+            if (attemptTimeout != null)
+            {
+                future = future.orTimeout(attemptTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+        catch (RuntimeException e)
+        {
+            future = CompletableFuture.failedFuture(e);
+        }
+
+        future.whenComplete((value, error) -> {
+            if (error == null)
+            {
+                onResult(null);
+                result.complete(value);
+                return;
+            }
+
+            onResult(ErrorClassifier.classify(error));
+            Duration delay = nextDelay(error, attempt, deadline);
+            if (delay == null)
+            {
+                failures.increment();
+                result.completeExceptionally(ErrorClassifier.unwrap(error));
+                return;
+            }
+            retries.increment();
+            CompletableFuture.delayedExecutor(delay.toMillis(), TimeUnit.MILLISECONDS)
+                    .execute(() -> attemptAsync(operation, attempt + 1, deadline, result));
+        });
+    }
+
+    // Waits for the breaker to let a call through, or returns the error to fail with if it won't before the deadline
+    private RuntimeException awaitBreaker(long deadline)
+    {
+        while (breaker != null)
+        {
+            Duration wait = breaker.tryAcquire();
+            if (wait.isZero())
+            {
+                return null;
+            }
+            if (System.nanoTime() + wait.toNanos() - deadline > 0)
+            {
+                return breakerOpen();
+            }
+            Utils.threadSleep((int) Math.max(1, wait.toMillis()));
+        }
+        return null;
+    }
+
+    // Delay before the next attempt, or null if the failure is not retried or the attempts or time are used up
+    private Duration nextDelay(Throwable error, int attempt, long deadline)
+    {
+        if (attempt >= maxAttempts || !retryOn.contains(ErrorClassifier.classify(error)))
+        {
+            return null;
+        }
+
+        Duration delay = backoff.delay(attempt);
+        Duration retryAfter = ErrorClassifier.getRetryAfter(error);
+        if (retryAfter != null && retryAfter.compareTo(delay) > 0)
+        {
+            delay = retryAfter;
+        }
+        return System.nanoTime() + delay.toNanos() - deadline > 0 ? null : delay;
+    }
+
+    private <T> T runWithDeadline(Supplier<T> operation)
+    {
+        CompletableFuture<T> attempt = CompletableFuture.supplyAsync(operation, ATTEMPTS);
+        try
+        {
+            return attempt.get(attemptTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException e)
+        {
+            // A queued attempt is dropped, a running one keeps its thread until the request fails and is ignored
+            attempt.cancel(true);
+            throw new CompletionException(new TimeoutException(name + " attempt did not finish within " + attemptTimeout.toMillis() + "ms"));
+        }
+        catch (ExecutionException e)
+        {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new CompletionException(e.getCause());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+    }
+
+    private void onResult(ErrorCategory error)
+    {
+        if (breaker != null)
+        {
+            breaker.onResult(error);
+        }
+    }
+
+    private IllegalStateException breakerOpen()
+    {
+        return new IllegalStateException("Circuit breaker " + breaker + " is holding " + name + " calls back");
+    }
+
+    @Override
+    public String toString()
+    {
+        return name + " retry policy: " + calls.sum() + " calls, " + retries.sum() + " retries, " + failures.sum() + " failed"
+                + (breaker != null ? ", breaker " + breaker : "");
+    }
+}
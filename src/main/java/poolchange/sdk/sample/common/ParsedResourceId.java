@@ -0,0 +1,268 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.common;
+
+// An ANF resource id tokenized once into its "/type/name" segments
+public final class ParsedResourceId
+{
+    private static final int INITIAL_SEGMENTS = 16;
+
+    private final String resourceId;
+
+    // Start and end offsets in resourceId of each key and value, in order: keyStart, keyEnd, valueStart, valueEnd
+    private final int[] pairs;
+    private final int pairCount;
+
+    private final String subscriptionId;
+    private final String resourceGroup;
+    private final String account;
+    private final String capacityPool;
+    private final String volume;
+    private final String snapshot;
+    private final String snapshotPolicy;
+
+    private ParsedResourceId(String resourceId)
+    {
+        this.resourceId = resourceId;
+
+        int[] offsets = new int[INITIAL_SEGMENTS * 2];
+        int segmentCount = 0;
+        int length = resourceId.length();
+        int start = 0;
+
+        // Single pass over the id, recording where each non empty segment starts and ends
+        for (int i = 0; i <= length; i++)
+        {
+            if (i == length || resourceId.charAt(i) == '/')
+            {
+                if (i > start)
+                {
+                    if (segmentCount * 2 == offsets.length)
+                    {
+                        int[] grown = new int[offsets.length * 2];
+                        System.arraycopy(offsets, 0, grown, 0, offsets.length);
+                        offsets = grown;
+                    }
+                    offsets[segmentCount * 2] = start;
+                    offsets[segmentCount * 2 + 1] = i;
+                    segmentCount++;
+                }
+                start = i + 1;
+            }
+        }
+
+        // Pair up known segment types with the name that follows them. A matched name is consumed, so a resource
+        // group called "volumes" is never mistaken for the volumes segment
+        int[] matched = new int[segmentCount * 2];
+        int count = 0;
+        String subscriptionId = null, resourceGroup = null, account = null, capacityPool = null,
+                volume = null, snapshot = null, snapshotPolicy = null;
+
+        for (int s = 0; s + 1 < segmentCount; s++)
+        {
+            int keyStart = offsets[s * 2];
+            int keyEnd = offsets[s * 2 + 1];
+            int valueStart = offsets[s * 2 + 2];
+            int valueEnd = offsets[s * 2 + 3];
+
+            String value = null;
+            boolean isKey = true;
+            if (segmentEquals(keyStart, keyEnd, "subscriptions"))
+            {
+                value = subscriptionId = valueIfAbsent(subscriptionId, valueStart, valueEnd);
+            }
+            else if (segmentEquals(keyStart, keyEnd, "resourceGroups"))
+            {
+                value = resourceGroup = valueIfAbsent(resourceGroup, valueStart, valueEnd);
+            }
+            else if (segmentEquals(keyStart, keyEnd, "netAppAccounts"))
+            {
+                value = account = valueIfAbsent(account, valueStart, valueEnd);
+            }
+            else if (segmentEquals(keyStart, keyEnd, "capacityPools"))
+            {
+                value = capacityPool = valueIfAbsent(capacityPool, valueStart, valueEnd);
+            }
+            else if (segmentEquals(keyStart, keyEnd, "volumes"))
+            {
+                value = volume = valueIfAbsent(volume, valueStart, valueEnd);
+            }
+            else if (segmentEquals(keyStart, keyEnd, "snapshots"))
+            {
+                value = snapshot = valueIfAbsent(snapshot, valueStart, valueEnd);
+            }
+            else if (segmentEquals(keyStart, keyEnd, "snapshotPolicies"))
+            {
+                value = snapshotPolicy = valueIfAbsent(snapshotPolicy, valueStart, valueEnd);
+            }
+            else if (!segmentEquals(keyStart, keyEnd, "providers"))
+            {
+                isKey = false;
+            }
+
+            if (isKey && value != null)
+            {
+                matched[count * 4] = keyStart;
+                matched[count * 4 + 1] = keyEnd;
+                matched[count * 4 + 2] = valueStart;
+                matched[count * 4 + 3] = valueEnd;
+                count++;
+            }
+
+            if (isKey)
+            {
+                s++;
+            }
+        }
+
+        this.pairs = matched;
+        this.pairCount = count;
+        this.subscriptionId = subscriptionId;
+        this.resourceGroup = resourceGroup;
+        this.account = account;
+        this.capacityPool = capacityPool;
+        this.volume = volume;
+        this.snapshot = snapshot;
+        this.snapshotPolicy = snapshotPolicy;
+    }
+
+    /**
+     * Tokenizes a resource id. Segment types are matched case insensitively
+     * @param resourceId Id or similar value of resource, full or partial
+     * @return The parsed id, or null if resourceId is null or empty
+     */
+    public static ParsedResourceId parse(String resourceId)
+    {
+        if (resourceId == null || resourceId.isEmpty())
+        {
+            return null;
+        }
+
+        return new ParsedResourceId(resourceId);
+    }
+
+    public String getResourceId()
+    {
+        return resourceId;
+    }
+
+    public String getSubscriptionId()
+    {
+        return subscriptionId;
+    }
+
+    public String getResourceGroup()
+    {
+        return resourceGroup;
+    }
+
+    public String getAccount()
+    {
+        return account;
+    }
+
+    public String getCapacityPool()
+    {
+        return capacityPool;
+    }
+
+    public String getVolume()
+    {
+        return volume;
+    }
+
+    public String getSnapshot()
+    {
+        return snapshot;
+    }
+
+    public String getSnapshotPolicy()
+    {
+        return snapshotPolicy;
+    }
+
+    /**
+     * Gets the name following a given segment type
+     * @param segmentType Segment type such as "volumes" or "/resourceGroups", matched case insensitively
+     * @return Name of the resource, or null if the id has no such segment
+     */
+    public String getValue(String segmentType)
+    {
+        int offset = segmentType.startsWith("/") ? 1 : 0;
+        int typeLength = segmentType.length() - offset;
+
+        for (int i = 0; i < pairCount; i++)
+        {
+            int keyStart = pairs[i * 4];
+            int keyEnd = pairs[i * 4 + 1];
+            if (keyEnd - keyStart == typeLength && resourceId.regionMatches(true, keyStart, segmentType, offset, typeLength))
+            {
+                return resourceId.substring(pairs[i * 4 + 2], pairs[i * 4 + 3]);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Gets the id of the parent resource, e.g. the Capacity Pool of a Volume
+     * @return The id without its last "/type/name" pair, or null if there is no parent
+     */
+    public String getParentId()
+    {
+        if (pairCount < 2)
+        {
+            return null;
+        }
+
+        int lastKeyStart = pairs[(pairCount - 1) * 4];
+        return resourceId.substring(0, lastKeyStart - 1);
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+        {
+            return true;
+        }
+        if (!(o instanceof ParsedResourceId))
+        {
+            return false;
+        }
+
+        return resourceId.equalsIgnoreCase(((ParsedResourceId) o).resourceId);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int hash = 0;
+        for (int i = 0; i < resourceId.length(); i++)
+        {
+            hash = 31 * hash + Character.toLowerCase(resourceId.charAt(i));
+        }
+
+        return hash;
+    }
+
+    @Override
+    public String toString()
+    {
+        return resourceId;
+    }
+
+    private boolean segmentEquals(int start, int end, String segmentType)
+    {
+        return end - start == segmentType.length() && resourceId.regionMatches(true, start, segmentType, 0, segmentType.length());
+    }
+
+    // Keeps the first occurrence of a segment type, like the former indexOf based parsing did
+    private String valueIfAbsent(String current, int start, int end)
+    {
+        return current != null ? current : resourceId.substring(start, end);
+    }
+}
@@ -0,0 +1,198 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.common;
+
+import com.azure.core.credential.AccessToken;
+import com.azure.core.credential.TokenCredential;
+import com.azure.core.credential.TokenRequestContext;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+  Token credential fetching access tokens ahead of time. A token can be fetched before the first request needs it, and
+  every token is fetched again in the background some time before it expires, so that requests keep being served the
+  cached token instead of all waiting for Azure AD at once when it runs out. Concurrent callers needing a token share
+  a single fetch. Requests carrying claims, sent after a claims challenge, always go to the wrapped credential.
+*/
+public class PrefetchingTokenCredential implements TokenCredential
+{
+    // A token closer than this to its expiry is not handed out anymore, callers wait for a fresh one
+    private static final Duration MIN_VALIDITY = Duration.ofSeconds(30);
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(10);
+
+    private final TokenCredential credential;
+    private final Duration refreshBefore;
+    private final ConcurrentHashMap<String, CachedToken> tokens = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "anf-token-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LongAdder fetches = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+
+    // Last token of a set of scopes, and the fetch in flight if any
+    private static final class CachedToken
+    {
+        final TokenRequestContext request;
+        volatile AccessToken token;
+        // Guarded by this
+        CompletableFuture<AccessToken> fetch;
+        ScheduledFuture<?> nextFetch;
+
+        CachedToken(TokenRequestContext request)
+        {
+            this.request = request;
+        }
+    }
+
+    /**
+     * @param credential Credential fetching the tokens, e.g. DefaultAzureCredential
+     * @param refreshBefore How long before its expiry a token is fetched again
+     */
+    public PrefetchingTokenCredential(TokenCredential credential, Duration refreshBefore)
+    {
+        this.credential = credential;
+        this.refreshBefore = refreshBefore;
+    }
+
+    /**
+     * Starts fetching the token of scopes without waiting for it, e.g. while the rest of the client is being built
+     * @param scopes Scopes of the token, e.g. "https://management.core.windows.net//.default"
+     * @return Future completed once the token was fetched
+     */
+    public CompletableFuture<AccessToken> prefetch(String... scopes)
+    {
+        TokenRequestContext request = new TokenRequestContext().addScopes(scopes);
+        return fetch(tokens.computeIfAbsent(key(request), key -> new CachedToken(request)));
+    }
+
+    @Override
+    public Mono<AccessToken> getToken(TokenRequestContext request)
+    {
+        if (request.getClaims() != null)
+        {
+            return credential.getToken(request);
+        }
+
+        CachedToken cached = tokens.computeIfAbsent(key(request), key -> new CachedToken(request));
+        AccessToken token = cached.token;
+        if (token != null && isValidFor(token, MIN_VALIDITY))
+        {
+            // A token due for a refresh is still served while the refresh runs
+            if (!isValidFor(token, refreshBefore))
+            {
+                fetch(cached);
+            }
+            return Mono.just(token);
+        }
+
+        waits.increment();
+        // Cancelling the caller's copy leaves the shared fetch running for the others
+        return Mono.fromFuture(fetch(cached).copy());
+    }
+
+    private CompletableFuture<AccessToken> fetch(CachedToken cached)
+    {
+        CompletableFuture<AccessToken> fetch;
+        synchronized (cached)
+        {
+            if (cached.fetch != null)
+            {
+                return cached.fetch;
+            }
+
+            fetches.increment();
+            fetch = send(cached.request);
+            cached.fetch = fetch;
+        }
+
+        fetch.whenComplete((token, error) -> onFetched(cached, fetch, token, error));
+        return fetch;
+    }
+
+    private CompletableFuture<AccessToken> send(TokenRequestContext request)
+    {
+        try
+        {
+            return credential.getToken(request).toFuture();
+        }
+        catch (RuntimeException e)
+        {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void onFetched(CachedToken cached, CompletableFuture<AccessToken> fetch, AccessToken token, Throwable error)
+    {
+        synchronized (cached)
+        {
+            if (cached.fetch == fetch)
+            {
+                cached.fetch = null;
+            }
+        }
+
+        if (token != null)
+        {
+            cached.token = token;
+            long delay = Duration.between(OffsetDateTime.now(), token.getExpiresAt()).minus(refreshBefore).toMillis();
+            scheduleFetch(cached, Math.max(delay, RETRY_DELAY.toMillis()));
+            return;
+        }
+
+        failures.increment();
+        Utils.writeWarningMessage("Failed to fetch an access token for " + key(cached.request) + " - "
+                + (error != null ? ErrorClassifier.unwrap(error).getMessage() : "no token returned"));
+
+        // While the current token is still usable keep trying in the background, otherwise the next request fetches it
+        AccessToken current = cached.token;
+        if (current != null && isValidFor(current, MIN_VALIDITY.plus(RETRY_DELAY)))
+        {
+            scheduleFetch(cached, RETRY_DELAY.toMillis());
+        }
+    }
+
+    // Replaces the background fetch planned for the token, so that on demand fetches don't add up more of them
+    private void scheduleFetch(CachedToken cached, long delayMillis)
+    {
+        synchronized (cached)
+        {
+            if (cached.nextFetch != null)
+            {
+                cached.nextFetch.cancel(false);
+            }
+            cached.nextFetch = scheduler.schedule(() -> fetch(cached), delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static boolean isValidFor(AccessToken token, Duration validity)
+    {
+        return token.getExpiresAt().isAfter(OffsetDateTime.now().plus(validity));
+    }
+
+    private static String key(TokenRequestContext request)
+    {
+        return String.join(" ", request.getScopes());
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Token credential: " + fetches.sum() + " fetches, " + failures.sum() + " failed, " + waits.sum() + " requests waited for a token";
+    }
+}
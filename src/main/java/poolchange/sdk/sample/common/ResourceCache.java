@@ -0,0 +1,220 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.common;
+
+import com.azure.resourcemanager.netapp.fluent.models.*;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bounded LRU cache of ANF resources keyed by resource id, with a time to live per resource type
+public class ResourceCache
+{
+    private final int maxEntries;
+    private final Map<Class<?>, Long> ttlNanos = new HashMap<>();
+    private final LinkedHashMap<String, CachedResource> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Creates a cache with the default time to live of each resource type. Volumes change the most often, Accounts
+     * the least
+     * @param maxEntries Maximum number of resources kept, least recently used ones are evicted first
+     */
+    public ResourceCache(int maxEntries)
+    {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResource> eldest)
+            {
+                if (size() > ResourceCache.this.maxEntries)
+                {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        setTimeToLive(NetAppAccountInner.class, Duration.ofMinutes(5));
+        setTimeToLive(SnapshotPolicyInner.class, Duration.ofMinutes(5));
+        setTimeToLive(CapacityPoolInner.class, Duration.ofMinutes(1));
+        setTimeToLive(VolumeInner.class, Duration.ofSeconds(30));
+        setTimeToLive(SnapshotInner.class, Duration.ofMinutes(1));
+    }
+
+    /**
+     * Sets how long a resource type is served from the cache before it must be revalidated
+     * @param clazz Valid class types: NetAppAccountInner, CapacityPoolInner, VolumeInner, SnapshotInner, SnapshotPolicyInner
+     * @param ttl Time to live, zero disables caching for this type
+     */
+    public synchronized void setTimeToLive(Class<?> clazz, Duration ttl)
+    {
+        ttlNanos.put(clazz, ttl.toNanos());
+    }
+
+    /**
+     * Gets a resource that is still within its time to live
+     * @param resourceId Resource id of the resource
+     * @return The cached resource, or null on a miss or if it expired
+     */
+    public synchronized Object getFresh(String resourceId)
+    {
+        CachedResource entry = entries.get(key(resourceId));
+        if (entry != null && entry.expiresAtNanos - System.nanoTime() > 0)
+        {
+            hits.increment();
+            return entry.resource;
+        }
+
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Gets the ETag of an expired entry, so that it can be revalidated instead of downloaded again
+     * @param resourceId Resource id of the resource
+     * @return The ETag, or null if the resource is not cached or has no ETag
+     */
+    public synchronized String getETag(String resourceId)
+    {
+        CachedResource entry = entries.get(key(resourceId));
+        return entry != null ? entry.etag : null;
+    }
+
+    /**
+     * Marks an expired entry as still valid after the service confirmed its ETag did not change
+     * @param resourceId Resource id of the resource
+     * @return The cached resource, or null if it was evicted in the meantime
+     */
+    public synchronized Object revalidate(String resourceId)
+    {
+        CachedResource entry = entries.get(key(resourceId));
+        if (entry == null)
+        {
+            return null;
+        }
+
+        revalidations.increment();
+        entry.expiresAtNanos = System.nanoTime() + ttlNanos.getOrDefault(entry.resource.getClass(), 0L);
+        return entry.resource;
+    }
+
+    /**
+     * Adds or replaces a resource
+     * @param resourceId Resource id of the resource
+     * @param resource The resource, ignored if null
+     * @param etag ETag returned with the resource, may be null
+     */
+    public synchronized void put(String resourceId, Object resource, String etag)
+    {
+        if (resourceId == null || resource == null)
+        {
+            return;
+        }
+
+        long ttl = ttlNanos.getOrDefault(resource.getClass(), 0L);
+        if (ttl <= 0)
+        {
+            return;
+        }
+
+        entries.put(key(resourceId), new CachedResource(resource, etag, System.nanoTime() + ttl));
+    }
+
+    /**
+     * Removes a resource and every cached resource nested under it, e.g. the Volumes of a Capacity Pool
+     * @param resourceId Resource id of the resource
+     */
+    public synchronized void invalidate(String resourceId)
+    {
+        if (resourceId == null)
+        {
+            return;
+        }
+
+        String key = key(resourceId);
+        String childPrefix = key + "/";
+        Iterator<String> it = entries.keySet().iterator();
+        while (it.hasNext())
+        {
+            String cachedKey = it.next();
+            if (cachedKey.equals(key) || cachedKey.startsWith(childPrefix))
+            {
+                it.remove();
+                invalidations.increment();
+            }
+        }
+    }
+
+    public synchronized void clear()
+    {
+        entries.clear();
+    }
+
+    public long getHitCount()
+    {
+        return hits.sum();
+    }
+
+    public long getMissCount()
+    {
+        return misses.sum();
+    }
+
+    public long getRevalidationCount()
+    {
+        return revalidations.sum();
+    }
+
+    public long getEvictionCount()
+    {
+        return evictions.sum();
+    }
+
+    public long getInvalidationCount()
+    {
+        return invalidations.sum();
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "hits=" + getHitCount() + ", misses=" + getMissCount() + ", revalidations=" + getRevalidationCount()
+                + ", evictions=" + getEvictionCount() + ", invalidations=" + getInvalidationCount() + ", size=" + entries.size();
+    }
+
+    private static String key(String resourceId)
+    {
+        String key = resourceId.toLowerCase(Locale.ROOT);
+        return key.endsWith("/") ? key.substring(0, key.length() - 1) : key;
+    }
+
+    private static class CachedResource
+    {
+        private final Object resource;
+        private final String etag;
+        private long expiresAtNanos;
+
+        private CachedResource(Object resource, String etag, long expiresAtNanos)
+        {
+            this.resource = resource;
+            this.etag = etag;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+}
@@ -20,7 +20,7 @@ public class ResourceUriUtils
             return null;
         }
 
-        return getResourceValue(resourceUri, "/netAppAccounts");
+        return ParsedResourceId.parse(resourceUri).getAccount();
     }
 
     /**
@@ -35,7 +35,7 @@ public class ResourceUriUtils
             return null;
         }
 
-        return getResourceValue(resourceUri, "/capacityPools");
+        return ParsedResourceId.parse(resourceUri).getCapacityPool();
     }
 
     /**
@@ -50,7 +50,7 @@ public class ResourceUriUtils
             return null;
         }
 
-        return getResourceValue(resourceUri, "/snapshotPolicies");
+        return ParsedResourceId.parse(resourceUri).getSnapshotPolicy();
     }
 
     /**
@@ -65,7 +65,7 @@ public class ResourceUriUtils
             return null;
         }
 
-        return getResourceValue(resourceUri, "/volumes");
+        return ParsedResourceId.parse(resourceUri).getVolume();
     }
 
     /**
@@ -80,7 +80,7 @@ public class ResourceUriUtils
             return null;
         }
 
-        return getResourceValue(resourceUri, "/snapshots");
+        return ParsedResourceId.parse(resourceUri).getSnapshot();
     }
 
     /**
@@ -95,7 +95,7 @@ public class ResourceUriUtils
             return null;
         }
 
-        return getResourceValue(resourceUri, "/resourceGroups");
+        return ParsedResourceId.parse(resourceUri).getResourceGroup();
     }
 
     /**
@@ -111,37 +111,6 @@ public class ResourceUriUtils
             return null;
         }
 
-        if (!resourceName.startsWith("/"))
-        {
-            resourceName = "/" + resourceName;
-        }
-
-        if (!resourceUri.startsWith("/"))
-        {
-            resourceUri = "/" + resourceUri;
-        }
-
-        // Checks if the resourceName and resourceGroup is the same name, and if so handles it specially
-        String rgResourceName = "/resourceGroups" + resourceName;
-        int rgIndex = resourceUri.toLowerCase().indexOf(rgResourceName.toLowerCase());
-        if (rgIndex != -1) // resourceGroup name and resourceName passed are the same. Example: resourceGroup is "Snapshot" and so is the resourceName
-        {
-            String[] removedSameRgName = resourceUri.substring(rgIndex+1).split("/");
-            return removedSameRgName[1];
-        }
-
-        int index = resourceUri.toLowerCase().indexOf(resourceName.toLowerCase());
-        if (index != -1)
-        {
-            String res = resourceUri.substring(index + resourceName.length()).split("/")[1];
-
-            // to handle the partial resource uri that doesn't have real resource name
-            if (res.length() > 1)
-            {
-                return res;
-            }
-        }
-
-        return null;
+        return ParsedResourceId.parse(resourceUri).getValue(resourceName);
     }
 }
@@ -5,15 +5,14 @@
 
 package poolchange.sdk.sample.common;
 
+import poolchange.sdk.sample.logging.AsyncLogger;
+import poolchange.sdk.sample.logging.LogLevel;
+
 import java.io.Console;
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
 
 // Contains public methods to get configuration settings, display app header, conversion of bytes, etc.
 public class Utils
 {
-    static DateTimeFormatter pattern = DateTimeFormatter.ofPattern("HH:mm:ss");
-
     /**
      * Simple function to display this console app basic information
      */
@@ -30,7 +29,17 @@ public class Utils
      */
     public static void writeConsoleMessage(String message)
     {
-        System.out.println(LocalTime.now().format(pattern) + " " + message);
+        AsyncLogger.getDefault().log(LogLevel.INFO, message);
+    }
+
+    /**
+     * Display console messages with structured fields
+     * @param message Message to be written in console
+     * @param fields Alternating keys and values, e.g. "volumeId", id, "elapsedMs", 1200L
+     */
+    public static void writeConsoleMessage(String message, Object... fields)
+    {
+        AsyncLogger.getDefault().log(LogLevel.INFO, message, fields);
     }
 
     /**
@@ -39,7 +48,12 @@ public class Utils
      */
     public static void writeErrorMessage(String message)
     {
-        System.out.println(LocalTime.now().format(pattern) + " " + ConsoleColors.RED + message + ConsoleColors.RESET);
+        AsyncLogger.getDefault().log(LogLevel.ERROR, message);
+    }
+
+    public static void writeErrorMessage(String message, Object... fields)
+    {
+        AsyncLogger.getDefault().log(LogLevel.ERROR, message, fields);
     }
 
     /**
@@ -48,12 +62,22 @@ public class Utils
      */
     public static void writeSuccessMessage(String message)
     {
-        System.out.println(LocalTime.now().format(pattern) + " " + ConsoleColors.GREEN + message + ConsoleColors.RESET);
+        AsyncLogger.getDefault().log(LogLevel.SUCCESS, message);
+    }
+
+    public static void writeSuccessMessage(String message, Object... fields)
+    {
+        AsyncLogger.getDefault().log(LogLevel.SUCCESS, message, fields);
     }
 
     public static void writeWarningMessage(String message)
     {
-        System.out.println(LocalTime.now().format(pattern) + " " + ConsoleColors.YELLOW + message + ConsoleColors.RESET);
+        AsyncLogger.getDefault().log(LogLevel.WARNING, message);
+    }
+
+    public static void writeWarningMessage(String message, Object... fields)
+    {
+        AsyncLogger.getDefault().log(LogLevel.WARNING, message, fields);
     }
 
     /**
@@ -90,13 +114,4 @@ public class Utils
         Console console = System.console();
         return String.valueOf(console.readPassword());
     }
-
-    private static class ConsoleColors
-    {
-        public static final String RESET = "\033[0m";
-
-        public static final String RED = "\033[0;31m";
-        public static final String GREEN = "\033[0;32m";
-        public static final String YELLOW = "\033[0;33m";
-    }
 }
@@ -0,0 +1,123 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.daemon;
+
+import com.google.gson.JsonObject;
+import poolchange.sdk.sample.bulk.JobState;
+
+import java.time.Duration;
+import java.time.Instant;
+
+// A pool change, create or cleanup job accepted by the daemon, and where it stands
+public class DaemonJob
+{
+    private final String id;
+    private final String type;
+    private final String target;
+    private final Instant submittedAt = Instant.now();
+    private volatile JobState state = JobState.PENDING;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String resourceId;
+    private volatile String error;
+
+    /**
+     * @param id Identifier returned to the client
+     * @param type poolChange, create or cleanup
+     * @param target Resource id the job acts on, e.g. the Volume being moved
+     */
+    DaemonJob(String id, String type, String target)
+    {
+        this.id = id;
+        this.type = type;
+        this.target = target;
+    }
+
+    public String getId()
+    {
+        return id;
+    }
+
+    public String getType()
+    {
+        return type;
+    }
+
+    /**
+     * @return PENDING while queued, SUBMITTED once started, then SUCCEEDED or FAILED
+     */
+    public JobState getState()
+    {
+        return state;
+    }
+
+    public boolean isFinished()
+    {
+        return state == JobState.SUCCEEDED || state == JobState.FAILED;
+    }
+
+    void started()
+    {
+        if (state == JobState.PENDING)
+        {
+            startedAt = Instant.now();
+            state = JobState.SUBMITTED;
+        }
+    }
+
+    /**
+     * @param resourceId Resource id of the created or moved resource, null for a cleanup
+     */
+    void succeeded(String resourceId)
+    {
+        this.resourceId = resourceId;
+        finish(JobState.SUCCEEDED);
+    }
+
+    void failed(String error)
+    {
+        this.error = error;
+        finish(JobState.FAILED);
+    }
+
+    private void finish(JobState finalState)
+    {
+        finishedAt = Instant.now();
+        if (startedAt == null)
+        {
+            startedAt = finishedAt;
+        }
+        state = finalState;
+    }
+
+    JsonObject toJson()
+    {
+        JsonObject json = new JsonObject();
+        json.addProperty("id", id);
+        json.addProperty("type", type);
+        json.addProperty("target", target);
+        json.addProperty("state", state.name());
+        json.addProperty("submittedAt", submittedAt.toString());
+        if (startedAt != null)
+        {
+            json.addProperty("startedAt", startedAt.toString());
+        }
+        if (finishedAt != null)
+        {
+            json.addProperty("finishedAt", finishedAt.toString());
+            json.addProperty("elapsedMs", Duration.between(startedAt, finishedAt).toMillis());
+        }
+        if (resourceId != null)
+        {
+            json.addProperty("resourceId", resourceId);
+        }
+        if (error != null)
+        {
+            json.addProperty("error", error);
+        }
+        return json;
+    }
+}
@@ -0,0 +1,502 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.daemon;
+
+import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
+import com.azure.resourcemanager.netapp.fluent.models.CapacityPoolInner;
+import com.azure.resourcemanager.netapp.fluent.models.NetAppAccountInner;
+import com.azure.resourcemanager.netapp.fluent.models.VolumeInner;
+import com.azure.resourcemanager.netapp.models.ServiceLevel;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import poolchange.sdk.sample.Cleanup;
+import poolchange.sdk.sample.Creation;
+import poolchange.sdk.sample.bulk.BulkPoolChange;
+import poolchange.sdk.sample.bulk.JobState;
+import poolchange.sdk.sample.bulk.PoolChangeJob;
+import poolchange.sdk.sample.bulk.PoolChangeListener;
+import poolchange.sdk.sample.bulk.PoolChangeResult;
+import poolchange.sdk.sample.common.AsyncLimiter;
+import poolchange.sdk.sample.common.LroTracker;
+import poolchange.sdk.sample.common.ParsedResourceId;
+import poolchange.sdk.sample.common.Utils;
+import poolchange.sdk.sample.metrics.OperationMetrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/*
+  Long running process serving a local HTTP API, so that automation can request pool changes, creates and cleanups
+  without paying for a JVM start, credential probing and HTTP client setup every time. One management client is
+  created at startup and kept warm. Pool changes are queued on a BulkPoolChange, limited overall and per source pool,
+  and tracked by a shared LroTracker; creates and cleanups go through their own AsyncLimiter. Every job gets an id whose
+  status can be read until it is evicted, the oldest finished jobs first.
+
+    POST /jobs/poolChange  {"volumeId": "...", "newPoolResourceId": "..."}
+    POST /jobs/create      {"resourceId": "...", "location": "...", plus "serviceLevel" and "size" for a Capacity Pool,
+                            or "serviceLevel", "usageThreshold", "subnetId" and optionally "creationToken" for a Volume}
+    POST /jobs/cleanup     {"resourceId": "..."}
+    GET  /jobs/{id}, GET /jobs?state=PENDING|SUBMITTED|SUCCEEDED|FAILED
+    GET  /metrics          Prometheus text of OperationMetrics and of the daemon's queues
+    GET  /health
+
+  The server only listens on the loopback interface and does not authenticate callers.
+*/
+public class JobDaemon implements AutoCloseable
+{
+    private static final int FINISHED_JOBS_KEPT = 10000;
+
+    private final NetAppManagementClient anfClient;
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final LroTracker lroTracker;
+    private final BulkPoolChange poolChanges;
+    private final AsyncLimiter resourceJobs;
+
+    private final Map<String, DaemonJob> jobs = new ConcurrentHashMap<>();
+    // Pool change jobs of BulkPoolChange, identity keyed, mapped to the daemon jobs they run
+    private final Map<PoolChangeJob, DaemonJob> poolChangeJobs = new ConcurrentHashMap<>();
+    // Guarded by itself
+    private final ArrayDeque<String> finished = new ArrayDeque<>();
+
+    private JobDaemon(NetAppManagementClient anfClient, HttpServer server, int maxConcurrency, int maxPerSourcePool)
+    {
+        this.anfClient = anfClient;
+        this.server = server;
+        this.handlers = Executors.newFixedThreadPool(4, runnable -> {
+            Thread thread = new Thread(runnable, "anf-daemon-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.lroTracker = new LroTracker(anfClient);
+        this.poolChanges = new BulkPoolChange(anfClient, maxConcurrency, maxPerSourcePool, new PoolChangeListener()
+        {
+            @Override
+            public void onResult(PoolChangeResult result, int completed, int submitted)
+            {
+                onPoolChangeResult(result);
+            }
+
+            @Override
+            public void onStart(PoolChangeJob job)
+            {
+                DaemonJob daemonJob = poolChangeJobs.get(job);
+                if (daemonJob != null)
+                {
+                    daemonJob.started();
+                }
+            }
+        }, null, lroTracker);
+        this.resourceJobs = new AsyncLimiter(maxConcurrency);
+
+        server.setExecutor(handlers);
+        server.createContext("/", this::handle);
+    }
+
+    /**
+     * Starts serving the job API on the loopback interface
+     * @param anfClient Azure NetApp Files Management Client, kept for the life of the daemon
+     * @param port Port to listen on, 0 for any free port
+     * @param maxConcurrency Maximum number of pool changes in flight, and of creates and cleanups in flight
+     * @param maxPerSourcePool Maximum number of pool changes in flight out of the same source Capacity Pool
+     * @return The running daemon
+     */
+    public static JobDaemon start(NetAppManagementClient anfClient, int port, int maxConcurrency, int maxPerSourcePool) throws IOException
+    {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 256);
+        JobDaemon daemon = new JobDaemon(anfClient, server, maxConcurrency, maxPerSourcePool);
+        server.start();
+        return daemon;
+    }
+
+    /**
+     * @return Base URL of the job API
+     */
+    public String getEndpoint()
+    {
+        return "http://" + server.getAddress().getAddress().getHostAddress() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests. Jobs in flight are abandoned, their operations keep running in the service
+     */
+    @Override
+    public void close()
+    {
+        server.stop(0);
+        lroTracker.close();
+        handlers.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange)
+    {
+        int status;
+        String body;
+        String contentType = "application/json; charset=utf-8";
+        try
+        {
+            String method = exchange.getRequestMethod().toUpperCase(Locale.ROOT);
+            String path = exchange.getRequestURI().getPath().replaceAll("/+$", "");
+            if (method.equals("POST") && path.startsWith("/jobs/"))
+            {
+                DaemonJob job = submit(path.substring("/jobs/".length()), readBody(exchange));
+                exchange.getResponseHeaders().set("Location", "/jobs/" + job.getId());
+                status = 202;
+                body = job.toJson().toString();
+            }
+            else if (method.equals("GET") && path.startsWith("/jobs/"))
+            {
+                DaemonJob job = jobs.get(path.substring("/jobs/".length()));
+                status = job != null ? 200 : 404;
+                body = job != null ? job.toJson().toString() : error("JobNotFound", "No job " + path.substring("/jobs/".length()));
+            }
+            else if (method.equals("GET") && path.equals("/jobs"))
+            {
+                status = 200;
+                body = listJobs(queryParameter(exchange, "state")).toString();
+            }
+            else if (method.equals("GET") && path.equals("/metrics"))
+            {
+                status = 200;
+                body = metrics();
+                contentType = "text/plain; version=0.0.4; charset=utf-8";
+            }
+            else if (method.equals("GET") && path.equals("/health"))
+            {
+                status = 200;
+                body = "{\"status\":\"ok\"}";
+            }
+            else
+            {
+                status = 404;
+                body = error("NotFound", method + " " + path + " is not part of the job API");
+            }
+        }
+        catch (IllegalArgumentException e)
+        {
+            status = 400;
+            body = error("InvalidRequest", e.getMessage());
+        }
+        catch (RuntimeException e)
+        {
+            status = 500;
+            body = error("InternalError", String.valueOf(e.getMessage()));
+        }
+
+        try
+        {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(bytes);
+            }
+        }
+        catch (IOException e)
+        {
+            // The client went away
+        }
+        finally
+        {
+            exchange.close();
+        }
+    }
+
+    private DaemonJob submit(String type, JsonObject request)
+    {
+        switch (type)
+        {
+            case "poolChange":
+                return submitPoolChange(request);
+            case "create":
+                return submitCreate(request);
+            case "cleanup":
+                return submitCleanup(request);
+            default:
+                throw new IllegalArgumentException("Unknown job type " + type + ", expected poolChange, create or cleanup");
+        }
+    }
+
+    private DaemonJob submitPoolChange(JsonObject request)
+    {
+        String volumeId = required(request, "volumeId");
+        String newPoolResourceId = required(request, "newPoolResourceId");
+        PoolChangeJob poolChangeJob = PoolChangeJob.fromVolumeId(volumeId, newPoolResourceId);
+
+        DaemonJob job = register("poolChange", volumeId);
+        poolChangeJobs.put(poolChangeJob, job);
+        poolChanges.submit(poolChangeJob);
+        Utils.writeConsoleMessage("Queued pool change job " + job.getId() + " for " + poolChangeJob);
+        return job;
+    }
+
+    private void onPoolChangeResult(PoolChangeResult result)
+    {
+        DaemonJob job = poolChangeJobs.remove(result.getJob());
+        if (job == null)
+        {
+            return;
+        }
+
+        if (result.isSuccess())
+        {
+            finish(job, result.getJob().getNewPoolResourceId() + "/volumes/" + result.getJob().getVolumeName(), null);
+        }
+        else
+        {
+            finish(job, null, result.getError());
+        }
+    }
+
+    private DaemonJob submitCreate(JsonObject request)
+    {
+        String resourceId = required(request, "resourceId");
+        ParsedResourceId id = parse(resourceId);
+        String location = required(request, "location");
+
+        DaemonJob job = register("create", resourceId);
+        if (id.getVolume() != null)
+        {
+            VolumeInner body = new VolumeInner();
+            body.withLocation(location);
+            body.withServiceLevel(ServiceLevel.fromString(required(request, "serviceLevel")));
+            body.withUsageThreshold(Long.parseLong(required(request, "usageThreshold")));
+            body.withSubnetId(required(request, "subnetId"));
+            body.withCreationToken(request.has("creationToken") ? request.get("creationToken").getAsString() : id.getVolume());
+            run(job, () -> Creation.createVolumeAsync(anfClient, id.getResourceGroup(), id.getAccount(), id.getCapacityPool(), id.getVolume(), body)
+                    .thenApply(VolumeInner::id));
+        }
+        else if (id.getCapacityPool() != null)
+        {
+            CapacityPoolInner body = new CapacityPoolInner();
+            body.withLocation(location);
+            body.withServiceLevel(ServiceLevel.fromString(required(request, "serviceLevel")));
+            body.withSize(Long.parseLong(required(request, "size")));
+            run(job, () -> Creation.createCapacityPoolAsync(anfClient, id.getResourceGroup(), id.getAccount(), id.getCapacityPool(), body)
+                    .thenApply(CapacityPoolInner::id));
+        }
+        else
+        {
+            NetAppAccountInner body = new NetAppAccountInner();
+            body.withLocation(location);
+            run(job, () -> Creation.createANFAccountAsync(anfClient, id.getResourceGroup(), id.getAccount(), body)
+                    .thenApply(NetAppAccountInner::id));
+        }
+        return job;
+    }
+
+    private DaemonJob submitCleanup(JsonObject request)
+    {
+        String resourceId = required(request, "resourceId");
+        ParsedResourceId id = parse(resourceId);
+
+        DaemonJob job = register("cleanup", resourceId);
+        if (id.getVolume() != null)
+        {
+            String[] params = {id.getResourceGroup(), id.getAccount(), id.getCapacityPool(), id.getVolume()};
+            run(job, () -> Cleanup.runCleanupTaskAsync(anfClient, params, VolumeInner.class).thenApply(ignored -> null));
+        }
+        else if (id.getCapacityPool() != null)
+        {
+            String[] params = {id.getResourceGroup(), id.getAccount(), id.getCapacityPool()};
+            run(job, () -> Cleanup.runCleanupTaskAsync(anfClient, params, CapacityPoolInner.class).thenApply(ignored -> null));
+        }
+        else
+        {
+            String[] params = {id.getResourceGroup(), id.getAccount()};
+            run(job, () -> Cleanup.runCleanupTaskAsync(anfClient, params, NetAppAccountInner.class).thenApply(ignored -> null));
+        }
+        return job;
+    }
+
+    // Queues a create or cleanup on the limiter, the future being completed with the resulting resource id
+    private void run(DaemonJob job, Supplier<CompletableFuture<String>> operation)
+    {
+        resourceJobs.submit(() -> {
+            job.started();
+            return operation.get();
+        }).whenComplete((resourceId, error) -> finish(job, resourceId, error));
+    }
+
+    private DaemonJob register(String type, String target)
+    {
+        DaemonJob job = new DaemonJob(UUID.randomUUID().toString(), type, target);
+        jobs.put(job.getId(), job);
+        return job;
+    }
+
+    private void finish(DaemonJob job, String resourceId, Throwable error)
+    {
+        if (error == null)
+        {
+            job.succeeded(resourceId);
+            Utils.writeSuccessMessage("Job " + job.getId() + " (" + job.getType() + ") succeeded");
+        }
+        else
+        {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            job.failed(cause.getMessage());
+            Utils.writeErrorMessage("Job " + job.getId() + " (" + job.getType() + ") failed - " + cause.getMessage());
+        }
+
+        // Finished jobs stay readable until newer ones push them out
+        synchronized (finished)
+        {
+            finished.add(job.getId());
+            while (finished.size() > FINISHED_JOBS_KEPT)
+            {
+                jobs.remove(finished.poll());
+            }
+        }
+    }
+
+    private JsonArray listJobs(String state)
+    {
+        JobState filter = null;
+        if (state != null)
+        {
+            try
+            {
+                filter = JobState.valueOf(state.toUpperCase(Locale.ROOT));
+            }
+            catch (IllegalArgumentException e)
+            {
+                throw new IllegalArgumentException("Unknown job state " + state);
+            }
+        }
+        JsonArray array = new JsonArray();
+        for (DaemonJob job : jobs.values())
+        {
+            if (filter == null || job.getState() == filter)
+            {
+                array.add(job.toJson());
+            }
+        }
+        return array;
+    }
+
+    private String metrics()
+    {
+        StringWriter out = new StringWriter();
+        try
+        {
+            OperationMetrics.getDefault().writePrometheus(out);
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException(e);
+        }
+
+        Map<String, Integer> counts = new TreeMap<>();
+        for (DaemonJob job : jobs.values())
+        {
+            counts.merge("type=\"" + job.getType() + "\",state=\"" + job.getState().name().toLowerCase(Locale.ROOT) + "\"", 1, Integer::sum);
+        }
+        out.write("# TYPE anf_daemon_jobs gauge\n");
+        counts.forEach((labels, count) -> out.write("anf_daemon_jobs{" + labels + "} " + count + "\n"));
+        out.write("# TYPE anf_daemon_lro_active gauge\n");
+        out.write("anf_daemon_lro_active " + lroTracker.getActiveCount() + "\n");
+        return out.toString();
+    }
+
+    @Override
+    public String toString()
+    {
+        Map<JobState, Integer> counts = new TreeMap<>();
+        for (DaemonJob job : jobs.values())
+        {
+            counts.merge(job.getState(), 1, Integer::sum);
+        }
+        return "Job daemon at " + getEndpoint() + ": " + jobs.size() + " jobs " + counts + ", " + lroTracker.getActiveCount()
+                + " operations polled";
+    }
+
+    private static JsonObject readBody(HttpExchange exchange)
+    {
+        try (InputStream in = exchange.getRequestBody())
+        {
+            JsonElement json = JsonParser.parseString(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            if (!json.isJsonObject())
+            {
+                throw new IllegalArgumentException("The request body must be a JSON object");
+            }
+            return json.getAsJsonObject();
+        }
+        catch (IOException | JsonParseException e)
+        {
+            throw new IllegalArgumentException("The request body is not valid JSON");
+        }
+    }
+
+    private static String required(JsonObject request, String property)
+    {
+        JsonElement value = request.get(property);
+        if (value == null || !value.isJsonPrimitive() || value.getAsString().isEmpty())
+        {
+            throw new IllegalArgumentException(property + " is required");
+        }
+        return value.getAsString();
+    }
+
+    private static ParsedResourceId parse(String resourceId)
+    {
+        ParsedResourceId id = ParsedResourceId.parse(resourceId);
+        if (id == null || id.getResourceGroup() == null || id.getAccount() == null)
+        {
+            throw new IllegalArgumentException(resourceId + " is not the resource id of a NetApp Account, Capacity Pool or Volume");
+        }
+        return id;
+    }
+
+    private static String queryParameter(HttpExchange exchange, String name)
+    {
+        String query = exchange.getRequestURI().getQuery();
+        if (query == null)
+        {
+            return null;
+        }
+        for (String pair : query.split("&"))
+        {
+            if (pair.startsWith(name + "="))
+            {
+                return pair.substring(name.length() + 1);
+            }
+        }
+        return null;
+    }
+
+    private static String error(String code, String message)
+    {
+        JsonObject error = new JsonObject();
+        error.addProperty("code", code);
+        error.addProperty("message", message);
+        JsonObject body = new JsonObject();
+        body.add("error", error);
+        return body.toString();
+    }
+}
@@ -0,0 +1,934 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.emulator;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+  In-process stand-in for the Microsoft.NetApp resource provider, so that the sample and its load tests can run without
+  a subscription. It serves the ARM endpoints the sample uses for Accounts, Capacity Pools, Volumes, Snapshots and
+  Snapshot Policies, plus the Volume poolChange action. Creates, updates, deletes and pool changes are long running
+  operations: they are accepted with an Azure-AsyncOperation URL and complete once their duration elapsed. Each kind of
+  operation has its own profile of response latency, duration, error, throttling and failure rates.
+
+  Resources are kept in memory. Pools check the quota of their Volumes against their size, pool changes only move
+  Volumes within their Account, and a resource running an operation answers others with 409 Conflict, as the service
+  does. No authentication is checked.
+*/
+public class AnfEmulator implements AutoCloseable
+{
+    /** Names of the operations a profile can be given for */
+    public static final String[] OPERATIONS = {"get", "list", "createOrUpdate", "update", "delete", "poolChange", "poll"};
+
+    private static final String PROVIDER = "Microsoft.NetApp";
+    private static final long TIB = 1099511627776L;
+    private static final long COMPLETED_OPERATIONS_KEPT = 100000;
+    private static final Map<String, String> RESOURCE_TYPES = Map.of(
+            "netappaccounts", "netAppAccounts",
+            "capacitypools", "capacityPools",
+            "volumes", "volumes",
+            "snapshots", "snapshots",
+            "snapshotpolicies", "snapshotPolicies");
+    // Parent type of each resource type, the provider itself for Accounts
+    private static final Map<String, String> PARENT_TYPES = Map.of(
+            "netAppAccounts", "",
+            "capacityPools", "netAppAccounts",
+            "snapshotPolicies", "netAppAccounts",
+            "volumes", "capacityPools",
+            "snapshots", "volumes");
+
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final ScheduledExecutorService responder;
+    private final Map<String, OperationProfile> profiles;
+    private final String endpoint;
+
+    // Guarded by this. Keyed by lowercased id, sorted so that the descendants of a resource follow it
+    private final TreeMap<String, EmulatedResource> resources = new TreeMap<>();
+    private final Map<String, AsyncOperation> operations = new HashMap<>();
+    private final PriorityQueue<AsyncOperation> running = new PriorityQueue<>(Comparator.comparingLong(operation -> operation.dueNanos));
+    private final ArrayDeque<AsyncOperation> completed = new ArrayDeque<>();
+    // Quota of the Volumes being moved into each pool, keyed by lowercased pool id
+    private final Map<String, Long> incomingQuota = new HashMap<>();
+
+    private final Map<String, LongAdder> requestCounts = new ConcurrentHashMap<>();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    private AnfEmulator(HttpServer server, Map<String, OperationProfile> profiles, int threads)
+    {
+        this.server = server;
+        this.profiles = profiles;
+        this.endpoint = "http://" + server.getAddress().getAddress().getHostAddress() + ":" + server.getAddress().getPort();
+        this.handlers = Executors.newFixedThreadPool(threads, runnable -> daemon(runnable, "anf-emulator"));
+        this.responder = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "anf-emulator-responder"));
+        server.setExecutor(handlers);
+        server.createContext("/", this::handle);
+    }
+
+    /**
+     * Starts an emulator on the loopback interface
+     * @param port Port to listen on, 0 for any free port
+     * @param profiles Profile of each operation, see OPERATIONS. Operations without one use OperationProfile.DEFAULT
+     * @return The running emulator
+     */
+    public static AnfEmulator start(int port, Map<String, OperationProfile> profiles) throws IOException
+    {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        AnfEmulator emulator = new AnfEmulator(server, new HashMap<>(profiles), Math.max(8, Runtime.getRuntime().availableProcessors() * 2));
+        server.start();
+        return emulator;
+    }
+
+    /**
+     * Reads the profile of every operation from system properties, see OperationProfile.fromSystemProperties. The
+     * properties named anf.emulator.default.* apply to every operation without its own
+     * @return Profile of each operation
+     */
+    public static Map<String, OperationProfile> profilesFromSystemProperties()
+    {
+        OperationProfile defaults = OperationProfile.fromSystemProperties("default", OperationProfile.DEFAULT);
+        Map<String, OperationProfile> profiles = new LinkedHashMap<>();
+        for (String operation : OPERATIONS)
+        {
+            profiles.put(operation, OperationProfile.fromSystemProperties(operation, defaults));
+        }
+        return profiles;
+    }
+
+    /**
+     * @return Base URL to point the management client at
+     */
+    public String getEndpoint()
+    {
+        return endpoint;
+    }
+
+    public synchronized int getResourceCount()
+    {
+        return resources.size();
+    }
+
+    public synchronized int getRunningOperationCount()
+    {
+        return running.size();
+    }
+
+    @Override
+    public void close()
+    {
+        server.stop(0);
+        responder.shutdownNow();
+        handlers.shutdownNow();
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "ANF emulator at " + endpoint + ": " + resources.size() + " resources, " + running.size() + " operations running, requests "
+                + requestCounts + ", " + throttled.sum() + " throttled, " + errors.sum() + " errors";
+    }
+
+    private void handle(HttpExchange exchange)
+    {
+        String method = exchange.getRequestMethod().toUpperCase(Locale.ROOT);
+        URI uri = exchange.getRequestURI();
+        Reply reply;
+        String operation = "get";
+        try
+        {
+            Request request = new Request(method, uri, readBody(exchange), exchange.getRequestHeaders().getFirst("If-None-Match"));
+            operation = request.operation;
+            requestCounts.computeIfAbsent(operation, key -> new LongAdder()).increment();
+
+            OperationProfile profile = profileOf(operation);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (random.nextDouble() < profile.getThrottleRate())
+            {
+                throttled.increment();
+                reply = error(429, "TooManyRequests", "The request is being throttled").header("Retry-After", "1");
+            }
+            else if (random.nextDouble() < profile.getErrorRate())
+            {
+                errors.increment();
+                reply = error(500, "InternalServerError", "An injected error occurred");
+            }
+            else
+            {
+                reply = execute(request);
+            }
+        }
+        catch (BadRequest e)
+        {
+            reply = e.reply;
+        }
+        catch (RuntimeException e)
+        {
+            reply = error(500, "InternalServerError", String.valueOf(e.getMessage()));
+        }
+
+        long latencyMillis = profileOf(operation).getLatency().toMillis();
+        Reply response = reply;
+        if (latencyMillis > 0)
+        {
+            responder.schedule(() -> handlers.execute(() -> send(exchange, response)), latencyMillis, TimeUnit.MILLISECONDS);
+        }
+        else
+        {
+            send(exchange, response);
+        }
+    }
+
+    private synchronized Reply execute(Request request)
+    {
+        settle();
+        switch (request.operation)
+        {
+            case "poll":
+                return poll(request.operationId);
+            case "get":
+                return get(request.resourceId, request.ifNoneMatch);
+            case "list":
+                return list(request.parentId, request.type);
+            case "createOrUpdate":
+            case "update":
+                return createOrUpdate(request);
+            case "delete":
+                return delete(request.resourceId);
+            case "poolChange":
+                return poolChange(request);
+            default:
+                return error(405, "MethodNotAllowed", "The method is not supported");
+        }
+    }
+
+    private Reply get(String resourceId, String ifNoneMatch)
+    {
+        EmulatedResource resource = resources.get(keyOf(resourceId));
+        if (resource == null)
+        {
+            return notFound(resourceId);
+        }
+        if (resource.getETag().equals(ifNoneMatch))
+        {
+            return new Reply(304, null).header("ETag", resource.getETag());
+        }
+        return new Reply(200, resource.toJson()).header("ETag", resource.getETag());
+    }
+
+    private Reply list(String parentId, String type)
+    {
+        if (!isProviderRoot(parentId) && !resources.containsKey(keyOf(parentId)))
+        {
+            return error(404, "ParentResourceNotFound", "The parent resource '" + parentId + "' was not found");
+        }
+
+        JsonArray value = new JsonArray();
+        for (EmulatedResource child : childrenOf(parentId, type))
+        {
+            value.add(child.toJson());
+        }
+        JsonObject page = new JsonObject();
+        page.add("value", value);
+        return new Reply(200, page);
+    }
+
+    private Reply createOrUpdate(Request request)
+    {
+        String key = keyOf(request.resourceId);
+        EmulatedResource existing = resources.get(key);
+        if (existing == null && request.operation.equals("update"))
+        {
+            return notFound(request.resourceId);
+        }
+        if (existing != null && existing.isBusy())
+        {
+            return conflict(request.resourceId);
+        }
+        EmulatedResource parent = isProviderRoot(request.parentId) ? null : resources.get(keyOf(request.parentId));
+        if (parent == null && !isProviderRoot(request.parentId))
+        {
+            return error(404, "ParentResourceNotFound", "The parent resource '" + request.parentId + "' was not found");
+        }
+
+        JsonObject body = request.body != null ? request.body : new JsonObject();
+        JsonObject properties = body.has("properties") && body.get("properties").isJsonObject()
+                ? body.getAsJsonObject("properties").deepCopy()
+                : new JsonObject();
+        if (existing != null && request.operation.equals("update"))
+        {
+            // A PATCH only changes the properties it sets
+            JsonObject merged = existing.getProperties().deepCopy();
+            properties.entrySet().forEach(entry -> merged.add(entry.getKey(), entry.getValue()));
+            properties = merged;
+        }
+        properties.remove("provisioningState");
+
+        String location = body.has("location") ? body.get("location").getAsString() : existing != null ? existing.getLocation() : null;
+        if (location == null)
+        {
+            return error(400, "LocationRequired", "The location property is required for this definition");
+        }
+
+        Reply invalid = validate(request, existing, parent, properties);
+        if (invalid != null)
+        {
+            return invalid;
+        }
+
+        JsonElement tags = body.has("tags") ? body.get("tags") : existing != null ? existing.getTags() : null;
+        EmulatedResource resource = new EmulatedResource(request.resourceId, request.armType, request.name, location, tags, properties);
+        resource.setProvisioningState(existing == null ? "Creating" : "Updating");
+        resources.put(key, resource);
+
+        AsyncOperation operation = begin(request.operation, resource, location,
+                () -> resource.setProvisioningState("Succeeded"),
+                () -> {
+                    // A failed create leaves nothing behind, a failed update the previous state
+                    if (existing == null)
+                    {
+                        resources.remove(key);
+                    }
+                    else
+                    {
+                        resources.put(key, existing);
+                    }
+                });
+        return accepted(existing == null ? 201 : 200, resource.toJson(), operation);
+    }
+
+    // Checks the properties each resource type requires and fills in the ones the service computes
+    private Reply validate(Request request, EmulatedResource existing, EmulatedResource parent, JsonObject properties)
+    {
+        switch (request.type)
+        {
+            case "capacityPools":
+                if (!properties.has("size") || !properties.has("serviceLevel"))
+                {
+                    return error(400, "InvalidParameter", "size and serviceLevel are required");
+                }
+                long size = properties.get("size").getAsLong();
+                if (size < TIB || size % TIB != 0)
+                {
+                    return error(400, "InvalidPoolSize", "The pool size must be a whole number of TiB");
+                }
+                long allocated = allocatedIn(request.resourceId);
+                if (size < allocated)
+                {
+                    return error(400, "PoolSizeTooSmall", "The pool size " + size + " is smaller than its Volumes' quota " + allocated);
+                }
+                properties.addProperty("poolId", existing != null ? existing.getString("poolId") : UUID.randomUUID().toString());
+                if (!properties.has("qosType"))
+                {
+                    properties.addProperty("qosType", "Auto");
+                }
+                properties.addProperty("totalThroughputMibps", (double) (size / TIB * throughputPerTib(properties.get("serviceLevel").getAsString())));
+                return null;
+
+            case "volumes":
+                if (!properties.has("usageThreshold") || !properties.has("creationToken") || !properties.has("subnetId"))
+                {
+                    return error(400, "InvalidParameter", "usageThreshold, creationToken and subnetId are required");
+                }
+                long quota = properties.get("usageThreshold").getAsLong();
+                long free = parent.getLong("size") - allocatedIn(request.parentId) + (existing != null ? existing.getLong("usageThreshold") : 0);
+                if (quota > free)
+                {
+                    return insufficientCapacity(request.parentId, quota, free);
+                }
+                String serviceLevel = parent.getString("serviceLevel");
+                properties.addProperty("serviceLevel", serviceLevel);
+                properties.addProperty("fileSystemId", existing != null ? existing.getString("fileSystemId") : UUID.randomUUID().toString());
+                properties.addProperty("throughputMibps", (double) quota / TIB * throughputPerTib(serviceLevel));
+                return null;
+
+            case "snapshots":
+                properties.addProperty("snapshotId", existing != null ? existing.getString("snapshotId") : UUID.randomUUID().toString());
+                properties.addProperty("created", existing != null ? existing.getString("created") : Instant.now().toString());
+                return null;
+
+            default:
+                return null;
+        }
+    }
+
+    private Reply delete(String resourceId)
+    {
+        String key = keyOf(resourceId);
+        EmulatedResource resource = resources.get(key);
+        if (resource == null)
+        {
+            return new Reply(204, null);
+        }
+        if (resource.isBusy())
+        {
+            return conflict(resourceId);
+        }
+
+        // Snapshots go along with their Volume, other children have to be deleted first
+        for (EmulatedResource descendant : descendantsOf(resourceId))
+        {
+            if (!descendant.getType().endsWith("/snapshots"))
+            {
+                return error(409, "CannotDeleteResource", "Cannot delete resource while nested resources exist. Delete "
+                        + descendant.getId() + " first");
+            }
+        }
+
+        resource.setProvisioningState("Deleting");
+        AsyncOperation operation = begin("delete", resource, resource.getLocation(),
+                () -> {
+                    for (EmulatedResource descendant : descendantsOf(resourceId))
+                    {
+                        resources.remove(keyOf(descendant.getId()));
+                    }
+                    resources.remove(key);
+                },
+                () -> resource.setProvisioningState("Succeeded"));
+        return accepted(202, null, operation);
+    }
+
+    private Reply poolChange(Request request)
+    {
+        String volumeKey = keyOf(request.resourceId);
+        EmulatedResource volume = resources.get(volumeKey);
+        if (volume == null)
+        {
+            return notFound(request.resourceId);
+        }
+        if (volume.isBusy())
+        {
+            return conflict(request.resourceId);
+        }
+
+        JsonElement newPoolId = request.body != null ? request.body.get("newPoolResourceId") : null;
+        if (newPoolId == null || !newPoolId.isJsonPrimitive())
+        {
+            return error(400, "InvalidParameter", "newPoolResourceId is required");
+        }
+        String destinationKey = keyOf(newPoolId.getAsString());
+        EmulatedResource destination = resources.get(destinationKey);
+        if (destination == null || !destination.getType().endsWith("/capacityPools"))
+        {
+            return error(404, "ResourceNotFound", "The Capacity Pool '" + newPoolId.getAsString() + "' was not found");
+        }
+        if (destinationKey.equals(keyOf(request.parentId)))
+        {
+            return error(400, "InvalidParameter", "The Volume is already in Capacity Pool " + destination.getId());
+        }
+        if (!parentOf(destinationKey).equals(parentOf(keyOf(request.parentId))))
+        {
+            return error(400, "InvalidParameter", "The new Capacity Pool must be in the same NetApp Account as the Volume");
+        }
+
+        long quota = volume.getLong("usageThreshold");
+        long free = destination.getLong("size") - allocatedIn(destination.getId());
+        if (quota > free)
+        {
+            return insufficientCapacity(destination.getId(), quota, free);
+        }
+
+        String volumeName = request.name.substring(request.name.lastIndexOf('/') + 1);
+        String destinationPoolName = destination.getId().substring(destination.getId().lastIndexOf('/') + 1);
+        String accountName = request.name.substring(0, request.name.indexOf('/'));
+        incomingQuota.merge(destinationKey, quota, Long::sum);
+        volume.setProvisioningState("Updating");
+
+        AsyncOperation operation = begin("poolChange", volume, volume.getLocation(),
+                () -> {
+                    incomingQuota.merge(destinationKey, -quota, Long::sum);
+                    String movedId = destination.getId() + "/volumes/" + volumeName;
+                    List<EmulatedResource> snapshots = descendantsOf(volume.getId());
+                    resources.remove(volumeKey);
+                    for (EmulatedResource snapshot : snapshots)
+                    {
+                        resources.remove(keyOf(snapshot.getId()));
+                        String snapshotName = snapshot.getId().substring(snapshot.getId().lastIndexOf('/') + 1);
+                        resources.put(keyOf(movedId + "/snapshots/" + snapshotName), snapshot.moveTo(movedId + "/snapshots/" + snapshotName,
+                                accountName + "/" + destinationPoolName + "/" + volumeName + "/" + snapshotName));
+                    }
+
+                    EmulatedResource moved = volume.moveTo(movedId, accountName + "/" + destinationPoolName + "/" + volumeName);
+                    String serviceLevel = destination.getString("serviceLevel");
+                    moved.getProperties().addProperty("serviceLevel", serviceLevel);
+                    moved.getProperties().addProperty("throughputMibps", (double) quota / TIB * throughputPerTib(serviceLevel));
+                    moved.setProvisioningState("Succeeded");
+                    resources.put(keyOf(movedId), moved);
+                },
+                () -> {
+                    incomingQuota.merge(destinationKey, -quota, Long::sum);
+                    volume.setProvisioningState("Succeeded");
+                });
+        return accepted(202, null, operation);
+    }
+
+    private Reply poll(String operationId)
+    {
+        AsyncOperation operation = operations.get(operationId);
+        if (operation == null)
+        {
+            return error(404, "OperationNotFound", "The operation '" + operationId + "' was not found");
+        }
+
+        JsonObject status = new JsonObject();
+        status.addProperty("id", operation.path);
+        status.addProperty("name", operationId);
+        status.addProperty("status", operation.status);
+        status.addProperty("startTime", operation.startTime.toString());
+        if (operation.endTime != null)
+        {
+            status.addProperty("endTime", operation.endTime.toString());
+            status.addProperty("percentComplete", 100.0);
+        }
+        if ("Failed".equals(operation.status))
+        {
+            JsonObject error = new JsonObject();
+            error.addProperty("code", "InternalServerError");
+            error.addProperty("message", "The " + operation.name + " operation on " + operation.resourceId + " failed (injected)");
+            status.add("error", error);
+        }
+
+        Reply reply = new Reply(200, status);
+        if (operation.endTime == null)
+        {
+            long remainingSeconds = TimeUnit.NANOSECONDS.toSeconds(operation.dueNanos - System.nanoTime()) + 1;
+            reply.header("Retry-After", String.valueOf(Math.max(1, Math.min(10, remainingSeconds))));
+        }
+        return reply;
+    }
+
+    // Registers a long running operation on a resource, to complete once its duration elapsed
+    private AsyncOperation begin(String name, EmulatedResource resource, String location, Runnable onSuccess, Runnable onFailure)
+    {
+        OperationProfile profile = profileOf(name);
+        String id = UUID.randomUUID().toString();
+        String subscription = resource.getId().split("/")[2];
+        String path = "/subscriptions/" + subscription + "/providers/" + PROVIDER + "/locations/"
+                + location.toLowerCase(Locale.ROOT).replace(" ", "") + "/operationResults/" + id;
+
+        AsyncOperation operation = new AsyncOperation(id, name, path, resource, System.nanoTime() + profile.getDuration().toNanos(),
+                ThreadLocalRandom.current().nextDouble() < profile.getFailureRate(), onSuccess, onFailure);
+        resource.setBusy(true);
+        operations.put(id, operation);
+        running.add(operation);
+        return operation;
+    }
+
+    // Completes every operation whose duration elapsed. State only changes when a request comes in
+    private void settle()
+    {
+        long now = System.nanoTime();
+        while (!running.isEmpty() && running.peek().dueNanos - now <= 0)
+        {
+            AsyncOperation operation = running.poll();
+            operation.resource.setBusy(false);
+            if (operation.fails)
+            {
+                operation.onFailure.run();
+                operation.status = "Failed";
+            }
+            else
+            {
+                operation.onSuccess.run();
+                operation.status = "Succeeded";
+            }
+            operation.endTime = Instant.now();
+
+            completed.add(operation);
+            if (completed.size() > COMPLETED_OPERATIONS_KEPT)
+            {
+                operations.remove(completed.poll().id);
+            }
+        }
+    }
+
+    private Reply accepted(int status, JsonObject body, AsyncOperation operation)
+    {
+        String statusUrl = endpoint + operation.path + "?api-version=2021-04-01";
+        return new Reply(status, body)
+                .header("Azure-AsyncOperation", statusUrl)
+                .header("Location", statusUrl)
+                .header("Retry-After", "1");
+    }
+
+    private long allocatedIn(String poolId)
+    {
+        long allocated = incomingQuota.getOrDefault(keyOf(poolId), 0L);
+        for (EmulatedResource volume : childrenOf(poolId, "volumes"))
+        {
+            allocated += volume.getLong("usageThreshold");
+        }
+        return allocated;
+    }
+
+    private List<EmulatedResource> childrenOf(String parentId, String type)
+    {
+        String prefix = keyOf(parentId) + "/" + type.toLowerCase(Locale.ROOT) + "/";
+        List<EmulatedResource> children = new ArrayList<>();
+        for (Map.Entry<String, EmulatedResource> entry : resources.tailMap(prefix, true).entrySet())
+        {
+            if (!entry.getKey().startsWith(prefix))
+            {
+                break;
+            }
+            if (entry.getKey().indexOf('/', prefix.length()) < 0)
+            {
+                children.add(entry.getValue());
+            }
+        }
+        return children;
+    }
+
+    private List<EmulatedResource> descendantsOf(String resourceId)
+    {
+        String prefix = keyOf(resourceId) + "/";
+        List<EmulatedResource> descendants = new ArrayList<>();
+        for (Map.Entry<String, EmulatedResource> entry : resources.tailMap(prefix, true).entrySet())
+        {
+            if (!entry.getKey().startsWith(prefix))
+            {
+                break;
+            }
+            descendants.add(entry.getValue());
+        }
+        return descendants;
+    }
+
+    private OperationProfile profileOf(String operation)
+    {
+        return profiles.getOrDefault(operation, OperationProfile.DEFAULT);
+    }
+
+    private void send(HttpExchange exchange, Reply reply)
+    {
+        try
+        {
+            byte[] bytes = reply.body != null ? reply.body.toString().getBytes(StandardCharsets.UTF_8) : new byte[0];
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.getResponseHeaders().set("x-ms-request-id", UUID.randomUUID().toString());
+            reply.headers.forEach((name, value) -> exchange.getResponseHeaders().set(name, value));
+            exchange.sendResponseHeaders(reply.status, bytes.length == 0 ? -1 : bytes.length);
+            if (bytes.length > 0)
+            {
+                try (OutputStream out = exchange.getResponseBody())
+                {
+                    out.write(bytes);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            // The client went away
+        }
+        finally
+        {
+            exchange.close();
+        }
+    }
+
+    private static JsonObject readBody(HttpExchange exchange)
+    {
+        try (InputStream in = exchange.getRequestBody())
+        {
+            String body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            if (body.isBlank())
+            {
+                return null;
+            }
+
+            JsonElement json = JsonParser.parseString(body);
+            if (!json.isJsonObject())
+            {
+                throw new BadRequest(error(400, "InvalidRequestContent", "The request content must be a JSON object"));
+            }
+            return json.getAsJsonObject();
+        }
+        catch (IOException | RuntimeException e)
+        {
+            if (e instanceof BadRequest)
+            {
+                throw (BadRequest) e;
+            }
+            throw new BadRequest(error(400, "InvalidRequestContent", "The request content is not valid JSON"));
+        }
+    }
+
+    private static Reply notFound(String resourceId)
+    {
+        return error(404, "ResourceNotFound", "The Resource '" + resourceId + "' was not found.");
+    }
+
+    private static Reply conflict(String resourceId)
+    {
+        return error(409, "AnotherOperationInProgress", "Another operation is in progress on resource " + resourceId + ", retry later");
+    }
+
+    private static Reply insufficientCapacity(String poolId, long quota, long free)
+    {
+        return error(400, "InsufficientPoolCapacity", "Capacity Pool " + poolId + " has " + free + " bytes free, " + quota + " are needed");
+    }
+
+    private static Reply error(int status, String code, String message)
+    {
+        JsonObject error = new JsonObject();
+        error.addProperty("code", code);
+        error.addProperty("message", message);
+        JsonObject body = new JsonObject();
+        body.add("error", error);
+        return new Reply(status, body);
+    }
+
+    private static int throughputPerTib(String serviceLevel)
+    {
+        switch (serviceLevel.toLowerCase(Locale.ROOT))
+        {
+            case "ultra":
+                return 128;
+            case "premium":
+                return 64;
+            default:
+                return 16;
+        }
+    }
+
+    private static boolean isProviderRoot(String id)
+    {
+        return id.toLowerCase(Locale.ROOT).endsWith("/providers/" + PROVIDER.toLowerCase(Locale.ROOT));
+    }
+
+    private static String parentOf(String key)
+    {
+        return key.substring(0, key.lastIndexOf('/', key.lastIndexOf('/') - 1));
+    }
+
+    private static String keyOf(String id)
+    {
+        return id.toLowerCase(Locale.ROOT);
+    }
+
+    private static Thread daemon(Runnable runnable, String name)
+    {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    // An ARM request split into the operation it asks for and the resource it targets
+    private static class Request
+    {
+        private String operation;
+        private String resourceId;
+        private String parentId;
+        private String type;
+        private String armType;
+        private String name;
+        private String operationId;
+        private final JsonObject body;
+        private final String ifNoneMatch;
+
+        private Request(String method, URI uri, JsonObject body, String ifNoneMatch)
+        {
+            this.body = body;
+            this.ifNoneMatch = ifNoneMatch;
+
+            List<String> segments = new ArrayList<>();
+            for (String segment : uri.getPath().split("/"))
+            {
+                if (!segment.isEmpty())
+                {
+                    segments.add(segment);
+                }
+            }
+
+            // /subscriptions/{id}/providers/Microsoft.NetApp/locations/{location}/operationResults/{operationId}
+            if (segments.size() == 8 && segments.get(0).equalsIgnoreCase("subscriptions") && segments.get(2).equalsIgnoreCase("providers")
+                    && segments.get(4).equalsIgnoreCase("locations") && segments.get(6).equalsIgnoreCase("operationResults"))
+            {
+                expect(method, "GET");
+                operation = "poll";
+                operationId = segments.get(7);
+                return;
+            }
+
+            // /subscriptions/{id}/resourceGroups/{name}/providers/Microsoft.NetApp/{type}/{name}...
+            if (segments.size() < 7 || !segments.get(0).equalsIgnoreCase("subscriptions") || !segments.get(2).equalsIgnoreCase("resourceGroups")
+                    || !segments.get(4).equalsIgnoreCase("providers") || !segments.get(5).equalsIgnoreCase(PROVIDER))
+            {
+                throw new BadRequest(error(404, "InvalidResourceNamespace", "No route for " + uri.getPath()));
+            }
+
+            StringBuilder id = new StringBuilder("/subscriptions/" + segments.get(1) + "/resourceGroups/" + segments.get(3) + "/providers/" + PROVIDER);
+            StringBuilder types = new StringBuilder(PROVIDER);
+            StringBuilder names = new StringBuilder();
+            String previousType = "";
+            String parent = id.toString();
+            List<String> path = segments.subList(6, segments.size());
+            boolean action = method.equals("POST") && path.size() % 2 == 1 && path.get(path.size() - 1).equalsIgnoreCase("poolChange");
+            int pairs = action ? path.size() - 1 : path.size();
+            for (int i = 0; i < pairs; i += 2)
+            {
+                String canonical = RESOURCE_TYPES.get(path.get(i).toLowerCase(Locale.ROOT));
+                if (canonical == null || !PARENT_TYPES.get(canonical).equals(previousType))
+                {
+                    throw new BadRequest(error(400, "InvalidResourceType", "The resource type '" + path.get(i) + "' is not valid here"));
+                }
+                previousType = canonical;
+                type = canonical;
+                types.append('/').append(canonical);
+                parent = id.toString();
+                id.append('/').append(canonical);
+                if (i + 1 < pairs)
+                {
+                    id.append('/').append(path.get(i + 1));
+                    names.append(names.length() > 0 ? "/" : "").append(path.get(i + 1));
+                }
+            }
+
+            armType = types.toString();
+            name = names.toString();
+            if (action)
+            {
+                if (!type.equals("volumes"))
+                {
+                    throw new BadRequest(error(400, "InvalidResourceType", "poolChange is only available on Volumes"));
+                }
+                operation = "poolChange";
+                resourceId = id.toString();
+                parentId = parent;
+            }
+            else if (path.size() % 2 == 1)
+            {
+                expect(method, "GET");
+                operation = "list";
+                // The collection itself, e.g. .../capacityPools, is listed under its parent
+                parentId = id.substring(0, id.length() - type.length() - 1);
+            }
+            else
+            {
+                resourceId = id.toString();
+                parentId = parent;
+                switch (method)
+                {
+                    case "GET":
+                        operation = "get";
+                        break;
+                    case "PUT":
+                        operation = "createOrUpdate";
+                        break;
+                    case "PATCH":
+                        operation = "update";
+                        break;
+                    case "DELETE":
+                        operation = "delete";
+                        break;
+                    default:
+                        throw new BadRequest(error(405, "MethodNotAllowed", method + " is not supported on " + uri.getPath()));
+                }
+            }
+        }
+
+        private static void expect(String method, String expected)
+        {
+            if (!method.equals(expected))
+            {
+                throw new BadRequest(error(405, "MethodNotAllowed", method + " is not supported here"));
+            }
+        }
+    }
+
+    private static class Reply
+    {
+        private final int status;
+        private final JsonObject body;
+        private final Map<String, String> headers = new LinkedHashMap<>();
+
+        private Reply(int status, JsonObject body)
+        {
+            this.status = status;
+            this.body = body;
+        }
+
+        private Reply header(String name, String value)
+        {
+            headers.put(name, value);
+            return this;
+        }
+    }
+
+    // Ends handling a request with an error response
+    private static class BadRequest extends RuntimeException
+    {
+        private final Reply reply;
+
+        private BadRequest(Reply reply)
+        {
+            super(null, null, false, false);
+            this.reply = reply;
+        }
+    }
+
+    private static class AsyncOperation
+    {
+        private final String id;
+        private final String name;
+        private final String path;
+        private final String resourceId;
+        private final EmulatedResource resource;
+        private final long dueNanos;
+        private final boolean fails;
+        private final Runnable onSuccess;
+        private final Runnable onFailure;
+        private final Instant startTime = Instant.now();
+        private String status = "InProgress";
+        private Instant endTime;
+
+        private AsyncOperation(String id, String name, String path, EmulatedResource resource, long dueNanos, boolean fails,
+                               Runnable onSuccess, Runnable onFailure)
+        {
+            this.id = id;
+            this.name = name;
+            this.path = path;
+            this.resourceId = resource.getId();
+            this.resource = resource;
+            this.dueNanos = dueNanos;
+            this.fails = fails;
+            this.onSuccess = onSuccess;
+            this.onFailure = onFailure;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.emulator;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+// An Account, Capacity Pool, Volume, Snapshot or Snapshot Policy held by the emulator
+class EmulatedResource
+{
+    private final String id;
+    private final String type;
+    private final String name;
+    private final String location;
+    private final JsonElement tags;
+    private final JsonObject properties;
+    private long etag;
+    private boolean busy;
+
+    EmulatedResource(String id, String type, String name, String location, JsonElement tags, JsonObject properties)
+    {
+        this.id = id;
+        this.type = type;
+        this.name = name;
+        this.location = location;
+        this.tags = tags;
+        this.properties = properties;
+        this.etag = 1;
+    }
+
+    String getId()
+    {
+        return id;
+    }
+
+    /**
+     * @return ARM resource type, e.g. Microsoft.NetApp/netAppAccounts/capacityPools
+     */
+    String getType()
+    {
+        return type;
+    }
+
+    String getLocation()
+    {
+        return location;
+    }
+
+    JsonElement getTags()
+    {
+        return tags;
+    }
+
+    JsonObject getProperties()
+    {
+        return properties;
+    }
+
+    long getLong(String property)
+    {
+        JsonElement value = properties.get(property);
+        return value != null && value.isJsonPrimitive() ? value.getAsLong() : 0;
+    }
+
+    String getString(String property)
+    {
+        JsonElement value = properties.get(property);
+        return value != null && value.isJsonPrimitive() ? value.getAsString() : null;
+    }
+
+    void setProvisioningState(String state)
+    {
+        properties.addProperty("provisioningState", state);
+        etag++;
+    }
+
+    String getETag()
+    {
+        return "\"" + etag + "\"";
+    }
+
+    /**
+     * @return Whether a long running operation is running on the resource
+     */
+    boolean isBusy()
+    {
+        return busy;
+    }
+
+    void setBusy(boolean busy)
+    {
+        this.busy = busy;
+    }
+
+    /**
+     * @param newId Resource id of the copy
+     * @param newName Name of the copy, e.g. "account/pool/volume"
+     * @return A copy of the resource under another id, as after a pool change
+     */
+    EmulatedResource moveTo(String newId, String newName)
+    {
+        EmulatedResource moved = new EmulatedResource(newId, type, newName, location, tags, properties.deepCopy());
+        moved.etag = etag + 1;
+        return moved;
+    }
+
+    JsonObject toJson()
+    {
+        JsonObject json = new JsonObject();
+        json.addProperty("id", id);
+        json.addProperty("name", name);
+        json.addProperty("type", type);
+        json.addProperty("location", location);
+        json.addProperty("etag", getETag());
+        if (tags != null)
+        {
+            json.add("tags", tags);
+        }
+        json.add("properties", properties.deepCopy());
+        return json;
+    }
+}
@@ -0,0 +1,93 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.emulator;
+
+import java.time.Duration;
+
+// How the emulator answers one kind of operation: how fast, how long it runs, and how often it fails or throttles
+public class OperationProfile
+{
+    /** Answers at once, completes long running operations after 1 second, never fails */
+    public static final OperationProfile DEFAULT = new OperationProfile(Duration.ZERO, Duration.ofSeconds(1), 0, 0, 0);
+
+    private final Duration latency;
+    private final Duration duration;
+    private final double errorRate;
+    private final double throttleRate;
+    private final double failureRate;
+
+    /**
+     * @param latency Time before the response of each request is sent
+     * @param duration Time a long running operation stays in progress after it was accepted
+     * @param errorRate Fraction of requests answered with a 500 Internal Server Error
+     * @param throttleRate Fraction of requests answered with a 429 Too Many Requests and a Retry-After
+     * @param failureRate Fraction of accepted long running operations that end as failed
+     */
+    public OperationProfile(Duration latency, Duration duration, double errorRate, double throttleRate, double failureRate)
+    {
+        this.latency = latency;
+        this.duration = duration;
+        this.errorRate = errorRate;
+        this.throttleRate = throttleRate;
+        this.failureRate = failureRate;
+    }
+
+    /**
+     * Reads a profile from system properties named anf.emulator.[operation].latencyMs, durationMs, errorRate,
+     * throttleRate and failureRate, falling back to a default profile for the ones not set
+     * @param operation Operation name: get, list, createOrUpdate, update, delete, poolChange or poll
+     * @param defaults Profile whose values are used for the properties not set
+     * @return The profile of the operation
+     */
+    public static OperationProfile fromSystemProperties(String operation, OperationProfile defaults)
+    {
+        String prefix = "anf.emulator." + operation + ".";
+        return new OperationProfile(
+                Duration.ofMillis(Long.getLong(prefix + "latencyMs", defaults.latency.toMillis())),
+                Duration.ofMillis(Long.getLong(prefix + "durationMs", defaults.duration.toMillis())),
+                doubleProperty(prefix + "errorRate", defaults.errorRate),
+                doubleProperty(prefix + "throttleRate", defaults.throttleRate),
+                doubleProperty(prefix + "failureRate", defaults.failureRate));
+    }
+
+    public Duration getLatency()
+    {
+        return latency;
+    }
+
+    public Duration getDuration()
+    {
+        return duration;
+    }
+
+    public double getErrorRate()
+    {
+        return errorRate;
+    }
+
+    public double getThrottleRate()
+    {
+        return throttleRate;
+    }
+
+    public double getFailureRate()
+    {
+        return failureRate;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "latency " + latency.toMillis() + "ms, duration " + duration.toMillis() + "ms, errors " + errorRate + ", throttles "
+                + throttleRate + ", failures " + failureRate;
+    }
+
+    private static double doubleProperty(String name, double defaultValue)
+    {
+        String value = System.getProperty(name);
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+}
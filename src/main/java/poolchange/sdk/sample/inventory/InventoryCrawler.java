@@ -0,0 +1,336 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.inventory;
+
+import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
+import com.azure.resourcemanager.netapp.fluent.models.CapacityPoolInner;
+import com.azure.resourcemanager.netapp.fluent.models.NetAppAccountInner;
+import com.azure.resourcemanager.netapp.fluent.models.SnapshotInner;
+import com.azure.resourcemanager.netapp.fluent.models.SnapshotPolicyInner;
+import com.azure.resourcemanager.netapp.fluent.models.VolumeInner;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import poolchange.sdk.sample.common.ParsedResourceId;
+import poolchange.sdk.sample.common.Utils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/*
+  Lists every Account, Snapshot Policy, Capacity Pool, Volume and Snapshot of a set of resource groups. Each list call
+  is a task on a bounded pool: the accounts of every resource group are listed at once, then the pools and policies of
+  every account as soon as it is found, and so on down the hierarchy. Resources are streamed to an NDJSON snapshot file
+  as their pages arrive, gzip compressed when the file name ends with .gz.
+
+  Given the previous snapshot, the crawl also reports which resources were added, changed or removed since.
+*/
+public class InventoryCrawler
+{
+    private final NetAppManagementClient anfClient;
+    private final int maxConcurrency;
+    private final boolean includeSnapshots;
+
+    /**
+     * @param anfClient Azure NetApp Files Management Client
+     * @param maxConcurrency Maximum number of list calls in flight at once
+     * @param includeSnapshots Whether to list the Snapshots of every Volume, one call per Volume
+     */
+    public InventoryCrawler(NetAppManagementClient anfClient, int maxConcurrency, boolean includeSnapshots)
+    {
+        this.anfClient = anfClient;
+        this.maxConcurrency = maxConcurrency;
+        this.includeSnapshots = includeSnapshots;
+    }
+
+    /**
+     * Crawls the given resource groups
+     * @param resourceGroups Names of the resource groups to list
+     * @param snapshotFile Where to write the snapshot. It is replaced once the crawl is complete
+     * @param previousSnapshot Snapshot to compare with, may be the same file as snapshotFile, or null
+     * @return Counts of the resources found and changes since the previous snapshot
+     */
+    public InventoryReport crawl(List<String> resourceGroups, Path snapshotFile, Path previousSnapshot) throws IOException
+    {
+        long start = System.nanoTime();
+        boolean diff = previousSnapshot != null && Files.exists(previousSnapshot);
+        Map<String, Long> previous = diff ? readFingerprints(previousSnapshot) : null;
+
+        Path absolute = snapshotFile.toAbsolutePath();
+        Path temporary = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        Crawl crawl;
+        try (Writer out = openWriter(temporary, isCompressed(snapshotFile)))
+        {
+            crawl = new Crawl(out, previous);
+            crawl.run(resourceGroups);
+        }
+        Files.move(temporary, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // Whatever was not seen again is gone, unless its parent could not be listed
+        List<String> removed = new ArrayList<>();
+        if (diff)
+        {
+            for (String id : previous.keySet())
+            {
+                if (!crawl.isUnderFailedParent(id))
+                {
+                    removed.add(id);
+                }
+            }
+        }
+        Collections.sort(removed);
+
+        Map<String, Integer> counts = new TreeMap<>();
+        crawl.counts.forEach((type, count) -> counts.put(type, count.get()));
+        return new InventoryReport(counts, sorted(crawl.added), sorted(crawl.changed), removed, crawl.failedLists.get(),
+                Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    /**
+     * Reads the records of a snapshot file one at a time
+     * @param snapshotFile Snapshot written by crawl
+     * @param consumer Receives each record
+     */
+    public static void readSnapshot(Path snapshotFile, Consumer<InventoryRecord> consumer) throws IOException
+    {
+        try (JsonReader reader = new JsonReader(openReader(snapshotFile)))
+        {
+            reader.setLenient(true);
+            while (reader.peek() != JsonToken.END_DOCUMENT)
+            {
+                consumer.accept(InventoryRecord.read(reader));
+            }
+        }
+    }
+
+    private static Map<String, Long> readFingerprints(Path snapshotFile) throws IOException
+    {
+        Map<String, Long> fingerprints = new ConcurrentHashMap<>();
+        readSnapshot(snapshotFile, record -> fingerprints.put(record.getId().toLowerCase(Locale.ROOT), record.getFingerprint()));
+        return fingerprints;
+    }
+
+    private static boolean isCompressed(Path file)
+    {
+        return file.getFileName().toString().endsWith(".gz");
+    }
+
+    private static Writer openWriter(Path file, boolean compressed) throws IOException
+    {
+        OutputStream out = Files.newOutputStream(file);
+        if (compressed)
+        {
+            out = new GZIPOutputStream(out, 64 * 1024);
+        }
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    private static BufferedReader openReader(Path file) throws IOException
+    {
+        InputStream in = Files.newInputStream(file);
+        if (isCompressed(file))
+        {
+            in = new GZIPInputStream(in, 64 * 1024);
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    private static List<String> sorted(Set<String> ids)
+    {
+        List<String> list = new ArrayList<>(ids);
+        Collections.sort(list);
+        return list;
+    }
+
+    // State of one crawl: outstanding list calls, the snapshot being written and the diff being built
+    private class Crawl
+    {
+        private final Writer out;
+        private final JsonWriter json;
+        // Fingerprints of the previous snapshot not seen yet, null when there is nothing to compare with
+        private final Map<String, Long> previous;
+        private final ExecutorService executor = Executors.newFixedThreadPool(maxConcurrency);
+        private final AtomicInteger pending = new AtomicInteger();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private final Map<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+        private final Set<String> added = ConcurrentHashMap.newKeySet();
+        private final Set<String> changed = ConcurrentHashMap.newKeySet();
+        private final Set<String> failedParents = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger failedLists = new AtomicInteger();
+        private IOException writeError;
+
+        private Crawl(Writer out, Map<String, Long> previous)
+        {
+            this.out = out;
+            this.json = new JsonWriter(out);
+            // Lenient mode lets the writer emit one top level object per line
+            this.json.setLenient(true);
+            this.previous = previous;
+        }
+
+        private void run(List<String> resourceGroups) throws IOException
+        {
+            String subscriptionId = anfClient.getSubscriptionId();
+            pending.incrementAndGet();
+            for (String resourceGroup : resourceGroups)
+            {
+                String parentId = "/subscriptions/" + subscriptionId + "/resourceGroups/" + resourceGroup;
+                fork(parentId, () -> anfClient.getAccounts().list(resourceGroup).forEach(this::onAccount));
+            }
+            complete();
+
+            try
+            {
+                done.join();
+            }
+            finally
+            {
+                executor.shutdown();
+            }
+
+            synchronized (this)
+            {
+                if (writeError != null)
+                {
+                    throw writeError;
+                }
+            }
+        }
+
+        private void onAccount(NetAppAccountInner account)
+        {
+            emit(InventoryRecord.of(account));
+            ParsedResourceId id = ParsedResourceId.parse(account.id());
+            fork(account.id(), () -> anfClient.getPools().list(id.getResourceGroup(), id.getAccount()).forEach(this::onPool));
+            fork(account.id(), () -> anfClient.getSnapshotPolicies().list(id.getResourceGroup(), id.getAccount())
+                    .forEach((SnapshotPolicyInner policy) -> emit(InventoryRecord.of(policy))));
+        }
+
+        private void onPool(CapacityPoolInner pool)
+        {
+            emit(InventoryRecord.of(pool));
+            ParsedResourceId id = ParsedResourceId.parse(pool.id());
+            fork(pool.id(), () -> anfClient.getVolumes().list(id.getResourceGroup(), id.getAccount(), id.getCapacityPool())
+                    .forEach(this::onVolume));
+        }
+
+        private void onVolume(VolumeInner volume)
+        {
+            emit(InventoryRecord.of(volume));
+            if (includeSnapshots)
+            {
+                ParsedResourceId id = ParsedResourceId.parse(volume.id());
+                fork(volume.id(), () -> anfClient.getSnapshots().list(id.getResourceGroup(), id.getAccount(), id.getCapacityPool(), id.getVolume())
+                        .forEach((SnapshotInner snapshot) -> emit(InventoryRecord.of(snapshot))));
+            }
+        }
+
+        // Runs a list call on the pool, the crawl being over once no call is pending
+        private void fork(String parentId, Runnable list)
+        {
+            pending.incrementAndGet();
+            executor.execute(() -> {
+                try
+                {
+                    list.run();
+                }
+                catch (Exception e)
+                {
+                    failedLists.incrementAndGet();
+                    failedParents.add(parentId.toLowerCase(Locale.ROOT) + "/");
+                    Utils.writeWarningMessage("Error listing resources under " + parentId + " - " + e.getMessage());
+                }
+                finally
+                {
+                    complete();
+                }
+            });
+        }
+
+        private void complete()
+        {
+            if (pending.decrementAndGet() == 0)
+            {
+                done.complete(null);
+            }
+        }
+
+        private void emit(InventoryRecord record)
+        {
+            String key = record.getId().toLowerCase(Locale.ROOT);
+            counts.computeIfAbsent(record.getType(), k -> new AtomicInteger()).incrementAndGet();
+
+            if (previous != null)
+            {
+                Long fingerprint = previous.remove(key);
+                if (fingerprint == null)
+                {
+                    added.add(key);
+                }
+                else if (fingerprint != record.getFingerprint())
+                {
+                    changed.add(key);
+                }
+            }
+
+            synchronized (this)
+            {
+                if (writeError != null)
+                {
+                    return;
+                }
+                try
+                {
+                    record.write(json);
+                    out.write('\n');
+                }
+                catch (IOException e)
+                {
+                    writeError = e;
+                }
+            }
+        }
+
+        private boolean isUnderFailedParent(String id)
+        {
+            for (String parent : failedParents)
+            {
+                if (id.startsWith(parent))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
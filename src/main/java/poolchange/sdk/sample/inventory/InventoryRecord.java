@@ -0,0 +1,195 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.inventory;
+
+import com.azure.resourcemanager.netapp.fluent.models.CapacityPoolInner;
+import com.azure.resourcemanager.netapp.fluent.models.NetAppAccountInner;
+import com.azure.resourcemanager.netapp.fluent.models.SnapshotInner;
+import com.azure.resourcemanager.netapp.fluent.models.SnapshotPolicyInner;
+import com.azure.resourcemanager.netapp.fluent.models.VolumeInner;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+// One resource of an inventory snapshot, reduced to the properties worth comparing between two crawls
+public class InventoryRecord
+{
+    private final String type;
+    private final String id;
+    private final String location;
+    private final String provisioningState;
+    private final String serviceLevel;
+    private final Long size;
+
+    public InventoryRecord(String type, String id, String location, String provisioningState, String serviceLevel, Long size)
+    {
+        this.type = type;
+        this.id = id;
+        this.location = location;
+        this.provisioningState = provisioningState;
+        this.serviceLevel = serviceLevel;
+        this.size = size;
+    }
+
+    static InventoryRecord of(NetAppAccountInner account)
+    {
+        return new InventoryRecord("account", account.id(), account.location(), account.provisioningState(), null, null);
+    }
+
+    static InventoryRecord of(SnapshotPolicyInner policy)
+    {
+        return new InventoryRecord("snapshotPolicy", policy.id(), policy.location(), policy.provisioningState(), null, null);
+    }
+
+    static InventoryRecord of(CapacityPoolInner pool)
+    {
+        return new InventoryRecord("pool", pool.id(), pool.location(), pool.provisioningState(),
+                pool.serviceLevel() != null ? pool.serviceLevel().toString() : null, pool.size());
+    }
+
+    static InventoryRecord of(VolumeInner volume)
+    {
+        return new InventoryRecord("volume", volume.id(), volume.location(), volume.provisioningState(),
+                volume.serviceLevel() != null ? volume.serviceLevel().toString() : null, volume.usageThreshold());
+    }
+
+    static InventoryRecord of(SnapshotInner snapshot)
+    {
+        return new InventoryRecord("snapshot", snapshot.id(), snapshot.location(), snapshot.provisioningState(), null, null);
+    }
+
+    /**
+     * @return account, snapshotPolicy, pool, volume or snapshot
+     */
+    public String getType()
+    {
+        return type;
+    }
+
+    public String getId()
+    {
+        return id;
+    }
+
+    public String getLocation()
+    {
+        return location;
+    }
+
+    public String getProvisioningState()
+    {
+        return provisioningState;
+    }
+
+    /**
+     * @return Service level of a pool or volume, otherwise null
+     */
+    public String getServiceLevel()
+    {
+        return serviceLevel;
+    }
+
+    /**
+     * @return Size in bytes of a pool, or quota of a volume, otherwise null
+     */
+    public Long getSize()
+    {
+        return size;
+    }
+
+    /**
+     * @return Checksum of the compared properties, equal for two records that did not change
+     */
+    public long getFingerprint()
+    {
+        CRC32 crc = new CRC32();
+        crc.update((type + '|' + location + '|' + provisioningState + '|' + serviceLevel + '|' + size).getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    /**
+     * Writes the record as one compact JSON object, omitting null properties
+     */
+    void write(JsonWriter writer) throws IOException
+    {
+        writer.beginObject();
+        writer.name("type").value(type);
+        writer.name("id").value(id);
+        if (location != null)
+        {
+            writer.name("location").value(location);
+        }
+        if (provisioningState != null)
+        {
+            writer.name("provisioningState").value(provisioningState);
+        }
+        if (serviceLevel != null)
+        {
+            writer.name("serviceLevel").value(serviceLevel);
+        }
+        if (size != null)
+        {
+            writer.name("size").value(size);
+        }
+        writer.endObject();
+    }
+
+    /**
+     * Reads a record written by write
+     */
+    static InventoryRecord read(JsonReader reader) throws IOException
+    {
+        String type = null;
+        String id = null;
+        String location = null;
+        String provisioningState = null;
+        String serviceLevel = null;
+        Long size = null;
+
+        reader.beginObject();
+        while (reader.hasNext())
+        {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL)
+            {
+                reader.nextNull();
+                continue;
+            }
+
+            switch (name)
+            {
+                case "type":
+                    type = reader.nextString();
+                    break;
+                case "id":
+                    id = reader.nextString();
+                    break;
+                case "location":
+                    location = reader.nextString();
+                    break;
+                case "provisioningState":
+                    provisioningState = reader.nextString();
+                    break;
+                case "serviceLevel":
+                    serviceLevel = reader.nextString();
+                    break;
+                case "size":
+                    size = reader.nextLong();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        return new InventoryRecord(type, id, location, provisioningState, serviceLevel, size);
+    }
+}
@@ -0,0 +1,85 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.inventory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+// Outcome of an inventory crawl: how many resources of each type were found and, for a refresh, what changed
+public class InventoryReport
+{
+    private final Map<String, Integer> countsByType;
+    private final List<String> added;
+    private final List<String> changed;
+    private final List<String> removed;
+    private final int failedLists;
+    private final Duration elapsed;
+
+    InventoryReport(Map<String, Integer> countsByType, List<String> added, List<String> changed, List<String> removed,
+                    int failedLists, Duration elapsed)
+    {
+        this.countsByType = countsByType;
+        this.added = added;
+        this.changed = changed;
+        this.removed = removed;
+        this.failedLists = failedLists;
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * @return Number of resources found, by type: account, snapshotPolicy, pool, volume and snapshot
+     */
+    public Map<String, Integer> getCountsByType()
+    {
+        return countsByType;
+    }
+
+    /**
+     * @return Resource ids missing from the previous snapshot, empty without a previous snapshot
+     */
+    public List<String> getAdded()
+    {
+        return added;
+    }
+
+    /**
+     * @return Resource ids whose location, provisioning state, service level or size changed since the previous snapshot
+     */
+    public List<String> getChanged()
+    {
+        return changed;
+    }
+
+    /**
+     * @return Resource ids of the previous snapshot that no longer exist. Resources under a parent that could not be
+     *         listed are not reported as removed
+     */
+    public List<String> getRemoved()
+    {
+        return removed;
+    }
+
+    /**
+     * @return Number of list calls that failed, whose resources are missing from the snapshot
+     */
+    public int getFailedLists()
+    {
+        return failedLists;
+    }
+
+    public Duration getElapsed()
+    {
+        return elapsed;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Inventory of " + countsByType + " in " + elapsed.toMillis() + "ms: " + added.size() + " added, " + changed.size()
+                + " changed, " + removed.size() + " removed, " + failedLists + " failed list calls";
+    }
+}
@@ -0,0 +1,95 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.loadtest;
+
+import java.util.Random;
+
+// Where a load test creates its resources and the synthetic Volume population it moves between pools
+public class LoadProfile
+{
+    /** Smallest Volume quota, 100GiB */
+    public static final long MIN_VOLUME_SIZE = 107374182400L;
+
+    private final String resourceGroup;
+    private final String location;
+    private final String subnetId;
+    private final int volumeCount;
+    private final long maxVolumeSize;
+    private final long seed;
+
+    /**
+     * @param resourceGroup Name of the resource group every Account of the test is created in
+     * @param location Azure region of the resources
+     * @param subnetId Resource id of the delegated subnet of the Volumes
+     * @param volumeCount Number of Volumes created, moved and deleted by each run
+     * @param maxVolumeSize Largest Volume quota in bytes. Quotas are spread between 100GiB and this size
+     * @param seed Seed of the quota sizes, the same seed giving the same population
+     */
+    public LoadProfile(String resourceGroup, String location, String subnetId, int volumeCount, long maxVolumeSize, long seed)
+    {
+        if (volumeCount < 1)
+        {
+            throw new IllegalArgumentException("volumeCount must be at least 1");
+        }
+
+        this.resourceGroup = resourceGroup;
+        this.location = location;
+        this.subnetId = subnetId;
+        this.volumeCount = volumeCount;
+        this.maxVolumeSize = Math.max(MIN_VOLUME_SIZE, maxVolumeSize);
+        this.seed = seed;
+    }
+
+    public String getResourceGroup()
+    {
+        return resourceGroup;
+    }
+
+    public String getLocation()
+    {
+        return location;
+    }
+
+    public String getSubnetId()
+    {
+        return subnetId;
+    }
+
+    public int getVolumeCount()
+    {
+        return volumeCount;
+    }
+
+    public long getMaxVolumeSize()
+    {
+        return maxVolumeSize;
+    }
+
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * Draws the quota of every Volume, in whole GiB. Most Volumes are small and a few are large, as in real Accounts
+     * @return Quota in bytes of each Volume
+     */
+    public long[] volumeSizes()
+    {
+        long gib = 1073741824L;
+        long minGib = MIN_VOLUME_SIZE / gib;
+        long maxGib = maxVolumeSize / gib;
+        Random random = new Random(seed);
+        long[] sizes = new long[volumeCount];
+        for (int i = 0; i < volumeCount; i++)
+        {
+            // Squaring a uniform draw skews the sizes towards the small end
+            double draw = random.nextDouble();
+            sizes[i] = (minGib + (long) (draw * draw * (maxGib - minGib))) * gib;
+        }
+        return sizes;
+    }
+}
@@ -0,0 +1,222 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.loadtest;
+
+import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
+import com.azure.resourcemanager.netapp.fluent.models.CapacityPoolInner;
+import com.azure.resourcemanager.netapp.fluent.models.NetAppAccountInner;
+import com.azure.resourcemanager.netapp.fluent.models.VolumeInner;
+import com.azure.resourcemanager.netapp.models.ServiceLevel;
+import poolchange.sdk.sample.Cleanup;
+import poolchange.sdk.sample.Creation;
+import poolchange.sdk.sample.Update;
+import poolchange.sdk.sample.common.Utils;
+import poolchange.sdk.sample.metrics.Histogram;
+import poolchange.sdk.sample.planning.PlacementPlanner;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+  Measures how pool changes scale with concurrency. Each run creates its own Account with a Premium source pool, a
+  Standard destination pool and the profile's synthetic Volumes, moves every Volume to the destination pool, then
+  deletes everything, each phase through the sample's own Creation, Update and Cleanup methods. Operations of a phase
+  are run by as many threads as the run's concurrency, closed loop, and each one is timed into a histogram, so that
+  throughput and tail latency can be compared between concurrency levels and between builds.
+*/
+public class LoadTest
+{
+    private static final DateTimeFormatter RUN_ID_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+    private final NetAppManagementClient anfClient;
+    private final LoadProfile profile;
+    private final String runId;
+
+    /**
+     * @param anfClient Azure NetApp Files Management Client, pointed at an emulator or at Azure
+     * @param profile Resource group, location and Volume population of the test
+     */
+    public LoadTest(NetAppManagementClient anfClient, LoadProfile profile)
+    {
+        this.anfClient = anfClient;
+        this.profile = profile;
+        this.runId = LocalDateTime.now().format(RUN_ID_FORMAT);
+    }
+
+    /**
+     * Runs the test once per concurrency level, one level after the other
+     * @param concurrencyLevels Number of operations in flight of each run
+     * @return Results of every phase of every run
+     */
+    public LoadTestReport run(int... concurrencyLevels)
+    {
+        Map<Integer, List<PhaseResult>> runs = new LinkedHashMap<>();
+        for (int concurrency : concurrencyLevels)
+        {
+            Utils.writeConsoleMessage("Load test: " + profile.getVolumeCount() + " Volumes, concurrency " + concurrency + "...");
+            runs.put(concurrency, runOnce(concurrency));
+        }
+        return new LoadTestReport(profile, runs);
+    }
+
+    private List<PhaseResult> runOnce(int concurrency)
+    {
+        String resourceGroup = profile.getResourceGroup();
+        String accountName = "loadtest-" + runId + "-c" + concurrency;
+        long[] sizes = profile.volumeSizes();
+        long totalSize = 0;
+        for (long size : sizes)
+        {
+            totalSize += size;
+        }
+        long poolSize = PlacementPlanner.roundUpPoolSize(totalSize);
+
+        List<PhaseResult> phases = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "anf-loadtest");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Where each Volume currently is, null until it is created
+        String[] volumePools = new String[sizes.length];
+        try
+        {
+            NetAppAccountInner account = new NetAppAccountInner();
+            account.withLocation(profile.getLocation());
+            phases.add(runPhase("createAccount", executor, List.of(
+                    () -> Creation.createANFAccount(anfClient, resourceGroup, accountName, account))));
+
+            String[] poolNames = {"source", "destination"};
+            ServiceLevel[] serviceLevels = {ServiceLevel.PREMIUM, ServiceLevel.STANDARD};
+            String[] poolIds = new String[2];
+            List<Runnable> createPools = new ArrayList<>();
+            for (int i = 0; i < 2; i++)
+            {
+                int pool = i;
+                CapacityPoolInner body = new CapacityPoolInner();
+                body.withLocation(profile.getLocation());
+                body.withServiceLevel(serviceLevels[pool]);
+                body.withSize(poolSize);
+                createPools.add(() -> poolIds[pool] = Creation.createCapacityPool(anfClient, resourceGroup, accountName, poolNames[pool], body).id());
+            }
+            phases.add(runPhase("createPools", executor, createPools));
+            if (poolIds[0] == null || poolIds[1] == null)
+            {
+                Utils.writeErrorMessage("Could not create the Capacity Pools of Account " + accountName + ", skipping its Volumes");
+                return phases;
+            }
+
+            List<Runnable> createVolumes = new ArrayList<>();
+            for (int i = 0; i < sizes.length; i++)
+            {
+                int volume = i;
+                VolumeInner body = new VolumeInner();
+                body.withLocation(profile.getLocation());
+                body.withServiceLevel(ServiceLevel.PREMIUM);
+                body.withCreationToken(accountName + "-" + volumeName(volume));
+                body.withSubnetId(profile.getSubnetId());
+                body.withUsageThreshold(sizes[volume]);
+                createVolumes.add(() -> {
+                    Creation.createVolume(anfClient, resourceGroup, accountName, poolNames[0], volumeName(volume), body);
+                    volumePools[volume] = poolNames[0];
+                });
+            }
+            phases.add(runPhase("createVolumes", executor, createVolumes));
+
+            List<Runnable> poolChanges = new ArrayList<>();
+            for (int i = 0; i < sizes.length; i++)
+            {
+                int volume = i;
+                if (volumePools[volume] != null)
+                {
+                    poolChanges.add(() -> {
+                        Update.volumePoolChange(anfClient, resourceGroup, accountName, poolNames[0], volumeName(volume), poolIds[1]);
+                        volumePools[volume] = poolNames[1];
+                    });
+                }
+            }
+            phases.add(runPhase("poolChange", executor, poolChanges));
+            return phases;
+        }
+        finally
+        {
+            // Whatever was created is deleted, even when a phase could not run
+            List<Runnable> deleteVolumes = new ArrayList<>();
+            for (int i = 0; i < sizes.length; i++)
+            {
+                String[] params = {resourceGroup, accountName, volumePools[i], volumeName(i)};
+                if (params[2] != null)
+                {
+                    deleteVolumes.add(() -> Cleanup.runCleanupTask(anfClient, params, VolumeInner.class));
+                }
+            }
+            phases.add(runPhase("deleteVolumes", executor, deleteVolumes));
+            phases.add(runPhase("deletePools", executor, List.of(
+                    () -> Cleanup.runCleanupTask(anfClient, new String[]{resourceGroup, accountName, "source"}, CapacityPoolInner.class),
+                    () -> Cleanup.runCleanupTask(anfClient, new String[]{resourceGroup, accountName, "destination"}, CapacityPoolInner.class))));
+            phases.add(runPhase("deleteAccount", executor, List.of(
+                    () -> Cleanup.runCleanupTask(anfClient, new String[]{resourceGroup, accountName}, NetAppAccountInner.class))));
+            executor.shutdownNow();
+        }
+    }
+
+    // Runs every operation on the executor, timing each one, and waits for all of them
+    private static PhaseResult runPhase(String name, ExecutorService executor, List<Runnable> operations)
+    {
+        Histogram latency = new Histogram();
+        Map<String, AtomicInteger> errors = new ConcurrentHashMap<>();
+        AtomicBoolean firstError = new AtomicBoolean(true);
+
+        long start = System.nanoTime();
+        List<CompletableFuture<Void>> futures = new ArrayList<>(operations.size());
+        for (Runnable operation : operations)
+        {
+            futures.add(CompletableFuture.runAsync(() -> {
+                long operationStart = System.nanoTime();
+                try
+                {
+                    operation.run();
+                }
+                catch (RuntimeException e)
+                {
+                    Throwable error = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    errors.computeIfAbsent(error.getClass().getSimpleName(), key -> new AtomicInteger()).incrementAndGet();
+                    if (firstError.compareAndSet(true, false))
+                    {
+                        Utils.writeErrorMessage("First " + name + " error: " + error.getMessage());
+                    }
+                }
+                finally
+                {
+                    latency.record(System.nanoTime() - operationStart);
+                }
+            }, executor));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+        Map<String, Integer> errorCounts = new LinkedHashMap<>();
+        errors.forEach((type, count) -> errorCounts.put(type, count.get()));
+        return new PhaseResult(name, latency, errorCounts, Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private static String volumeName(int index)
+    {
+        return String.format(Locale.ROOT, "vol-%05d", index);
+    }
+}
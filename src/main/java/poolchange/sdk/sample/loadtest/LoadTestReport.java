@@ -0,0 +1,158 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.loadtest;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+  Results of a load test: every phase of every concurrency level, written as JSON for tools and as a text table for
+  people. A report can be compared with the JSON of an earlier one to list the phases whose throughput dropped or whose
+  p99 latency rose, so a scaling regression shows up before it reaches production.
+*/
+public class LoadTestReport
+{
+    private final LoadProfile profile;
+    private final Map<Integer, List<PhaseResult>> runs;
+
+    LoadTestReport(LoadProfile profile, Map<Integer, List<PhaseResult>> runs)
+    {
+        this.profile = profile;
+        this.runs = runs;
+    }
+
+    /**
+     * @return Phases of each run, keyed by concurrency level in the order they ran
+     */
+    public Map<Integer, List<PhaseResult>> getRuns()
+    {
+        return runs;
+    }
+
+    /**
+     * @return Whether no operation of any phase failed
+     */
+    public boolean isSuccess()
+    {
+        return runs.values().stream().flatMap(List::stream).allMatch(phase -> phase.getErrorCount() == 0);
+    }
+
+    public JsonObject toJson()
+    {
+        JsonObject json = new JsonObject();
+        json.addProperty("volumes", profile.getVolumeCount());
+        json.addProperty("maxVolumeSize", profile.getMaxVolumeSize());
+        json.addProperty("seed", profile.getSeed());
+
+        JsonArray runArray = new JsonArray();
+        runs.forEach((concurrency, phases) -> {
+            JsonObject run = new JsonObject();
+            run.addProperty("concurrency", concurrency);
+            JsonArray phaseArray = new JsonArray();
+            phases.forEach(phase -> phaseArray.add(phase.toJson()));
+            run.add("phases", phaseArray);
+            runArray.add(run);
+        });
+        json.add("runs", runArray);
+        return json;
+    }
+
+    /**
+     * @return One line per phase of every run with its throughput and latency percentiles in milliseconds
+     */
+    public String toTable()
+    {
+        StringBuilder table = new StringBuilder();
+        table.append(String.format(Locale.ROOT, "%11s  %-13s %7s %6s %9s %9s %10s %10s %10s %10s %10s%n",
+                "concurrency", "phase", "ops", "errors", "seconds", "ops/s", "p50", "p90", "p99", "p99.9", "max"));
+        runs.forEach((concurrency, phases) -> phases.forEach(phase -> table.append(String.format(Locale.ROOT,
+                "%11d  %-13s %7d %6d %9.1f %9.2f %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                concurrency, phase.getName(), phase.getLatency().getCount(), phase.getErrorCount(), phase.getElapsed().toMillis() / 1000d,
+                phase.getThroughput(), phase.getLatencyMillis(50), phase.getLatencyMillis(90), phase.getLatencyMillis(99),
+                phase.getLatencyMillis(99.9), phase.getLatency().getMax() / 1_000_000d))));
+        return table.toString();
+    }
+
+    /**
+     * Writes the JSON report and, next to it, the text table with a .txt extension
+     * @param jsonFile Destination of the JSON report
+     */
+    public void write(Path jsonFile) throws IOException
+    {
+        try (Writer out = Files.newBufferedWriter(jsonFile, StandardCharsets.UTF_8))
+        {
+            new GsonBuilder().setPrettyPrinting().create().toJson(toJson(), out);
+        }
+        Files.writeString(jsonFile.resolveSibling(jsonFile.getFileName() + ".txt"), toTable(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compares this report with an earlier one, phase by phase for the concurrency levels both ran
+     * @param previousJsonFile JSON report of an earlier run
+     * @param tolerance Relative change allowed before a phase is reported, e.g. 0.1 for 10%
+     * @return One message per phase whose throughput dropped or whose p99 latency rose by more than the tolerance
+     */
+    public List<String> findRegressions(Path previousJsonFile, double tolerance) throws IOException
+    {
+        JsonObject previous;
+        try (Reader in = Files.newBufferedReader(previousJsonFile, StandardCharsets.UTF_8))
+        {
+            previous = JsonParser.parseReader(in).getAsJsonObject();
+        }
+
+        // Earlier phases keyed by concurrency and phase name
+        Map<String, JsonObject> before = new HashMap<>();
+        for (JsonElement run : previous.getAsJsonArray("runs"))
+        {
+            int concurrency = run.getAsJsonObject().get("concurrency").getAsInt();
+            for (JsonElement phase : run.getAsJsonObject().getAsJsonArray("phases"))
+            {
+                before.put(concurrency + "/" + phase.getAsJsonObject().get("phase").getAsString(), phase.getAsJsonObject());
+            }
+        }
+
+        List<String> regressions = new ArrayList<>();
+        runs.forEach((concurrency, phases) -> {
+            for (PhaseResult phase : phases)
+            {
+                JsonObject earlier = before.get(concurrency + "/" + phase.getName());
+                if (earlier == null || phase.getLatency().getCount() == 0)
+                {
+                    continue;
+                }
+
+                double opsBefore = earlier.get("opsPerSecond").getAsDouble();
+                double p99Before = earlier.get("p99Ms").getAsDouble();
+                if (phase.getThroughput() < opsBefore * (1 - tolerance))
+                {
+                    regressions.add(String.format(Locale.ROOT, "%s at concurrency %d: %.2f ops/s, was %.2f",
+                            phase.getName(), concurrency, phase.getThroughput(), opsBefore));
+                }
+                if (phase.getLatencyMillis(99) > p99Before * (1 + tolerance))
+                {
+                    regressions.add(String.format(Locale.ROOT, "%s at concurrency %d: p99 %.1fms, was %.1fms",
+                            phase.getName(), concurrency, phase.getLatencyMillis(99), p99Before));
+                }
+            }
+        });
+        return regressions;
+    }
+}
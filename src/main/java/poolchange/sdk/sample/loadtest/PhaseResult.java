@@ -0,0 +1,100 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.loadtest;
+
+import com.google.gson.JsonObject;
+import poolchange.sdk.sample.metrics.Histogram;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Latency histogram, error counts and wall clock time of one phase of a load test run, e.g. every pool change
+public class PhaseResult
+{
+    private final String name;
+    private final Histogram latency;
+    private final Map<String, Integer> errors;
+    private final Duration elapsed;
+
+    PhaseResult(String name, Histogram latency, Map<String, Integer> errors, Duration elapsed)
+    {
+        this.name = name;
+        this.latency = latency;
+        this.errors = new TreeMap<>(errors);
+        this.elapsed = elapsed;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @return Latency of every operation of the phase, successful or not, in nanoseconds
+     */
+    public Histogram getLatency()
+    {
+        return latency;
+    }
+
+    /**
+     * @return Number of failed operations by exception type
+     */
+    public Map<String, Integer> getErrors()
+    {
+        return errors;
+    }
+
+    public int getErrorCount()
+    {
+        return errors.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    public Duration getElapsed()
+    {
+        return elapsed;
+    }
+
+    /**
+     * @return Operations completed per second of wall clock time, successful or not
+     */
+    public double getThroughput()
+    {
+        double seconds = elapsed.toNanos() / 1_000_000_000d;
+        return seconds == 0 ? 0 : latency.getCount() / seconds;
+    }
+
+    /**
+     * @param percentile Percentile between 0 and 100
+     * @return Latency in milliseconds under which the given percentage of the operations completed
+     */
+    public double getLatencyMillis(double percentile)
+    {
+        return latency.getValueAtPercentile(percentile) / 1_000_000d;
+    }
+
+    JsonObject toJson()
+    {
+        JsonObject json = new JsonObject();
+        json.addProperty("phase", name);
+        json.addProperty("operations", latency.getCount());
+        json.addProperty("errors", getErrorCount());
+        json.addProperty("seconds", elapsed.toMillis() / 1000d);
+        json.addProperty("opsPerSecond", getThroughput());
+        json.addProperty("meanMs", latency.getMean() / 1_000_000d);
+        json.addProperty("p50Ms", getLatencyMillis(50));
+        json.addProperty("p90Ms", getLatencyMillis(90));
+        json.addProperty("p99Ms", getLatencyMillis(99));
+        json.addProperty("p999Ms", getLatencyMillis(99.9));
+        json.addProperty("maxMs", latency.getMax() / 1_000_000d);
+
+        JsonObject errorsJson = new JsonObject();
+        errors.forEach(errorsJson::addProperty);
+        json.add("errorsByType", errorsJson);
+        return json;
+    }
+}
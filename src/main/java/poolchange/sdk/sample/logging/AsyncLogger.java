@@ -0,0 +1,328 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.logging;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+  Logger handing events to a dedicated writer thread through a ring buffer of preallocated slots. A log call claims a
+  sequence number, fills the slot in place and publishes it, so callers never take a lock nor touch the console; the
+  writer formats events and hands them to each sink in batches. When the ring is full callers wait for the writer rather
+  than dropping events.
+
+  The default logger writes the sample's colored console output. Starting the JVM with -Danf.log.format=json switches the
+  console to JSON lines, and -Danf.log.file=<path> additionally appends JSON lines to a file.
+*/
+public class AsyncLogger implements AutoCloseable
+{
+    private static final int DEFAULT_CAPACITY = 8192;
+    private static final int MAX_FIELDS = 8;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private static final AsyncLogger DEFAULT = createDefault();
+
+    private final LogSink[] sinks;
+    private final LogEvent[] slots;
+    private final int mask;
+
+    // Next sequence to claim, and the sequence each slot was last published with
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLongArray published;
+    // Next sequence the writer will consume
+    private final AtomicLong consumed = new AtomicLong();
+
+    private final Thread writer;
+    private volatile boolean writerWaiting;
+    private volatile boolean closed;
+    private volatile boolean writerDone;
+
+    private final LongAdder producerWaits = new LongAdder();
+    private final LongAdder sinkErrors = new LongAdder();
+
+    /**
+     * @param capacity Number of ring buffer slots, rounded up to a power of two
+     * @param sinks Destinations every event is written to, in order
+     */
+    public AsyncLogger(int capacity, List<LogSink> sinks)
+    {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.sinks = sinks.toArray(new LogSink[0]);
+        this.slots = new LogEvent[size];
+        for (int i = 0; i < size; i++)
+        {
+            slots[i] = new LogEvent(MAX_FIELDS);
+        }
+        this.mask = size - 1;
+
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+        {
+            published.set(i, -1);
+        }
+
+        this.writer = new Thread(this::runWriter, "anf-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * @return Logger used by Utils, flushed and closed when the JVM exits
+     */
+    public static AsyncLogger getDefault()
+    {
+        return DEFAULT;
+    }
+
+    public void log(LogLevel level, String message)
+    {
+        LogEvent event = claim(level, message);
+        publish(event);
+    }
+
+    public void log(LogLevel level, String message, String key, Object value)
+    {
+        LogEvent event = claim(level, message);
+        event.addField(key, value);
+        publish(event);
+    }
+
+    public void log(LogLevel level, String message, String key1, Object value1, String key2, Object value2)
+    {
+        LogEvent event = claim(level, message);
+        event.addField(key1, value1);
+        event.addField(key2, value2);
+        publish(event);
+    }
+
+    /**
+     * Logs a message with structured fields, given as alternating keys and values. Up to 8 fields are kept
+     * @param level Severity
+     * @param message Human readable message
+     * @param fields Alternating String keys and values, e.g. "volumeId", id, "elapsedMs", 1200L
+     */
+    public void log(LogLevel level, String message, Object... fields)
+    {
+        LogEvent event = claim(level, message);
+        for (int i = 0; i + 1 < fields.length; i += 2)
+        {
+            event.addField(String.valueOf(fields[i]), fields[i + 1]);
+        }
+        publish(event);
+    }
+
+    /**
+     * Writes every event logged so far and stops the writer thread. Events logged afterwards are written by the calling
+     * thread
+     */
+    @Override
+    public void close()
+    {
+        closed = true;
+        LockSupport.unpark(writer);
+        try
+        {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return Number of times a caller had to wait for the writer because the ring buffer was full
+     */
+    public long getProducerWaits()
+    {
+        return producerWaits.sum();
+    }
+
+    /**
+     * @return Number of events a sink failed to write
+     */
+    public long getSinkErrors()
+    {
+        return sinkErrors.sum();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "events: " + consumed.get() + ", capacity: " + slots.length
+                + ", producer waits: " + getProducerWaits() + ", sink errors: " + getSinkErrors();
+    }
+
+    private LogEvent claim(LogLevel level, String message)
+    {
+        long sequence = claimed.getAndIncrement();
+        if (sequence - slots.length >= consumed.get())
+        {
+            waitForSlot(sequence);
+        }
+
+        LogEvent event = slots[(int) (sequence & mask)];
+        event.set(sequence, CachedClock.currentTimeMillis(), level, Thread.currentThread().getName(), message);
+        return event;
+    }
+
+    private void publish(LogEvent event)
+    {
+        published.set((int) (event.getSequence() & mask), event.getSequence());
+
+        if (writerDone)
+        {
+            drainLocked();
+        }
+        else if (writerWaiting)
+        {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private void waitForSlot(long sequence)
+    {
+        producerWaits.increment();
+        while (sequence - slots.length >= consumed.get())
+        {
+            if (writerDone)
+            {
+                drainLocked();
+            }
+            else
+            {
+                LockSupport.unpark(writer);
+                LockSupport.parkNanos(this, TimeUnit.MICROSECONDS.toNanos(100));
+            }
+        }
+    }
+
+    private void runWriter()
+    {
+        while (true)
+        {
+            if (drain() > 0)
+            {
+                continue;
+            }
+
+            flushSinks();
+            if (closed && consumed.get() == claimed.get())
+            {
+                break;
+            }
+
+            writerWaiting = true;
+            if (!isPublished(consumed.get()) && !closed)
+            {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            writerWaiting = false;
+        }
+
+        // From now on producers write their own events, under the lock
+        writerDone = true;
+        drainLocked();
+    }
+
+    private synchronized void drainLocked()
+    {
+        drain();
+        flushSinks();
+    }
+
+    private int drain()
+    {
+        int count = 0;
+        long next = consumed.get();
+        while (isPublished(next))
+        {
+            LogEvent event = slots[(int) (next & mask)];
+            for (LogSink sink : sinks)
+            {
+                try
+                {
+                    sink.write(event);
+                }
+                catch (IOException | RuntimeException e)
+                {
+                    sinkErrors.increment();
+                }
+            }
+
+            event.clear();
+            next++;
+            consumed.lazySet(next);
+            count++;
+        }
+        return count;
+    }
+
+    private boolean isPublished(long sequence)
+    {
+        return published.get((int) (sequence & mask)) == sequence;
+    }
+
+    private void flushSinks()
+    {
+        for (LogSink sink : sinks)
+        {
+            try
+            {
+                sink.flush();
+            }
+            catch (IOException | RuntimeException e)
+            {
+                sinkErrors.increment();
+            }
+        }
+    }
+
+    private static AsyncLogger createDefault()
+    {
+        List<LogSink> sinks = new ArrayList<>();
+        if ("json".equalsIgnoreCase(System.getProperty("anf.log.format")))
+        {
+            sinks.add(new JsonLinesSink(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+        }
+        else
+        {
+            sinks.add(new ConsoleSink());
+        }
+
+        String file = System.getProperty("anf.log.file");
+        if (file != null && !file.isEmpty())
+        {
+            try
+            {
+                Writer writer = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                sinks.add(new JsonLinesSink(writer));
+            }
+            catch (IOException e)
+            {
+                // The logger does not exist yet, and stdout may carry the JSON lines of the log itself
+                System.err.println("Could not open log file " + file + " - " + e.getMessage());
+            }
+        }
+
+        AsyncLogger logger = new AsyncLogger(DEFAULT_CAPACITY, sinks);
+        Runtime.getRuntime().addShutdownHook(new Thread(logger::close, "anf-log-shutdown"));
+        return logger;
+    }
+}
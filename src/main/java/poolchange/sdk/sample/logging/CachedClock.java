@@ -0,0 +1,49 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.logging;
+
+/*
+  Wall clock read by every log call. A daemon thread refreshes it at a fixed resolution, so that taking a timestamp is a
+  single volatile read instead of a system call.
+*/
+public final class CachedClock
+{
+    private static final long RESOLUTION_MILLIS = 10;
+
+    private static volatile long currentTimeMillis = System.currentTimeMillis();
+
+    static
+    {
+        Thread ticker = new Thread(() -> {
+            while (true)
+            {
+                currentTimeMillis = System.currentTimeMillis();
+                try
+                {
+                    Thread.sleep(RESOLUTION_MILLIS);
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+            }
+        }, "anf-log-clock");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    private CachedClock()
+    {
+    }
+
+    /**
+     * @return Current time in milliseconds since the epoch, accurate to about 10 milliseconds
+     */
+    public static long currentTimeMillis()
+    {
+        return currentTimeMillis;
+    }
+}
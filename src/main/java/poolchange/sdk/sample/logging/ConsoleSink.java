@@ -0,0 +1,77 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.logging;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/*
+  Human readable sink keeping the sample's original console format: local time, then the message in its level's color,
+  followed by any structured fields as key=value pairs. Output is accumulated and printed once per drained batch.
+*/
+public class ConsoleSink implements LogSink
+{
+    private static final DateTimeFormatter PATTERN = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private static final int MAX_BUFFERED_CHARS = 64 * 1024;
+
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final StringBuilder buffer = new StringBuilder(MAX_BUFFERED_CHARS);
+
+    private long cachedSecond = Long.MIN_VALUE;
+    private String cachedTime;
+
+    @Override
+    public void write(LogEvent event)
+    {
+        buffer.append(formatTime(event.getTimeMillis())).append(' ');
+
+        String color = event.getLevel().getColor();
+        buffer.append(color).append(event.getMessage());
+        for (int i = 0; i < event.getFieldCount(); i++)
+        {
+            buffer.append(' ').append(event.getFieldKey(i)).append('=').append(event.getFieldValue(i));
+        }
+        if (!color.isEmpty())
+        {
+            buffer.append(LogLevel.RESET);
+        }
+        buffer.append(System.lineSeparator());
+
+        if (buffer.length() >= MAX_BUFFERED_CHARS)
+        {
+            flush();
+        }
+    }
+
+    @Override
+    public void flush()
+    {
+        if (buffer.length() == 0)
+        {
+            return;
+        }
+
+        // System.out is looked up on every flush so that a redirected stdout is honored
+        PrintStream out = System.out;
+        out.print(buffer);
+        out.flush();
+        buffer.setLength(0);
+    }
+
+    private String formatTime(long timeMillis)
+    {
+        long second = Math.floorDiv(timeMillis, 1000);
+        if (second != cachedSecond)
+        {
+            cachedSecond = second;
+            cachedTime = LocalTime.ofInstant(Instant.ofEpochMilli(timeMillis), zone).format(PATTERN);
+        }
+        return cachedTime;
+    }
+}
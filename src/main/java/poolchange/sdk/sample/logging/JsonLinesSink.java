@@ -0,0 +1,159 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.logging;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/*
+  Machine readable sink writing one JSON object per line: time (UTC, millisecond precision), level, thread and message,
+  followed by the structured fields. Numbers and booleans are written as JSON values, anything else as a string.
+*/
+public class JsonLinesSink implements LogSink
+{
+    private static final DateTimeFormatter SECOND_PATTERN = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss").withZone(ZoneOffset.UTC);
+    private static final int MAX_BUFFERED_CHARS = 64 * 1024;
+
+    private final Writer out;
+    private final StringBuilder buffer = new StringBuilder(MAX_BUFFERED_CHARS);
+
+    private long cachedSecond = Long.MIN_VALUE;
+    private String cachedTime;
+
+    /**
+     * @param out Destination, closed by the caller
+     */
+    public JsonLinesSink(Writer out)
+    {
+        this.out = out;
+    }
+
+    @Override
+    public void write(LogEvent event) throws IOException
+    {
+        buffer.append("{\"time\":\"");
+        appendTime(event.getTimeMillis());
+        buffer.append("\",\"level\":\"").append(event.getLevel().name());
+        buffer.append("\",\"thread\":");
+        appendString(event.getThread());
+        buffer.append(",\"message\":");
+        appendString(event.getMessage());
+
+        for (int i = 0; i < event.getFieldCount(); i++)
+        {
+            buffer.append(',');
+            appendString(event.getFieldKey(i));
+            buffer.append(':');
+            appendValue(event.getFieldValue(i));
+        }
+        buffer.append("}\n");
+
+        if (buffer.length() >= MAX_BUFFERED_CHARS)
+        {
+            flush();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+        if (buffer.length() > 0)
+        {
+            out.append(buffer);
+            buffer.setLength(0);
+        }
+        out.flush();
+    }
+
+    private void appendTime(long timeMillis)
+    {
+        long second = Math.floorDiv(timeMillis, 1000);
+        if (second != cachedSecond)
+        {
+            cachedSecond = second;
+            cachedTime = SECOND_PATTERN.format(Instant.ofEpochSecond(second));
+        }
+
+        int millis = (int) Math.floorMod(timeMillis, 1000);
+        buffer.append(cachedTime).append('.');
+        if (millis < 100)
+        {
+            buffer.append('0');
+        }
+        if (millis < 10)
+        {
+            buffer.append('0');
+        }
+        buffer.append(millis).append('Z');
+    }
+
+    private void appendValue(Object value)
+    {
+        if (value == null)
+        {
+            buffer.append("null");
+        }
+        else if (value instanceof Boolean || value instanceof Integer || value instanceof Long || value instanceof Short)
+        {
+            buffer.append(value);
+        }
+        else if ((value instanceof Double && Double.isFinite((Double) value)) || (value instanceof Float && Float.isFinite((Float) value)))
+        {
+            buffer.append(value);
+        }
+        else
+        {
+            appendString(String.valueOf(value));
+        }
+    }
+
+    private void appendString(String value)
+    {
+        if (value == null)
+        {
+            buffer.append("null");
+            return;
+        }
+
+        buffer.append('"');
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            switch (c)
+            {
+                case '"':
+                    buffer.append("\\\"");
+                    break;
+                case '\\':
+                    buffer.append("\\\\");
+                    break;
+                case '\n':
+                    buffer.append("\\n");
+                    break;
+                case '\r':
+                    buffer.append("\\r");
+                    break;
+                case '\t':
+                    buffer.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20)
+                    {
+                        buffer.append("\\u00");
+                        buffer.append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xF, 16));
+                    }
+                    else
+                    {
+                        buffer.append(c);
+                    }
+            }
+        }
+        buffer.append('"');
+    }
+}
@@ -0,0 +1,97 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.logging;
+
+/*
+  One slot of the logger's ring buffer. Slots are allocated once and reused: a producer fills the claimed slot in place
+  and the writer thread clears the references once every sink has written it.
+*/
+public final class LogEvent
+{
+    private long sequence;
+    private long timeMillis;
+    private LogLevel level;
+    private String thread;
+    private String message;
+    private final Object[] fields;
+    private int fieldCount;
+
+    LogEvent(int maxFields)
+    {
+        this.fields = new Object[maxFields * 2];
+    }
+
+    void set(long sequence, long timeMillis, LogLevel level, String thread, String message)
+    {
+        this.sequence = sequence;
+        this.timeMillis = timeMillis;
+        this.level = level;
+        this.thread = thread;
+        this.message = message;
+        this.fieldCount = 0;
+    }
+
+    void addField(String key, Object value)
+    {
+        if (fieldCount < fields.length / 2)
+        {
+            fields[fieldCount * 2] = key;
+            fields[fieldCount * 2 + 1] = value;
+            fieldCount++;
+        }
+    }
+
+    void clear()
+    {
+        message = null;
+        thread = null;
+        for (int i = 0; i < fieldCount * 2; i++)
+        {
+            fields[i] = null;
+        }
+        fieldCount = 0;
+    }
+
+    long getSequence()
+    {
+        return sequence;
+    }
+
+    public long getTimeMillis()
+    {
+        return timeMillis;
+    }
+
+    public LogLevel getLevel()
+    {
+        return level;
+    }
+
+    public String getThread()
+    {
+        return thread;
+    }
+
+    public String getMessage()
+    {
+        return message;
+    }
+
+    public int getFieldCount()
+    {
+        return fieldCount;
+    }
+
+    public String getFieldKey(int index)
+    {
+        return (String) fields[index * 2];
+    }
+
+    public Object getFieldValue(int index)
+    {
+        return fields[index * 2 + 1];
+    }
+}
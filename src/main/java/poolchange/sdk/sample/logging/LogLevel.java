@@ -0,0 +1,32 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.logging;
+
+// Severity of a log event, with the console color it is displayed in
+public enum LogLevel
+{
+    INFO(""),
+    SUCCESS("\033[0;32m"),
+    WARNING("\033[0;33m"),
+    ERROR("\033[0;31m");
+
+    static final String RESET = "\033[0m";
+
+    private final String color;
+
+    LogLevel(String color)
+    {
+        this.color = color;
+    }
+
+    /**
+     * @return ANSI escape sequence starting this level's color, empty for uncolored levels
+     */
+    public String getColor()
+    {
+        return color;
+    }
+}
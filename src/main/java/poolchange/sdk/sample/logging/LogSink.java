@@ -0,0 +1,23 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.logging;
+
+import java.io.IOException;
+
+// Destination of log events. Sinks are only called from the logger's writer thread, so they need no locking
+public interface LogSink
+{
+    /**
+     * Writes one event, possibly into a buffer
+     * @param event Event to write, only valid for the duration of the call
+     */
+    void write(LogEvent event) throws IOException;
+
+    /**
+     * Flushes buffered output, called whenever the writer thread has drained the ring buffer
+     */
+    void flush() throws IOException;
+}
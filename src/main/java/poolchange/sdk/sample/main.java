@@ -5,27 +5,72 @@
 
 package poolchange.sdk.sample;
 
-import com.azure.core.credential.TokenCredential;
 import com.azure.core.exception.AzureException;
-import com.azure.core.management.AzureEnvironment;
-import com.azure.core.management.profile.AzureProfile;
-import com.azure.identity.DefaultAzureCredentialBuilder;
-import com.azure.resourcemanager.netapp.NetAppFilesManager;
+import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
 import com.azure.resourcemanager.netapp.fluent.models.CapacityPoolInner;
 import com.azure.resourcemanager.netapp.fluent.models.NetAppAccountInner;
 import com.azure.resourcemanager.netapp.fluent.models.VolumeInner;
 import com.azure.resourcemanager.netapp.models.ServiceLevel;
+import poolchange.sdk.sample.bulk.BatchReport;
+import poolchange.sdk.sample.bulk.BatchRunner;
+import poolchange.sdk.sample.bulk.MigrationJournal;
+import poolchange.sdk.sample.common.AnfClientFactory;
+import poolchange.sdk.sample.common.ArmRateLimiter;
 import poolchange.sdk.sample.common.CommonSdk;
+import poolchange.sdk.sample.common.OperationRetryPolicy;
+import poolchange.sdk.sample.common.ParsedResourceId;
 import poolchange.sdk.sample.common.Utils;
-
+import poolchange.sdk.sample.daemon.JobDaemon;
+import poolchange.sdk.sample.emulator.AnfEmulator;
+import poolchange.sdk.sample.emulator.OperationProfile;
+import poolchange.sdk.sample.inventory.InventoryCrawler;
+import poolchange.sdk.sample.inventory.InventoryReport;
+import poolchange.sdk.sample.loadtest.LoadProfile;
+import poolchange.sdk.sample.loadtest.LoadTest;
+import poolchange.sdk.sample.loadtest.LoadTestReport;
+import poolchange.sdk.sample.metrics.MetricsPolicy;
+import poolchange.sdk.sample.metrics.OperationMetrics;
+import poolchange.sdk.sample.planning.AccountCapacity;
+import poolchange.sdk.sample.planning.PlacementPlan;
+import poolchange.sdk.sample.planning.PlacementPlanner;
+import poolchange.sdk.sample.planning.PoolProfile;
+import poolchange.sdk.sample.planning.ThroughputMetrics;
+import poolchange.sdk.sample.planning.TierPlan;
+import poolchange.sdk.sample.planning.TierPlanner;
+import poolchange.sdk.sample.planning.VolumeProfile;
+import poolchange.sdk.sample.provisioning.ProvisioningPlan;
+import poolchange.sdk.sample.provisioning.ProvisioningResult;
+import poolchange.sdk.sample.provisioning.TeardownPlan;
+import poolchange.sdk.sample.provisioning.TeardownReport;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 public class main
 {
     /**
      * Sample console application that executes CRUD management operations on Azure NetApp Files resources
      * Showcases how to do a Pool Change - Moving an existing volume from one pool to another at a different tier
-     * @param args
+     * @param args Empty to run the sample, "batch <manifest> [maxConcurrency] [maxPerSourcePool]" to run the pool
+     *             changes listed in a JSON or NDJSON manifest, "inventory <snapshot> <resourceGroup>..." to list
+     *             every ANF resource of the given resource groups, "recommend <metrics.csv> <resourceGroup> <account>
+     *             <manifest>" to write a manifest of the Volumes that can move to a cheaper service level, or "place
+     *             <resourceGroup> <account> <sourcePool> <serviceLevel> <manifest>" to pack the Volumes of a pool into
+     *             as few pools of the service level as possible, "loadtest <resourceGroup> <volumes>
+     *             <concurrency[,concurrency...]> <report.json>" to measure pool change throughput and latency at each
+     *             concurrency level, "emulator [port]" to serve a local stand-in of the Azure NetApp Files API, used
+     *             by the other modes when -Danf.endpoint points at it, or "daemon [port] [maxConcurrency]
+     *             [maxPerSourcePool]" to keep one client warm and accept pool change, create and cleanup jobs over a
+     *             local HTTP API
      */
     public static void main( String[] args )
     {
@@ -33,7 +78,42 @@ public class main
 
         try
         {
-            run();
+            if (args.length >= 2 && "batch".equalsIgnoreCase(args[0]))
+            {
+                runBatch(Paths.get(args[1]),
+                        args.length >= 3 ? Integer.parseInt(args[2]) : 16,
+                        args.length >= 4 ? Integer.parseInt(args[3]) : 4);
+            }
+            else if (args.length >= 3 && "inventory".equalsIgnoreCase(args[0]))
+            {
+                runInventory(Paths.get(args[1]), Arrays.asList(args).subList(2, args.length));
+            }
+            else if (args.length >= 5 && "recommend".equalsIgnoreCase(args[0]))
+            {
+                runRecommend(Paths.get(args[1]), args[2], args[3], Paths.get(args[4]));
+            }
+            else if (args.length >= 6 && "place".equalsIgnoreCase(args[0]))
+            {
+                runPlace(args[1], args[2], args[3], args[4], Paths.get(args[5]));
+            }
+            else if (args.length >= 5 && "loadtest".equalsIgnoreCase(args[0]))
+            {
+                runLoadTest(args[1], Integer.parseInt(args[2]), args[3], Paths.get(args[4]));
+            }
+            else if (args.length >= 1 && "emulator".equalsIgnoreCase(args[0]))
+            {
+                runEmulator(args.length >= 2 ? Integer.parseInt(args[1]) : 8080);
+            }
+            else if (args.length >= 1 && "daemon".equalsIgnoreCase(args[0]))
+            {
+                runDaemon(args.length >= 2 ? Integer.parseInt(args[1]) : 8090,
+                        args.length >= 3 ? Integer.parseInt(args[2]) : 16,
+                        args.length >= 4 ? Integer.parseInt(args[3]) : 4);
+            }
+            else
+            {
+                run();
+            }
             Utils.writeConsoleMessage("Sample application successfully completed execution");
         }
         catch (Exception e)
@@ -67,198 +147,385 @@ public class main
         long volumeSize = 107374182400L;  // 100GiB - volume minimum size
 
         // Instantiating a new ANF management client and authenticate
-        AzureProfile profile = new AzureProfile(AzureEnvironment.AZURE);
-        TokenCredential credential = new DefaultAzureCredentialBuilder()
-                .authorityHost(profile.getEnvironment().getActiveDirectoryEndpoint())
-                .build();
-        Utils.writeConsoleMessage("Instantiating a new Azure NetApp Files management client...");
-        NetAppFilesManager manager = NetAppFilesManager
-                .authenticate(credential, profile);
+        ArmRateLimiter rateLimiter = new ArmRateLimiter();
+        NetAppManagementClient anfClient = createClient(rateLimiter);
 
 
         //---------------------------
         // Creating ANF resources
         //---------------------------
 
+        /*
+          The resources are provisioned as a dependency graph, each one being created only if it does not exist yet.
+          Both Capacity Pools only depend on the Account, so they are created at the same time, and the Volume
+          is created as soon as the Source Capacity Pool exists
+        */
+        Utils.writeConsoleMessage("Creating Account, Source Capacity Pool at Premium service level, " +
+                "Destination Capacity Pool at Standard service level and Volume...");
+
+        NetAppAccountInner newAccount = new NetAppAccountInner();
+        newAccount.withLocation(location);
+
+        CapacityPoolInner newCapacityPoolSource = new CapacityPoolInner();
+        newCapacityPoolSource.withServiceLevel(ServiceLevel.fromString(capacityPoolServiceLevelSource));
+        newCapacityPoolSource.withSize(capacityPoolSize);
+        newCapacityPoolSource.withLocation(location);
+
+        CapacityPoolInner newCapacityPoolDestination = new CapacityPoolInner();
+        newCapacityPoolDestination.withServiceLevel(ServiceLevel.fromString(capacityPoolServiceLevelDestination));
+        newCapacityPoolDestination.withSize(capacityPoolSize);
+        newCapacityPoolDestination.withLocation(location);
+
+        String subnetId = "/subscriptions/" + subscriptionId + "/resourceGroups/" + resourceGroupName +
+                "/providers/Microsoft.Network/virtualNetworks/" + vnetName + "/subnets/" + subnetName;
+
+        VolumeInner newVolume = new VolumeInner();
+        newVolume.withLocation(location);
+        newVolume.withServiceLevel(ServiceLevel.fromString(capacityPoolServiceLevelSource));
+        newVolume.withCreationToken(volumeName);
+        newVolume.withSubnetId(subnetId);
+        newVolume.withUsageThreshold(volumeSize);
+        newVolume.withProtocolTypes(Collections.singletonList("NFSv3"));
+
+        ProvisioningResult provisioning = new ProvisioningPlan(anfClient)
+                .addAccount(resourceGroupName, anfAccountName, newAccount)
+                .addCapacityPool(resourceGroupName, anfAccountName, capacityPoolNameSource, newCapacityPoolSource)
+                .addCapacityPool(resourceGroupName, anfAccountName, capacityPoolNameDestination, newCapacityPoolDestination)
+                .addVolume(resourceGroupName, anfAccountName, capacityPoolNameSource, volumeName, newVolume)
+                .execute();
+
+        if (!provisioning.isSuccess())
+        {
+            Throwable error = provisioning.getFailures().values().iterator().next();
+            Utils.writeConsoleMessage("An error occurred while creating resources: " + error.getMessage());
+            throw error instanceof RuntimeException ? (RuntimeException) error : new RuntimeException(error);
+        }
+        Utils.writeSuccessMessage("Resources ready in " + provisioning.getElapsed().getSeconds() + "s");
+
+        String[] accountParams = {resourceGroupName, anfAccountName};
+        String[] poolParamsSource = {resourceGroupName, anfAccountName, capacityPoolNameSource};
+        String[] poolParamsDestination = {resourceGroupName, anfAccountName, capacityPoolNameDestination};
+        String[] volumeParams = {resourceGroupName, anfAccountName, capacityPoolNameSource, volumeName};
+
+        NetAppAccountInner anfAccount = provisioning.getResource(
+                CommonSdk.getResourceId(anfClient, accountParams, NetAppAccountInner.class), NetAppAccountInner.class);
+        CapacityPoolInner capacityPoolSource = provisioning.getResource(
+                CommonSdk.getResourceId(anfClient, poolParamsSource, CapacityPoolInner.class), CapacityPoolInner.class);
+        CapacityPoolInner capacityPoolDestination = provisioning.getResource(
+                CommonSdk.getResourceId(anfClient, poolParamsDestination, CapacityPoolInner.class), CapacityPoolInner.class);
+        VolumeInner volume = provisioning.getResource(
+                CommonSdk.getResourceId(anfClient, volumeParams, VolumeInner.class), VolumeInner.class);
+
+        Utils.writeConsoleMessage("Current Volume service level: " + volume.serviceLevel());
+
         //---------------------------
-        // Create ANF Account
+        // Update Volume
         //---------------------------
-        Utils.writeConsoleMessage("Creating Azure NetApp Files Account...");
+        Utils.writeConsoleMessage("Performing Pool change. Updating Volume...");
 
-        String[] accountParams = {resourceGroupName, anfAccountName};
-        NetAppAccountInner anfAccount = (NetAppAccountInner) CommonSdk.getResource(manager.serviceClient(), accountParams, NetAppAccountInner.class);
-        if (anfAccount == null)
+        try
         {
-            NetAppAccountInner newAccount = new NetAppAccountInner();
-            newAccount.withLocation(location);
-
-            try
-            {
-                anfAccount = Creation.createANFAccount(manager.serviceClient(), resourceGroupName, anfAccountName, newAccount);
-            }
-            catch (AzureException e)
-            {
-                Utils.writeConsoleMessage("An error occurred while creating account: " + e.getMessage());
-                throw e;
-            }
+            Update.volumePoolChange(anfClient, resourceGroupName, anfAccountName, capacityPoolNameSource, volumeName, capacityPoolDestination.id());
+            Utils.writeSuccessMessage("Pool change successful. Moved Volume from " + capacityPoolNameSource + " to " + capacityPoolNameDestination);
         }
-        else
+        catch (AzureException e)
         {
-            Utils.writeConsoleMessage("Account already exists");
+            Utils.writeConsoleMessage("An error occurred while performing pool change: " + e.getMessage());
+            throw e;
         }
 
+        volumeParams = new String[]{resourceGroupName, anfAccountName, capacityPoolNameDestination, volumeName};
+        volume = (VolumeInner) CommonSdk.getResource(anfClient, volumeParams, VolumeInner.class);
+        Utils.writeConsoleMessage("Current Volume service level: " + volume.serviceLevel());
+
         //---------------------------
-        // Create Capacity Pool
+        // Cleaning up resources
         //---------------------------
-        Utils.writeConsoleMessage("Creating Source Capacity Pool at Premium service level...");
 
-        String[] poolParamsSource = {resourceGroupName, anfAccountName, capacityPoolNameSource};
-        CapacityPoolInner capacityPoolSource = (CapacityPoolInner) CommonSdk.getResource(manager.serviceClient(), poolParamsSource, CapacityPoolInner.class);
-        if (capacityPoolSource == null)
+        /*
+          Cleanup process. For this process to take effect please change the value of
+          the boolean variable 'cleanup' to 'true'
+          The cleanup process starts from the innermost resources down in the hierarchy chain.
+          In this case: Volume -> Capacity Pool -> Account
+        */
+        if (cleanup)
         {
-            CapacityPoolInner newCapacityPool = new CapacityPoolInner();
-            newCapacityPool.withServiceLevel(ServiceLevel.fromString(capacityPoolServiceLevelSource));
-            newCapacityPool.withSize(capacityPoolSize);
-            newCapacityPool.withLocation(location);
+            Utils.writeConsoleMessage("Cleaning up all created resources");
 
-            try
-            {
-                capacityPoolSource = Creation.createCapacityPool(manager.serviceClient(), resourceGroupName, anfAccountName, capacityPoolNameSource, newCapacityPool);
-            }
-            catch (AzureException e)
+            TeardownReport teardown = new TeardownPlan(anfClient, 8, 4, 1)
+                    .addVolume(resourceGroupName, anfAccountName, capacityPoolNameDestination, volumeName)
+                    .addCapacityPool(resourceGroupName, anfAccountName, capacityPoolNameSource)
+                    .addCapacityPool(resourceGroupName, anfAccountName, capacityPoolNameDestination)
+                    .addAccount(resourceGroupName, anfAccountName)
+                    .execute();
+            Utils.writeConsoleMessage(teardown.toString());
+
+            if (!teardown.isSuccess())
             {
-                Utils.writeConsoleMessage("An error occurred while creating source capacity pool: " + e.getMessage());
-                throw e;
+                Throwable error = teardown.getFailures().values().iterator().next();
+                Utils.writeConsoleMessage("An error occurred while deleting resource: " + error.getMessage());
+                throw error instanceof RuntimeException ? (RuntimeException) error : new RuntimeException(error);
             }
         }
-        else
-        {
-            Utils.writeConsoleMessage("Source Capacity Pool already exists");
-        }
 
-        Utils.writeConsoleMessage("Creating Destination Capacity Pool at Standard service level...");
+        Utils.writeConsoleMessage("Resource cache: " + CommonSdk.getResourceCache());
+        Utils.writeConsoleMessage("ARM rate limiter: " + rateLimiter);
+    }
 
-        String[] poolParamsDestination = {resourceGroupName, anfAccountName, capacityPoolNameDestination};
-        CapacityPoolInner capacityPoolDestination = (CapacityPoolInner) CommonSdk.getResource(manager.serviceClient(), poolParamsDestination, CapacityPoolInner.class);
-        if (capacityPoolDestination == null)
+    /**
+     * Runs the pool changes listed in a manifest, reading it as they progress
+     * @param manifest Path of a JSON or NDJSON manifest
+     * @param maxConcurrency Maximum number of pool changes in flight at once
+     * @param maxPerSourcePool Maximum number of pool changes in flight out of the same source Capacity Pool
+     */
+    private static void runBatch(Path manifest, int maxConcurrency, int maxPerSourcePool) throws IOException
+    {
+        ArmRateLimiter rateLimiter = new ArmRateLimiter();
+        NetAppManagementClient anfClient = createClient(rateLimiter, maxConcurrency);
+
+        // The journal sits next to the manifest, running the same manifest again resumes where the last run stopped
+        Path journalFile = Paths.get(manifest + ".journal");
+        BatchReport report;
+        try (MigrationJournal journal = MigrationJournal.open(journalFile))
         {
-            CapacityPoolInner newCapacityPool = new CapacityPoolInner();
-            newCapacityPool.withServiceLevel(ServiceLevel.fromString(capacityPoolServiceLevelDestination));
-            newCapacityPool.withSize(capacityPoolSize);
-            newCapacityPool.withLocation(location);
+            Utils.writeConsoleMessage("Running pool changes from manifest " + manifest + ", journal " + journalFile + "...");
+            report = new BatchRunner(anfClient, maxConcurrency, maxPerSourcePool, maxConcurrency * 4, journal, true)
+                    .run(manifest);
+        }
 
-            try
-            {
-                capacityPoolDestination = Creation.createCapacityPool(manager.serviceClient(), resourceGroupName, anfAccountName, capacityPoolNameDestination, newCapacityPool);
-            }
-            catch (AzureException e)
-            {
-                Utils.writeConsoleMessage("An error occurred while creating destination capacity pool: " + e.getMessage());
-                throw e;
-            }
+        Utils.writeConsoleMessage(OperationRetryPolicy.poolChanges().toString());
+        if (report.isSuccess())
+        {
+            Utils.writeSuccessMessage(report.toString());
         }
         else
         {
-            Utils.writeConsoleMessage("Destination Capacity Pool already exists");
+            Utils.writeErrorMessage(report.toString());
         }
+        Utils.writeConsoleMessage("ARM rate limiter: " + rateLimiter);
+    }
 
-        //---------------------------
-        // Create Volume
-        //---------------------------
-        Utils.writeConsoleMessage("Creating Volume at Premium service level...");
+    /**
+     * Lists every ANF resource of the given resource groups into a snapshot file, reporting what changed since the
+     * previous run when the file already exists
+     * @param snapshot Path of the NDJSON snapshot, gzip compressed if it ends with .gz
+     * @param resourceGroups Names of the resource groups to list
+     */
+    private static void runInventory(Path snapshot, List<String> resourceGroups) throws IOException
+    {
+        ArmRateLimiter rateLimiter = new ArmRateLimiter();
+        NetAppManagementClient anfClient = createClient(rateLimiter);
 
-        String[] volumeParams = {resourceGroupName, anfAccountName, capacityPoolNameSource, volumeName};
-        VolumeInner volume = (VolumeInner) CommonSdk.getResource(manager.serviceClient(), volumeParams, VolumeInner.class);
-        if (volume == null)
-        {
-            String subnetId = "/subscriptions/" + subscriptionId + "/resourceGroups/" + resourceGroupName +
-                    "/providers/Microsoft.Network/virtualNetworks/" + vnetName + "/subnets/" + subnetName;
+        Utils.writeConsoleMessage("Listing ANF resources of " + resourceGroups + " into " + snapshot + "...");
+        InventoryReport report = new InventoryCrawler(anfClient, 16, true).crawl(resourceGroups, snapshot, snapshot);
+
+        Utils.writeSuccessMessage(report.toString());
+        report.getAdded().forEach(id -> Utils.writeConsoleMessage("  added: " + id));
+        report.getChanged().forEach(id -> Utils.writeConsoleMessage("  changed: " + id));
+        report.getRemoved().forEach(id -> Utils.writeConsoleMessage("  removed: " + id));
+        Utils.writeConsoleMessage("ARM rate limiter: " + rateLimiter);
+    }
+
+    /**
+     * Recommends pool changes to cheaper service levels that keep every Volume above its measured throughput
+     * @param metricsFile CSV file of volumeId,peakMibps lines
+     * @param resourceGroup Name of the resource group
+     * @param accountName Name of the Account whose Volumes and pools are considered
+     * @param manifest Where to write the recommended pool changes, as a manifest for the batch mode
+     */
+    private static void runRecommend(Path metricsFile, String resourceGroup, String accountName, Path manifest) throws IOException
+    {
+        NetAppManagementClient anfClient = createClient(new ArmRateLimiter());
 
+        ThroughputMetrics metrics = ThroughputMetrics.load(metricsFile);
+        AccountCapacity capacity = AccountCapacity.load(anfClient, resourceGroup, accountName);
+        Utils.writeConsoleMessage("Planning " + capacity.getVolumes().size() + " Volumes across " + capacity.getPools().size()
+                + " Capacity Pools with " + metrics.size() + " throughput measurements...");
 
-            VolumeInner newVolume = new VolumeInner();
-            newVolume.withLocation(location);
-            newVolume.withServiceLevel(ServiceLevel.fromString(capacityPoolServiceLevelSource));
-            newVolume.withCreationToken(volumeName);
-            newVolume.withSubnetId(subnetId);
-            newVolume.withUsageThreshold(volumeSize);
-            newVolume.withProtocolTypes(Collections.singletonList("NFSv3"));
+        TierPlan plan = new TierPlanner(0.2).plan(capacity.getVolumes(), capacity.getPools(), metrics);
+        plan.getRecommendations().forEach(recommendation -> Utils.writeSuccessMessage(recommendation.toString()));
+        plan.getRejections().forEach((volumeId, reason) -> Utils.writeConsoleMessage(volumeId + " stays: " + reason));
+        plan.getSkippedPools().forEach((poolId, reason) -> Utils.writeWarningMessage(poolId + " skipped: " + reason));
 
-            try
+        plan.writeManifest(manifest);
+        Utils.writeConsoleMessage(plan + ", manifest written to " + manifest);
+    }
+
+    /**
+     * Plans moving every Volume of a Capacity Pool to pools of another service level, filling existing pools first and
+     * listing the pools to grow or create
+     * @param resourceGroup Name of the resource group
+     * @param accountName Name of the Account
+     * @param sourcePoolName Name of the Capacity Pool whose Volumes move
+     * @param serviceLevel Service level the Volumes move to
+     * @param manifest Where to write the placements, as a manifest for the batch mode
+     */
+    private static void runPlace(String resourceGroup, String accountName, String sourcePoolName, String serviceLevel, Path manifest)
+            throws IOException
+    {
+        NetAppManagementClient anfClient = createClient(new ArmRateLimiter());
+
+        AccountCapacity capacity = AccountCapacity.load(anfClient, resourceGroup, accountName);
+        List<VolumeProfile> volumes = new ArrayList<>();
+        List<PoolProfile> pools = new ArrayList<>();
+        String accountId = null;
+        for (PoolProfile pool : capacity.getPools())
+        {
+            ParsedResourceId poolId = ParsedResourceId.parse(pool.getId());
+            accountId = poolId.getParentId();
+            if (!sourcePoolName.equalsIgnoreCase(poolId.getCapacityPool()))
             {
-                volume = Creation.createVolume(manager.serviceClient(), resourceGroupName, anfAccountName, capacityPoolNameSource, volumeName, newVolume);
-                Utils.writeSuccessMessage("Volume successfully created, resource id: " + volume.id());
+                pools.add(pool);
             }
-            catch (AzureException e)
+        }
+        for (VolumeProfile volume : capacity.getVolumes())
+        {
+            if (sourcePoolName.equalsIgnoreCase(ParsedResourceId.parse(volume.getId()).getCapacityPool()))
             {
-                Utils.writeConsoleMessage("An error occurred while creating volume: " + e.getMessage());
-                throw e;
+                volumes.add(volume);
             }
         }
-        else
+        if (accountId == null || volumes.isEmpty())
         {
-            Utils.writeConsoleMessage("Volume already exists");
+            throw new IllegalArgumentException("No Volumes found in Capacity Pool " + sourcePoolName);
         }
 
-        Utils.writeConsoleMessage("Current Volume service level: " + volume.serviceLevel());
+        PlacementPlan plan = new PlacementPlanner(sourcePoolName + "-" + serviceLevel.toLowerCase(Locale.ROOT))
+                .plan(volumes, pools, accountId, serviceLevel);
+        plan.getPoolActions().forEach(action -> Utils.writeSuccessMessage(action.toString()));
+        plan.getUnplaced().forEach(volume -> Utils.writeWarningMessage(volume.getId() + " is larger than the largest Capacity Pool"));
 
-        //---------------------------
-        // Update Volume
-        //---------------------------
-        Utils.writeConsoleMessage("Performing Pool change. Updating Volume...");
+        plan.writeManifest(manifest);
+        Utils.writeConsoleMessage(plan + ", manifest written to " + manifest);
+    }
 
-        try
+    /**
+     * Creates, moves and deletes a synthetic population of Volumes once per concurrency level and reports throughput
+     * and latency percentiles of every phase, listing the regressions against the previous report if there is one.
+     * With -Danf.endpoint=embedded the test runs against an emulator started in this process
+     * @param resourceGroup Name of the resource group the test Accounts are created in
+     * @param volumeCount Number of Volumes of each run
+     * @param concurrencyLevels Comma separated numbers of operations in flight, one run each
+     * @param report Where to write the JSON report, the text table being written next to it
+     */
+    private static void runLoadTest(String resourceGroup, int volumeCount, String concurrencyLevels, Path report) throws IOException
+    {
+        // ARM's default subscription budgets unless overridden, to see how throttling shapes the results
+        ArmRateLimiter rateLimiter = new ArmRateLimiter(
+                Double.parseDouble(System.getProperty("anf.loadtest.readsPerSecond", "25")), 250,
+                Double.parseDouble(System.getProperty("anf.loadtest.writesPerSecond", "10")), 200, 10);
+        String subscriptionId = System.getProperty("anf.subscriptionId", AnfClientFactory.DEFAULT_SUBSCRIPTION_ID);
+        int[] levels = Arrays.stream(concurrencyLevels.split(","))
+                .mapToInt(level -> Integer.parseInt(level.trim()))
+                .toArray();
+        int maxConcurrency = Arrays.stream(levels).max().orElse(AnfClientFactory.DEFAULT_CONCURRENCY);
+        AnfEmulator emulator = null;
+        NetAppManagementClient anfClient;
+        if ("embedded".equalsIgnoreCase(AnfClientFactory.getEndpoint()))
         {
-            Update.volumePoolChange(manager.serviceClient(), resourceGroupName, anfAccountName, capacityPoolNameSource, volumeName, capacityPoolDestination.id());
-            Utils.writeSuccessMessage("Pool change successful. Moved Volume from " + capacityPoolNameSource + " to " + capacityPoolNameDestination);
+            emulator = AnfEmulator.start(0, AnfEmulator.profilesFromSystemProperties());
+            Utils.writeConsoleMessage("Started " + emulator);
+            anfClient = AnfClientFactory.create(emulator.getEndpoint(), subscriptionId, Duration.ofSeconds(1),
+                    AnfClientFactory.createHttpClient(maxConcurrency, false), rateLimiter, new MetricsPolicy(OperationMetrics.getDefault()));
         }
-        catch (AzureException e)
+        else
         {
-            Utils.writeConsoleMessage("An error occurred while performing pool change: " + e.getMessage());
-            throw e;
+            anfClient = createClient(rateLimiter, maxConcurrency);
         }
 
-        volumeParams = new String[]{resourceGroupName, anfAccountName, capacityPoolNameDestination, volumeName};
-        volume = (VolumeInner) CommonSdk.getResource(manager.serviceClient(), volumeParams, VolumeInner.class);
-        Utils.writeConsoleMessage("Current Volume service level: " + volume.serviceLevel());
+        LoadProfile profile = new LoadProfile(resourceGroup,
+                System.getProperty("anf.location", "westus"),
+                System.getProperty("anf.subnetId", "/subscriptions/" + subscriptionId + "/resourceGroups/" + resourceGroup
+                        + "/providers/Microsoft.Network/virtualNetworks/loadtest-vnet/subnets/anf"),
+                volumeCount,
+                Long.getLong("anf.loadtest.maxVolumeGiB", 1024) * 1073741824L,
+                Long.getLong("anf.loadtest.seed", 42));
 
-        //---------------------------
-        // Cleaning up resources
-        //---------------------------
+        LoadTestReport result;
+        try
+        {
+            result = new LoadTest(anfClient, profile).run(levels);
+        }
+        finally
+        {
+            if (emulator != null)
+            {
+                emulator.close();
+            }
+        }
 
-        /*
-          Cleanup process. For this process to take effect please change the value of
-          the boolean variable 'cleanup' to 'true'
-          The cleanup process starts from the innermost resources down in the hierarchy chain.
-          In this case: Volume -> Capacity Pool -> Account
-        */
-        if (cleanup)
+        Utils.writeConsoleMessage("\n" + result.toTable());
+        if (Files.exists(report))
         {
-            Utils.writeConsoleMessage("Cleaning up all created resources");
+            List<String> regressions = result.findRegressions(report, 0.1);
+            regressions.forEach(Utils::writeWarningMessage);
+            Utils.writeConsoleMessage(regressions.size() + " regressions against the previous report " + report);
+        }
+        result.write(report);
+        if (result.isSuccess())
+        {
+            Utils.writeSuccessMessage("Load test report written to " + report);
+        }
+        else
+        {
+            Utils.writeErrorMessage("Load test report written to " + report + ", some operations failed");
+        }
+        Utils.writeConsoleMessage("ARM rate limiter: " + rateLimiter);
+    }
 
-            try
+    /**
+     * Serves a local stand-in of the Azure NetApp Files API until the process is stopped. Latency, duration and
+     * failure rates of each operation are read from anf.emulator.* system properties
+     * @param port Port to listen on
+     */
+    private static void runEmulator(int port) throws IOException, InterruptedException
+    {
+        Map<String, OperationProfile> profiles = AnfEmulator.profilesFromSystemProperties();
+        try (AnfEmulator emulator = AnfEmulator.start(port, profiles))
+        {
+            profiles.forEach((operation, profile) -> Utils.writeConsoleMessage("  " + operation + ": " + profile));
+            Utils.writeSuccessMessage("ANF emulator listening at " + emulator.getEndpoint() + ", run the sample with -Danf.endpoint="
+                    + emulator.getEndpoint() + " to use it. Press Ctrl+C to stop");
+            while (true)
             {
-                Cleanup.runCleanupTask(manager.serviceClient(), volumeParams, VolumeInner.class);
-                // ARM workaround to wait for the deletion to complete
-                CommonSdk.waitForNoANFResource(manager.serviceClient(), volume.id(), VolumeInner.class);
-                Utils.writeSuccessMessage("Volume successfully deleted: " + volume.id());
-
-                Cleanup.runCleanupTask(manager.serviceClient(), poolParamsSource, CapacityPoolInner.class);
-                CommonSdk.waitForNoANFResource(manager.serviceClient(), capacityPoolSource.id(), CapacityPoolInner.class);
-                Utils.writeSuccessMessage("Source Capacity Pool successfully deleted: " + capacityPoolSource.id());
-
-                Cleanup.runCleanupTask(manager.serviceClient(), poolParamsDestination, CapacityPoolInner.class);
-                CommonSdk.waitForNoANFResource(manager.serviceClient(), capacityPoolDestination.id(), CapacityPoolInner.class);
-                Utils.writeSuccessMessage("Destination Capacity Pool successfully deleted: " + capacityPoolDestination.id());
-
-                Cleanup.runCleanupTask(manager.serviceClient(), accountParams, NetAppAccountInner.class);
-                CommonSdk.waitForNoANFResource(manager.serviceClient(), anfAccount.id(), NetAppAccountInner.class);
-                Utils.writeSuccessMessage("Account successfully deleted: " + anfAccount.id());
+                Thread.sleep(60000);
+                Utils.writeConsoleMessage(emulator.toString());
             }
-            catch (AzureException e)
+        }
+    }
+
+    private static void runDaemon(int port, int maxConcurrency, int maxPerSourcePool) throws IOException, InterruptedException
+    {
+        // The client, its credential and its connections are created once and reused by every job
+        NetAppManagementClient anfClient = createClient(new ArmRateLimiter(), maxConcurrency);
+        try (JobDaemon daemon = JobDaemon.start(anfClient, port, maxConcurrency, maxPerSourcePool))
+        {
+            Utils.writeSuccessMessage("Job daemon listening at " + daemon.getEndpoint() + ", POST jobs to /jobs/poolChange, /jobs/create or"
+                    + " /jobs/cleanup. Press Ctrl+C to stop");
+            while (true)
             {
-                Utils.writeConsoleMessage("An error occurred while deleting resource: " + e.getMessage());
-                throw e;
+                Thread.sleep(60000);
+                Utils.writeConsoleMessage(daemon.toString());
+                Utils.writeConsoleMessage(OperationRetryPolicy.poolChanges().toString());
             }
         }
     }
+
+    private static NetAppManagementClient createClient(ArmRateLimiter rateLimiter)
+    {
+        return createClient(rateLimiter, AnfClientFactory.DEFAULT_CONCURRENCY);
+    }
+
+    // Every request sent by the client is paced against the subscription's ARM budget, then timed once sent. Its
+    // connection pool is sized for maxConcurrency operations in flight
+    private static NetAppManagementClient createClient(ArmRateLimiter rateLimiter, int maxConcurrency)
+    {
+        String endpoint = AnfClientFactory.getEndpoint();
+        Utils.writeConsoleMessage("Instantiating a new Azure NetApp Files management client"
+                + (endpoint != null ? " for " + endpoint : "") + "...");
+
+        OperationMetrics metrics = OperationMetrics.getDefault();
+        metrics.exportOnExit(Paths.get("anf-metrics.prom"), Paths.get("anf-metrics.json"));
+        return AnfClientFactory.create(maxConcurrency, rateLimiter, new MetricsPolicy(metrics));
+    }
 }
@@ -0,0 +1,270 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.metrics;
+
+import com.azure.core.http.HttpMethod;
+import com.azure.core.http.HttpPipelineCallContext;
+import com.azure.core.http.HttpPipelineNextPolicy;
+import com.azure.core.http.HttpResponse;
+import com.azure.core.http.policy.HttpPipelinePolicy;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import poolchange.sdk.sample.common.ParsedResourceId;
+import reactor.core.publisher.Mono;
+
+import java.net.URL;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+  HTTP pipeline policy timing every ARM request sent by the management client. Requests are labelled with the operation
+  and resource kind they belong to, and long running operations are followed from their initial request through every
+  status poll, so that the time ARM takes to accept a request can be told apart from the time the service takes to
+  complete it.
+*/
+public class MetricsPolicy implements HttpPipelinePolicy
+{
+    private static final String ATTEMPT_KEY = "anf-metrics-attempt";
+
+    private final OperationMetrics metrics;
+
+    // Long running operations in flight, by status URL
+    private final ConcurrentHashMap<String, LroRecord> operations = new ConcurrentHashMap<>();
+
+    public MetricsPolicy(OperationMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Mono<HttpResponse> process(HttpPipelineCallContext context, HttpPipelineNextPolicy next)
+    {
+        HttpMethod method = context.getHttpRequest().getHttpMethod();
+        URL url = context.getHttpRequest().getUrl();
+        String statusUrl = stripQuery(url.toString());
+        LroRecord lro = method == HttpMethod.GET ? operations.get(statusUrl) : null;
+
+        String operation = lro != null ? lro.operation : operationOf(method, url.getPath());
+        String resource = lro != null ? lro.resource : resourceOf(url.getPath());
+        String phase = lro != null || isStatusPath(url.getPath()) ? "poll" : method == HttpMethod.GET ? "read" : "initial";
+
+        // The policy runs once per attempt, so a call context seen more than once is being retried
+        AtomicInteger attempts = (AtomicInteger) context.getData(ATTEMPT_KEY).orElse(null);
+        if (attempts == null)
+        {
+            context.setData(ATTEMPT_KEY, new AtomicInteger(1));
+        }
+        else
+        {
+            attempts.incrementAndGet();
+            metrics.increment(OperationMetrics.RETRIES_TOTAL, operation, resource);
+        }
+
+        long start = System.nanoTime();
+        return next.process()
+                .doOnError(error -> {
+                    metrics.recordDuration(OperationMetrics.REQUEST_SECONDS, operation, resource, phase, System.nanoTime() - start);
+                    metrics.increment(OperationMetrics.FAILURES_TOTAL, operation, resource);
+                })
+                .flatMap(response -> {
+                    long end = System.nanoTime();
+                    metrics.recordDuration(OperationMetrics.REQUEST_SECONDS, operation, resource, phase, end - start);
+
+                    int status = response.getStatusCode();
+                    if (status == 429)
+                    {
+                        metrics.increment(OperationMetrics.THROTTLES_TOTAL, operation, resource);
+                    }
+                    else if (status >= 400)
+                    {
+                        metrics.increment(OperationMetrics.FAILURES_TOTAL, operation, resource);
+                    }
+
+                    if (lro != null)
+                    {
+                        return onPoll(statusUrl, lro, response, end);
+                    }
+
+                    if (method != HttpMethod.GET && (status == 201 || status == 202))
+                    {
+                        String location = response.getHeaderValue("Azure-AsyncOperation");
+                        if (location == null)
+                        {
+                            location = response.getHeaderValue("Location");
+                        }
+                        if (location != null)
+                        {
+                            operations.put(stripQuery(location), new LroRecord(operation, resource, start, end));
+                            return Mono.just(response);
+                        }
+                    }
+
+                    if (method != HttpMethod.GET && status < 400)
+                    {
+                        // Completed synchronously, the whole operation is the initial request
+                        metrics.recordDuration(OperationMetrics.OPERATION_SECONDS, operation, resource, null, end - start);
+                    }
+                    return Mono.just(response);
+                });
+    }
+
+    private Mono<HttpResponse> onPoll(String statusUrl, LroRecord lro, HttpResponse response, long end)
+    {
+        lro.polls.incrementAndGet();
+        if (response.getStatusCode() >= 400)
+        {
+            complete(statusUrl, lro, end);
+            return Mono.just(response);
+        }
+
+        if (response.getStatusCode() != 200)
+        {
+            return Mono.just(response);
+        }
+
+        // The body is buffered so that the SDK poller can still read it after us
+        HttpResponse buffered = response.buffer();
+        return buffered.getBodyAsString()
+                .map(body -> {
+                    if (isTerminal(body))
+                    {
+                        complete(statusUrl, lro, end);
+                    }
+                    return buffered;
+                })
+                .defaultIfEmpty(buffered);
+    }
+
+    private void complete(String statusUrl, LroRecord lro, long end)
+    {
+        if (operations.remove(statusUrl, lro))
+        {
+            metrics.recordDuration(OperationMetrics.OPERATION_SECONDS, lro.operation, lro.resource, null, end - lro.startNanos);
+            metrics.recordDuration(OperationMetrics.LRO_POLLING_SECONDS, lro.operation, lro.resource, null, end - lro.acceptedNanos);
+            metrics.recordValue(OperationMetrics.LRO_POLLS, lro.operation, lro.resource, lro.polls.get());
+        }
+    }
+
+    private static boolean isTerminal(String body)
+    {
+        try
+        {
+            JsonElement json = JsonParser.parseString(body);
+            if (!json.isJsonObject())
+            {
+                return false;
+            }
+
+            JsonObject object = json.getAsJsonObject();
+            JsonElement status = object.get("status");
+            if (status == null && object.has("properties"))
+            {
+                // A Location poll returns the resource itself
+                status = object.getAsJsonObject("properties").get("provisioningState");
+            }
+            if (status == null || !status.isJsonPrimitive())
+            {
+                return false;
+            }
+
+            String value = status.getAsString();
+            return "Succeeded".equalsIgnoreCase(value) || "Failed".equalsIgnoreCase(value) || "Canceled".equalsIgnoreCase(value);
+        }
+        catch (RuntimeException e)
+        {
+            return false;
+        }
+    }
+
+    private static String operationOf(HttpMethod method, String path)
+    {
+        switch (method)
+        {
+            case PUT:
+                return "createOrUpdate";
+            case PATCH:
+                return "update";
+            case DELETE:
+                return "delete";
+            case POST:
+                int slash = path.lastIndexOf('/');
+                return slash >= 0 ? path.substring(slash + 1) : "post";
+            default:
+                return isCollectionPath(path) ? "list" : "get";
+        }
+    }
+
+    private static String resourceOf(String path)
+    {
+        ParsedResourceId id = ParsedResourceId.parse(path);
+        if (id == null)
+        {
+            return "other";
+        }
+
+        // A collection path such as .../capacityPools ends with the type of the resources it lists
+        String last = path.substring(path.lastIndexOf('/') + 1).toLowerCase(Locale.ROOT);
+        if (id.getSnapshot() != null || last.equals("snapshots"))
+        {
+            return "snapshot";
+        }
+        if (id.getVolume() != null || last.equals("volumes"))
+        {
+            return "volume";
+        }
+        if (id.getCapacityPool() != null || last.equals("capacitypools"))
+        {
+            return "pool";
+        }
+        if (id.getSnapshotPolicy() != null || last.equals("snapshotpolicies"))
+        {
+            return "snapshotPolicy";
+        }
+        if (id.getAccount() != null || last.equals("netappaccounts"))
+        {
+            return "account";
+        }
+        return "other";
+    }
+
+    private static boolean isCollectionPath(String path)
+    {
+        String last = path.substring(path.lastIndexOf('/') + 1).toLowerCase(Locale.ROOT);
+        return last.equals("netappaccounts") || last.equals("capacitypools") || last.equals("volumes")
+                || last.equals("snapshots") || last.equals("snapshotpolicies");
+    }
+
+    private static boolean isStatusPath(String path)
+    {
+        String lower = path.toLowerCase(Locale.ROOT);
+        return lower.contains("/operationresults/") || lower.contains("/operationstatuses/") || lower.contains("/asyncoperations/");
+    }
+
+    private static String stripQuery(String url)
+    {
+        int query = url.indexOf('?');
+        return (query >= 0 ? url.substring(0, query) : url).toLowerCase(Locale.ROOT);
+    }
+
+    private static final class LroRecord
+    {
+        private final String operation;
+        private final String resource;
+        private final long startNanos;
+        private final long acceptedNanos;
+        private final AtomicInteger polls = new AtomicInteger();
+
+        private LroRecord(String operation, String resource, long startNanos, long acceptedNanos)
+        {
+            this.operation = operation;
+            this.resource = resource;
+            this.startNanos = startNanos;
+            this.acceptedNanos = acceptedNanos;
+        }
+    }
+}
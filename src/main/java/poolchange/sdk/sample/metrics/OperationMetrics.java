@@ -0,0 +1,283 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.metrics;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import poolchange.sdk.sample.common.Utils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Latency histograms and counters per operation and resource kind, exported as Prometheus text and JSON
+public class OperationMetrics
+{
+    /** Time of each HTTP request, by phase: read, initial (first request of a write or LRO) or poll */
+    public static final String REQUEST_SECONDS = "anf_request_duration_seconds";
+    /** End to end time of each operation, from the initial request until the LRO reached a terminal state */
+    public static final String OPERATION_SECONDS = "anf_operation_duration_seconds";
+    /** Time an LRO spent being polled after its initial request returned */
+    public static final String LRO_POLLING_SECONDS = "anf_lro_polling_duration_seconds";
+    /** Number of polls sent until an LRO reached a terminal state */
+    public static final String LRO_POLLS = "anf_lro_polls";
+
+    public static final String RETRIES_TOTAL = "anf_retries_total";
+    public static final String THROTTLES_TOTAL = "anf_throttles_total";
+    public static final String FAILURES_TOTAL = "anf_failures_total";
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final OperationMetrics DEFAULT = new OperationMetrics();
+
+    private final ConcurrentHashMap<MetricKey, Histogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<MetricKey, LongAdder> counters = new ConcurrentHashMap<>();
+
+    /**
+     * @return Registry shared by the whole application
+     */
+    public static OperationMetrics getDefault()
+    {
+        return DEFAULT;
+    }
+
+    /**
+     * Records a duration
+     * @param metric One of the *_SECONDS metric names
+     * @param operation Operation type, e.g. createOrUpdate, delete, poolChange, get, list
+     * @param resource Resource kind, e.g. account, pool, volume
+     * @param phase Request phase for REQUEST_SECONDS, or null
+     * @param nanos Duration in nanoseconds
+     */
+    public void recordDuration(String metric, String operation, String resource, String phase, long nanos)
+    {
+        histogram(metric, operation, resource, phase).record(nanos);
+    }
+
+    /**
+     * Records a plain value, such as a number of polls
+     */
+    public void recordValue(String metric, String operation, String resource, long value)
+    {
+        histogram(metric, operation, resource, null).record(value);
+    }
+
+    /**
+     * Increments a counter
+     * @param metric One of the *_TOTAL metric names
+     */
+    public void increment(String metric, String operation, String resource)
+    {
+        counters.computeIfAbsent(new MetricKey(metric, operation, resource, null), k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Gets a histogram, creating it if needed
+     */
+    public Histogram histogram(String metric, String operation, String resource, String phase)
+    {
+        return histograms.computeIfAbsent(new MetricKey(metric, operation, resource, phase), k -> new Histogram());
+    }
+
+    public long getCounter(String metric, String operation, String resource)
+    {
+        LongAdder counter = counters.get(new MetricKey(metric, operation, resource, null));
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * Writes every metric in the Prometheus text exposition format, histograms being exposed as summaries
+     * @param out Destination
+     */
+    public void writePrometheus(Writer out) throws IOException
+    {
+        Map<String, Map<MetricKey, Histogram>> histogramsByName = new TreeMap<>();
+        histograms.forEach((key, histogram) -> histogramsByName.computeIfAbsent(key.name, k -> new TreeMap<>()).put(key, histogram));
+
+        for (Map.Entry<String, Map<MetricKey, Histogram>> metric : histogramsByName.entrySet())
+        {
+            boolean seconds = metric.getKey().endsWith("_seconds");
+            out.write("# TYPE " + metric.getKey() + " summary\n");
+            for (Map.Entry<MetricKey, Histogram> entry : metric.getValue().entrySet())
+            {
+                MetricKey key = entry.getKey();
+                Histogram histogram = entry.getValue();
+                for (double quantile : QUANTILES)
+                {
+                    out.write(key.name + "{" + key.labels() + ",quantile=\"" + quantile + "\"} "
+                            + format(histogram.getValueAtPercentile(quantile * 100), seconds) + "\n");
+                }
+                out.write(key.name + "_sum{" + key.labels() + "} " + format(histogram.getSum(), seconds) + "\n");
+                out.write(key.name + "_count{" + key.labels() + "} " + histogram.getCount() + "\n");
+            }
+        }
+
+        Map<String, Map<MetricKey, LongAdder>> countersByName = new TreeMap<>();
+        counters.forEach((key, counter) -> countersByName.computeIfAbsent(key.name, k -> new TreeMap<>()).put(key, counter));
+
+        for (Map.Entry<String, Map<MetricKey, LongAdder>> metric : countersByName.entrySet())
+        {
+            out.write("# TYPE " + metric.getKey() + " counter\n");
+            for (Map.Entry<MetricKey, LongAdder> entry : metric.getValue().entrySet())
+            {
+                out.write(entry.getKey().name + "{" + entry.getKey().labels() + "} " + entry.getValue().sum() + "\n");
+            }
+        }
+    }
+
+    /**
+     * Builds a JSON summary with count, mean, min, max and percentiles of every histogram, plus every counter.
+     * Durations are in milliseconds
+     * @return The summary
+     */
+    public JsonObject toJson()
+    {
+        JsonArray histogramArray = new JsonArray();
+        new TreeMap<>(histograms).forEach((key, histogram) -> {
+            boolean seconds = key.name.endsWith("_seconds");
+            double scale = seconds ? 1_000_000d : 1d;
+
+            JsonObject json = key.toJson();
+            json.addProperty("unit", seconds ? "ms" : "count");
+            json.addProperty("count", histogram.getCount());
+            json.addProperty("mean", histogram.getMean() / scale);
+            json.addProperty("min", histogram.getMin() / scale);
+            json.addProperty("p50", histogram.getValueAtPercentile(50) / scale);
+            json.addProperty("p90", histogram.getValueAtPercentile(90) / scale);
+            json.addProperty("p99", histogram.getValueAtPercentile(99) / scale);
+            json.addProperty("p999", histogram.getValueAtPercentile(99.9) / scale);
+            json.addProperty("max", histogram.getMax() / scale);
+            histogramArray.add(json);
+        });
+
+        JsonArray counterArray = new JsonArray();
+        new TreeMap<>(counters).forEach((key, counter) -> {
+            JsonObject json = key.toJson();
+            json.addProperty("value", counter.sum());
+            counterArray.add(json);
+        });
+
+        JsonObject summary = new JsonObject();
+        summary.add("histograms", histogramArray);
+        summary.add("counters", counterArray);
+        return summary;
+    }
+
+    /**
+     * Writes the Prometheus text file and the JSON summary
+     * @param prometheusFile Destination of the Prometheus text, or null to skip it
+     * @param jsonFile Destination of the JSON summary, or null to skip it
+     */
+    public void export(Path prometheusFile, Path jsonFile) throws IOException
+    {
+        if (prometheusFile != null)
+        {
+            try (Writer out = Files.newBufferedWriter(prometheusFile, StandardCharsets.UTF_8))
+            {
+                writePrometheus(out);
+            }
+        }
+
+        if (jsonFile != null)
+        {
+            try (Writer out = Files.newBufferedWriter(jsonFile, StandardCharsets.UTF_8))
+            {
+                new GsonBuilder().setPrettyPrinting().create().toJson(toJson(), out);
+            }
+        }
+    }
+
+    /**
+     * Exports the metrics when the JVM exits, including through System.exit
+     * @param prometheusFile Destination of the Prometheus text, or null to skip it
+     * @param jsonFile Destination of the JSON summary, or null to skip it
+     */
+    public void exportOnExit(Path prometheusFile, Path jsonFile)
+    {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try
+            {
+                export(prometheusFile, jsonFile);
+            }
+            catch (IOException e)
+            {
+                Utils.writeWarningMessage("Could not export metrics - " + e.getMessage());
+            }
+        }, "anf-metrics-export"));
+    }
+
+    private static String format(long value, boolean seconds)
+    {
+        return seconds ? Double.toString(value / 1_000_000_000d) : Long.toString(value);
+    }
+
+    private static final class MetricKey implements Comparable<MetricKey>
+    {
+        private final String name;
+        private final String operation;
+        private final String resource;
+        private final String phase;
+
+        private MetricKey(String name, String operation, String resource, String phase)
+        {
+            this.name = name;
+            this.operation = operation != null ? operation : "unknown";
+            this.resource = resource != null ? resource : "unknown";
+            this.phase = phase;
+        }
+
+        private String labels()
+        {
+            return "operation=\"" + operation + "\",resource=\"" + resource + "\"" + (phase != null ? ",phase=\"" + phase + "\"" : "");
+        }
+
+        private JsonObject toJson()
+        {
+            JsonObject json = new JsonObject();
+            json.addProperty("name", name);
+            json.addProperty("operation", operation);
+            json.addProperty("resource", resource);
+            if (phase != null)
+            {
+                json.addProperty("phase", phase);
+            }
+            return json;
+        }
+
+        @Override
+        public int compareTo(MetricKey o)
+        {
+            int byName = name.compareTo(o.name);
+            return byName != 0 ? byName : labels().compareTo(o.labels());
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof MetricKey))
+            {
+                return false;
+            }
+
+            MetricKey other = (MetricKey) o;
+            return name.equals(other.name) && operation.equals(other.operation) && resource.equals(other.resource)
+                    && Objects.equals(phase, other.phase);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(name, operation, resource, phase);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.planning;
+
+import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
+import com.azure.resourcemanager.netapp.fluent.models.CapacityPoolInner;
+import com.azure.resourcemanager.netapp.fluent.models.VolumeInner;
+import poolchange.sdk.sample.common.ParsedResourceId;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Capacity Pools of an Account and the Volumes they hold, listed once so that plans can be computed offline
+public class AccountCapacity
+{
+    private final List<PoolProfile> pools;
+    private final List<VolumeProfile> volumes;
+
+    public AccountCapacity(List<PoolProfile> pools, List<VolumeProfile> volumes)
+    {
+        this.pools = Collections.unmodifiableList(pools);
+        this.volumes = Collections.unmodifiableList(volumes);
+    }
+
+    /**
+     * Lists the pools of an Account and the Volumes of each pool
+     * @param anfClient Azure NetApp Files Management Client
+     * @param resourceGroup Name of the resource group
+     * @param accountName Name of the Account
+     * @return Pools with their allocated capacity, and every Volume
+     */
+    public static AccountCapacity load(NetAppManagementClient anfClient, String resourceGroup, String accountName)
+    {
+        List<PoolProfile> pools = new ArrayList<>();
+        List<VolumeProfile> volumes = new ArrayList<>();
+
+        for (CapacityPoolInner pool : anfClient.getPools().list(resourceGroup, accountName))
+        {
+            // The name of a pool is nested under its Account, e.g. "account/pool", the id holds the bare one
+            String poolName = ParsedResourceId.parse(pool.id()).getCapacityPool();
+            long allocated = 0;
+            for (VolumeInner volume : anfClient.getVolumes().list(resourceGroup, accountName, poolName))
+            {
+                VolumeProfile profile = VolumeProfile.of(volume);
+                volumes.add(profile);
+                allocated += profile.getUsageThreshold();
+            }
+            pools.add(PoolProfile.of(pool, allocated));
+        }
+
+        return new AccountCapacity(pools, volumes);
+    }
+
+    public List<PoolProfile> getPools()
+    {
+        return pools;
+    }
+
+    public List<VolumeProfile> getVolumes()
+    {
+        return volumes;
+    }
+}
@@ -0,0 +1,111 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.planning;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// Destination pool of each Volume, and the pools to create or grow for them to fit
+public class PlacementPlan
+{
+    private final Map<VolumeProfile, String> placements;
+    private final List<PoolAction> poolActions;
+    private final List<VolumeProfile> unplaced;
+
+    PlacementPlan(Map<VolumeProfile, String> placements, List<PoolAction> poolActions, List<VolumeProfile> unplaced)
+    {
+        this.placements = Collections.unmodifiableMap(placements);
+        this.poolActions = Collections.unmodifiableList(poolActions);
+        this.unplaced = Collections.unmodifiableList(unplaced);
+    }
+
+    /**
+     * @return Resource id of the destination pool of each placed Volume, largest Volumes first
+     */
+    public Map<VolumeProfile, String> getPlacements()
+    {
+        return placements;
+    }
+
+    /**
+     * @return One action per destination pool used by the plan
+     */
+    public List<PoolAction> getPoolActions()
+    {
+        return poolActions;
+    }
+
+    /**
+     * @return Volumes too large for any pool, even one of the maximum size
+     */
+    public List<VolumeProfile> getUnplaced()
+    {
+        return unplaced;
+    }
+
+    /**
+     * @return Number of pools to create
+     */
+    public long getPoolsToCreate()
+    {
+        return poolActions.stream().filter(action -> action.getKind() == PoolAction.Kind.CREATE).count();
+    }
+
+    /**
+     * Writes the placements as an NDJSON manifest for the batch mode. Entries moving into a pool to create carry its
+     * service level and size, so the batch creates it before the first move
+     * @param manifest Path of the manifest to write
+     */
+    public void writeManifest(Path manifest) throws IOException
+    {
+        try (Writer out = Files.newBufferedWriter(manifest, StandardCharsets.UTF_8))
+        {
+            JsonWriter json = new JsonWriter(out);
+            json.setLenient(true);
+            for (Map.Entry<VolumeProfile, String> placement : placements.entrySet())
+            {
+                json.beginObject();
+                json.name("volumeId").value(placement.getKey().getId());
+                json.name("destinationPoolId").value(placement.getValue());
+                PoolAction action = actionFor(placement.getValue());
+                if (action != null && action.getKind() == PoolAction.Kind.CREATE)
+                {
+                    json.name("serviceLevel").value(action.getServiceLevel());
+                    json.name("poolSize").value(action.getRequiredSize());
+                }
+                json.endObject();
+                out.write('\n');
+            }
+        }
+    }
+
+    private PoolAction actionFor(String poolId)
+    {
+        for (PoolAction action : poolActions)
+        {
+            if (action.getPoolId().equalsIgnoreCase(poolId))
+            {
+                return action;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString()
+    {
+        return placements.size() + " Volumes placed in " + poolActions.size() + " Capacity Pools (" + getPoolsToCreate() + " to create), "
+                + unplaced.size() + " unplaced";
+    }
+}
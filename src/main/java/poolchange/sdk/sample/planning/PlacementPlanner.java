@@ -0,0 +1,167 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.planning;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/*
+  Packs the Volumes to move into as few destination Capacity Pools as possible. Volumes are placed largest first, each
+  into the pool it fills the most tightly (best fit decreasing). When no pool has room, the fullest pool that can still
+  grow enough is grown rather than opening a new one, as a new pool costs at least the minimum pool size. Only then is a
+  new pool added. Pool sizes are rounded up to whole TiB, within the service's minimum and maximum sizes.
+*/
+public class PlacementPlanner
+{
+    public static final long MIN_POOL_SIZE = 4 * ServiceLevels.TIB;
+    public static final long MAX_POOL_SIZE = 500 * ServiceLevels.TIB;
+
+    private final String newPoolPrefix;
+
+    /**
+     * @param newPoolPrefix Name prefix of the pools to create, numbered from 1
+     */
+    public PlacementPlanner(String newPoolPrefix)
+    {
+        this.newPoolPrefix = newPoolPrefix;
+    }
+
+    /**
+     * @param volumes Volumes to move
+     * @param pools Existing pools, only those at the service level in the Account are used
+     * @param accountId Resource id of the Account the Volumes move within
+     * @param serviceLevel Service level the Volumes move to
+     * @return Destination of each Volume and what to do with each destination pool
+     */
+    public PlacementPlan plan(Collection<VolumeProfile> volumes, Collection<PoolProfile> pools, String accountId, String serviceLevel)
+    {
+        List<Bin> bins = new ArrayList<>();
+        Set<String> usedNames = new HashSet<>();
+        for (PoolProfile pool : pools)
+        {
+            usedNames.add(pool.getId().substring(pool.getId().lastIndexOf('/') + 1).toLowerCase(Locale.ROOT));
+            if (pool.getServiceLevel().equalsIgnoreCase(serviceLevel) && pool.getId().regionMatches(true, 0, accountId + "/", 0, accountId.length() + 1))
+            {
+                bins.add(new Bin(pool.getId(), pool.getSize(), pool.getAllocated(), false));
+            }
+        }
+
+        List<VolumeProfile> ordered = new ArrayList<>(volumes);
+        ordered.sort(Comparator.comparingLong(VolumeProfile::getUsageThreshold).reversed());
+
+        Map<VolumeProfile, String> placements = new LinkedHashMap<>();
+        List<VolumeProfile> unplaced = new ArrayList<>();
+        int nextPoolNumber = 1;
+        for (VolumeProfile volume : ordered)
+        {
+            long quota = volume.getUsageThreshold();
+            Bin target = null;
+
+            // Tightest fit within the current sizes
+            for (Bin bin : bins)
+            {
+                if (bin.free() >= quota && (target == null || bin.free() < target.free()))
+                {
+                    target = bin;
+                }
+            }
+
+            // Otherwise the fullest pool that can grow enough
+            if (target == null)
+            {
+                for (Bin bin : bins)
+                {
+                    if (bin.allocated + quota <= MAX_POOL_SIZE && (target == null || bin.free() < target.free()))
+                    {
+                        target = bin;
+                    }
+                }
+            }
+
+            if (target == null)
+            {
+                if (quota > MAX_POOL_SIZE)
+                {
+                    unplaced.add(volume);
+                    continue;
+                }
+
+                String name;
+                do
+                {
+                    name = newPoolPrefix + "-" + nextPoolNumber++;
+                }
+                while (!usedNames.add(name.toLowerCase(Locale.ROOT)));
+
+                target = new Bin(accountId + "/capacityPools/" + name, 0, 0, true);
+                bins.add(target);
+            }
+
+            target.allocated += quota;
+            target.size = Math.max(target.size, roundUpPoolSize(target.allocated));
+            target.volumeCount++;
+            placements.put(volume, target.poolId);
+        }
+
+        List<PoolAction> actions = new ArrayList<>();
+        for (Bin bin : bins)
+        {
+            if (bin.volumeCount == 0)
+            {
+                continue;
+            }
+
+            PoolAction.Kind kind = bin.isNew ? PoolAction.Kind.CREATE
+                    : bin.size > bin.originalSize ? PoolAction.Kind.GROW
+                    : PoolAction.Kind.NONE;
+            actions.add(new PoolAction(kind, bin.poolId, serviceLevel, bin.originalSize, bin.size, bin.volumeCount));
+        }
+
+        return new PlacementPlan(placements, actions, unplaced);
+    }
+
+    /**
+     * @param bytes Capacity needed
+     * @return Smallest valid pool size holding it: a whole number of TiB, at least the minimum pool size
+     */
+    public static long roundUpPoolSize(long bytes)
+    {
+        long tib = (bytes + ServiceLevels.TIB - 1) / ServiceLevels.TIB;
+        return Math.max(MIN_POOL_SIZE, tib * ServiceLevels.TIB);
+    }
+
+    // A destination pool being filled
+    private static class Bin
+    {
+        private final String poolId;
+        private final long originalSize;
+        private final boolean isNew;
+        private long size;
+        private long allocated;
+        private int volumeCount;
+
+        private Bin(String poolId, long size, long allocated, boolean isNew)
+        {
+            this.poolId = poolId;
+            this.originalSize = size;
+            this.size = size;
+            this.allocated = allocated;
+            this.isNew = isNew;
+        }
+
+        private long free()
+        {
+            return size - allocated;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.planning;
+
+// What has to happen to a destination Capacity Pool before the Volumes placed in it can move
+public class PoolAction
+{
+    public enum Kind
+    {
+        /** The pool exists and already has room for its Volumes */
+        NONE,
+        /** The pool exists but has to be resized to requiredSize first */
+        GROW,
+        /** The pool does not exist yet and has to be created with requiredSize */
+        CREATE
+    }
+
+    private final Kind kind;
+    private final String poolId;
+    private final String serviceLevel;
+    private final long currentSize;
+    private final long requiredSize;
+    private final int volumeCount;
+
+    PoolAction(Kind kind, String poolId, String serviceLevel, long currentSize, long requiredSize, int volumeCount)
+    {
+        this.kind = kind;
+        this.poolId = poolId;
+        this.serviceLevel = serviceLevel;
+        this.currentSize = currentSize;
+        this.requiredSize = requiredSize;
+        this.volumeCount = volumeCount;
+    }
+
+    public Kind getKind()
+    {
+        return kind;
+    }
+
+    public String getPoolId()
+    {
+        return poolId;
+    }
+
+    public String getServiceLevel()
+    {
+        return serviceLevel;
+    }
+
+    /**
+     * @return Size of the pool in bytes, 0 for a pool to create
+     */
+    public long getCurrentSize()
+    {
+        return currentSize;
+    }
+
+    /**
+     * @return Size in bytes the pool needs for its current Volumes plus the ones placed in it
+     */
+    public long getRequiredSize()
+    {
+        return requiredSize;
+    }
+
+    /**
+     * @return Number of Volumes of the plan placed in the pool
+     */
+    public int getVolumeCount()
+    {
+        return volumeCount;
+    }
+
+    @Override
+    public String toString()
+    {
+        switch (kind)
+        {
+            case CREATE:
+                return "Create " + poolId + " at " + serviceLevel + " with " + requiredSize / ServiceLevels.TIB + "TiB for " + volumeCount + " Volumes";
+            case GROW:
+                return "Grow " + poolId + " from " + currentSize / ServiceLevels.TIB + "TiB to " + requiredSize / ServiceLevels.TIB
+                        + "TiB for " + volumeCount + " Volumes";
+            default:
+                return "Use " + poolId + " as is for " + volumeCount + " Volumes";
+        }
+    }
+}
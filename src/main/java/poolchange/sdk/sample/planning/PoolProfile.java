@@ -0,0 +1,128 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.planning;
+
+import com.azure.resourcemanager.netapp.fluent.models.CapacityPoolInner;
+import com.azure.resourcemanager.netapp.models.QosType;
+
+/*
+  The properties of a Capacity Pool planning decisions are based on: its size, and the quota already allocated to its
+  Volumes. Under automatic QoS the pool's throughput is shared the same way as its capacity, so its throughput headroom
+  is the throughput its unallocated capacity would grant. Under manual QoS throughput is assigned to each Volume
+  regardless of its quota, so none of this applies.
+*/
+public class PoolProfile
+{
+    private final String id;
+    private final String serviceLevel;
+    private final long size;
+    private final long allocated;
+    private final boolean manualQos;
+
+    /**
+     * @param id Resource id of the Capacity Pool
+     * @param serviceLevel Service level of the pool
+     * @param size Size of the pool in bytes
+     * @param allocated Sum of the usageThreshold of the Volumes in the pool
+     */
+    public PoolProfile(String id, String serviceLevel, long size, long allocated)
+    {
+        this(id, serviceLevel, size, allocated, false);
+    }
+
+    /**
+     * @param id Resource id of the Capacity Pool
+     * @param serviceLevel Service level of the pool
+     * @param size Size of the pool in bytes
+     * @param allocated Sum of the usageThreshold of the Volumes in the pool
+     * @param manualQos Whether the pool's QoS type is Manual
+     */
+    public PoolProfile(String id, String serviceLevel, long size, long allocated, boolean manualQos)
+    {
+        this.id = id;
+        this.serviceLevel = serviceLevel;
+        this.size = size;
+        this.allocated = allocated;
+        this.manualQos = manualQos;
+    }
+
+    /**
+     * @param pool The Capacity Pool
+     * @param allocated Sum of the usageThreshold of the Volumes in the pool
+     */
+    public static PoolProfile of(CapacityPoolInner pool, long allocated)
+    {
+        return new PoolProfile(pool.id(), pool.serviceLevel() != null ? pool.serviceLevel().toString() : null, pool.size(), allocated,
+                QosType.MANUAL.equals(pool.qosType()));
+    }
+
+    public String getId()
+    {
+        return id;
+    }
+
+    public String getServiceLevel()
+    {
+        return serviceLevel;
+    }
+
+    public long getSize()
+    {
+        return size;
+    }
+
+    public long getAllocated()
+    {
+        return allocated;
+    }
+
+    /**
+     * @return Whether throughput is assigned to each Volume instead of following its quota
+     */
+    public boolean isManualQos()
+    {
+        return manualQos;
+    }
+
+    /**
+     * @return Capacity not allocated to any Volume yet, in bytes
+     */
+    public long getFree()
+    {
+        return Math.max(0, size - allocated);
+    }
+
+    /**
+     * @return Total throughput of the pool in MiB/s
+     */
+    public double getThroughput()
+    {
+        return ServiceLevels.throughputCeiling(serviceLevel, size);
+    }
+
+    /**
+     * @return Throughput in MiB/s not granted to any Volume yet
+     */
+    public double getThroughputHeadroom()
+    {
+        return ServiceLevels.throughputCeiling(serviceLevel, getFree());
+    }
+
+    /**
+     * @param bytes Quota moving in, or out when negative
+     * @return A copy of this profile with the quota added to its allocation
+     */
+    public PoolProfile withAllocated(long bytes)
+    {
+        return new PoolProfile(id, serviceLevel, size, allocated + bytes, manualQos);
+    }
+
+    @Override
+    public String toString()
+    {
+        return id;
+    }
+}
@@ -0,0 +1,82 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.planning;
+
+import java.util.Locale;
+
+/*
+  Throughput each service level grants per TiB of quota under automatic QoS, where a Volume's throughput limit is its
+  quota multiplied by the rate of its Capacity Pool's service level.
+*/
+public final class ServiceLevels
+{
+    public static final long TIB = 1099511627776L;
+
+    private ServiceLevels()
+    {
+    }
+
+    /**
+     * @param serviceLevel Service level name, may be null
+     * @return Whether throughputPerTib knows the service level, e.g. false for StandardZRS
+     */
+    public static boolean isKnown(String serviceLevel)
+    {
+        if (serviceLevel == null)
+        {
+            return false;
+        }
+
+        switch (serviceLevel.toLowerCase(Locale.ROOT))
+        {
+            case "standard":
+            case "premium":
+            case "ultra":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @param serviceLevel Standard, Premium or Ultra, case insensitive
+     * @return Throughput in MiB/s per TiB of quota
+     */
+    public static double throughputPerTib(String serviceLevel)
+    {
+        switch (serviceLevel.toLowerCase(Locale.ROOT))
+        {
+            case "standard":
+                return 16;
+            case "premium":
+                return 64;
+            case "ultra":
+                return 128;
+            default:
+                throw new IllegalArgumentException("Unknown service level: " + serviceLevel);
+        }
+    }
+
+    /**
+     * @param serviceLevel Service level name
+     * @param quotaBytes Volume quota, i.e. its usageThreshold, in bytes
+     * @return Throughput limit in MiB/s of a Volume of that quota at that service level
+     */
+    public static double throughputCeiling(String serviceLevel, long quotaBytes)
+    {
+        return throughputPerTib(serviceLevel) * quotaBytes / TIB;
+    }
+
+    /**
+     * @param serviceLevel Service level name
+     * @param throughputMibps Throughput a Volume must sustain
+     * @return Smallest quota in bytes whose throughput limit at that service level covers the throughput
+     */
+    public static long quotaForThroughput(String serviceLevel, double throughputMibps)
+    {
+        return (long) Math.ceil(throughputMibps / throughputPerTib(serviceLevel) * TIB);
+    }
+}
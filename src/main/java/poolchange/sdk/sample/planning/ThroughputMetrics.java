@@ -0,0 +1,92 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.planning;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+  Measured throughput of Volumes, read from a CSV file with one line per Volume: its resource id, then its peak
+  throughput in MiB/s, e.g. exported from Azure Monitor's ReadThroughput plus WriteThroughput metrics. Further columns,
+  a header line and lines starting with # are ignored.
+*/
+public class ThroughputMetrics
+{
+    private final Map<String, Double> peakMibps = new HashMap<>();
+
+    /**
+     * Reads a metrics file
+     * @param file CSV file of volumeId,peakMibps lines
+     * @return The measurements
+     */
+    public static ThroughputMetrics load(Path file) throws IOException
+    {
+        ThroughputMetrics metrics = new ThroughputMetrics();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+        {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null)
+            {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                {
+                    continue;
+                }
+
+                String[] columns = line.split(",");
+                if (columns.length < 2)
+                {
+                    throw new IOException("Line " + lineNumber + " of " + file + " has no throughput column");
+                }
+
+                try
+                {
+                    metrics.put(columns[0].trim(), Double.parseDouble(columns[1].trim()));
+                }
+                catch (NumberFormatException e)
+                {
+                    if (lineNumber != 1)
+                    {
+                        throw new IOException("Line " + lineNumber + " of " + file + " has an invalid throughput: " + columns[1]);
+                    }
+                    // First line is a header
+                }
+            }
+        }
+
+        return metrics;
+    }
+
+    /**
+     * Records a measurement, keeping the highest one per Volume
+     */
+    public void put(String volumeId, double mibps)
+    {
+        peakMibps.merge(volumeId.toLowerCase(Locale.ROOT), mibps, Math::max);
+    }
+
+    /**
+     * @param volumeId Resource id of a Volume
+     * @return Peak throughput in MiB/s, null if the Volume was not measured
+     */
+    public Double getPeakMibps(String volumeId)
+    {
+        return peakMibps.get(volumeId.toLowerCase(Locale.ROOT));
+    }
+
+    public int size()
+    {
+        return peakMibps.size();
+    }
+}
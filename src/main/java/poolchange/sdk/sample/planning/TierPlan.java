@@ -0,0 +1,84 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.planning;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// Ranked pool change recommendations, and why the other Volumes should stay where they are
+public class TierPlan
+{
+    private final List<TierRecommendation> recommendations;
+    private final Map<String, String> rejections;
+    private final Map<String, String> skippedPools;
+
+    TierPlan(List<TierRecommendation> recommendations, Map<String, String> rejections, Map<String, String> skippedPools)
+    {
+        this.recommendations = Collections.unmodifiableList(recommendations);
+        this.rejections = Collections.unmodifiableMap(rejections);
+        this.skippedPools = Collections.unmodifiableMap(skippedPools);
+    }
+
+    /**
+     * @return Recommended moves, the ones releasing the most throughput first
+     */
+    public List<TierRecommendation> getRecommendations()
+    {
+        return recommendations;
+    }
+
+    /**
+     * @return Reason each other Volume should not move, by Volume resource id
+     */
+    public Map<String, String> getRejections()
+    {
+        return rejections;
+    }
+
+    /**
+     * @return Reason each Capacity Pool was left out of the plan, e.g. manual QoS, by pool resource id
+     */
+    public Map<String, String> getSkippedPools()
+    {
+        return skippedPools;
+    }
+
+    /**
+     * Writes the recommendations as an NDJSON manifest for the batch mode
+     * @param manifest Path of the manifest to write
+     */
+    public void writeManifest(Path manifest) throws IOException
+    {
+        try (Writer out = Files.newBufferedWriter(manifest, StandardCharsets.UTF_8))
+        {
+            JsonWriter json = new JsonWriter(out);
+            json.setLenient(true);
+            for (TierRecommendation recommendation : recommendations)
+            {
+                json.beginObject();
+                json.name("volumeId").value(recommendation.getVolume().getId());
+                json.name("destinationPoolId").value(recommendation.getDestination().getId());
+                json.endObject();
+                out.write('\n');
+            }
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return recommendations.size() + " Volumes can move to a cheaper service level, " + rejections.size() + " should stay, "
+                + skippedPools.size() + " Capacity Pools skipped";
+    }
+}
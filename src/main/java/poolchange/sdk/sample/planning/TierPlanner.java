@@ -0,0 +1,201 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.planning;
+
+import poolchange.sdk.sample.common.ParsedResourceId;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+  Finds Volumes that can move to a Capacity Pool at a cheaper service level without being throttled. A Volume qualifies
+  for a pool of the same Account when, with its current quota, the pool's service level still grants its measured peak
+  throughput plus a safety margin, and the pool has both the free capacity and the throughput headroom to take it.
+
+  Volumes are considered in order of the throughput a move would release, so that when several compete for the same
+  pool the most valuable moves get it. Each accepted move is deducted from the pool before the next Volume is placed.
+
+  Pools under manual QoS, where throughput does not follow quota, and pools or Volumes at a service level without a
+  known throughput rate are left out and reported rather than planned.
+*/
+public class TierPlanner
+{
+    private final double safetyMargin;
+
+    /**
+     * @param safetyMargin Fraction added to the measured peak before comparing it with a limit, e.g. 0.2 for 20%
+     */
+    public TierPlanner(double safetyMargin)
+    {
+        if (safetyMargin < 0)
+        {
+            throw new IllegalArgumentException("The safety margin cannot be negative");
+        }
+        this.safetyMargin = safetyMargin;
+    }
+
+    /**
+     * @param volumes Volumes that may move
+     * @param pools Pools they may move to, typically every pool of their Accounts
+     * @param metrics Measured throughput of the Volumes
+     * @return Recommended moves, ranked, and the reason the other Volumes should stay
+     */
+    public TierPlan plan(Collection<VolumeProfile> volumes, Collection<PoolProfile> pools, ThroughputMetrics metrics)
+    {
+        Map<String, PoolProfile> remaining = new HashMap<>();
+        Map<String, String> skippedPools = new LinkedHashMap<>();
+        List<PoolProfile> plannable = new ArrayList<>();
+        for (PoolProfile pool : pools)
+        {
+            String reason = pool.isManualQos() ? "manual QoS, throughput does not follow quota"
+                    : !ServiceLevels.isKnown(pool.getServiceLevel()) ? "unknown service level " + pool.getServiceLevel()
+                    : null;
+            if (reason != null)
+            {
+                skippedPools.put(pool.getId(), reason);
+                continue;
+            }
+            plannable.add(pool);
+            remaining.put(pool.getId().toLowerCase(Locale.ROOT), pool);
+        }
+
+        // Volumes whose own pool or service level can't be reasoned about stay where they are
+        List<VolumeProfile> ordered = new ArrayList<>();
+        Map<String, String> rejections = new LinkedHashMap<>();
+        for (VolumeProfile volume : volumes)
+        {
+            String skipped = skippedPools.get(findPoolId(pools, volume.getPoolId()));
+            if (skipped != null)
+            {
+                rejections.put(volume.getId(), "its Capacity Pool is skipped: " + skipped);
+            }
+            else if (!ServiceLevels.isKnown(volume.getServiceLevel()))
+            {
+                rejections.put(volume.getId(), "unknown service level " + volume.getServiceLevel());
+            }
+            else
+            {
+                ordered.add(volume);
+            }
+        }
+
+        // Best case for each Volume: its cheapest service level among the pools of its Account
+        ordered.sort(Comparator.comparingDouble((VolumeProfile volume) -> potentialRelease(volume, plannable)).reversed());
+
+        List<TierRecommendation> recommendations = new ArrayList<>();
+        for (VolumeProfile volume : ordered)
+        {
+            Double peak = metrics.getPeakMibps(volume.getId());
+            if (peak == null)
+            {
+                rejections.put(volume.getId(), "no throughput measurement");
+                continue;
+            }
+
+            double demand = peak * (1 + safetyMargin);
+            PoolProfile best = null;
+            String reason = "no pool at a cheaper service level in the Account";
+            for (PoolProfile pool : remaining.values())
+            {
+                if (!isCheaperSibling(volume, pool))
+                {
+                    continue;
+                }
+
+                double ceiling = ServiceLevels.throughputCeiling(pool.getServiceLevel(), volume.getUsageThreshold());
+                if (demand > ceiling)
+                {
+                    reason = String.format("needs %.1f MiB/s but would be limited to %.1f MiB/s at %s", demand, ceiling, pool.getServiceLevel());
+                    continue;
+                }
+                if (pool.getFree() < volume.getUsageThreshold() || pool.getThroughputHeadroom() < ceiling)
+                {
+                    reason = "not enough free capacity in " + pool.getId();
+                    continue;
+                }
+
+                if (best == null || isBetter(pool, best))
+                {
+                    best = pool;
+                }
+            }
+
+            if (best == null)
+            {
+                rejections.put(volume.getId(), reason);
+                continue;
+            }
+
+            PoolProfile original = findOriginal(pools, best);
+            recommendations.add(new TierRecommendation(volume, original, peak, demand));
+            remaining.put(best.getId().toLowerCase(Locale.ROOT), best.withAllocated(volume.getUsageThreshold()));
+        }
+
+        recommendations.sort(Comparator.comparingDouble(TierRecommendation::getThroughputReleased).reversed()
+                .thenComparingDouble(TierRecommendation::getUtilizationAfter));
+        return new TierPlan(recommendations, rejections, skippedPools);
+    }
+
+    // Cheapest service level first, then the pool with the most room left
+    private static boolean isBetter(PoolProfile candidate, PoolProfile best)
+    {
+        double candidateRate = ServiceLevels.throughputPerTib(candidate.getServiceLevel());
+        double bestRate = ServiceLevels.throughputPerTib(best.getServiceLevel());
+        return candidateRate < bestRate || (candidateRate == bestRate && candidate.getFree() > best.getFree());
+    }
+
+    // A pool change keeps a Volume in its Account
+    private static boolean isCheaperSibling(VolumeProfile volume, PoolProfile pool)
+    {
+        return ParsedResourceId.parse(pool.getId()).getParentId().equalsIgnoreCase(ParsedResourceId.parse(volume.getPoolId()).getParentId())
+                && !pool.getId().equalsIgnoreCase(volume.getPoolId())
+                && ServiceLevels.throughputPerTib(pool.getServiceLevel()) < ServiceLevels.throughputPerTib(volume.getServiceLevel());
+    }
+
+    private static double potentialRelease(VolumeProfile volume, Collection<PoolProfile> pools)
+    {
+        double lowest = ServiceLevels.throughputPerTib(volume.getServiceLevel());
+        for (PoolProfile pool : pools)
+        {
+            if (isCheaperSibling(volume, pool))
+            {
+                lowest = Math.min(lowest, ServiceLevels.throughputPerTib(pool.getServiceLevel()));
+            }
+        }
+        return (ServiceLevels.throughputPerTib(volume.getServiceLevel()) - lowest) * volume.getUsageThreshold();
+    }
+
+    // Resource id of the pool as spelled in the pool list, resource ids being case insensitive
+    private static String findPoolId(Collection<PoolProfile> pools, String poolId)
+    {
+        for (PoolProfile pool : pools)
+        {
+            if (pool.getId().equalsIgnoreCase(poolId))
+            {
+                return pool.getId();
+            }
+        }
+        return poolId;
+    }
+
+    private static PoolProfile findOriginal(Collection<PoolProfile> pools, PoolProfile pool)
+    {
+        for (PoolProfile original : pools)
+        {
+            if (original.getId().equalsIgnoreCase(pool.getId()))
+            {
+                return original;
+            }
+        }
+        return pool;
+    }
+}
@@ -0,0 +1,94 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.planning;
+
+import poolchange.sdk.sample.bulk.PoolChangeJob;
+
+// A Volume that can move to a cheaper service level and still sustain its measured throughput
+public class TierRecommendation
+{
+    private final VolumeProfile volume;
+    private final PoolProfile destination;
+    private final double peakMibps;
+    private final double demandMibps;
+
+    TierRecommendation(VolumeProfile volume, PoolProfile destination, double peakMibps, double demandMibps)
+    {
+        this.volume = volume;
+        this.destination = destination;
+        this.peakMibps = peakMibps;
+        this.demandMibps = demandMibps;
+    }
+
+    public VolumeProfile getVolume()
+    {
+        return volume;
+    }
+
+    /**
+     * @return Destination pool, as it was before any move of the plan
+     */
+    public PoolProfile getDestination()
+    {
+        return destination;
+    }
+
+    /**
+     * @return Measured peak throughput in MiB/s
+     */
+    public double getPeakMibps()
+    {
+        return peakMibps;
+    }
+
+    /**
+     * @return Throughput limit of the Volume in its current pool, in MiB/s
+     */
+    public double getCeilingBefore()
+    {
+        return ServiceLevels.throughputCeiling(volume.getServiceLevel(), volume.getUsageThreshold());
+    }
+
+    /**
+     * @return Throughput limit of the Volume once in the destination pool, with the same quota, in MiB/s
+     */
+    public double getCeilingAfter()
+    {
+        return ServiceLevels.throughputCeiling(destination.getServiceLevel(), volume.getUsageThreshold());
+    }
+
+    /**
+     * @return Peak throughput plus safety margin, as a fraction of the limit after the move
+     */
+    public double getUtilizationAfter()
+    {
+        return demandMibps / getCeilingAfter();
+    }
+
+    /**
+     * @return Throughput no longer paid for at the higher service level, in MiB/s
+     */
+    public double getThroughputReleased()
+    {
+        return getCeilingBefore() - getCeilingAfter();
+    }
+
+    /**
+     * @return The pool change carrying out this recommendation
+     */
+    public PoolChangeJob toJob()
+    {
+        return PoolChangeJob.fromVolumeId(volume.getId(), destination.getId());
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s: %s -> %s (%s), peak %.1f MiB/s, limit %.1f -> %.1f MiB/s, %.0f%% used after the move",
+                volume.getId(), volume.getServiceLevel(), destination.getServiceLevel(), destination.getId(),
+                peakMibps, getCeilingBefore(), getCeilingAfter(), getUtilizationAfter() * 100);
+    }
+}
@@ -0,0 +1,65 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.planning;
+
+import com.azure.resourcemanager.netapp.fluent.models.VolumeInner;
+import poolchange.sdk.sample.common.ParsedResourceId;
+
+// The properties of a Volume planning decisions are based on
+public class VolumeProfile
+{
+    private final String id;
+    private final String poolId;
+    private final String serviceLevel;
+    private final long usageThreshold;
+
+    /**
+     * @param id Resource id of the Volume
+     * @param serviceLevel Service level of the Volume's Capacity Pool
+     * @param usageThreshold Quota of the Volume in bytes
+     */
+    public VolumeProfile(String id, String serviceLevel, long usageThreshold)
+    {
+        this.id = id;
+        this.poolId = ParsedResourceId.parse(id).getParentId();
+        this.serviceLevel = serviceLevel;
+        this.usageThreshold = usageThreshold;
+    }
+
+    public static VolumeProfile of(VolumeInner volume)
+    {
+        return new VolumeProfile(volume.id(), volume.serviceLevel().toString(), volume.usageThreshold());
+    }
+
+    public String getId()
+    {
+        return id;
+    }
+
+    /**
+     * @return Resource id of the Capacity Pool the Volume is in
+     */
+    public String getPoolId()
+    {
+        return poolId;
+    }
+
+    public String getServiceLevel()
+    {
+        return serviceLevel;
+    }
+
+    public long getUsageThreshold()
+    {
+        return usageThreshold;
+    }
+
+    @Override
+    public String toString()
+    {
+        return id;
+    }
+}
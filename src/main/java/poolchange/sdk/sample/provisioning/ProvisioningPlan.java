@@ -0,0 +1,277 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.provisioning;
+
+import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
+import com.azure.resourcemanager.netapp.fluent.models.CapacityPoolInner;
+import com.azure.resourcemanager.netapp.fluent.models.NetAppAccountInner;
+import com.azure.resourcemanager.netapp.fluent.models.VolumeInner;
+import poolchange.sdk.sample.Creation;
+import poolchange.sdk.sample.common.CommonSdk;
+import poolchange.sdk.sample.common.Utils;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Provisions Accounts, Capacity Pools and Volumes, creating every independent branch of the hierarchy at the same time
+public class ProvisioningPlan
+{
+    private final NetAppManagementClient anfClient;
+    private final Map<String, Node> nodes = new LinkedHashMap<>();
+
+    /**
+     * @param anfClient Azure NetApp Files Management Client
+     */
+    public ProvisioningPlan(NetAppManagementClient anfClient)
+    {
+        this.anfClient = anfClient;
+    }
+
+    /**
+     * Adds an Account to the plan. It is only created if it does not exist yet
+     * @param resourceGroup Name of the resource group where the Account will be created
+     * @param accountName Name of the Account
+     * @param accountBody The Account body used in the creation
+     * @return This plan
+     */
+    public ProvisioningPlan addAccount(String resourceGroup, String accountName, NetAppAccountInner accountBody)
+    {
+        return add(new String[]{resourceGroup, accountName}, NetAppAccountInner.class, accountBody, null);
+    }
+
+    /**
+     * Adds a Capacity Pool to the plan. It is created once its Account exists, at the same time as sibling pools
+     * @param resourceGroup Name of the resource group where the Capacity Pool will be created
+     * @param accountName Name of the Account
+     * @param poolName Name of the Capacity Pool
+     * @param poolBody The Capacity Pool body used in the creation
+     * @return This plan
+     */
+    public ProvisioningPlan addCapacityPool(String resourceGroup, String accountName, String poolName, CapacityPoolInner poolBody)
+    {
+        String accountId = CommonSdk.getResourceId(anfClient, new String[]{resourceGroup, accountName}, NetAppAccountInner.class);
+        return add(new String[]{resourceGroup, accountName, poolName}, CapacityPoolInner.class, poolBody, accountId);
+    }
+
+    /**
+     * Adds a Volume to the plan. It is created once its Capacity Pool exists, at the same time as sibling volumes
+     * @param resourceGroup Name of the resource group where the Volume will be created
+     * @param accountName Name of the Account
+     * @param poolName Name of the Capacity Pool
+     * @param volumeName Name of the Volume
+     * @param volumeBody The Volume body used in the creation
+     * @return This plan
+     */
+    public ProvisioningPlan addVolume(String resourceGroup, String accountName, String poolName, String volumeName, VolumeInner volumeBody)
+    {
+        String poolId = CommonSdk.getResourceId(anfClient, new String[]{resourceGroup, accountName, poolName}, CapacityPoolInner.class);
+        return add(new String[]{resourceGroup, accountName, poolName, volumeName}, VolumeInner.class, volumeBody, poolId);
+    }
+
+    /**
+     * Provisions every resource of the plan and waits for all of them. Resources may be added in any order, each one
+     * is created after its parent. A resource whose parent is not part of the plan fails if that parent does not
+     * already exist. If a resource fails, everything nested under it is skipped
+     * @return Provisioned resources and failures
+     * @throws IllegalStateException If the dependencies of the plan form a cycle
+     */
+    public ProvisioningResult execute()
+    {
+        long start = System.nanoTime();
+        Map<String, Object> resources = new ConcurrentHashMap<>();
+        Map<String, Throwable> failures = new ConcurrentHashMap<>();
+        Map<String, CompletableFuture<Object>> futures = new LinkedHashMap<>();
+        List<String> order = topologicalOrder();
+
+        // Existence checks are blocking reads, creations are asynchronous
+        ExecutorService readExecutor = Executors.newFixedThreadPool(Math.max(1, Math.min(nodes.size(), 8)));
+        try
+        {
+            // Parents come first in the order, so their futures are already in the map. A parent outside the plan is
+            // checked once, its children all waiting for the same check
+            for (String key : order)
+            {
+                Node node = nodes.get(key);
+                CompletableFuture<Object> ready = node.parentKey == null
+                        ? CompletableFuture.completedFuture(null)
+                        : futures.computeIfAbsent(node.parentKey, parentKey -> CompletableFuture.supplyAsync(() -> requireParent(node), readExecutor));
+
+                CompletableFuture<Object> future = ready
+                        .handle((ignored, parentError) -> parentError)
+                        .thenComposeAsync(parentError -> parentError == null
+                                ? ensureExists(node)
+                                : CompletableFuture.failedFuture(new IllegalStateException("Skipped " + node.describe()
+                                        + " because its parent could not be provisioned: " + unwrap(parentError).getMessage())), readExecutor)
+                        .whenComplete((resource, error) -> {
+                            if (error == null)
+                            {
+                                resources.put(key, resource);
+                            }
+                            else
+                            {
+                                failures.put(node.resourceId, unwrap(error));
+                            }
+                        });
+                futures.put(key, future);
+            }
+
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0]))
+                    .exceptionally(error -> null)
+                    .join();
+        }
+        finally
+        {
+            readExecutor.shutdown();
+        }
+
+        return new ProvisioningResult(resources, failures, Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private ProvisioningPlan add(String[] params, Class<?> clazz, Object body, String parentId)
+    {
+        String resourceId = CommonSdk.getResourceId(anfClient, params, clazz);
+        String parentKey = parentId != null ? parentId.toLowerCase(Locale.ROOT) : null;
+        nodes.putIfAbsent(resourceId.toLowerCase(Locale.ROOT), new Node(params, clazz, body, resourceId, parentKey));
+
+        return this;
+    }
+
+    // Orders the nodes so that every one comes after its parent, whatever order they were added in
+    private List<String> topologicalOrder()
+    {
+        Map<String, List<String>> children = new HashMap<>();
+        ArrayDeque<String> ready = new ArrayDeque<>();
+        for (Map.Entry<String, Node> entry : nodes.entrySet())
+        {
+            String parentKey = entry.getValue().parentKey;
+            if (parentKey != null && nodes.containsKey(parentKey))
+            {
+                children.computeIfAbsent(parentKey, key -> new ArrayList<>()).add(entry.getKey());
+            }
+            else
+            {
+                ready.add(entry.getKey());
+            }
+        }
+
+        List<String> order = new ArrayList<>(nodes.size());
+        while (!ready.isEmpty())
+        {
+            String key = ready.poll();
+            order.add(key);
+            ready.addAll(children.getOrDefault(key, Collections.emptyList()));
+        }
+
+        if (order.size() < nodes.size())
+        {
+            List<String> cycle = new ArrayList<>(nodes.keySet());
+            cycle.removeAll(order);
+            throw new IllegalStateException("The provisioning plan has a dependency cycle between " + cycle);
+        }
+        return order;
+    }
+
+    // Checks that the parent of a node, which is not part of the plan, already exists
+    private Object requireParent(Node node)
+    {
+        String[] parentParams = Arrays.copyOf(node.params, node.params.length - 1);
+        Class<?> parentClazz = node.clazz == VolumeInner.class ? CapacityPoolInner.class : NetAppAccountInner.class;
+        Object parent = CommonSdk.getResource(anfClient, parentParams, parentClazz);
+        if (parent == null)
+        {
+            throw new IllegalStateException(CommonSdk.getResourceId(anfClient, parentParams, parentClazz)
+                    + " is neither part of the provisioning plan nor an existing resource");
+        }
+        return parent;
+    }
+
+    private CompletableFuture<Object> ensureExists(Node node)
+    {
+        Object existing = CommonSdk.getResource(anfClient, node.params, node.clazz);
+        if (existing != null)
+        {
+            Utils.writeConsoleMessage(node.describe() + " already exists");
+            return CompletableFuture.completedFuture(existing);
+        }
+
+        Utils.writeConsoleMessage("Creating " + node.describe() + "...");
+        String[] p = node.params;
+        CompletableFuture<?> creation;
+        switch (node.clazz.getSimpleName())
+        {
+            case "NetAppAccountInner":
+                creation = Creation.createANFAccountAsync(anfClient, p[0], p[1], (NetAppAccountInner) node.body);
+                break;
+
+            case "CapacityPoolInner":
+                creation = Creation.createCapacityPoolAsync(anfClient, p[0], p[1], p[2], (CapacityPoolInner) node.body);
+                break;
+
+            default:
+                creation = Creation.createVolumeAsync(anfClient, p[0], p[1], p[2], p[3], (VolumeInner) node.body);
+                break;
+        }
+
+        return creation.handle((resource, error) -> {
+            if (error != null)
+            {
+                Utils.writeErrorMessage("An error occurred while creating " + node.describe() + ": " + unwrap(error).getMessage());
+                throw new CompletionException(unwrap(error));
+            }
+            return resource;
+        });
+    }
+
+    private static Throwable unwrap(Throwable error)
+    {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    // One resource of the plan and the key of the resource it depends on, whether or not that one is part of the plan
+    private static class Node
+    {
+        private final String[] params;
+        private final Class<?> clazz;
+        private final Object body;
+        private final String resourceId;
+        private final String parentKey;
+
+        private Node(String[] params, Class<?> clazz, Object body, String resourceId, String parentKey)
+        {
+            this.params = params;
+            this.clazz = clazz;
+            this.body = body;
+            this.resourceId = resourceId;
+            this.parentKey = parentKey;
+        }
+
+        private String describe()
+        {
+            switch (clazz.getSimpleName())
+            {
+                case "NetAppAccountInner":
+                    return "Account " + params[1];
+                case "CapacityPoolInner":
+                    return "Capacity Pool " + params[2];
+                default:
+                    return "Volume " + params[3];
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.provisioning;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+// Resources provisioned by a ProvisioningPlan, and the errors of the ones that could not be
+public class ProvisioningResult
+{
+    private final Map<String, Object> resources;
+    private final Map<String, Throwable> failures;
+    private final Duration elapsed;
+
+    ProvisioningResult(Map<String, Object> resources, Map<String, Throwable> failures, Duration elapsed)
+    {
+        this.resources = resources;
+        this.failures = failures;
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * Gets a provisioned resource, whether it was created or already existed
+     * @param resourceId Resource id of the resource
+     * @param clazz Valid class types: NetAppAccountInner, CapacityPoolInner, VolumeInner
+     * @return The resource, or null if it was not part of the plan or failed
+     */
+    public <T> T getResource(String resourceId, Class<T> clazz)
+    {
+        return clazz.cast(resources.get(resourceId.toLowerCase(Locale.ROOT)));
+    }
+
+    public boolean isSuccess()
+    {
+        return failures.isEmpty();
+    }
+
+    /**
+     * @return Error per resource id of every resource that could not be provisioned
+     */
+    public Map<String, Throwable> getFailures()
+    {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * @return Wall clock time of the whole plan, which is the time of its longest dependency chain
+     */
+    public Duration getElapsed()
+    {
+        return elapsed;
+    }
+}
@@ -0,0 +1,243 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.provisioning;
+
+import com.azure.resourcemanager.netapp.fluent.NetAppManagementClient;
+import com.azure.resourcemanager.netapp.fluent.models.CapacityPoolInner;
+import com.azure.resourcemanager.netapp.fluent.models.NetAppAccountInner;
+import com.azure.resourcemanager.netapp.fluent.models.VolumeInner;
+import poolchange.sdk.sample.Cleanup;
+import poolchange.sdk.sample.common.AsyncLimiter;
+import poolchange.sdk.sample.common.Backoff;
+import poolchange.sdk.sample.common.CommonSdk;
+import poolchange.sdk.sample.common.DeletionWaiter;
+import poolchange.sdk.sample.common.ParsedResourceId;
+import poolchange.sdk.sample.common.Utils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+  Deletes resources following the hierarchy: Volume -> Capacity Pool -> Account.
+  Every Volume is deleted at once (within the Volume limit), each Capacity Pool as soon as its own Volumes are gone,
+  and each Account as soon as its own Capacity Pools are gone.
+*/
+public class TeardownPlan
+{
+    private final NetAppManagementClient anfClient;
+    private final int maxConcurrentVolumes;
+    private final int maxConcurrentPools;
+    private final int maxConcurrentAccounts;
+    private final Map<String, Target> targets = new LinkedHashMap<>();
+
+    /**
+     * @param anfClient Azure NetApp Files Management Client
+     * @param maxConcurrentVolumes Maximum number of Volume deletions in flight
+     * @param maxConcurrentPools Maximum number of Capacity Pool deletions in flight
+     * @param maxConcurrentAccounts Maximum number of Account deletions in flight
+     */
+    public TeardownPlan(NetAppManagementClient anfClient, int maxConcurrentVolumes, int maxConcurrentPools, int maxConcurrentAccounts)
+    {
+        this.anfClient = anfClient;
+        this.maxConcurrentVolumes = maxConcurrentVolumes;
+        this.maxConcurrentPools = maxConcurrentPools;
+        this.maxConcurrentAccounts = maxConcurrentAccounts;
+    }
+
+    public TeardownPlan addVolume(String resourceGroup, String accountName, String poolName, String volumeName)
+    {
+        return add(new String[]{resourceGroup, accountName, poolName, volumeName}, VolumeInner.class);
+    }
+
+    public TeardownPlan addCapacityPool(String resourceGroup, String accountName, String poolName)
+    {
+        return add(new String[]{resourceGroup, accountName, poolName}, CapacityPoolInner.class);
+    }
+
+    public TeardownPlan addAccount(String resourceGroup, String accountName)
+    {
+        return add(new String[]{resourceGroup, accountName}, NetAppAccountInner.class);
+    }
+
+    /**
+     * Adds an Account along with every Capacity Pool and Volume it currently contains
+     * @param resourceGroup Name of the resource group
+     * @param accountName Name of the Account
+     * @return This plan
+     */
+    public TeardownPlan addAccountWithChildren(String resourceGroup, String accountName)
+    {
+        for (CapacityPoolInner pool : anfClient.getPools().list(resourceGroup, accountName))
+        {
+            String poolName = ParsedResourceId.parse(pool.id()).getCapacityPool();
+            for (VolumeInner volume : anfClient.getVolumes().list(resourceGroup, accountName, poolName))
+            {
+                addVolume(resourceGroup, accountName, poolName, ParsedResourceId.parse(volume.id()).getVolume());
+            }
+            addCapacityPool(resourceGroup, accountName, poolName);
+        }
+
+        return addAccount(resourceGroup, accountName);
+    }
+
+    /**
+     * Deletes every resource of the plan and waits until they are no longer listed. A resource is skipped if
+     * anything nested under it in the plan could not be deleted
+     * @return Summary of the teardown
+     */
+    public TeardownReport execute()
+    {
+        long start = System.nanoTime();
+        Map<String, Duration> deleted = new ConcurrentHashMap<>();
+        Map<String, Throwable> failures = new ConcurrentHashMap<>();
+        Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+        Map<String, List<CompletableFuture<Void>>> children = new LinkedHashMap<>();
+
+        Backoff backoff = new Backoff(Duration.ofSeconds(1), Duration.ofSeconds(10), 2, 0.2);
+        try (DeletionWaiter waiter = new DeletionWaiter(anfClient, 4, Duration.ofMinutes(10), backoff))
+        {
+            Map<Class<?>, AsyncLimiter> limiters = Map.of(
+                    VolumeInner.class, new AsyncLimiter(maxConcurrentVolumes),
+                    CapacityPoolInner.class, new AsyncLimiter(maxConcurrentPools),
+                    NetAppAccountInner.class, new AsyncLimiter(maxConcurrentAccounts));
+
+            // Innermost resources first, so that every parent can depend on the futures of its children
+            for (Class<?> level : List.of(VolumeInner.class, CapacityPoolInner.class, NetAppAccountInner.class))
+            {
+                for (Map.Entry<String, Target> entry : targets.entrySet())
+                {
+                    Target target = entry.getValue();
+                    if (target.clazz != level)
+                    {
+                        continue;
+                    }
+
+                    List<CompletableFuture<Void>> dependencies = children.getOrDefault(entry.getKey(), List.of());
+                    CompletableFuture<Void> future = CompletableFuture.allOf(dependencies.toArray(new CompletableFuture[0]))
+                            .handle((ignored, childError) -> childError)
+                            .thenCompose(childError -> childError == null
+                                    ? delete(target, limiters.get(level), waiter)
+                                    : CompletableFuture.failedFuture(new IllegalStateException("Skipped because a nested resource could not be deleted")))
+                            .handle((waited, error) -> {
+                                if (error != null)
+                                {
+                                    failures.put(target.resourceId, unwrap(error));
+                                    throw new CompletionException(unwrap(error));
+                                }
+                                deleted.put(target.resourceId, waited);
+                                return null;
+                            });
+
+                    futures.put(entry.getKey(), future);
+                    String parentKey = nearestParentInPlan(target.resourceId);
+                    if (parentKey != null)
+                    {
+                        children.computeIfAbsent(parentKey, k -> new ArrayList<>()).add(future);
+                    }
+                }
+            }
+
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0]))
+                    .exceptionally(error -> null)
+                    .join();
+        }
+
+        return new TeardownReport(deleted, failures, count(VolumeInner.class), count(CapacityPoolInner.class),
+                count(NetAppAccountInner.class), Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private TeardownPlan add(String[] params, Class<?> clazz)
+    {
+        String resourceId = CommonSdk.getResourceId(anfClient, params, clazz);
+        targets.putIfAbsent(resourceId.toLowerCase(Locale.ROOT), new Target(params, clazz, resourceId));
+        return this;
+    }
+
+    // Deletes a resource, then waits for it to disappear outside of the concurrency limit
+    private CompletableFuture<Duration> delete(Target target, AsyncLimiter limiter, DeletionWaiter waiter)
+    {
+        long start = System.nanoTime();
+        return limiter.submit(() -> Cleanup.runCleanupTaskAsync(anfClient, target.params, target.clazz))
+                .thenCompose(ignored -> waiter.waitForNoANFResource(target.resourceId))
+                .thenApply(ignored -> {
+                    Duration waited = Duration.ofNanos(System.nanoTime() - start);
+                    Utils.writeSuccessMessage(target.describe() + " successfully deleted",
+                            "operation", "delete", "resourceId", target.resourceId, "elapsedMs", waited.toMillis());
+                    return waited;
+                });
+    }
+
+    // Key of the closest ancestor that is part of the plan, e.g. the Account of a Volume whose pool is not in the plan
+    private String nearestParentInPlan(String resourceId)
+    {
+        ParsedResourceId id = ParsedResourceId.parse(resourceId);
+        String parentId = id.getParentId();
+        while (parentId != null)
+        {
+            String key = parentId.toLowerCase(Locale.ROOT);
+            if (targets.containsKey(key))
+            {
+                return key;
+            }
+            parentId = ParsedResourceId.parse(parentId).getParentId();
+        }
+
+        return null;
+    }
+
+    private int count(Class<?> clazz)
+    {
+        int count = 0;
+        for (Target target : targets.values())
+        {
+            if (target.clazz == clazz)
+            {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private static Throwable unwrap(Throwable error)
+    {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private static class Target
+    {
+        private final String[] params;
+        private final Class<?> clazz;
+        private final String resourceId;
+
+        private Target(String[] params, Class<?> clazz, String resourceId)
+        {
+            this.params = params;
+            this.clazz = clazz;
+            this.resourceId = resourceId;
+        }
+
+        private String describe()
+        {
+            switch (clazz.getSimpleName())
+            {
+                case "NetAppAccountInner":
+                    return "Account";
+                case "CapacityPoolInner":
+                    return "Capacity Pool";
+                default:
+                    return "Volume";
+            }
+        }
+    }
+}
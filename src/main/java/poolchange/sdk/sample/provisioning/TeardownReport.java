@@ -0,0 +1,74 @@
+// Copyright (c) Microsoft and contributors.  All rights reserved.
+//
+// This source code is licensed under the MIT license found in the
+// LICENSE file in the root directory of this source tree.
+
+package poolchange.sdk.sample.provisioning;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+
+// Summary of a TeardownPlan execution
+public class TeardownReport
+{
+    private final Map<String, Duration> deleted;
+    private final Map<String, Throwable> failures;
+    private final int volumes;
+    private final int pools;
+    private final int accounts;
+    private final Duration elapsed;
+
+    TeardownReport(Map<String, Duration> deleted, Map<String, Throwable> failures, int volumes, int pools, int accounts, Duration elapsed)
+    {
+        this.deleted = deleted;
+        this.failures = failures;
+        this.volumes = volumes;
+        this.pools = pools;
+        this.accounts = accounts;
+        this.elapsed = elapsed;
+    }
+
+    public boolean isSuccess()
+    {
+        return failures.isEmpty();
+    }
+
+    /**
+     * @return Time each deleted resource took, from its delete request until it was no longer listed
+     */
+    public Map<String, Duration> getDeleted()
+    {
+        return Collections.unmodifiableMap(deleted);
+    }
+
+    /**
+     * @return Error per resource id of every resource that failed or was skipped because a nested resource failed
+     */
+    public Map<String, Throwable> getFailures()
+    {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    public Duration getElapsed()
+    {
+        return elapsed;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder summary = new StringBuilder()
+                .append("Deleted ").append(deleted.size()).append(" of ").append(volumes + pools + accounts)
+                .append(" resources (").append(volumes).append(" Volumes, ").append(pools).append(" Capacity Pools, ")
+                .append(accounts).append(" Accounts) in ").append(elapsed.getSeconds()).append("s");
+
+        for (Map.Entry<String, Throwable> failure : failures.entrySet())
+        {
+            summary.append(System.lineSeparator()).append("  Failed: ").append(failure.getKey())
+                    .append(" - ").append(failure.getValue().getMessage());
+        }
+
+        return summary.toString();
+    }
+}